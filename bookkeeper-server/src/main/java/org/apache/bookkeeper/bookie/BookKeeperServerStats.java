@@ -104,6 +104,9 @@ public interface BookKeeperServerStats {
 
     String JOURNAL_SCOPE = "journal";
     String JOURNAL_DIRS = "JOURNAL_DIRS";
+    String JOURNAL_REPLAY_ENTRIES = "JOURNAL_REPLAY_ENTRIES";
+    String JOURNAL_REPLAY_BYTES = "JOURNAL_REPLAY_BYTES";
+    String JOURNAL_REPLAY_PROGRESS = "JOURNAL_REPLAY_PROGRESS";
     String JOURNAL_ADD_ENTRY = "JOURNAL_ADD_ENTRY";
     String JOURNAL_FORCE_LEDGER = "JOURNAL_FORCE_LEDGER";
     String JOURNAL_SYNC = "JOURNAL_SYNC";
@@ -117,6 +120,19 @@ public interface BookKeeperServerStats {
     String JOURNAL_CREATION_LATENCY = "JOURNAL_CREATION_LATENCY";
     String JOURNAL_MEMORY_MAX = "JOURNAL_MEMORY_MAX";
     String JOURNAL_MEMORY_USED = "JOURNAL_MEMORY_USED";
+    String JOURNAL_GROUP_COMMIT_WINDOW = "JOURNAL_GROUP_COMMIT_WINDOW";
+    String JOURNAL_GROUP_COMMIT_BATCH_BYTES = "JOURNAL_GROUP_COMMIT_BATCH_BYTES";
+    String JOURNAL_COALESCED_FORCE_WRITE_JOURNALS = "JOURNAL_COALESCED_FORCE_WRITE_JOURNALS";
+    String JOURNAL_COALESCED_FORCE_WRITE_FSYNCS_SAVED = "JOURNAL_COALESCED_FORCE_WRITE_FSYNCS_SAVED";
+    String JOURNAL_ASSIGNED_LEDGERS = "JOURNAL_ASSIGNED_LEDGERS";
+    String JOURNAL_LOAD_BYTES_PER_SECOND = "JOURNAL_LOAD_BYTES_PER_SECOND";
+    String JOURNAL_ADD_STAGE_QUEUE = "JOURNAL_ADD_STAGE_QUEUE";
+    String JOURNAL_ADD_STAGE_GROUP_WAIT = "JOURNAL_ADD_STAGE_GROUP_WAIT";
+    String JOURNAL_ADD_STAGE_FLUSH = "JOURNAL_ADD_STAGE_FLUSH";
+    String JOURNAL_ADD_STAGE_FORCE_WRITE_QUEUE = "JOURNAL_ADD_STAGE_FORCE_WRITE_QUEUE";
+    String JOURNAL_ADD_STAGE_FSYNC = "JOURNAL_ADD_STAGE_FSYNC";
+    String JOURNAL_ADD_STAGE_CALLBACK = "JOURNAL_ADD_STAGE_CALLBACK";
+    String JOURNAL_ADD_STAGE_RESPONSE_FLUSH = "JOURNAL_ADD_STAGE_RESPONSE_FLUSH";
 
     // Ledger Storage Stats
     String STORAGE_GET_OFFSET = "STORAGE_GET_OFFSET";
@@ -135,6 +151,8 @@ public interface BookKeeperServerStats {
 
     // Counters
     String JOURNAL_WRITE_BYTES = "JOURNAL_WRITE_BYTES";
+    String JOURNAL_UNCOMPRESSED_BYTES = "JOURNAL_UNCOMPRESSED_BYTES";
+    String JOURNAL_COMPRESSED_BYTES = "JOURNAL_COMPRESSED_BYTES";
     String JOURNAL_QUEUE_SIZE = "JOURNAL_QUEUE_SIZE";
     String READ_BYTES = "READ_BYTES";
     String WRITE_BYTES = "WRITE_BYTES";
@@ -22,8 +22,10 @@ import io.netty.buffer.ByteBuf;
 import java.io.IOException;
 import java.util.PrimitiveIterator;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import org.apache.bookkeeper.common.util.Watcher;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.util.ByteBufList;
 
 /**
  * Interface for the bookie.
@@ -43,6 +45,9 @@ public interface Bookie {
     // TODO: replace ackBeforeSync with flags
     void addEntry(ByteBuf entry, boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
             throws IOException, BookieException, InterruptedException;
+    int addEntries(ByteBuf[] entries, int offset, boolean ackBeforeSync, WriteCallback cb, Object ctx,
+                    byte[] masterKey)
+            throws IOException, BookieException, InterruptedException;
     void recoveryAddEntry(ByteBuf entry, WriteCallback cb, Object ctx, byte[] masterKey)
             throws IOException, BookieException, InterruptedException;
     void forceLedger(long ledgerId, WriteCallback cb, Object ctx);
@@ -57,6 +62,37 @@ public interface Bookie {
     // TODO: Shouldn't this be async?
     ByteBuf readEntry(long ledgerId, long entryId)
             throws IOException, NoLedgerException, BookieException;
+    CompletableFuture<ByteBuf> readEntryAsync(long ledgerId, long entryId, Executor executor);
+
+    /**
+     * Read consecutive entries of a ledger, starting from the given entry.
+     *
+     * <p>The read stops at the first entry that cannot be read, after {@code maxCount} entries or before the total
+     * size of the entries exceeds {@code maxSize}. The first entry is always returned, or its read error is thrown.
+     * By default the entries are read one by one.
+     */
+    default ByteBufList readEntries(long ledgerId, long firstEntryId, int maxCount, long maxSize)
+            throws IOException, NoLedgerException, BookieException {
+        ByteBufList entries = ByteBufList.get(readEntry(ledgerId, firstEntryId));
+        long size = entries.readableBytes();
+        for (int i = 1; i < maxCount; i++) {
+            ByteBuf entry;
+            try {
+                entry = readEntry(ledgerId, firstEntryId + i);
+            } catch (IOException | BookieException e) {
+                break;
+            }
+
+            if (size + entry.readableBytes() > maxSize) {
+                entry.release();
+                break;
+            }
+            size += entry.readableBytes();
+            entries.add(entry);
+        }
+        return entries;
+    }
+
     long readLastAddConfirmed(long ledgerId) throws IOException, BookieException;
     PrimitiveIterator.OfLong getListOfEntriesOfLedger(long ledgerId) throws IOException, NoLedgerException;
 
@@ -86,6 +122,11 @@ public interface Bookie {
     // TODO: Should be constructed and passed in as a parameter
     LedgerStorage getLedgerStorage();
 
+    /**
+     * @return the progress of the journal replay done when the bookie starts
+     */
+    JournalReplayProgress getJournalReplayProgress();
+
     // TODO: Move this exceptions somewhere else
     /**
      * Exception is thrown when no such a ledger is found in this bookie.
@@ -33,6 +33,7 @@ import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
@@ -43,12 +44,17 @@ import java.nio.file.FileStore;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.PrimitiveIterator.OfLong;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
@@ -61,8 +67,11 @@ import org.apache.bookkeeper.bookie.LedgerDirsManager.LedgerDirsListener;
 import org.apache.bookkeeper.bookie.LedgerDirsManager.NoWritableLedgerDirException;
 import org.apache.bookkeeper.bookie.stats.BookieStats;
 import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorage;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.common.util.Watcher;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.discover.BookieServiceInfo;
 import org.apache.bookkeeper.discover.RegistrationManager;
@@ -75,6 +84,7 @@ import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.ThreadRegistry;
 import org.apache.bookkeeper.util.BookKeeperConstants;
+import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.DiskChecker;
 import org.apache.bookkeeper.util.IOUtils;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
@@ -97,6 +107,8 @@ public class BookieImpl implements Bookie {
     final LedgerStorage ledgerStorage;
     final RegistrationManager registrationManager;
     final List<Journal> journals;
+    // Assigns the ledgers to the journals by load, null when they are assigned by ledger id
+    private final LoadBasedJournalSelector journalSelector;
 
     final HandleFactory handles;
     final boolean entryLogPerLedgerEnabled;
@@ -123,6 +135,7 @@ public class BookieImpl implements Bookie {
     // Expose Stats
     final StatsLogger statsLogger;
     private final BookieStats bookieStats;
+    private final JournalReplayProgress journalReplayProgress = new JournalReplayProgress();
 
     private final ByteBufAllocator allocator;
 
@@ -241,6 +254,45 @@ public class BookieImpl implements Bookie {
         }
     }
 
+    /**
+     * Share a force write thread between the journals residing on the same file system.
+     */
+    private void setUpForceWriteCoordinators(StatsLogger journalStatsLogger) {
+        Map<FileStore, List<Journal>> fileStoreJournalsMap = new LinkedHashMap<>();
+        for (Journal journal : journals) {
+            try {
+                FileStore fileStore = Files.getFileStore(journal.getJournalDirectory().toPath());
+                fileStoreJournalsMap.computeIfAbsent(fileStore, (key) -> new ArrayList<>()).add(journal);
+            } catch (IOException e) {
+                LOG.warn("Got IOException while trying to FileStore of {}, the journal keeps its own force write"
+                        + " thread", journal.getJournalDirectory(), e);
+            }
+        }
+
+        NativeIO nativeIO = null;
+        try {
+            nativeIO = new NativeIOImpl();
+        } catch (Exception e) {
+            LOG.warn("Unable to initialize NativeIO to sync the journal file systems: {}", e.getMessage());
+        }
+
+        int group = 0;
+        for (Map.Entry<FileStore, List<Journal>> entry : fileStoreJournalsMap.entrySet()) {
+            List<Journal> fileStoreJournals = entry.getValue();
+            if (fileStoreJournals.size() < 2) {
+                continue;
+            }
+            LOG.info("Journals in {} share a force write thread", entry.getKey());
+            JournalForceWriteCoordinator coordinator = new JournalForceWriteCoordinator("ForceWriteThread-" + group,
+                    fileStoreJournals.get(0).getJournalDirectory(), nativeIO,
+                    journalStatsLogger.scopeLabel("forceWriteGroup", String.valueOf(group)));
+            for (Journal journal : fileStoreJournals) {
+                journal.setForceWriteCoordinator(coordinator);
+            }
+            group++;
+        }
+    }
+
     public static BookieId getBookieId(ServerConfiguration conf) throws UnknownHostException {
         String customBookieId = conf.getBookieId();
         if (customBookieId != null) {
@@ -443,7 +495,20 @@ public class BookieImpl implements Bookie {
         }
 
         this.entryLogPerLedgerEnabled = conf.isEntryLogPerLedgerEnabled();
-        CheckpointSource checkpointSource = new CheckpointSourceList(journals);
+        if (conf.getJournalCoalesceForceWrites() && journals.size() > 1) {
+            setUpForceWriteCoordinators(statsLogger.scope(JOURNAL_SCOPE));
+        }
+        if (conf.getJournalLoadBasedLedgerAssignment() && journals.size() > 1) {
+            journalSelector = new LoadBasedJournalSelector(journals, statsLogger.scope(JOURNAL_SCOPE));
+        } else {
+            journalSelector = null;
+        }
+        List<CheckpointSource> checkpointSources = new ArrayList<>(journals);
+        if (journalSelector != null) {
+            // Completed after the journals, once their log marks are persisted
+            checkpointSources.add(journalSelector);
+        }
+        CheckpointSource checkpointSource = new CheckpointSourceList(checkpointSources);
 
         this.ledgerStorage = storage;
         boolean isDbLedgerStorage = ledgerStorage instanceof DbLedgerStorage;
@@ -488,6 +553,9 @@ public class BookieImpl implements Bookie {
             @Override
             public void ledgerDeleted(long ledgerId) {
                 masterKeyCache.remove(ledgerId);
+                if (journalSelector != null) {
+                    journalSelector.ledgerDeleted(ledgerId);
+                }
             }
         };
 
@@ -498,7 +566,8 @@ public class BookieImpl implements Bookie {
         handles = new HandleFactoryImpl(ledgerStorage);
 
         // Expose Stats
-        this.bookieStats = new BookieStats(statsLogger, journalDirectories.size(), conf.getJournalQueueSize());
+        this.bookieStats = new BookieStats(statsLogger, journalDirectories.size(), conf.getJournalQueueSize(),
+                journalReplayProgress);
     }
 
     @VisibleForTesting
@@ -529,97 +598,170 @@ public class BookieImpl implements Bookie {
         }
 
         long startTs = System.currentTimeMillis();
-        JournalScanner scanner = new JournalScanner() {
-            @Override
-            public void process(int journalVersion, long offset, ByteBuffer recBuff) throws IOException {
-                long ledgerId = recBuff.getLong();
-                long entryId = recBuff.getLong();
-                try {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Replay journal - ledger id : {}, entry id : {}.", ledgerId, entryId);
-                    }
-                    if (entryId == METAENTRY_ID_LEDGER_KEY) {
-                        if (journalVersion >= JournalChannel.V3) {
-                            int masterKeyLen = recBuff.getInt();
-                            byte[] masterKey = new byte[masterKeyLen];
-
-                            recBuff.get(masterKey);
-                            masterKeyCache.put(ledgerId, masterKey);
-
-                            // Force to re-insert the master key in ledger storage
-                            handles.getHandle(ledgerId, masterKey, true);
-                        } else {
-                            throw new IOException("Invalid journal. Contains journalKey "
-                                    + " but layout version (" + journalVersion
-                                    + ") is too old to hold this");
-                        }
-                    } else if (entryId == METAENTRY_ID_FENCE_KEY) {
-                        if (journalVersion >= JournalChannel.V4) {
-                            byte[] key = masterKeyCache.get(ledgerId);
-                            if (key == null) {
-                                key = ledgerStorage.readMasterKey(ledgerId);
-                            }
-                            LedgerDescriptor handle = handles.getHandle(ledgerId, key, true);
-                            handle.setFenced();
-                        } else {
-                            throw new IOException("Invalid journal. Contains fenceKey "
-                                    + " but layout version (" + journalVersion
-                                    + ") is too old to hold this");
-                        }
-                    } else if (entryId == METAENTRY_ID_LEDGER_EXPLICITLAC) {
-                        if (journalVersion >= JournalChannel.V6) {
-                            int explicitLacBufLength = recBuff.getInt();
-                            ByteBuf explicitLacBuf = Unpooled.buffer(explicitLacBufLength);
-                            byte[] explicitLacBufArray = new byte[explicitLacBufLength];
-                            recBuff.get(explicitLacBufArray);
-                            explicitLacBuf.writeBytes(explicitLacBufArray);
-                            byte[] key = masterKeyCache.get(ledgerId);
-                            if (key == null) {
-                                key = ledgerStorage.readMasterKey(ledgerId);
-                            }
-                            LedgerDescriptor handle = handles.getHandle(ledgerId, key, true);
-                            handle.setExplicitLac(explicitLacBuf);
-                        } else {
-                            throw new IOException("Invalid journal. Contains explicitLAC " + " but layout version ("
-                                    + journalVersion + ") is too old to hold this");
-                        }
-                    } else if (entryId < 0) {
-                        /*
-                         * this is possible if bookie code binary is rolledback
-                         * to older version but when it is trying to read
-                         * Journal which was created previously using newer
-                         * code/journalversion, which introduced new special
-                         * entry. So in anycase, if we see unrecognizable
-                         * special entry while replaying journal we should skip
-                         * (ignore) it.
-                         */
-                        LOG.warn("Read unrecognizable entryId: {} for ledger: {} while replaying Journal. Skipping it",
-                                entryId, ledgerId);
-                    } else {
-                        byte[] key = masterKeyCache.get(ledgerId);
-                        if (key == null) {
-                            key = ledgerStorage.readMasterKey(ledgerId);
-                        }
-                        LedgerDescriptor handle = handles.getHandle(ledgerId, key, true);
+        journalReplayProgress.start(getJournalBytesToReplay());
+        int replayThreads = conf.getJournalReplayThreads();
+        try {
+            if (replayThreads > 1) {
+                replayJournalsInParallel(replayThreads);
+            } else {
+                JournalScanner scanner = (journalVersion, offset, recBuff) -> {
+                    int size = recBuff.remaining();
+                    replayRecord(journalVersion, recBuff);
+                    journalReplayProgress.onRecordReplayed(size);
+                };
+                for (Journal journal : journals) {
+                    replay(journal, scanner);
+                }
+            }
+        } finally {
+            journalReplayProgress.finish();
+        }
+        long elapsedTs = System.currentTimeMillis() - startTs;
+        LOG.info("Finished replaying journal in {} ms.", elapsedTs);
+    }
 
-                        recBuff.rewind();
-                        handle.addEntry(Unpooled.wrappedBuffer(recBuff));
+    private void replayRecord(int journalVersion, ByteBuffer recBuff) throws IOException {
+        long ledgerId = recBuff.getLong();
+        long entryId = recBuff.getLong();
+        try {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Replay journal - ledger id : {}, entry id : {}.", ledgerId, entryId);
+            }
+            if (entryId == METAENTRY_ID_LEDGER_KEY) {
+                if (journalVersion >= JournalChannel.V3) {
+                    int masterKeyLen = recBuff.getInt();
+                    byte[] masterKey = new byte[masterKeyLen];
+
+                    recBuff.get(masterKey);
+                    masterKeyCache.put(ledgerId, masterKey);
+
+                    // Force to re-insert the master key in ledger storage
+                    handles.getHandle(ledgerId, masterKey, true);
+                } else {
+                    throw new IOException("Invalid journal. Contains journalKey "
+                            + " but layout version (" + journalVersion
+                            + ") is too old to hold this");
+                }
+            } else if (entryId == METAENTRY_ID_FENCE_KEY) {
+                if (journalVersion >= JournalChannel.V4) {
+                    byte[] key = masterKeyCache.get(ledgerId);
+                    if (key == null) {
+                        key = ledgerStorage.readMasterKey(ledgerId);
                     }
-                } catch (NoLedgerException nsle) {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Skip replaying entries of ledger {} since it was deleted.", ledgerId);
+                    LedgerDescriptor handle = handles.getHandle(ledgerId, key, true);
+                    handle.setFenced();
+                } else {
+                    throw new IOException("Invalid journal. Contains fenceKey "
+                            + " but layout version (" + journalVersion
+                            + ") is too old to hold this");
+                }
+            } else if (entryId == METAENTRY_ID_LEDGER_EXPLICITLAC) {
+                if (journalVersion >= JournalChannel.V6) {
+                    int explicitLacBufLength = recBuff.getInt();
+                    ByteBuf explicitLacBuf = Unpooled.buffer(explicitLacBufLength);
+                    byte[] explicitLacBufArray = new byte[explicitLacBufLength];
+                    recBuff.get(explicitLacBufArray);
+                    explicitLacBuf.writeBytes(explicitLacBufArray);
+                    byte[] key = masterKeyCache.get(ledgerId);
+                    if (key == null) {
+                        key = ledgerStorage.readMasterKey(ledgerId);
                     }
-                } catch (BookieException be) {
-                    throw new IOException(be);
+                    LedgerDescriptor handle = handles.getHandle(ledgerId, key, true);
+                    handle.setExplicitLac(explicitLacBuf);
+                } else {
+                    throw new IOException("Invalid journal. Contains explicitLAC " + " but layout version ("
+                            + journalVersion + ") is too old to hold this");
+                }
+            } else if (entryId < 0) {
+                /*
+                 * this is possible if bookie code binary is rolledback
+                 * to older version but when it is trying to read
+                 * Journal which was created previously using newer
+                 * code/journalversion, which introduced new special
+                 * entry. So in anycase, if we see unrecognizable
+                 * special entry while replaying journal we should skip
+                 * (ignore) it.
+                 */
+                LOG.warn("Read unrecognizable entryId: {} for ledger: {} while replaying Journal. Skipping it",
+                        entryId, ledgerId);
+            } else {
+                byte[] key = masterKeyCache.get(ledgerId);
+                if (key == null) {
+                    key = ledgerStorage.readMasterKey(ledgerId);
                 }
+                LedgerDescriptor handle = handles.getHandle(ledgerId, key, true);
+
+                recBuff.rewind();
+                handle.addEntry(Unpooled.wrappedBuffer(recBuff));
             }
-        };
+        } catch (NoLedgerException nsle) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Skip replaying entries of ledger {} since it was deleted.", ledgerId);
+            }
+        } catch (BookieException be) {
+            throw new IOException(be);
+        }
+    }
+
+    /**
+     * Scan the journals concurrently and apply their records to the ledger storage from a pool of threads,
+     * preserving the order of the records of each ledger.
+     */
+    private void replayJournalsInParallel(int replayThreads) throws IOException {
+        ExecutorService scanExecutor = Executors.newFixedThreadPool(journals.size(),
+                new DefaultThreadFactory("JournalReplayScanner"));
+        try (ParallelJournalReplayer replayer = new ParallelJournalReplayer(replayThreads,
+                (journalVersion, recBuff) -> {
+                    int size = recBuff.remaining();
+                    replayRecord(journalVersion, recBuff);
+                    journalReplayProgress.onRecordReplayed(size);
+                })) {
+            List<Future<?>> scans = new ArrayList<>(journals.size());
+            for (Journal journal : journals) {
+                JournalScanner scanner = replayer.newScanner();
+                scans.add(scanExecutor.submit(() -> {
+                    replay(journal, scanner);
+                    return null;
+                }));
+            }
+            for (Future<?> scan : scans) {
+                try {
+                    scan.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while replaying journals", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException(e.getCause());
+                }
+            }
+        } finally {
+            scanExecutor.shutdownNow();
+        }
+    }
 
+    /**
+     * @return the size of the data to replay in the journal files, starting from the last log mark of each journal
+     */
+    private long getJournalBytesToReplay() throws IOException {
+        long totalBytes = 0;
         for (Journal journal : journals) {
-            replay(journal, scanner);
+            LogMark markedLog = journal.getLastLogMark().getCurMark();
+            List<Long> logs = Journal.listJournalIds(journal.getJournalDirectory(), journalId ->
+                    journalId >= markedLog.getLogFileId());
+            for (Long id : logs) {
+                File journalFile = new File(journal.getJournalDirectory(), Long.toHexString(id) + ".txn");
+                // Not the file length, which includes the preallocated space
+                long size = Journal.getJournalFileWrittenLength(journalFile);
+                if (id == markedLog.getLogFileId()) {
+                    size -= Math.min(size, markedLog.getLogFileOffset());
+                }
+                totalBytes += size;
+            }
         }
-        long elapsedTs = System.currentTimeMillis() - startTs;
-        LOG.info("Finished replaying journal in {} ms.", elapsedTs);
+        return totalBytes;
     }
 
     /**
@@ -642,6 +784,16 @@ public class BookieImpl implements Bookie {
             }
         }
 
+        JournalScanner journalScanner = scanner;
+        if (journalSelector != null) {
+            // Keep the replayed ledgers on this journal, which replays them again until the next checkpoint
+            int journalIndex = journals.indexOf(journal);
+            journalScanner = (journalVersion, offset, recBuff) -> {
+                journalSelector.ledgerReplayed(recBuff.getLong(recBuff.position()), journalIndex);
+                scanner.process(journalVersion, offset, recBuff);
+            };
+        }
+
         // TODO: When reading in the journal logs that need to be synced, we
         // should use BufferedChannels instead to minimize the amount of
         // system calls done.
@@ -651,7 +803,12 @@ public class BookieImpl implements Bookie {
                 logPosition = markedLog.getLogFileOffset();
             }
             LOG.info("Replaying journal {} from position {}", id, logPosition);
-            long scanOffset = journal.scanJournal(id, logPosition, scanner, conf.isSkipReplayJournalInvalidRecord());
+            long scanOffset = journal.scanJournal(id, logPosition, journalScanner,
+                    conf.isSkipReplayJournalInvalidRecord());
+            if (scanner instanceof ParallelJournalReplayer.Scanner) {
+                // The log mark must not move past records that are not yet applied to the ledger storage
+                ((ParallelJournalReplayer.Scanner) scanner).awaitProcessed();
+            }
             // Update LastLogMark after completely replaying journal
             // scanOffset will point to EOF position
             // After LedgerStorage flush, SyncThread should persist this to disk
@@ -941,6 +1098,9 @@ public class BookieImpl implements Bookie {
     }
 
     private Journal getJournal(long ledgerId) {
+        if (journalSelector != null) {
+            return journalSelector.getJournal(ledgerId);
+        }
         return journals.get(MathUtils.signSafeMod(ledgerId, journals.size()));
     }
 
@@ -968,19 +1128,7 @@ public class BookieImpl implements Bookie {
 
         // journal `addEntry` should happen after the entry is added to ledger storage.
         // otherwise the journal entry can potentially be rolled before the ledger is created in ledger storage.
-        if (masterKeyCache.get(ledgerId) == null) {
-            // Force the load into masterKey cache
-            byte[] oldValue = masterKeyCache.putIfAbsent(ledgerId, masterKey);
-            if (oldValue == null) {
-                ByteBuf masterKeyEntry = createMasterKeyEntry(ledgerId, masterKey);
-                try {
-                    getJournal(ledgerId).logAddEntry(
-                            masterKeyEntry, false /* ackBeforeSync */, new NopWriteCallback(), null);
-                } finally {
-                    ReferenceCountUtil.release(masterKeyEntry);
-                }
-            }
-        }
+        logMasterKeyIfNeeded(ledgerId, masterKey);
 
         if (!writeDataToJournal) {
             cb.writeComplete(0, ledgerId, entryId, null, ctx);
@@ -996,6 +1144,22 @@ public class BookieImpl implements Bookie {
         getJournal(ledgerId).logAddEntry(entry, ackBeforeSync, cb, ctx);
     }
 
+    private void logMasterKeyIfNeeded(long ledgerId, byte[] masterKey) throws InterruptedException {
+        if (masterKeyCache.get(ledgerId) == null) {
+            // Force the load into masterKey cache
+            byte[] oldValue = masterKeyCache.putIfAbsent(ledgerId, masterKey);
+            if (oldValue == null) {
+                ByteBuf masterKeyEntry = createMasterKeyEntry(ledgerId, masterKey);
+                try {
+                    getJournal(ledgerId).logAddEntry(
+                            masterKeyEntry, false /* ackBeforeSync */, new NopWriteCallback(), null);
+                } finally {
+                    ReferenceCountUtil.release(masterKeyEntry);
+                }
+            }
+        }
+    }
+
     /**
      * Add entry to a ledger, even if the ledger has previous been fenced. This should only
      * happen in bookie recovery or ledger recovery cases, where entries are being replicates
@@ -1125,6 +1289,78 @@ public class BookieImpl implements Bookie {
         }
     }
 
+    /**
+     * Add a batch of entries to a ledger, and log them in the journal as one group.
+     *
+     * <p>The entries are added in order from {@code offset}. If an entry other than the first one cannot be added,
+     * the entries before it are logged and the call returns, so that the failure is raised by the call adding the
+     * remaining entries. The entries added are released; if an exception is thrown, only the entry at
+     * {@code offset} is released.
+     *
+     * @return the number of entries added
+     */
+    @Override
+    public int addEntries(ByteBuf[] entries, int offset, boolean ackBeforeSync, WriteCallback cb, Object ctx,
+                          byte[] masterKey)
+            throws IOException, BookieException, InterruptedException {
+        long requestNanos = MathUtils.nowInNano();
+        boolean success = false;
+        int added = 0;
+        try {
+            LedgerDescriptor handle = getLedgerForEntry(entries[offset], masterKey);
+            synchronized (handle) {
+                if (handle.isFenced()) {
+                    throw BookieException
+                            .create(BookieException.Code.LedgerFencedException);
+                }
+                for (int i = offset; i < entries.length; i++) {
+                    try {
+                        handle.addEntry(entries[i]);
+                    } catch (IOException | BookieException e) {
+                        if (added == 0) {
+                            throw e;
+                        }
+                        break;
+                    }
+                    bookieStats.getWriteBytes().addCount(entries[i].readableBytes());
+                    added++;
+                }
+
+                long ledgerId = handle.getLedgerId();
+                logMasterKeyIfNeeded(ledgerId, masterKey);
+
+                if (!writeDataToJournal) {
+                    for (int i = offset; i < offset + added; i++) {
+                        cb.writeComplete(0, ledgerId, entries[i].getLong(entries[i].readerIndex() + 8), null, ctx);
+                    }
+                    if (ctx instanceof BookieRequestHandler) {
+                        ((BookieRequestHandler) ctx).flushPendingResponse();
+                    }
+                } else {
+                    getJournal(ledgerId).logAddEntries(entries, offset, added, ackBeforeSync, cb, ctx);
+                }
+            }
+            success = true;
+        } catch (NoWritableLedgerDirException e) {
+            stateManager.transitionToReadOnlyMode();
+            throw new IOException(e);
+        } finally {
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            if (success) {
+                for (int i = offset; i < offset + added; i++) {
+                    bookieStats.getAddEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                    bookieStats.getAddBytesStats().registerSuccessfulValue(entries[i].readableBytes());
+                    ReferenceCountUtil.release(entries[i]);
+                }
+            } else {
+                bookieStats.getAddEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getAddBytesStats().registerFailedValue(entries[offset].readableBytes());
+                ReferenceCountUtil.release(entries[offset]);
+            }
+        }
+        return added;
+    }
+
     /**
      * Fences a ledger. From this point on, clients will be unable to
      * write to this ledger. Only recoveryAddEntry will be
@@ -1166,6 +1402,61 @@ public class BookieImpl implements Bookie {
         }
     }
 
+    public CompletableFuture<ByteBuf> readEntryAsync(long ledgerId, long entryId, Executor executor) {
+        long requestNanos = MathUtils.nowInNano();
+        LedgerDescriptor handle;
+        try {
+            handle = handles.getReadOnlyHandle(ledgerId);
+        } catch (IOException e) {
+            bookieStats.getReadEntryStats().registerFailedEvent(MathUtils.elapsedNanos(requestNanos),
+                    TimeUnit.NANOSECONDS);
+            bookieStats.getReadBytesStats().registerFailedValue(0);
+            return FutureUtils.exception(e);
+        }
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Reading {}@{} asynchronously", entryId, ledgerId);
+        }
+        return handle.readEntryAsync(entryId, executor).whenComplete((entry, e) -> {
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            if (e == null) {
+                int entrySize = entry.readableBytes();
+                bookieStats.getReadBytes().addCount(entrySize);
+                bookieStats.getReadEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getReadBytesStats().registerSuccessfulValue(entrySize);
+            } else {
+                bookieStats.getReadEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getReadBytesStats().registerFailedValue(0);
+            }
+        });
+    }
+
+    public ByteBufList readEntries(long ledgerId, long firstEntryId, int maxCount, long maxSize)
+            throws IOException, NoLedgerException, BookieException {
+        long requestNanos = MathUtils.nowInNano();
+        boolean success = false;
+        int entriesSize = 0;
+        try {
+            LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Reading up to {} entries from {}@{}", maxCount, firstEntryId, ledgerId);
+            }
+            ByteBufList entries = handle.readEntries(firstEntryId, maxCount, maxSize);
+            entriesSize = entries.readableBytes();
+            bookieStats.getReadBytes().addCount(entriesSize);
+            success = true;
+            return entries;
+        } finally {
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            if (success) {
+                bookieStats.getReadEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getReadBytesStats().registerSuccessfulValue(entriesSize);
+            } else {
+                bookieStats.getReadEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getReadBytesStats().registerFailedValue(entriesSize);
+            }
+        }
+    }
+
     public long readLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
         return handle.getLastAddConfirmed();
@@ -1196,6 +1487,11 @@ public class BookieImpl implements Bookie {
         return (BookieStateManager) this.stateManager;
     }
 
+    @Override
+    public JournalReplayProgress getJournalReplayProgress() {
+        return journalReplayProgress;
+    }
+
     public ByteBufAllocator getAllocator() {
         return allocator;
     }
@@ -58,6 +58,7 @@ import org.apache.bookkeeper.tools.cli.commands.autorecovery.ToggleCommand;
 import org.apache.bookkeeper.tools.cli.commands.autorecovery.TriggerAuditCommand;
 import org.apache.bookkeeper.tools.cli.commands.autorecovery.WhoIsAuditorCommand;
 import org.apache.bookkeeper.tools.cli.commands.bookie.CheckDBLedgersIndexCommand;
+import org.apache.bookkeeper.tools.cli.commands.bookie.ConvertDBLedgerLocationsIndexCommand;
 import org.apache.bookkeeper.tools.cli.commands.bookie.ConvertToDBStorageCommand;
 import org.apache.bookkeeper.tools.cli.commands.bookie.ConvertToInterleavedStorageCommand;
 import org.apache.bookkeeper.tools.cli.commands.bookie.FlipBookieIdCommand;
@@ -163,6 +164,7 @@ public class BookieShell implements Tool {
     static final String CMD_CONVERT_TO_DB_STORAGE = "convert-to-db-storage";
     static final String CMD_CONVERT_TO_INTERLEAVED_STORAGE = "convert-to-interleaved-storage";
     static final String CMD_REBUILD_DB_LEDGER_LOCATIONS_INDEX = "rebuild-db-ledger-locations-index";
+    static final String CMD_CONVERT_DB_LEDGER_LOCATIONS_INDEX = "convert-db-ledger-locations-index";
     static final String CMD_REBUILD_DB_LEDGERS_INDEX = "rebuild-db-ledgers-index";
     static final String CMD_CHECK_DB_LEDGERS_INDEX = "check-db-ledgers-index";
     static final String CMD_REGENERATE_INTERLEAVED_STORAGE_INDEX_FILE = "regenerate-interleaved-storage-index-file";
@@ -2371,6 +2373,52 @@ public class BookieShell implements Tool {
         }
     }
 
+    /**
+     * Convert DbLedgerStorage locations index to another format.
+     */
+    class ConvertDbLedgerLocationsIndexCmd extends MyCommand {
+
+        public ConvertDbLedgerLocationsIndexCmd() {
+            super(CMD_CONVERT_DB_LEDGER_LOCATIONS_INDEX);
+            opts.addOption("f", "format", true, "Target format of the locations index: entry or range");
+        }
+
+        @Override
+        Options getOptions() {
+            return opts;
+        }
+
+        @Override
+        String getDescription() {
+            return "Convert DbLedgerStorage locations index to the per-entry or range format";
+        }
+
+        @Override
+        String getUsage() {
+            return "convert-db-ledger-locations-index      Convert DbLedgerStorage locations index to the per-entry "
+                    + "or range format\n"
+                    + "             Usage: convert-db-ledger-locations-index [options]\n"
+                    + "             Options:\n"
+                    + "               -f, --format\n"
+                    + "              Target format of the locations index: entry or range (default: range)";
+        }
+
+        @Override
+        int runCmd(CommandLine cmdLine) throws Exception {
+            ConvertDBLedgerLocationsIndexCommand.ConvertLocationsIndexFlags flags =
+                    new ConvertDBLedgerLocationsIndexCommand.ConvertLocationsIndexFlags();
+            if (cmdLine.hasOption("f")) {
+                flags.format(cmdLine.getOptionValue("f"));
+            }
+            ConvertDBLedgerLocationsIndexCommand cmd = new ConvertDBLedgerLocationsIndexCommand();
+            if (cmd.apply(bkConf, flags)) {
+                return 0;
+            } else {
+                return -1;
+            }
+        }
+    }
+
     /**
      * Rebuild DbLedgerStorage ledgers index.
      */
@@ -2602,6 +2650,7 @@ public class BookieShell implements Tool {
         commands.put(CMD_CONVERT_TO_DB_STORAGE, new ConvertToDbStorageCmd());
         commands.put(CMD_CONVERT_TO_INTERLEAVED_STORAGE, new ConvertToInterleavedStorageCmd());
         commands.put(CMD_REBUILD_DB_LEDGER_LOCATIONS_INDEX, new RebuildDbLedgerLocationsIndexCmd());
+        commands.put(CMD_CONVERT_DB_LEDGER_LOCATIONS_INDEX, new ConvertDbLedgerLocationsIndexCmd());
         commands.put(CMD_REBUILD_DB_LEDGERS_INDEX, new RebuildDbLedgersIndexCmd());
         commands.put(CMD_CHECK_DB_LEDGERS_INDEX, new CheckDbLedgersIndexCmd());
         commands.put(CMD_REGENERATE_INTERLEAVED_STORAGE_INDEX_FILE, new RegenerateInterleavedStorageIndexFile());
@@ -28,7 +28,10 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
 
 /**
  * Provides a buffering layer in front of a FileChannel.
@@ -72,6 +75,17 @@ public class BufferedChannel extends BufferedReadChannel implements Closeable {
 
     private boolean closed = false;
 
+    /*
+     * Buffers appended with writeGathered, waiting for the next flush, together with the slices of the writeBuffer
+     * written in between them, in write order. gatheredWriteBufferIndex is the index of the first byte of the
+     * writeBuffer not yet added to gatheredBuffers.
+     */
+    private final List<ByteBuf> gatheredBuffers = new ArrayList<>();
+    private int gatheredWriteBufferIndex = 0;
+    // Bytes of the buffers appended with writeGathered, reported to gatheredBytesListener once released
+    private long gatheredBytes = 0;
+    private LongConsumer gatheredBytesListener = null;
+
     // make constructor to be public for unit test
     public BufferedChannel(ByteBufAllocator allocator, FileChannel fc, int capacity) throws IOException {
         // Use the same capacity for read and write buffers.
@@ -101,6 +115,7 @@ public class BufferedChannel extends BufferedReadChannel implements Closeable {
         if (closed) {
             return;
         }
+        releaseGatheredBuffers();
         ReferenceCountUtil.release(writeBuffer);
         fileChannel.close();
         closed = true;
@@ -144,6 +159,70 @@ public class BufferedChannel extends BufferedReadChannel implements Closeable {
         }
     }
 
+    /**
+     * Append src to the data to write without copying it into the write buffer. The buffer is retained until the
+     * next {@link #flush()}, which writes it along with the other pending data with a single vectored write.
+     *
+     * <p>The content of src must not be modified until then.
+     *
+     * @param src The source ByteBuf which contains the data to be written.
+     * @throws IOException if a write operation fails.
+     */
+    public void writeGathered(ByteBuf src) throws IOException {
+        boolean shouldForceWrite = false;
+        synchronized (this) {
+            int len = src.readableBytes();
+            addWriteBufferToGathered();
+            gatheredBuffers.add(src.retainedDuplicate());
+            gatheredBytes += len;
+            position += len;
+            if (doRegularFlushes) {
+                unpersistedBytes.addAndGet(len);
+                if (unpersistedBytes.get() >= unpersistedBytesBound) {
+                    flush();
+                    shouldForceWrite = true;
+                }
+            }
+        }
+        if (shouldForceWrite) {
+            forceWrite(false);
+        }
+    }
+
+    /**
+     * Set the listener notified with the number of bytes of the buffers appended with
+     * {@link #writeGathered(ByteBuf)}, once the channel releases them after their flush, or on close.
+     *
+     * @param listener the listener, called under the lock of the channel.
+     */
+    public synchronized void setGatheredBytesListener(LongConsumer listener) {
+        this.gatheredBytesListener = listener;
+    }
+
+    private void addWriteBufferToGathered() {
+        int writerIndex = writeBuffer.writerIndex();
+        if (writerIndex > gatheredWriteBufferIndex) {
+            gatheredBuffers.add(writeBuffer.retainedSlice(gatheredWriteBufferIndex,
+                    writerIndex - gatheredWriteBufferIndex));
+            gatheredWriteBufferIndex = writerIndex;
+        }
+    }
+
+    private void releaseGatheredBuffers() {
+        for (int i = 0; i < gatheredBuffers.size(); i++) {
+            ReferenceCountUtil.release(gatheredBuffers.get(i));
+        }
+        gatheredBuffers.clear();
+        gatheredWriteBufferIndex = 0;
+        if (gatheredBytes > 0) {
+            long releasedBytes = gatheredBytes;
+            gatheredBytes = 0;
+            if (gatheredBytesListener != null) {
+                gatheredBytesListener.accept(releasedBytes);
+            }
+        }
+    }
+
     /**
      * Get the position where the next write operation will begin writing from.
      * @return
@@ -196,6 +275,10 @@ public class BufferedChannel extends BufferedReadChannel implements Closeable {
      * @throws IOException if the write fails.
      */
     public synchronized void flush() throws IOException {
+        if (!gatheredBuffers.isEmpty()) {
+            flushGathered();
+            return;
+        }
         ByteBuffer toWrite = writeBuffer.internalNioBuffer(0, writeBuffer.writerIndex());
         do {
             fileChannel.write(toWrite);
@@ -204,6 +287,35 @@ public class BufferedChannel extends BufferedReadChannel implements Closeable {
         writeBufferStartPosition.set(fileChannel.position());
     }
 
+    private void flushGathered() throws IOException {
+        try {
+            addWriteBufferToGathered();
+            List<ByteBuffer> nioBuffers = new ArrayList<>(gatheredBuffers.size());
+            for (int i = 0; i < gatheredBuffers.size(); i++) {
+                ByteBuf buf = gatheredBuffers.get(i);
+                if (buf.nioBufferCount() == 1) {
+                    nioBuffers.add(buf.nioBuffer());
+                } else {
+                    for (ByteBuffer nioBuffer : buf.nioBuffers()) {
+                        nioBuffers.add(nioBuffer);
+                    }
+                }
+            }
+            ByteBuffer[] toWrite = nioBuffers.toArray(new ByteBuffer[0]);
+            int offset = 0;
+            while (offset < toWrite.length) {
+                fileChannel.write(toWrite, offset, toWrite.length - offset);
+                while (offset < toWrite.length && !toWrite[offset].hasRemaining()) {
+                    offset++;
+                }
+            }
+        } finally {
+            releaseGatheredBuffers();
+            writeBuffer.clear();
+        }
+        writeBufferStartPosition.set(fileChannel.position());
+    }
+
     /**
      * force a sync operation so that data is persisted to the disk.
      * @param forceMetadata
@@ -247,6 +359,10 @@ public class BufferedChannel extends BufferedReadChannel implements Closeable {
             throw new IllegalArgumentException("dest buffer remaining capacity is not enough"
                     + "(must be at least as \"length\"=" + length + ")");
         }
+        if (!gatheredBuffers.isEmpty()) {
+            // Gathered buffers are not in the write buffer, write them to make them readable
+            flush();
+        }
 
         long prevPos = pos;
         while (length > 0) {
@@ -290,6 +406,7 @@ public class BufferedChannel extends BufferedReadChannel implements Closeable {
     @Override
     public synchronized void clear() {
         super.clear();
+        releaseGatheredBuffers();
         writeBuffer.clear();
     }
 
@@ -871,6 +871,50 @@ public class DefaultEntryLogger implements EntryLogger {
         return data;
     }
 
+    @Override
+    public ByteBuf readEntryRange(long entryLocation, int maxSize) throws IOException {
+        long entryLogId = logIdForOffset(entryLocation);
+        // Include the size header of the first entry
+        long pos = posForOffset(entryLocation) - 4;
+
+        // Read through the file channel of the read channel, since the log might have been removed from the open
+        // channels since it was cached. Fails if the channel was closed, as the reads of the buffered channel do.
+        FileChannel fileChannel = getChannelForLogId(entryLogId).validateAndGetFileChannel();
+        ByteBuf data = allocator.directBuffer(maxSize, maxSize);
+        try {
+            BufferedLogChannel bc = entryLogManager.getCurrentLogIfPresent(entryLogId);
+            if (null != bc) {
+                // The log is still being written, part of the range might be in the write buffer
+                synchronized (bc) {
+                    int length = (int) Math.min(maxSize, bc.position() - pos);
+                    // The part already written to the file is read at once, bypassing the small read buffer
+                    int fileLength = (int) Math.max(0, Math.min(length, bc.getFileChannelPosition() - pos));
+                    readFully(fileChannel, data, pos, fileLength);
+                    if (length > fileLength) {
+                        bc.read(data, pos + fileLength, length - fileLength);
+                    }
+                }
+            } else {
+                // Bypass the small read buffer and issue one large read on the file
+                readFully(fileChannel, data, pos, data.writableBytes());
+            }
+            return data;
+        } catch (IOException e) {
+            ReferenceCountUtil.release(data);
+            throw e;
+        }
+    }
+
+    private static void readFully(FileChannel fileChannel, ByteBuf data, long pos, int length) throws IOException {
+        int end = data.writerIndex() + length;
+        while (data.writerIndex() < end) {
+            int startIndex = data.writerIndex();
+            if (data.writeBytes(fileChannel, pos + (startIndex - data.readerIndex()), end - startIndex) <= 0) {
+                break;
+            }
+        }
+    }
+
     /**
      * Read the header of an entry log.
      */
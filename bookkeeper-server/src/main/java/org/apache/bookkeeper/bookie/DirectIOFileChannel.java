@@ -0,0 +1,109 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+
+/**
+ * BookieFileChannel of the {@link DirectIOFileChannelProvider}.
+ *
+ * <p>A journal file which does not exist when opened is a new journal to write, and gets a direct I/O write
+ * channel. Existing journal files are opened with a regular FileChannel, to be replayed: the provider does not
+ * support the reuse of journal files.
+ */
+public class DirectIOFileChannel implements BookieFileChannel {
+    private final File file;
+    private final DirectIOFileChannelProvider provider;
+    private final boolean newFile;
+    private final int writeBufferSize;
+    private RandomAccessFile randomAccessFile;
+    private DirectIOJournalWriteChannel writeChannel;
+
+    DirectIOFileChannel(File file, DirectIOFileChannelProvider provider, ServerConfiguration configuration)
+            throws IOException {
+        this.file = file;
+        this.provider = provider;
+        this.newFile = !file.exists();
+        if (newFile && (configuration.getJournalAlignmentSize() % DirectIOJournalWriteChannel.ALIGNMENT != 0
+                || configuration.getJournalFormatVersionToWrite() < JournalChannel.V5)) {
+            // The journal must pad its flushes to complete blocks, see DirectIOJournalWriteChannel
+            throw new IOException("Direct I/O journal needs journalAlignmentSize to be a multiple of "
+                    + DirectIOJournalWriteChannel.ALIGNMENT + " and journalFormatVersionToWrite >= "
+                    + JournalChannel.V5 + ", to write " + file);
+        }
+        // Room for a full flush of the journal write buffer after a partial block
+        this.writeBufferSize = configuration.getJournalWriteBufferSizeKB() * 1024
+                + DirectIOJournalWriteChannel.ALIGNMENT;
+    }
+
+    @Override
+    public FileChannel getFileChannel() throws IOException {
+        synchronized (this) {
+            if (newFile) {
+                if (writeChannel == null) {
+                    writeChannel = new DirectIOJournalWriteChannel(provider.getNativeIO(), file.getPath(),
+                            provider.acquireBuffer(writeBufferSize));
+                }
+                return writeChannel;
+            }
+            if (randomAccessFile == null) {
+                randomAccessFile = new RandomAccessFile(file, "rw");
+            }
+            return randomAccessFile.getChannel();
+        }
+    }
+
+    @Override
+    public boolean fileExists(File file) {
+        return file.exists();
+    }
+
+    @Override
+    public FileDescriptor getFD() throws IOException {
+        synchronized (this) {
+            if (writeChannel != null) {
+                return writeChannel.getFD();
+            }
+            if (randomAccessFile == null) {
+                throw new IOException("randomAccessFile is null, please initialize it by calling getFileChannel");
+            }
+            return randomAccessFile.getFD();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (writeChannel != null) {
+                writeChannel.close();
+            }
+            if (randomAccessFile != null) {
+                randomAccessFile.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+
+/**
+ * A FileChannelProvider writing new journal files with direct I/O (O_DIRECT | O_DSYNC) through native-io, bypassing
+ * the page cache and making the force writes unnecessary. Existing journal files are read with a regular
+ * FileChannel.
+ *
+ * <p>Set {@code journalChannelProvider} to this class to use it.
+ */
+public class DirectIOFileChannelProvider implements FileChannelProvider {
+
+    private static final int MAX_POOLED_BUFFERS = 4;
+
+    private final NativeIO nativeIO;
+    private final ArrayBlockingQueue<AlignedBuffer> bufferPool = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+    private volatile boolean closed = false;
+
+    public DirectIOFileChannelProvider() {
+        this(new NativeIOImpl());
+    }
+
+    DirectIOFileChannelProvider(NativeIO nativeIO) {
+        this.nativeIO = nativeIO;
+    }
+
+    @Override
+    public BookieFileChannel open(File file, ServerConfiguration configuration) throws IOException {
+        return new DirectIOFileChannel(file, this, configuration);
+    }
+
+    @Override
+    public void close(BookieFileChannel bookieFileChannel) throws IOException {
+        bookieFileChannel.close();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        AlignedBuffer buffer;
+        while ((buffer = bufferPool.poll()) != null) {
+            buffer.free();
+        }
+    }
+
+    NativeIO getNativeIO() {
+        return nativeIO;
+    }
+
+    /**
+     * Get a buffer from the pool, or allocate a new one.
+     */
+    AlignedBuffer acquireBuffer(int size) {
+        AlignedBuffer buffer = bufferPool.poll();
+        if (buffer != null && buffer.buf().capacity() != DirectIOJournalWriteChannel.alignUp(size)) {
+            buffer.free();
+            buffer = null;
+        }
+        if (buffer == null) {
+            buffer = AlignedBuffer.allocate(size);
+        }
+        buffer.pool = this;
+        return buffer;
+    }
+
+    /**
+     * A direct buffer whose memory address and size are aligned for direct I/O.
+     */
+    static final class AlignedBuffer {
+        private final ByteBuf allocated;
+        private final ByteBuf buf;
+        private final long address;
+        private DirectIOFileChannelProvider pool;
+
+        private AlignedBuffer(ByteBuf allocated, int offset, int size) {
+            this.allocated = allocated;
+            this.buf = allocated.slice(offset, size);
+            this.address = allocated.memoryAddress() + offset;
+        }
+
+        static AlignedBuffer allocate(int size) {
+            int alignedSize = (int) DirectIOJournalWriteChannel.alignUp(size);
+            ByteBuf allocated = PooledByteBufAllocator.DEFAULT.directBuffer(
+                    alignedSize + DirectIOJournalWriteChannel.ALIGNMENT);
+            if (!allocated.hasMemoryAddress()) {
+                allocated.release();
+                throw new UnsupportedOperationException("Direct I/O needs direct buffers with a memory address");
+            }
+            long addr = allocated.memoryAddress();
+            int offset = (int) (DirectIOJournalWriteChannel.alignUp(addr) - addr);
+            return new AlignedBuffer(allocated, offset, alignedSize);
+        }
+
+        ByteBuf buf() {
+            return buf;
+        }
+
+        long address() {
+            return address;
+        }
+
+        /**
+         * Give the buffer back to its pool, or free it.
+         */
+        void release() {
+            DirectIOFileChannelProvider p = pool;
+            pool = null;
+            if (p == null || p.closed || !p.bufferPool.offer(this)) {
+                free();
+            }
+        }
+
+        void free() {
+            ReferenceCountUtil.release(allocated);
+        }
+    }
+}
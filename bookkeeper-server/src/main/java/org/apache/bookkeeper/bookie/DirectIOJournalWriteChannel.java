@@ -0,0 +1,394 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.util.PageCacheUtil;
+
+/**
+ * A write only {@link FileChannel} for a new journal file, writing with O_DIRECT and O_DSYNC.
+ *
+ * <p>Writes are copied into an aligned buffer and written with pwrite in aligned blocks. A block is written only once
+ * it is complete, and never written again: rewriting a block that holds synced entries could lose them if the
+ * rewrite is torn. The journal pads each of its flushes to its alignment size, a multiple of the block size (see
+ * {@link org.apache.bookkeeper.conf.ServerConfiguration#validate()}), so that the flushed entries are always in
+ * complete blocks. The last partial block, which holds data not flushed by the journal yet, is written when it is
+ * completed, or padded with zeros when the channel is closed.
+ *
+ * <p>Since every written block is durable when the write returns, {@link #force(boolean)} does nothing.
+ */
+class DirectIOJournalWriteChannel extends FileChannel {
+
+    static final int ALIGNMENT = 4096;
+
+    private final NativeIO nativeIO;
+    private final String filename;
+    private final int fd;
+    private final DirectIOFileChannelProvider.AlignedBuffer buffer;
+    private final ByteBuf buf;
+    // A regular channel of the file, for the operations which do not write data
+    private FileChannel metadataChannel;
+
+    // File offset of the first byte of the buffer, always aligned
+    private long bufferStartOffset = 0;
+    // Number of bytes of the buffer holding data
+    private int bufferPosition = 0;
+    private long size = 0;
+
+    DirectIOJournalWriteChannel(NativeIO nativeIO, String filename,
+                                DirectIOFileChannelProvider.AlignedBuffer buffer) throws IOException {
+        this.nativeIO = nativeIO;
+        this.filename = filename;
+        this.buffer = buffer;
+        this.buf = buffer.buf();
+        try {
+            this.fd = nativeIO.open(filename,
+                    NativeIO.O_CREAT | NativeIO.O_WRONLY | NativeIO.O_DIRECT | NativeIO.O_DSYNC, 00644);
+        } catch (NativeIOException ne) {
+            buffer.release();
+            throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                    .kv("errno", ne.getErrno()).toString(), ne);
+        }
+    }
+
+    static long alignDown(long pos) {
+        return pos & ~(ALIGNMENT - 1);
+    }
+
+    static long alignUp(long pos) {
+        return (pos + ALIGNMENT - 1) & ~(ALIGNMENT - 1);
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src) throws IOException {
+        int written = copy(src);
+        writeCompleteBlocks();
+        return written;
+    }
+
+    /**
+     * Copy the data to the buffer, only writing the full buffers.
+     */
+    private int copy(ByteBuffer src) throws IOException {
+        int written = 0;
+        while (src.hasRemaining()) {
+            int toCopy = Math.min(src.remaining(), buf.capacity() - bufferPosition);
+            ByteBuffer slice = src.duplicate();
+            slice.limit(slice.position() + toCopy);
+            buf.setBytes(bufferPosition, slice);
+            src.position(src.position() + toCopy);
+            bufferPosition += toCopy;
+            written += toCopy;
+
+            if (bufferPosition == buf.capacity()) {
+                writeCompleteBlocks();
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Write the complete blocks of the buffer, and keep the partial last block at the start of the buffer.
+     */
+    private void writeCompleteBlocks() throws IOException {
+        int completeBlocks = (int) alignDown(bufferPosition);
+        if (completeBlocks == 0) {
+            return;
+        }
+        pwrite(buffer.address(), completeBlocks, bufferStartOffset);
+        size = Math.max(size, bufferStartOffset + completeBlocks);
+
+        int tail = bufferPosition - completeBlocks;
+        if (tail > 0) {
+            buf.setBytes(0, buf, completeBlocks, tail);
+        }
+        bufferStartOffset += completeBlocks;
+        bufferPosition = tail;
+    }
+
+    /**
+     * Write the partial last block padded with zeros, once no data will follow it.
+     */
+    private void writePartialBlock() throws IOException {
+        if (bufferPosition == 0) {
+            return;
+        }
+        int alignedEnd = (int) alignUp(bufferPosition);
+        buf.setZero(bufferPosition, alignedEnd - bufferPosition);
+        pwrite(buffer.address(), alignedEnd, bufferStartOffset);
+        size = Math.max(size, bufferStartOffset + bufferPosition);
+        bufferStartOffset += alignedEnd;
+        bufferPosition = 0;
+    }
+
+    private void pwrite(long address, int length, long offset) throws IOException {
+        try {
+            int ret = nativeIO.pwrite(fd, address, length, offset);
+            if (ret != length) {
+                throw new IOException(exMsg("Incomplete write")
+                        .kv("filename", filename)
+                        .kv("offset", offset)
+                        .kv("writeSize", length)
+                        .kv("bytesWritten", ret).toString());
+            }
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg("Write error")
+                    .kv("filename", filename)
+                    .kv("offset", offset)
+                    .kv("writeSize", length)
+                    .kv("errno", ne.getErrno()).toString(), ne);
+        }
+    }
+
+    @Override
+    public synchronized long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        long written = 0;
+        for (int i = offset; i < offset + length; i++) {
+            written += copy(srcs[i]);
+        }
+        writeCompleteBlocks();
+        return written;
+    }
+
+    /**
+     * Positional writes are only used to preallocate the journal file, ahead of the written data.
+     */
+    @Override
+    public synchronized int write(ByteBuffer src, long position) throws IOException {
+        long start = alignDown(position);
+        long end = alignUp(position + src.remaining());
+        if (start < bufferStartOffset + alignUp(bufferPosition)) {
+            throw new IOException(exMsg("Positional write overlapping written data")
+                    .kv("filename", filename)
+                    .kv("position", position)
+                    .kv("writtenOffset", bufferStartOffset + bufferPosition).toString());
+        }
+        int length = (int) (end - start);
+        DirectIOFileChannelProvider.AlignedBuffer tmp = DirectIOFileChannelProvider.AlignedBuffer.allocate(length);
+        try {
+            ByteBuf tmpBuf = tmp.buf();
+            tmpBuf.setZero(0, length);
+            int written = src.remaining();
+            tmpBuf.setBytes((int) (position - start), src);
+            pwrite(tmp.address(), length, start);
+            size = Math.max(size, position + written);
+            return written;
+        } finally {
+            tmp.release();
+        }
+    }
+
+    @Override
+    public synchronized long position() {
+        return bufferStartOffset + bufferPosition;
+    }
+
+    @Override
+    public synchronized FileChannel position(long newPosition) throws IOException {
+        if (newPosition != position()) {
+            throw new IOException(exMsg("Cannot seek a direct journal channel")
+                    .kv("filename", filename)
+                    .kv("position", position())
+                    .kv("newPosition", newPosition).toString());
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized long size() {
+        return Math.max(size, position());
+    }
+
+    @Override
+    public void force(boolean metaData) {
+        // The complete blocks are written with O_DSYNC
+    }
+
+    /**
+     * @return a file descriptor of the file, for the page cache hints of the journal
+     */
+    FileDescriptor getFD() throws IOException {
+        FileDescriptor fileDescriptor = PageCacheUtil.newFileDescriptor(fd);
+        if (fileDescriptor == null) {
+            throw new IOException(exMsg("Unable to create the FileDescriptor of a direct journal file, "
+                    + "set journalRemovePagesFromCache=false").kv("filename", filename).toString());
+        }
+        return fileDescriptor;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) {
+        throw new NonReadableChannelException();
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) {
+        throw new NonReadableChannelException();
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) {
+        throw new NonReadableChannelException();
+    }
+
+    /**
+     * Truncate the file beyond the written data, such as the preallocated blocks. The written data cannot be
+     * truncated, since the channel cannot seek back.
+     */
+    @Override
+    public synchronized FileChannel truncate(long newSize) throws IOException {
+        if (newSize < 0) {
+            throw new IllegalArgumentException("Negative size");
+        }
+        if (newSize < position()) {
+            throw new IOException(exMsg("Cannot truncate the data written to a direct journal channel")
+                    .kv("filename", filename)
+                    .kv("position", position())
+                    .kv("size", newSize).toString());
+        }
+        // Keep the last partial block, which is written padded
+        long alignedSize = Math.max(newSize, bufferStartOffset + alignUp(bufferPosition));
+        metadataChannel().truncate(alignedSize);
+        size = Math.min(size, newSize);
+        return this;
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) {
+        throw new NonReadableChannelException();
+    }
+
+    /**
+     * Transfer the data at the end of the written data, or ahead of it like {@link #write(ByteBuffer, long)}.
+     */
+    @Override
+    public synchronized long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+        if (position > size()) {
+            return 0;
+        }
+        ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(count, buf.capacity()));
+        long transferred = 0;
+        while (transferred < count) {
+            chunk.clear();
+            chunk.limit((int) Math.min(chunk.capacity(), count - transferred));
+            if (src.read(chunk) <= 0) {
+                break;
+            }
+            chunk.flip();
+            int length = chunk.remaining();
+            if (position + transferred == position()) {
+                copy(chunk);
+                writeCompleteBlocks();
+            } else {
+                write(chunk, position + transferred);
+            }
+            transferred += length;
+        }
+        return transferred;
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) {
+        // Mapping needs a readable channel, whatever the mode
+        throw new NonReadableChannelException();
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+        if (shared) {
+            throw new NonReadableChannelException();
+        }
+        return new DelegatingFileLock(this, metadataChannel().lock(position, size, false));
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        if (shared) {
+            throw new NonReadableChannelException();
+        }
+        FileLock lock = metadataChannel().tryLock(position, size, false);
+        return lock != null ? new DelegatingFileLock(this, lock) : null;
+    }
+
+    private synchronized FileChannel metadataChannel() throws IOException {
+        if (metadataChannel == null) {
+            metadataChannel = FileChannel.open(Paths.get(filename), StandardOpenOption.WRITE);
+        }
+        return metadataChannel;
+    }
+
+    /**
+     * A lock taken on the metadata channel, reported as a lock of this channel.
+     */
+    private static class DelegatingFileLock extends FileLock {
+        private final FileLock lock;
+
+        DelegatingFileLock(FileChannel channel, FileLock lock) {
+            super(channel, lock.position(), lock.size(), lock.isShared());
+            this.lock = lock;
+        }
+
+        @Override
+        public boolean isValid() {
+            return lock.isValid();
+        }
+
+        @Override
+        public void release() throws IOException {
+            lock.release();
+        }
+    }
+
+    @Override
+    protected synchronized void implCloseChannel() throws IOException {
+        try {
+            writePartialBlock();
+        } finally {
+            try {
+                if (metadataChannel != null) {
+                    metadataChannel.close();
+                }
+                nativeIO.close(fd);
+            } catch (NativeIOException ne) {
+                throw new IOException(exMsg(ne.getMessage())
+                        .kv("file", filename)
+                        .kv("errno", ne.getErrno()).toString(), ne);
+            } finally {
+                buffer.release();
+            }
+        }
+    }
+}
@@ -38,10 +38,13 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import org.apache.bookkeeper.bookie.LedgerDirsManager.NoWritableLedgerDirException;
 import org.apache.bookkeeper.bookie.stats.JournalStats;
@@ -128,6 +131,39 @@ public class Journal implements CheckpointSource {
         return logs;
     }
 
+    /**
+     * Get the length of the data written in a journal file. The journal files are preallocated with zeros, so the
+     * data ends at the last non-zero byte of the file.
+     *
+     * @param journalFile journal file
+     * @return the length of the data written in the file
+     */
+    static long getJournalFileWrittenLength(File journalFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            long end = channel.size();
+            // Scan the preallocated tail of the file backward
+            while (end > 0) {
+                int length = (int) Math.min(buffer.capacity(), end);
+                long position = end - length;
+                buffer.clear();
+                buffer.limit(length);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+                for (int i = buffer.position() - 1; i >= 0; i--) {
+                    if (buffer.get(i) != 0) {
+                        return position + i + 1;
+                    }
+                }
+                end = position;
+            }
+            return 0;
+        }
+    }
+
     /**
      * A wrapper over log mark to provide a checkpoint for users of journal
      * to do checkpointing.
@@ -307,6 +343,8 @@ public class Journal implements CheckpointSource {
 
         OpStatsLogger journalAddEntryStats;
         Counter callbackTime;
+        // Set for the sampled adds only
+        JournalAddTrace trace;
 
         static QueueEntry create(ByteBuf entry, boolean ackBeforeSync, long ledgerId, long entryId,
                 WriteCallback cb, Object ctx, long enqueueTime, OpStatsLogger journalAddEntryStats,
@@ -332,7 +370,11 @@ public class Journal implements CheckpointSource {
             }
             journalAddEntryStats.registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueTime), TimeUnit.NANOSECONDS);
             cb.writeComplete(0, ledgerId, entryId, null, ctx);
-            callbackTime.addLatency(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+            long callbackNanos = MathUtils.elapsedNanos(startTime);
+            callbackTime.addLatency(callbackNanos, TimeUnit.NANOSECONDS);
+            if (trace != null) {
+                trace.callbackEndTime = startTime + callbackNanos;
+            }
             recycle();
         }
 
@@ -359,6 +401,7 @@ public class Journal implements CheckpointSource {
             this.ctx = null;
             this.journalAddEntryStats = null;
             this.callbackTime = null;
+            this.trace = null;
             recyclerHandle.recycle(this);
         }
     }
@@ -374,8 +417,11 @@ public class Journal implements CheckpointSource {
         private long lastFlushedPosition;
         private long logId;
         private boolean flushed;
+        // Time of the fsync which made the request durable, for the traced adds
+        private long fsyncStartTime;
+        private long fsyncEndTime;
 
-        public int process(ObjectHashSet<BookieRequestHandler> writeHandlers) {
+        public int process(ObjectHashSet<BookieRequestHandler> writeHandlers, List<JournalAddTrace> traces) {
             closeFileIfNecessary();
 
             // Notify the waiters that the force write succeeded
@@ -386,6 +432,11 @@ public class Journal implements CheckpointSource {
                             && qe.entryId != BookieImpl.METAENTRY_ID_FORCE_LEDGER) {
                         writeHandlers.add((BookieRequestHandler) qe.getCtx());
                     }
+                    if (qe.trace != null) {
+                        qe.trace.fsyncStartTime = fsyncStartTime;
+                        qe.trace.fsyncEndTime = fsyncEndTime;
+                        traces.add(qe.trace);
+                    }
                     qe.run();
                 }
             }
@@ -425,6 +476,8 @@ public class Journal implements CheckpointSource {
         private void recycle() {
             logFile = null;
             flushed = false;
+            fsyncStartTime = 0;
+            fsyncEndTime = 0;
             if (forceWriteWaiters != null) {
                 forceWriteWaiters.recycle();
                 forceWriteWaiters = null;
@@ -470,6 +523,10 @@ public class Journal implements CheckpointSource {
         private final boolean enableGroupForceWrites;
         private final Counter forceWriteThreadTime;
 
+        private final ObjectHashSet<BookieRequestHandler> writeHandlers = new ObjectHashSet<>();
+        private final ForceWriteRequest[] localRequests = new ForceWriteRequest[conf.getJournalQueueSize()];
+        private final List<JournalAddTrace> traces = new ArrayList<>();
+
         public ForceWriteThread(Consumer<Void> threadToNotifyOnEx,
                                 boolean enableGroupForceWrites,
                                 StatsLogger statsLogger) {
@@ -492,36 +549,10 @@ public class Journal implements CheckpointSource {
                 }
             }
 
-            final ObjectHashSet<BookieRequestHandler> writeHandlers = new ObjectHashSet<>();
-            final ForceWriteRequest[] localRequests = new ForceWriteRequest[conf.getJournalQueueSize()];
-
             while (running) {
                 try {
-                    int numEntriesInLastForceWrite = 0;
-
                     int requestsCount = forceWriteRequests.takeAll(localRequests);
-
-                    journalStats.getForceWriteQueueSize().addCount(-requestsCount);
-
-                    // Sync and mark the journal up to the position of the last entry in the batch
-                    ForceWriteRequest lastRequest = localRequests[requestsCount - 1];
-                    syncJournal(lastRequest);
-
-                    // All the requests in the batch are now fully-synced. We can trigger sending the
-                    // responses
-                    for (int i = 0; i < requestsCount; i++) {
-                        ForceWriteRequest req = localRequests[i];
-                        numEntriesInLastForceWrite += req.process(writeHandlers);
-                        localRequests[i] = null;
-                        req.recycle();
-                    }
-
-                    journalStats.getForceWriteGroupingCountStats()
-                            .registerSuccessfulValue(numEntriesInLastForceWrite);
-                    writeHandlers.forEach(
-                            (ObjectProcedure<? super BookieRequestHandler>)
-                                    BookieRequestHandler::flushPendingResponse);
-                    writeHandlers.clear();
+                    processRequests(requestsCount);
                 } catch (IOException ioe) {
                     LOG.error("I/O exception in ForceWrite thread", ioe);
                     running = false;
@@ -537,13 +568,70 @@ public class Journal implements CheckpointSource {
             threadToNotifyOnEx.accept(null);
         }
 
-        private void syncJournal(ForceWriteRequest lastRequest) throws IOException {
+        /**
+         * Take the pending force write requests without waiting, used when the force writes of the journal are
+         * issued by a {@link JournalForceWriteCoordinator} instead of this thread. The requests taken must then be
+         * completed with {@link #processRequests(int)} or {@link #completeSyncedRequests(int, long, long)}.
+         *
+         * @return the number of requests taken
+         */
+        int pollRequests() throws InterruptedException {
+            return forceWriteRequests.pollAll(localRequests, 0, TimeUnit.NANOSECONDS);
+        }
+
+        private void processRequests(int requestsCount) throws IOException {
+            journalStats.getForceWriteQueueSize().addCount(-requestsCount);
+
+            // Sync and mark the journal up to the position of the last entry in the batch
+            syncJournal(requestsCount);
+
+            completeRequests(requestsCount);
+        }
+
+        /**
+         * Complete the requests taken by {@link #pollRequests()} after the whole file system of the journal was
+         * synced, which made the files of all the requests durable.
+         */
+        void completeSyncedRequests(int requestsCount, long fsyncStartTime, long fsyncLatency) {
+            journalStats.getForceWriteQueueSize().addCount(-requestsCount);
+
+            for (int i = 0; i < requestsCount; i++) {
+                localRequests[i].flushed = true;
+            }
+            recordSync(requestsCount, fsyncStartTime, fsyncLatency);
+
+            completeRequests(requestsCount);
+        }
+
+        private void completeRequests(int requestsCount) {
+            int numEntriesInLastForceWrite = 0;
+
+            // All the requests in the batch are now fully-synced. We can trigger sending the
+            // responses
+            for (int i = 0; i < requestsCount; i++) {
+                ForceWriteRequest req = localRequests[i];
+                numEntriesInLastForceWrite += req.process(writeHandlers, traces);
+                localRequests[i] = null;
+                req.recycle();
+            }
+
+            journalStats.getForceWriteGroupingCountStats()
+                    .registerSuccessfulValue(numEntriesInLastForceWrite);
+            writeHandlers.forEach(
+                    (ObjectProcedure<? super BookieRequestHandler>)
+                            BookieRequestHandler::flushPendingResponse);
+            writeHandlers.clear();
+
+            if (!traces.isEmpty()) {
+                JournalAddTrace.complete(traces, MathUtils.nowInNano(), journalStats, slowAddThresholdNanos);
+            }
+        }
+
+        private void syncJournal(int requestsCount) throws IOException {
             long fsyncStartTime = MathUtils.nowInNano();
             try {
-                lastRequest.flushFileToDisk();
-                journalStats.getJournalSyncStats().registerSuccessfulEvent(MathUtils.elapsedNanos(fsyncStartTime),
-                        TimeUnit.NANOSECONDS);
-                lastLogMark.setCurLogMark(lastRequest.logId, lastRequest.lastFlushedPosition);
+                localRequests[requestsCount - 1].flushFileToDisk();
+                recordSync(requestsCount, fsyncStartTime, MathUtils.elapsedNanos(fsyncStartTime));
             } catch (IOException ioe) {
                 journalStats.getJournalSyncStats()
                         .registerFailedEvent(MathUtils.elapsedNanos(fsyncStartTime), TimeUnit.NANOSECONDS);
@@ -551,6 +639,22 @@ public class Journal implements CheckpointSource {
             }
         }
 
+        /**
+         * Record the fsync which made the first requests taken durable.
+         */
+        private void recordSync(int requestsCount, long fsyncStartTime, long fsyncLatency) {
+            for (int i = 0; i < requestsCount; i++) {
+                localRequests[i].fsyncStartTime = fsyncStartTime;
+                localRequests[i].fsyncEndTime = fsyncStartTime + fsyncLatency;
+            }
+            ForceWriteRequest lastRequest = localRequests[requestsCount - 1];
+            journalStats.getJournalSyncStats().registerSuccessfulEvent(fsyncLatency, TimeUnit.NANOSECONDS);
+            if (groupCommitController != null) {
+                groupCommitController.recordSyncLatency(fsyncLatency);
+            }
+            lastLogMark.setCurLogMark(lastRequest.logId, lastRequest.lastFlushedPosition);
+        }
+
         // shutdown sync thread
         void shutdown() throws InterruptedException {
             running = false;
@@ -599,6 +703,8 @@ public class Journal implements CheckpointSource {
     final File journalDirectory;
     final ServerConfiguration conf;
     final ForceWriteThread forceWriteThread;
+    // Issues the force writes instead of the forceWriteThread when set
+    private JournalForceWriteCoordinator forceWriteCoordinator;
     final FileChannelProvider fileChannelProvider;
 
     // Time after which we will stop grouping and issue the flush
@@ -609,14 +715,24 @@ public class Journal implements CheckpointSource {
     private final long bufferedWritesThreshold;
     // should we flush if the queue is empty
     private final boolean flushWhenQueueEmpty;
+    // tunes the group wait and the buffered thresholds at runtime, null if disabled
+    private final JournalGroupCommitController groupCommitController;
     // should we hint the filesystem to remove pages from cache after force write
     private final boolean removePagesFromCache;
     private final int journalFormatVersionToWrite;
+    private final boolean compressionEnabled;
     private final int journalAlignmentSize;
     // control PageCache flush interval when syncData disabled to reduce disk io util
     private final long journalPageCacheFlushIntervalMSec;
     // Whether reuse journal files, it will use maxBackupJournal as the journal file pool.
     private final boolean journalReuseFiles;
+    // Whether entries are written with vectored writes instead of being copied into the write buffer
+    private final boolean gatherWrites;
+    // Entries smaller than this are cheaper to copy than to add to a vectored write
+    private static final int GATHER_WRITE_MIN_ENTRY_SIZE = 512;
+    // Trace one add out of addTraceSampleRate, 0 to disable the traces
+    private final int addTraceSampleRate;
+    private final long slowAddThresholdNanos;
 
     // Should data be fsynced on disk before triggering the callback
     private final boolean syncData;
@@ -644,6 +760,7 @@ public class Journal implements CheckpointSource {
     private JournalAliveListener journalAliveListener;
 
     private MemoryLimitController memoryLimitController;
+    private final LongAdder enqueuedBytes = new LongAdder();
 
 
     public Journal(int journalIndex, File journalDirectory, ServerConfiguration conf,
@@ -683,14 +800,31 @@ public class Journal implements CheckpointSource {
         this.maxGroupWaitInNanos = TimeUnit.MILLISECONDS.toNanos(conf.getJournalMaxGroupWaitMSec());
         this.bufferedWritesThreshold = conf.getJournalBufferedWritesThreshold();
         this.bufferedEntriesThreshold = conf.getJournalBufferedEntriesThreshold();
-        this.journalFormatVersionToWrite = conf.getJournalFormatVersionToWrite();
+        this.compressionEnabled = conf.getJournalCompressionEnabled();
+        if (compressionEnabled) {
+            JournalCompressor.checkAvailable();
+        }
+        // Compressed records need the V7 format
+        this.journalFormatVersionToWrite = compressionEnabled
+                ? Math.max(conf.getJournalFormatVersionToWrite(), JournalChannel.V7)
+                : conf.getJournalFormatVersionToWrite();
         this.journalAlignmentSize = conf.getJournalAlignmentSize();
         this.journalPageCacheFlushIntervalMSec = conf.getJournalPageCacheFlushIntervalMSec();
         this.journalReuseFiles = conf.getJournalReuseFiles();
+        this.gatherWrites = conf.getJournalGatherWrites();
+        this.addTraceSampleRate = conf.getJournalAddTraceSampleRate();
+        this.slowAddThresholdNanos = TimeUnit.MILLISECONDS.toNanos(conf.getJournalSlowAddThresholdMSec());
         this.callbackTime = journalStatsLogger.getThreadScopedCounter("callback-time");
         // Unless there is a cap on the max wait (which requires group force writes)
         // we cannot skip flushing for queue empty
         this.flushWhenQueueEmpty = maxGroupWaitInNanos <= 0 || conf.getJournalFlushWhenQueueEmpty();
+        if (conf.getJournalAdaptiveGroupCommit()) {
+            this.groupCommitController = new JournalGroupCommitController(
+                    TimeUnit.MILLISECONDS.toNanos(conf.getJournalAdaptiveGroupCommitTargetLatencyMSec()),
+                    maxGroupWaitInNanos, bufferedWritesThreshold, bufferedEntriesThreshold);
+        } else {
+            this.groupCommitController = null;
+        }
 
         this.removePagesFromCache = conf.getJournalRemovePagesFromCache();
         // read last log mark
@@ -713,7 +847,11 @@ public class Journal implements CheckpointSource {
 
         // Expose Stats
         this.journalStats = new JournalStats(journalStatsLogger, journalMaxMemory,
-                () -> memoryLimitController.currentUsage());
+                () -> memoryLimitController.currentUsage(),
+                () -> TimeUnit.NANOSECONDS.toMicros(groupCommitController != null
+                        ? groupCommitController.getGroupWaitNanos() : maxGroupWaitInNanos),
+                () -> groupCommitController != null
+                        ? groupCommitController.getBufferedWritesThreshold() : bufferedWritesThreshold);
     }
 
     public Journal(int journalIndex, File journalDirectory, ServerConfiguration conf,
@@ -822,6 +960,8 @@ public class Journal implements CheckpointSource {
         try {
             ByteBuffer lenBuff = ByteBuffer.allocate(4);
             ByteBuffer recBuff = ByteBuffer.allocate(64 * 1024);
+            ByteBuffer compressedHeaderBuff = ByteBuffer.allocate(8);
+            ByteBuffer uncompressedBuff = null;
             while (true) {
                 // entry start offset
                 long offset = recLog.fc.position();
@@ -837,8 +977,23 @@ public class Journal implements CheckpointSource {
                     break;
                 }
                 boolean isPaddingRecord = false;
+                int uncompressedLen = -1;
                 if (len < 0) {
-                    if (len == PADDING_MASK && journalVersion >= JournalChannel.V5) {
+                    if (len == JournalCompressor.COMPRESSED_MASK && journalVersion >= JournalChannel.V7) {
+                        compressedHeaderBuff.clear();
+                        fullRead(recLog, compressedHeaderBuff);
+                        if (compressedHeaderBuff.remaining() != 0) {
+                            break;
+                        }
+                        compressedHeaderBuff.flip();
+                        uncompressedLen = compressedHeaderBuff.getInt();
+                        len = compressedHeaderBuff.getInt();
+                        if (uncompressedLen <= 0 || len <= 0) {
+                            LOG.error("Invalid compressed record found with length: {}, uncompressed length: {}",
+                                    len, uncompressedLen);
+                            throw new IOException("Invalid compressed record found with length " + len);
+                        }
+                    } else if (len == PADDING_MASK && journalVersion >= JournalChannel.V5) {
                         // skip padding bytes
                         lenBuff.clear();
                         fullRead(recLog, lenBuff);
@@ -867,7 +1022,11 @@ public class Journal implements CheckpointSource {
                     break;
                 }
                 recBuff.flip();
-                if (!isPaddingRecord) {
+                if (uncompressedLen >= 0) {
+                    // The records of a compressed block all get the offset of the block
+                    uncompressedBuff = JournalCompressor.decompress(recBuff, uncompressedLen, uncompressedBuff);
+                    scanRecords(journalVersion, offset, uncompressedBuff, scanner);
+                } else if (!isPaddingRecord) {
                     scanner.process(journalVersion, offset, recBuff);
                 }
             }
@@ -884,6 +1043,21 @@ public class Journal implements CheckpointSource {
         }
     }
 
+    private static void scanRecords(int journalVersion, long offset, ByteBuffer records, JournalScanner scanner)
+            throws IOException {
+        while (records.remaining() >= 4) {
+            int len = records.getInt();
+            if (len <= 0 || len > records.remaining()) {
+                LOG.error("Invalid record found in compressed block with length: {}", len);
+                throw new IOException("Invalid record found in compressed block with length " + len);
+            }
+            ByteBuffer record = records.slice();
+            record.limit(len);
+            scanner.process(journalVersion, offset, record);
+            records.position(records.position() + len);
+        }
+    }
+
     /**
      * record an add entry operation in journal.
      */
@@ -904,11 +1078,49 @@ public class Journal implements CheckpointSource {
         journalStats.getJournalQueueSize().inc();
 
         memoryLimitController.reserveMemory(entry.readableBytes());
+        enqueuedBytes.add(entry.readableBytes());
 
-        queue.put(QueueEntry.create(
-                entry, ackBeforeSync, ledgerId, entryId, cb, ctx, MathUtils.nowInNano(),
+        long enqueueTime = MathUtils.nowInNano();
+        QueueEntry qe = QueueEntry.create(
+                entry, ackBeforeSync, ledgerId, entryId, cb, ctx, enqueueTime,
                 journalStats.getJournalAddEntryStats(),
-                callbackTime));
+                callbackTime);
+        if (addTraceSampleRate > 0 && ThreadLocalRandom.current().nextInt(addTraceSampleRate) == 0) {
+            qe.trace = new JournalAddTrace(ledgerId, entryId, enqueueTime);
+        }
+        queue.put(qe);
+    }
+
+    /**
+     * record the add entry operations of a batch of entries in journal, as one group.
+     */
+    void logAddEntries(ByteBuf[] entries, int offset, int count, boolean ackBeforeSync, WriteCallback cb, Object ctx)
+            throws InterruptedException {
+        QueueEntry[] queueEntries = new QueueEntry[count];
+        long bytes = 0;
+        long enqueueTime = MathUtils.nowInNano();
+        for (int i = 0; i < count; i++) {
+            ByteBuf entry = entries[offset + i];
+            long ledgerId = entry.getLong(entry.readerIndex() + 0);
+            long entryId = entry.getLong(entry.readerIndex() + 8);
+            // Retain entry until it gets written to journal
+            entry.retain();
+            bytes += entry.readableBytes();
+            queueEntries[i] = QueueEntry.create(
+                    entry, ackBeforeSync, ledgerId, entryId, cb, ctx, enqueueTime,
+                    journalStats.getJournalAddEntryStats(),
+                    callbackTime);
+            if (addTraceSampleRate > 0 && ThreadLocalRandom.current().nextInt(addTraceSampleRate) == 0) {
+                queueEntries[i].trace = new JournalAddTrace(ledgerId, entryId, enqueueTime);
+            }
+        }
+
+        journalStats.getJournalQueueSize().addCount(count);
+
+        memoryLimitController.reserveMemory(bytes);
+        enqueuedBytes.add(bytes);
+
+        queue.putAll(queueEntries, 0, count);
     }
 
     void forceLedger(long ledgerId, WriteCallback cb, Object ctx) {
@@ -973,11 +1185,19 @@ public class Journal implements CheckpointSource {
 
         BufferedChannel bc = null;
         JournalChannel logFile = null;
-        forceWriteThread.start();
+        JournalCompressor compressor = null;
+        if (forceWriteCoordinator != null) {
+            forceWriteCoordinator.startIfNeeded();
+        } else {
+            forceWriteThread.start();
+        }
         Stopwatch journalCreationWatcher = Stopwatch.createUnstarted();
         Stopwatch journalFlushWatcher = Stopwatch.createUnstarted();
         long batchSize = 0;
         try {
+            if (compressionEnabled) {
+                compressor = new JournalCompressor(allocator, journalStats);
+            }
             List<Long> journalIds = listJournalIds(journalDirectory, null);
             // Should not use MathUtils.now(), which use System.nanoTime() and
             // could only be used to measure elapsed time.
@@ -985,11 +1205,19 @@ public class Journal implements CheckpointSource {
             long logId = journalIds.isEmpty() ? System.currentTimeMillis() : journalIds.get(journalIds.size() - 1);
             long lastFlushPosition = 0;
             boolean groupWhenTimeout = false;
+            long groupWaitNanos = maxGroupWaitInNanos;
+            long writesThreshold = bufferedWritesThreshold;
+            long entriesThreshold = bufferedEntriesThreshold;
+            boolean flushWhenEmpty = flushWhenQueueEmpty;
+            final boolean confFlushWhenQueueEmpty = conf.getJournalFlushWhenQueueEmpty();
 
             long dequeueStartTime = 0L;
             long lastFlushTimeMs = System.currentTimeMillis();
 
             final ObjectHashSet<BookieRequestHandler> writeHandlers = new ObjectHashSet<>();
+            // Traces of the entries to flush, and of the entries acknowledged after the flush
+            final List<JournalAddTrace> tracesToFlush = new ArrayList<>();
+            final List<JournalAddTrace> flushedTraces = new ArrayList<>();
             QueueEntry[] localQueueEntries = new QueueEntry[conf.getJournalQueueSize()];
             int localQueueEntriesIdx = 0;
             int localQueueEntriesLen = 0;
@@ -1011,6 +1239,8 @@ public class Journal implements CheckpointSource {
                             journalCreationWatcher.stop().elapsed(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
 
                     bc = logFile.getBufferedChannel();
+                    // The memory of the gathered entries is released once the channel has flushed them
+                    bc.setGatheredBytesListener(bytes -> memoryLimitController.releaseMemory(bytes));
 
                     lastFlushPosition = bc.position();
                 }
@@ -1031,9 +1261,9 @@ public class Journal implements CheckpointSource {
                     } else {
                         // There are already some entries pending. We must adjust
                         // the waiting time to the remaining groupWait time
-                        long pollWaitTimeNanos = maxGroupWaitInNanos
+                        long pollWaitTimeNanos = groupWaitNanos
                                 - MathUtils.elapsedNanos(toFlush.get(0).enqueueTime);
-                        if (flushWhenQueueEmpty || pollWaitTimeNanos < 0) {
+                        if (flushWhenEmpty || pollWaitTimeNanos < 0) {
                             pollWaitTimeNanos = 0;
                         }
 
@@ -1043,6 +1273,14 @@ public class Journal implements CheckpointSource {
 
                     dequeueStartTime = MathUtils.nowInNano();
 
+                    if (groupCommitController != null) {
+                        groupCommitController.maybeUpdate(dequeueStartTime);
+                        groupWaitNanos = groupCommitController.getGroupWaitNanos();
+                        writesThreshold = groupCommitController.getBufferedWritesThreshold();
+                        entriesThreshold = groupCommitController.getBufferedEntriesThreshold();
+                        flushWhenEmpty = groupWaitNanos <= 0 || confFlushWhenQueueEmpty;
+                    }
+
                     if (localQueueEntriesLen > 0) {
                         qe = localQueueEntries[localQueueEntriesIdx];
                         localQueueEntries[localQueueEntriesIdx++] = null;
@@ -1053,12 +1291,12 @@ public class Journal implements CheckpointSource {
                     boolean shouldFlush = false;
                     // We should issue a forceWrite if any of the three conditions below holds good
                     // 1. If the oldest pending entry has been pending for longer than the max wait time
-                    if (maxGroupWaitInNanos > 0 && !groupWhenTimeout && (MathUtils
-                            .elapsedNanos(toFlush.get(0).enqueueTime) > maxGroupWaitInNanos)) {
+                    if (groupWaitNanos > 0 && !groupWhenTimeout && (MathUtils
+                            .elapsedNanos(toFlush.get(0).enqueueTime) > groupWaitNanos)) {
                         groupWhenTimeout = true;
-                    } else if (maxGroupWaitInNanos > 0 && groupWhenTimeout
+                    } else if (groupWaitNanos > 0 && groupWhenTimeout
                         && (qe == null // no entry to group
-                            || MathUtils.elapsedNanos(qe.enqueueTime) < maxGroupWaitInNanos)) {
+                            || MathUtils.elapsedNanos(qe.enqueueTime) < groupWaitNanos)) {
                         // when group timeout, it would be better to look forward, as there might be lots of
                         // entries already timeout
                         // due to a previous slow write (writing to filesystem which impacted by force write).
@@ -1069,13 +1307,14 @@ public class Journal implements CheckpointSource {
                         shouldFlush = true;
                         journalStats.getFlushMaxWaitCounter().inc();
                     } else if (qe != null
-                            && ((bufferedEntriesThreshold > 0 && toFlush.size() > bufferedEntriesThreshold)
-                            || (bc.position() > lastFlushPosition + bufferedWritesThreshold))) {
+                            && ((entriesThreshold > 0 && toFlush.size() > entriesThreshold)
+                            || (bc.position() + (compressor == null ? 0 : compressor.pendingBytes())
+                                > lastFlushPosition + writesThreshold))) {
                         // 2. If we have buffered more than the buffWriteThreshold or bufferedEntriesThreshold
                         groupWhenTimeout = false;
                         shouldFlush = true;
                         journalStats.getFlushMaxOutstandingBytesCounter().inc();
-                    } else if (qe == null && flushWhenQueueEmpty) {
+                    } else if (qe == null && flushWhenEmpty) {
                         // We should get here only if we flushWhenQueueEmpty is true else we would wait
                         // for timeout that would put is past the maxWait threshold
                         // 3. If the queue is empty i.e. no benefit of grouping. This happens when we have one
@@ -1087,11 +1326,23 @@ public class Journal implements CheckpointSource {
 
                     // toFlush is non null and not empty so should be safe to access getFirst
                     if (shouldFlush) {
+                        long flushStartTime = tracesToFlush.isEmpty() ? 0L : MathUtils.nowInNano();
+                        if (compressor != null) {
+                            compressor.writeBlock(logFile, bc);
+                        }
                         if (journalFormatVersionToWrite >= JournalChannel.V5) {
                             writePaddingBytes(logFile, paddingBuff, journalAlignmentSize);
                         }
                         journalFlushWatcher.reset().start();
                         bc.flush();
+                        if (!tracesToFlush.isEmpty()) {
+                            long flushEndTime = MathUtils.nowInNano();
+                            for (int i = 0; i < tracesToFlush.size(); i++) {
+                                tracesToFlush.get(i).flushStartTime = flushStartTime;
+                                tracesToFlush.get(i).flushEndTime = flushEndTime;
+                            }
+                            tracesToFlush.clear();
+                        }
 
                         for (int i = 0; i < toFlush.size(); i++) {
                             QueueEntry entry = toFlush.get(i);
@@ -1102,6 +1353,9 @@ public class Journal implements CheckpointSource {
                                         && entry.entryId != BookieImpl.METAENTRY_ID_FORCE_LEDGER) {
                                     writeHandlers.add((BookieRequestHandler) entry.getCtx());
                                 }
+                                if (entry.trace != null) {
+                                    flushedTraces.add(entry.trace);
+                                }
                                 entry.run();
                             }
                         }
@@ -1109,6 +1363,10 @@ public class Journal implements CheckpointSource {
                                 (ObjectProcedure<? super BookieRequestHandler>)
                                         BookieRequestHandler::flushPendingResponse);
                         writeHandlers.clear();
+                        if (!flushedTraces.isEmpty()) {
+                            JournalAddTrace.complete(flushedTraces, MathUtils.nowInNano(), journalStats,
+                                    slowAddThresholdNanos);
+                        }
 
                         lastFlushPosition = bc.position();
                         journalStats.getJournalFlushStats().registerSuccessfulEvent(
@@ -1144,6 +1402,9 @@ public class Journal implements CheckpointSource {
                                 >= journalPageCacheFlushIntervalMSec)) {
                             forceWriteRequests.put(createForceWriteRequest(logFile, logId, lastFlushPosition,
                                     toFlush, shouldRolloverJournal));
+                            if (forceWriteCoordinator != null) {
+                                forceWriteCoordinator.wakeUp();
+                            }
                             lastFlushTimeMs = System.currentTimeMillis();
                         }
                         toFlush = entryListRecycler.newInstance();
@@ -1172,6 +1433,10 @@ public class Journal implements CheckpointSource {
                 journalStats.getJournalQueueSize().dec();
                 journalStats.getJournalQueueStats()
                         .registerSuccessfulEvent(MathUtils.elapsedNanos(qe.enqueueTime), TimeUnit.NANOSECONDS);
+                if (qe.trace != null) {
+                    qe.trace.dequeueTime = dequeueStartTime;
+                    tracesToFlush.add(qe.trace);
+                }
 
                 if ((qe.entryId == BookieImpl.METAENTRY_ID_LEDGER_EXPLICITLAC)
                         && (journalFormatVersionToWrite < JournalChannel.V6)) {
@@ -1186,19 +1451,37 @@ public class Journal implements CheckpointSource {
                     ReferenceCountUtil.release(qe.entry);
                 } else if (qe.entryId != BookieImpl.METAENTRY_ID_FORCE_LEDGER) {
                     int entrySize = qe.entry.readableBytes();
+                    boolean gathered = false;
                     journalStats.getJournalWriteBytes().addCount(entrySize);
+                    if (groupCommitController != null) {
+                        groupCommitController.recordEntry(entrySize);
+                    }
 
                     batchSize += (4 + entrySize);
 
-                    lenBuff.clear();
-                    lenBuff.writeInt(entrySize);
-
-                    // preAlloc based on size
-                    logFile.preAllocIfNeeded(4 + entrySize);
-
-                    bc.write(lenBuff);
-                    bc.write(qe.entry);
-                    memoryLimitController.releaseMemory(qe.entry.readableBytes());
+                    if (compressor != null) {
+                        if (compressor.add(qe.entry)) {
+                            compressor.writeBlock(logFile, bc);
+                        }
+                    } else {
+                        lenBuff.clear();
+                        lenBuff.writeInt(entrySize);
+
+                        // preAlloc based on size
+                        logFile.preAllocIfNeeded(4 + entrySize);
+
+                        bc.write(lenBuff);
+                        if (gatherWrites && entrySize >= GATHER_WRITE_MIN_ENTRY_SIZE) {
+                            // The entry is retained by the channel, and its memory reserved, until the next flush
+                            bc.writeGathered(qe.entry);
+                            gathered = true;
+                        } else {
+                            bc.write(qe.entry);
+                        }
+                    }
+                    if (!gathered) {
+                        memoryLimitController.releaseMemory(qe.entry.readableBytes());
+                    }
                     ReferenceCountUtil.release(qe.entry);
                 }
 
@@ -1224,6 +1507,9 @@ public class Journal implements CheckpointSource {
             // close will flush the file system cache making any previous
             // cached writes durable so this is fine as well.
             IOUtils.close(LOG, bc);
+            if (compressor != null) {
+                compressor.release();
+            }
             if (journalAliveListener != null) {
                 journalAliveListener.onJournalExit();
             }
@@ -1244,11 +1530,18 @@ public class Journal implements CheckpointSource {
                 return;
             }
             LOG.info("Shutting down Journal");
+            if (forceWriteCoordinator != null) {
+                // Stop the force writes of the journal before closing its channels
+                forceWriteCoordinator.unregister(this);
+            }
+
             if (fileChannelProvider != null) {
                 fileChannelProvider.close();
             }
 
-            forceWriteThread.shutdown();
+            if (forceWriteCoordinator == null) {
+                forceWriteThread.shutdown();
+            }
 
             running = false;
             this.interruptThread();
@@ -1297,10 +1590,57 @@ public class Journal implements CheckpointSource {
         thread.start();
     }
 
+    /**
+     * Let the coordinator issue the force writes of the journal, instead of its own force write thread.
+     * Must be called before the journal is started.
+     */
+    void setForceWriteCoordinator(JournalForceWriteCoordinator forceWriteCoordinator) {
+        this.forceWriteCoordinator = forceWriteCoordinator;
+        forceWriteCoordinator.register(this);
+    }
+
+    /**
+     * Take the pending force write requests of the journal, if any, from the force write coordinator.
+     *
+     * @return the number of requests taken
+     */
+    int pollForceWriteRequests() throws InterruptedException {
+        return forceWriteThread.pollRequests();
+    }
+
+    /**
+     * Sync the journal for the force write requests taken by {@link #pollForceWriteRequests()}.
+     */
+    void processForceWriteRequests(int requestsCount) throws IOException {
+        forceWriteThread.processRequests(requestsCount);
+    }
+
+    /**
+     * Complete the force write requests taken by {@link #pollForceWriteRequests()}, after the force write
+     * coordinator synced the file system of the journal.
+     */
+    void completeSyncedForceWriteRequests(int requestsCount, long fsyncStartTime, long fsyncLatency) {
+        forceWriteThread.completeSyncedRequests(requestsCount, fsyncStartTime, fsyncLatency);
+    }
+
+    /**
+     * The force writes of the journal failed, stop the journal.
+     */
+    void forceWriteFailed() {
+        forceWriteThread.threadToNotifyOnEx.accept(null);
+    }
+
     long getMemoryUsage() {
         return memoryLimitController.currentUsage();
     }
 
+    /**
+     * @return the number of bytes of the entries added to the journal since it was created
+     */
+    long getEnqueuedBytes() {
+        return enqueuedBytes.sum();
+    }
+
     @VisibleForTesting
     void setMemoryLimitController(MemoryLimitController memoryLimitController) {
         this.memoryLimitController = memoryLimitController;
@@ -0,0 +1,100 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.stats.JournalStats;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Timestamps of a sampled add going through the journal, from the enqueue in the journal queue to the flush of the
+ * response.
+ *
+ * <p>The fsync timestamps are left to 0 for the entries acknowledged before the journal is synced.
+ */
+class JournalAddTrace {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JournalAddTrace.class);
+
+    final long ledgerId;
+    final long entryId;
+    final long enqueueTime;
+    long dequeueTime;
+    long flushStartTime;
+    long flushEndTime;
+    long fsyncStartTime;
+    long fsyncEndTime;
+    long callbackEndTime;
+
+    JournalAddTrace(long ledgerId, long entryId, long enqueueTime) {
+        this.ledgerId = ledgerId;
+        this.entryId = entryId;
+        this.enqueueTime = enqueueTime;
+    }
+
+    /**
+     * Record the stages of the traces whose responses were flushed at the given time.
+     */
+    static void complete(List<JournalAddTrace> traces, long responseFlushTime, JournalStats stats,
+                         long slowAddThresholdNanos) {
+        for (int i = 0; i < traces.size(); i++) {
+            traces.get(i).complete(responseFlushTime, stats, slowAddThresholdNanos);
+        }
+        traces.clear();
+    }
+
+    private void complete(long responseFlushTime, JournalStats stats, long slowAddThresholdNanos) {
+        boolean synced = fsyncStartTime != 0;
+        long persistedTime = synced ? fsyncEndTime : flushEndTime;
+
+        register(stats.getAddStageQueueStats(), dequeueTime - enqueueTime);
+        register(stats.getAddStageGroupWaitStats(), flushStartTime - dequeueTime);
+        register(stats.getAddStageFlushStats(), flushEndTime - flushStartTime);
+        if (synced) {
+            register(stats.getAddStageForceWriteQueueStats(), fsyncStartTime - flushEndTime);
+            register(stats.getAddStageFsyncStats(), fsyncEndTime - fsyncStartTime);
+        }
+        register(stats.getAddStageCallbackStats(), callbackEndTime - persistedTime);
+        register(stats.getAddStageResponseFlushStats(), responseFlushTime - callbackEndTime);
+
+        long totalNanos = responseFlushTime - enqueueTime;
+        if (slowAddThresholdNanos > 0 && totalNanos > slowAddThresholdNanos) {
+            LOG.warn("Slow journal add of entry {}@{}: total {} us, queue {} us, group wait {} us, flush {} us,"
+                    + " force write queue {} us, fsync {} us, callback {} us, response flush {} us",
+                    entryId, ledgerId, micros(totalNanos), micros(dequeueTime - enqueueTime),
+                    micros(flushStartTime - dequeueTime), micros(flushEndTime - flushStartTime),
+                    synced ? micros(fsyncStartTime - flushEndTime) : 0,
+                    synced ? micros(fsyncEndTime - fsyncStartTime) : 0,
+                    micros(callbackEndTime - persistedTime), micros(responseFlushTime - callbackEndTime));
+        }
+    }
+
+    private static void register(OpStatsLogger stats, long nanos) {
+        stats.registerSuccessfulEvent(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.apache.bookkeeper.bookie.stats.JournalStats;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Compresses the records of a journal in blocks, on the journal thread.
+ *
+ * <p>The records are buffered in their regular format ({@code [len][entry]}) and written as a single compressed
+ * record when the block is full or the journal is flushed, so the log marks always fall between two records:
+ * <pre>
+ * [COMPRESSED_MASK][uncompressed length][compressed length][snappy compressed records]
+ * </pre>
+ * Blocks which do not compress well are written uncompressed. Compressed records are only found in journal files
+ * of version {@link JournalChannel#V7} and later.
+ *
+ * <p>snappy-java is an optional dependency of the bookie: it is only loaded when a journal is compressed or a
+ * compressed record is replayed.
+ */
+class JournalCompressor {
+
+    static final int COMPRESSED_MASK = -0x200;
+    static final int COMPRESSED_HEADER_SIZE = 12;
+
+    // Uncompressed size of a block
+    static final int BLOCK_SIZE = 64 * 1024;
+    // Blocks compressed to more than this ratio of their size are written uncompressed
+    private static final double MAX_COMPRESSION_RATIO = 0.9;
+
+    private final ByteBuf block;
+    private final ByteBuf compressed;
+    private final JournalStats journalStats;
+
+    JournalCompressor(ByteBufAllocator allocator, JournalStats journalStats) throws IOException {
+        // Room for an entry larger than a block
+        this.block = allocator.directBuffer(BLOCK_SIZE * 2);
+        this.compressed = allocator.directBuffer(COMPRESSED_HEADER_SIZE + Snappy.maxCompressedLength(BLOCK_SIZE * 2));
+        this.journalStats = journalStats;
+    }
+
+    /**
+     * Check that snappy can be loaded, so a bookie configured to compress its journal fails on startup rather than
+     * on the journal thread.
+     *
+     * @throws IllegalStateException if snappy-java or its native library is not available
+     */
+    static void checkAvailable() {
+        try {
+            Snappy.maxCompressedLength(BLOCK_SIZE);
+        } catch (LinkageError e) {
+            throw new IllegalStateException("Journal compression requires snappy-java in the classpath", e);
+        }
+    }
+
+    /**
+     * Buffer a record for the entry.
+     *
+     * @return whether the block is full and must be written
+     */
+    boolean add(ByteBuf entry) {
+        block.writeInt(entry.readableBytes());
+        block.writeBytes(entry, entry.readerIndex(), entry.readableBytes());
+        return block.readableBytes() >= BLOCK_SIZE;
+    }
+
+    int pendingBytes() {
+        return block.readableBytes();
+    }
+
+    /**
+     * Write the buffered records to the journal, compressed if it pays off.
+     */
+    void writeBlock(JournalChannel logFile, BufferedChannel bc) throws IOException {
+        int uncompressedSize = block.readableBytes();
+        if (uncompressedSize == 0) {
+            return;
+        }
+
+        int maxCompressedSize = Snappy.maxCompressedLength(uncompressedSize);
+        compressed.clear();
+        compressed.ensureWritable(COMPRESSED_HEADER_SIZE + maxCompressedSize);
+        ByteBuffer src = block.nioBuffer(block.readerIndex(), uncompressedSize);
+        ByteBuffer dst = compressed.nioBuffer(COMPRESSED_HEADER_SIZE, maxCompressedSize);
+        int compressedSize = Snappy.compress(src, dst);
+
+        if (compressedSize <= uncompressedSize * MAX_COMPRESSION_RATIO) {
+            compressed.writeInt(COMPRESSED_MASK);
+            compressed.writeInt(uncompressedSize);
+            compressed.writeInt(compressedSize);
+            compressed.writerIndex(COMPRESSED_HEADER_SIZE + compressedSize);
+            logFile.preAllocIfNeeded(compressed.readableBytes());
+            bc.write(compressed);
+            journalStats.getJournalCompressedBytes().addCount(COMPRESSED_HEADER_SIZE + compressedSize);
+        } else {
+            logFile.preAllocIfNeeded(uncompressedSize);
+            bc.write(block);
+            journalStats.getJournalCompressedBytes().addCount(uncompressedSize);
+        }
+        journalStats.getJournalUncompressedBytes().addCount(uncompressedSize);
+        block.clear();
+    }
+
+    /**
+     * Decompress the records of a compressed record read from a journal file.
+     *
+     * @param compressedRecord the compressed records, without the header
+     * @param uncompressedSize uncompressed size of the records
+     * @param buffer buffer to reuse for the records, if large enough
+     * @return the records, in their regular format
+     */
+    static ByteBuffer decompress(ByteBuffer compressedRecord, int uncompressedSize, ByteBuffer buffer)
+            throws IOException {
+        if (buffer == null || buffer.capacity() < uncompressedSize) {
+            buffer = ByteBuffer.allocate(uncompressedSize);
+        }
+        buffer.clear();
+        int size;
+        try {
+            size = Snappy.uncompress(compressedRecord.array(),
+                    compressedRecord.arrayOffset() + compressedRecord.position(), compressedRecord.remaining(),
+                    buffer.array(), buffer.arrayOffset());
+        } catch (LinkageError e) {
+            throw new IOException("Replaying a compressed journal requires snappy-java in the classpath", e);
+        }
+        if (size != uncompressedSize) {
+            throw new IOException("Invalid compressed journal record, expected " + uncompressedSize
+                    + " bytes, got " + size);
+        }
+        buffer.limit(size);
+        return buffer;
+    }
+
+    void release() {
+        block.release();
+        compressed.release();
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_COALESCED_FORCE_WRITE_FSYNCS_SAVED;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_COALESCED_FORCE_WRITE_JOURNALS;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SCOPE;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A force write thread shared by the journals residing on the same file system.
+ *
+ * <p>Instead of one force write thread per journal, each issuing its own fsyncs concurrently with the others, the
+ * coordinator takes the pending force write requests of all its journals in rounds. When several journals have
+ * pending requests, a single syncfs of their file system makes all of them durable, then all the waiters of the
+ * round are acknowledged. The requests arriving during a round are grouped in the next one.
+ *
+ * <p>syncfs also writes back the dirty pages of any other file of the file system, so it pays off when the journal
+ * directories have a device of their own. Without native-io, or when syncfs fails, each journal of the round is
+ * synced with its own fsync.
+ */
+@StatsDoc(
+    name = JOURNAL_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Journal related stats"
+)
+class JournalForceWriteCoordinator extends BookieCriticalThread {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JournalForceWriteCoordinator.class);
+
+    private static final int ENOSYS = 38;
+
+    private final List<Journal> journals = new CopyOnWriteArrayList<>();
+    // Held during a round, so that a journal is never processed once unregistered
+    private final Object processLock = new Object();
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private volatile boolean running = true;
+
+    private final NativeIO nativeIO;
+    // A descriptor of the directory of a journal, to sync its file system, -1 if syncfs is not available
+    private int fileSystemFd;
+
+    // The journals with pending requests in the current round, and the number of requests taken from each
+    private Journal[] roundJournals = new Journal[0];
+    private int[] roundRequests = new int[0];
+
+    @StatsDoc(
+        name = JOURNAL_COALESCED_FORCE_WRITE_JOURNALS,
+        help = "The distribution of number of journals synced in a round of the shared force write thread"
+    )
+    private final OpStatsLogger journalsSyncedStats;
+    @StatsDoc(
+        name = JOURNAL_COALESCED_FORCE_WRITE_FSYNCS_SAVED,
+        help = "The number of journal fsyncs avoided by syncing the file system of the journals once per round"
+    )
+    private final Counter fsyncsSaved;
+
+    JournalForceWriteCoordinator(String name, File directory, NativeIO nativeIO, StatsLogger statsLogger) {
+        super(name);
+        setPriority(Thread.MAX_PRIORITY);
+        this.nativeIO = nativeIO;
+        this.fileSystemFd = openDirectory(directory);
+        this.journalsSyncedStats = statsLogger.getOpStatsLogger(JOURNAL_COALESCED_FORCE_WRITE_JOURNALS);
+        this.fsyncsSaved = statsLogger.getCounter(JOURNAL_COALESCED_FORCE_WRITE_FSYNCS_SAVED);
+    }
+
+    private int openDirectory(File directory) {
+        if (nativeIO == null) {
+            LOG.warn("Native-IO is not available, the journals in {} are synced one by one", directory);
+            return -1;
+        }
+        try {
+            return nativeIO.open(directory.getPath(), NativeIO.O_RDONLY, 0);
+        } catch (NativeIOException | RuntimeException | LinkageError e) {
+            // The native library fails to load on the first call
+            LOG.warn("Failed to open {} to sync its file system, the journals are synced one by one", directory, e);
+            return -1;
+        }
+    }
+
+    void register(Journal journal) {
+        journals.add(journal);
+    }
+
+    void startIfNeeded() {
+        if (started.compareAndSet(false, true)) {
+            start();
+        }
+    }
+
+    /**
+     * Notify the coordinator that a force write request was added.
+     */
+    void wakeUp() {
+        LockSupport.unpark(this);
+    }
+
+    /**
+     * Stop issuing the force writes of a journal, the coordinator stops once all its journals are unregistered.
+     * Once it returns, the coordinator does not access the journal anymore.
+     */
+    void unregister(Journal journal) throws InterruptedException {
+        synchronized (processLock) {
+            journals.remove(journal);
+        }
+        if (journals.isEmpty()) {
+            running = false;
+            interrupt();
+            if (started.get()) {
+                join();
+            }
+            closeDirectory();
+        }
+    }
+
+    private void closeDirectory() {
+        if (fileSystemFd >= 0) {
+            try {
+                nativeIO.close(fileSystemFd);
+            } catch (NativeIOException e) {
+                LOG.warn("Failed to close the directory used to sync the journals", e);
+            }
+            fileSystemFd = -1;
+        }
+    }
+
+    @Override
+    public void run() {
+        LOG.info("Shared ForceWrite thread {} started for {} journals", getName(), journals.size());
+        try {
+            while (running) {
+                if (processRound() == 0) {
+                    // A request added after the journals were checked leaves a permit, so the wake up is not missed
+                    LockSupport.park(this);
+                    if (Thread.interrupted() && running) {
+                        // Interrupted by something else than unregister
+                        LOG.info("Shared ForceWrite thread interrupted");
+                        break;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.info("Shared ForceWrite thread interrupted");
+        }
+        running = false;
+        // Notify the remaining journals, otherwise their write requests would hang
+        for (Journal journal : journals) {
+            journal.forceWriteFailed();
+        }
+    }
+
+    /**
+     * Take the pending requests of all the journals, make them durable and acknowledge them.
+     *
+     * @return the number of journals synced
+     */
+    @VisibleForTesting
+    int processRound() throws InterruptedException {
+        synchronized (processLock) {
+            if (roundJournals.length < journals.size()) {
+                roundJournals = new Journal[journals.size()];
+                roundRequests = new int[journals.size()];
+            }
+
+            int pending = 0;
+            for (Journal journal : journals) {
+                int requests = journal.pollForceWriteRequests();
+                if (requests > 0) {
+                    roundJournals[pending] = journal;
+                    roundRequests[pending] = requests;
+                    pending++;
+                }
+            }
+            if (pending == 0) {
+                return 0;
+            }
+
+            long fsyncStartTime = MathUtils.nowInNano();
+            if (pending > 1 && syncFileSystem()) {
+                long fsyncLatency = MathUtils.elapsedNanos(fsyncStartTime);
+                for (int i = 0; i < pending; i++) {
+                    roundJournals[i].completeSyncedForceWriteRequests(roundRequests[i], fsyncStartTime,
+                            fsyncLatency);
+                }
+                fsyncsSaved.addCount(pending - 1);
+            } else {
+                for (int i = 0; i < pending; i++) {
+                    Journal journal = roundJournals[i];
+                    try {
+                        journal.processForceWriteRequests(roundRequests[i]);
+                    } catch (IOException ioe) {
+                        LOG.error("I/O exception in shared ForceWrite thread, stopping journal {}",
+                                journal.getJournalDirectory(), ioe);
+                        journals.remove(journal);
+                        journal.forceWriteFailed();
+                    }
+                }
+            }
+            journalsSyncedStats.registerSuccessfulValue(pending);
+
+            for (int i = 0; i < pending; i++) {
+                roundJournals[i] = null;
+            }
+            return pending;
+        }
+    }
+
+    /**
+     * Sync the file system of the journals, which makes durable everything written to their files so far.
+     *
+     * @return whether the file system was synced, false if the journals must be synced one by one
+     */
+    private boolean syncFileSystem() {
+        if (fileSystemFd < 0) {
+            return false;
+        }
+        try {
+            nativeIO.syncfs(fileSystemFd);
+            return true;
+        } catch (NativeIOException e) {
+            if (e.getErrno() == ENOSYS) {
+                LOG.warn("syncfs is not supported, the journals are synced one by one");
+                closeDirectory();
+            } else {
+                // A write back error is reported to the fsyncs of each journal file as well
+                LOG.warn("Failed to sync the file system of the journals, syncing them one by one", e);
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tunes the group commit window of a journal from the observed fsync latency and entries arrival rate.
+ *
+ * <p>The window is the maximum time an entry is buffered by the journal thread waiting for other entries to be
+ * flushed with it. Grouping only pays off when several entries arrive during an fsync, so at low rates the window
+ * is closed and the entries are flushed as soon as the journal queue is empty. Under load the window is opened up
+ * to the fsync latency, as long as the window plus the tail fsync latency stays within the target add latency, and
+ * the buffered bytes/entries thresholds are raised to the amount of data expected in a window. When the tail fsync
+ * latency alone exceeds the target, the target cannot be met anyway and the window is kept at a fraction of the fsync
+ * latency, so that a slow disk still gets its fsyncs grouped.
+ *
+ * <p>The fsync latency is reported by the force write thread, everything else is only accessed by the journal
+ * thread.
+ */
+class JournalGroupCommitController {
+
+    private static final long UPDATE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // Weight of the last sample in the moving averages
+    private static final double ALPHA = 0.25;
+    // Lower bound of the window under load, relative to the fsync latency
+    private static final double MIN_GROUP_WAIT_FRACTION = 0.25;
+    // Upper bound for the buffered writes threshold
+    private static final long MAX_BUFFERED_WRITES_THRESHOLD = 8 * 1024 * 1024;
+
+    private final long targetLatencyNanos;
+    private final long minBufferedWritesThreshold;
+    private final long minBufferedEntriesThreshold;
+
+    // Smoothed fsync latency and mean deviation, the tail latency is estimated as mean + 4 * deviation
+    private volatile double syncLatencyNanos = 0;
+    private volatile double syncLatencyDeviationNanos = 0;
+
+    private long periodStartNanos;
+    private long periodEntries = 0;
+    private long periodBytes = 0;
+    private double entriesPerNano = 0;
+    private double bytesPerNano = 0;
+
+    private volatile long groupWaitNanos;
+    private volatile long bufferedWritesThreshold;
+    private volatile long bufferedEntriesThreshold;
+
+    JournalGroupCommitController(long targetLatencyNanos, long initialGroupWaitNanos,
+                                 long bufferedWritesThreshold, long bufferedEntriesThreshold) {
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.minBufferedWritesThreshold = bufferedWritesThreshold;
+        this.minBufferedEntriesThreshold = bufferedEntriesThreshold;
+        this.groupWaitNanos = Math.max(0, Math.min(initialGroupWaitNanos, targetLatencyNanos));
+        this.bufferedWritesThreshold = bufferedWritesThreshold;
+        this.bufferedEntriesThreshold = bufferedEntriesThreshold;
+        this.periodStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Record the latency of an fsync of the journal, called from the force write thread.
+     */
+    void recordSyncLatency(long latencyNanos) {
+        double mean = syncLatencyNanos;
+        if (mean == 0) {
+            syncLatencyNanos = latencyNanos;
+            syncLatencyDeviationNanos = latencyNanos / 2.0;
+        } else {
+            double error = latencyNanos - mean;
+            syncLatencyNanos = mean + ALPHA * error;
+            syncLatencyDeviationNanos += ALPHA * (Math.abs(error) - syncLatencyDeviationNanos);
+        }
+    }
+
+    /**
+     * Record an entry appended to the journal.
+     */
+    void recordEntry(int entrySize) {
+        periodEntries++;
+        periodBytes += entrySize;
+    }
+
+    /**
+     * Re-evaluate the window if the last update is old enough.
+     */
+    void maybeUpdate(long nowNanos) {
+        long elapsed = nowNanos - periodStartNanos;
+        if (elapsed < UPDATE_INTERVAL_NANOS) {
+            return;
+        }
+
+        entriesPerNano += ALPHA * ((double) periodEntries / elapsed - entriesPerNano);
+        bytesPerNano += ALPHA * ((double) periodBytes / elapsed - bytesPerNano);
+        periodStartNanos = nowNanos;
+        periodEntries = 0;
+        periodBytes = 0;
+
+        double syncLatency = syncLatencyNanos;
+        double tailSyncLatency = syncLatency + 4 * syncLatencyDeviationNanos;
+        double budget = targetLatencyNanos - tailSyncLatency;
+        long wait;
+        if (entriesPerNano * syncLatency < 1) {
+            // Nothing to group with
+            wait = 0;
+        } else {
+            // Within the room left in the latency target, but not below a fraction of the fsync latency
+            wait = (long) Math.min(syncLatency, Math.max(budget, MIN_GROUP_WAIT_FRACTION * syncLatency));
+        }
+        groupWaitNanos = wait;
+
+        long expectedBytes = (long) (bytesPerNano * wait);
+        bufferedWritesThreshold = Math.max(minBufferedWritesThreshold,
+                Math.min(expectedBytes, MAX_BUFFERED_WRITES_THRESHOLD));
+        if (minBufferedEntriesThreshold > 0) {
+            bufferedEntriesThreshold = Math.max(minBufferedEntriesThreshold, (long) (entriesPerNano * wait));
+        }
+    }
+
+    long getGroupWaitNanos() {
+        return groupWaitNanos;
+    }
+
+    long getBufferedWritesThreshold() {
+        return bufferedWritesThreshold;
+    }
+
+    long getBufferedEntriesThreshold() {
+        return bufferedEntriesThreshold;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Progress of the journal replay done when the bookie starts.
+ */
+public class JournalReplayProgress {
+
+    private volatile boolean inProgress = false;
+    private volatile long totalBytes = 0;
+    private final LongAdder replayedBytes = new LongAdder();
+    private final LongAdder replayedEntries = new LongAdder();
+    private volatile long startTimeNanos = 0;
+    private volatile long endTimeNanos = 0;
+
+    void start(long totalBytes) {
+        this.totalBytes = totalBytes;
+        this.startTimeNanos = System.nanoTime();
+        this.endTimeNanos = 0;
+        this.inProgress = true;
+    }
+
+    void onRecordReplayed(int recordSize) {
+        replayedEntries.increment();
+        replayedBytes.add(recordSize);
+    }
+
+    void finish() {
+        this.endTimeNanos = System.nanoTime();
+        this.inProgress = false;
+    }
+
+    public boolean isInProgress() {
+        return inProgress;
+    }
+
+    /**
+     * @return the size of the data to replay in the journal files, from the last log mark of each journal
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getReplayedBytes() {
+        return replayedBytes.sum();
+    }
+
+    public long getReplayedEntries() {
+        return replayedEntries.sum();
+    }
+
+    /**
+     * @return the estimated percentage of the journal files already replayed, 100 once the replay is done
+     */
+    public double getProgressPercent() {
+        if (!inProgress) {
+            return startTimeNanos == 0 ? 0.0 : 100.0;
+        }
+        long total = totalBytes;
+        // The record headers and the padding are not counted as replayed
+        return total <= 0 ? 0.0 : Math.min(100.0, 100.0 * getReplayedBytes() / total);
+    }
+
+    /**
+     * @return the replay throughput in bytes per second
+     */
+    public long getThroughputBytesPerSecond() {
+        long start = startTimeNanos;
+        if (start == 0) {
+            return 0;
+        }
+        long end = inProgress ? System.nanoTime() : endTimeNanos;
+        long elapsedMicros = TimeUnit.NANOSECONDS.toMicros(end - start);
+        return elapsedMicros <= 0 ? 0 : getReplayedBytes() * 1_000_000 / elapsedMicros;
+    }
+}
@@ -28,7 +28,9 @@ import io.netty.buffer.Unpooled;
 import java.io.IOException;
 import java.util.PrimitiveIterator.OfLong;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import org.apache.bookkeeper.common.util.Watcher;
+import org.apache.bookkeeper.util.ByteBufList;
 
 /**
  * Implements a ledger inside a bookie. In particular, it implements operations
@@ -77,6 +79,9 @@ public abstract class LedgerDescriptor {
 
     abstract long addEntry(ByteBuf entry) throws IOException, BookieException;
     abstract ByteBuf readEntry(long entryId) throws IOException, BookieException;
+    abstract CompletableFuture<ByteBuf> readEntryAsync(long entryId, Executor executor);
+    abstract ByteBufList readEntries(long firstEntryId, int maxCount, long maxSize)
+            throws IOException, BookieException;
 
     abstract long getLastAddConfirmed() throws IOException, BookieException;
     abstract boolean waitForLastAddConfirmedUpdate(long previousLAC,
@@ -32,11 +32,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.PrimitiveIterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
 import org.apache.bookkeeper.common.util.Watcher;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
 
 /**
  * Interface for storing ledger data on persistent storage.
@@ -144,6 +147,50 @@ public interface LedgerStorage {
      */
     ByteBuf getEntry(long ledgerId, long entryId) throws IOException, BookieException;
 
+    /**
+     * Read an entry from storage asynchronously, without holding the calling thread while the entry is read from
+     * disk. By default the entry is read synchronously.
+     *
+     * @param executor the executor completing the future when the entry is not read by the calling thread
+     */
+    default CompletableFuture<ByteBuf> getEntryAsync(long ledgerId, long entryId, Executor executor) {
+        CompletableFuture<ByteBuf> future = new CompletableFuture<>();
+        try {
+            future.complete(getEntry(ledgerId, entryId));
+        } catch (IOException | BookieException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Read consecutive entries from storage, starting from the given entry.
+     *
+     * <p>The read stops at the first entry that cannot be read, after {@code maxCount} entries or before the total
+     * size of the entries exceeds {@code maxSize}. The first entry is always returned, or its read error is thrown.
+     */
+    default ByteBufList getEntries(long ledgerId, long firstEntryId, int maxCount, long maxSize)
+            throws IOException, BookieException {
+        ByteBufList entries = ByteBufList.get(getEntry(ledgerId, firstEntryId));
+        long size = entries.readableBytes();
+        for (int i = 1; i < maxCount; i++) {
+            ByteBuf entry;
+            try {
+                entry = getEntry(ledgerId, firstEntryId + i);
+            } catch (IOException | BookieException e) {
+                break;
+            }
+
+            if (size + entry.readableBytes() > maxSize) {
+                entry.release();
+                break;
+            }
+            size += entry.readableBytes();
+            entries.add(entry);
+        }
+        return entries;
+    }
+
     /**
      * Get last add confirmed.
      *
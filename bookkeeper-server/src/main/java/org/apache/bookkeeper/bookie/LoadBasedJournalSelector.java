@@ -0,0 +1,300 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ASSIGNED_LEDGERS;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_LOAD_BYTES_PER_SECOND;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SCOPE;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+
+/**
+ * Assigns the ledgers to the journals by load, instead of by ledger id.
+ *
+ * <p>A ledger is assigned to the least loaded journal the first time it is written, and keeps using that journal
+ * as long as its records may be replayed, so that the records of a ledger are always replayed from a single journal,
+ * in order. The load of a journal is its write rate plus the rate needed to drain its queue in
+ * {@link #QUEUE_DRAIN_SECONDS}. Journals with close loads are considered equal, and the one with the fewest ledgers
+ * is picked, so that the ledgers opened before the rates catch up are spread over the journals.
+ *
+ * <p>The assignments are not persisted: the journals are. The ledgers found when replaying a journal are assigned
+ * back to it with {@link #ledgerReplayed(long, int)}, since their records after the last log mark would be replayed
+ * again on the next restart. As a {@link CheckpointSource} listed after the journals, the selector forgets the
+ * ledgers not written for a whole checkpoint interval once a checkpoint is complete: their records in the journal
+ * are all before the persisted log mark, so the ledgers can be assigned to any journal again.
+ */
+@StatsDoc(
+    name = JOURNAL_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Journal related stats"
+)
+class LoadBasedJournalSelector implements CheckpointSource {
+
+    private static final long RATE_UPDATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // Weight of the last sample in the moving average of the write rates
+    private static final double ALPHA = 0.5;
+    private static final double QUEUE_DRAIN_SECONDS = 0.1;
+    // Loads within this ratio of the lowest one are considered equal
+    private static final double LOAD_TOLERANCE = 1.1;
+
+    // The assignment of a ledger holds the epoch of its last write in the high bits and its journal in the low bits
+    private static final int JOURNAL_INDEX_BITS = 16;
+    private static final long JOURNAL_INDEX_MASK = (1L << JOURNAL_INDEX_BITS) - 1;
+
+    private final List<Journal> journals;
+    private final ConcurrentLongLongHashMap ledgerToJournal;
+    // Incremented by each checkpoint
+    private final AtomicLong epoch = new AtomicLong();
+
+    @StatsDoc(
+        name = JOURNAL_ASSIGNED_LEDGERS,
+        help = "Number of ledgers assigned to the journal"
+    )
+    private final AtomicLong[] assignedLedgers;
+    @StatsDoc(
+        name = JOURNAL_LOAD_BYTES_PER_SECOND,
+        help = "Load of the journal used to assign new ledgers, in bytes per second"
+    )
+    // Updated when a ledger is assigned, the gauge only reads the last computed load
+    private final AtomicLong[] loadBytesPerSecond;
+
+    // Guarded by this
+    private final long[] lastEnqueuedBytes;
+    private final double[] bytesPerSecond;
+    private long lastUpdateNanos;
+
+    LoadBasedJournalSelector(List<Journal> journals, StatsLogger statsLogger) {
+        this.journals = journals;
+        this.ledgerToJournal = ConcurrentLongLongHashMap.newBuilder().build();
+        int numJournals = journals.size();
+        this.assignedLedgers = new AtomicLong[numJournals];
+        this.loadBytesPerSecond = new AtomicLong[numJournals];
+        this.lastEnqueuedBytes = new long[numJournals];
+        this.bytesPerSecond = new double[numJournals];
+        this.lastUpdateNanos = MathUtils.nowInNano();
+
+        for (int i = 0; i < numJournals; i++) {
+            final int journalIndex = i;
+            assignedLedgers[i] = new AtomicLong();
+            loadBytesPerSecond[i] = new AtomicLong();
+            lastEnqueuedBytes[i] = journals.get(i).getEnqueuedBytes();
+
+            StatsLogger journalStatsLogger = statsLogger.scopeLabel("journalIndex", String.valueOf(i));
+            journalStatsLogger.registerGauge(JOURNAL_ASSIGNED_LEDGERS, new Gauge<Long>() {
+                @Override
+                public Long getDefaultValue() {
+                    return 0L;
+                }
+
+                @Override
+                public Long getSample() {
+                    return assignedLedgers[journalIndex].get();
+                }
+            });
+            journalStatsLogger.registerGauge(JOURNAL_LOAD_BYTES_PER_SECOND, new Gauge<Long>() {
+                @Override
+                public Long getDefaultValue() {
+                    return 0L;
+                }
+
+                @Override
+                public Long getSample() {
+                    return loadBytesPerSecond[journalIndex].get();
+                }
+            });
+        }
+    }
+
+    private static long assignment(long epoch, int journalIndex) {
+        return (epoch << JOURNAL_INDEX_BITS) | journalIndex;
+    }
+
+    private static long epochOf(long assignment) {
+        return assignment >>> JOURNAL_INDEX_BITS;
+    }
+
+    private static int journalIndexOf(long assignment) {
+        return (int) (assignment & JOURNAL_INDEX_MASK);
+    }
+
+    /**
+     * Get the journal of a ledger, assigning one if the ledger has none yet.
+     */
+    Journal getJournal(long ledgerId) {
+        if (ledgerId < 0) {
+            return journals.get(MathUtils.signSafeMod(ledgerId, journals.size()));
+        }
+        long currentEpoch = epoch.get();
+        while (true) {
+            long assignment = ledgerToJournal.get(ledgerId);
+            if (assignment < 0) {
+                int journalIndex = assign();
+                if (ledgerToJournal.putIfAbsent(ledgerId, assignment(currentEpoch, journalIndex)) < 0) {
+                    return journals.get(journalIndex);
+                }
+                // Assigned concurrently
+                assignedLedgers[journalIndex].decrementAndGet();
+            } else if (epochOf(assignment) >= currentEpoch || ledgerToJournal.compareAndSet(ledgerId, assignment,
+                    assignment(currentEpoch, journalIndexOf(assignment)))) {
+                // Updated atomically with the epoch, so that a checkpoint cannot forget the ledger while it is used
+                return journals.get(journalIndexOf(assignment));
+            }
+        }
+    }
+
+    /**
+     * Assign a ledger to the journal it was replayed from.
+     */
+    void ledgerReplayed(long ledgerId, int journalIndex) {
+        if (ledgerId < 0) {
+            return;
+        }
+        long previous = ledgerToJournal.put(ledgerId, assignment(epoch.get(), journalIndex));
+        if (previous < 0) {
+            assignedLedgers[journalIndex].incrementAndGet();
+        } else if (journalIndexOf(previous) != journalIndex) {
+            assignedLedgers[journalIndexOf(previous)].decrementAndGet();
+            assignedLedgers[journalIndex].incrementAndGet();
+        }
+    }
+
+    void ledgerDeleted(long ledgerId) {
+        if (ledgerId < 0) {
+            return;
+        }
+        long assignment = ledgerToJournal.remove(ledgerId);
+        if (assignment >= 0) {
+            assignedLedgers[journalIndexOf(assignment)].decrementAndGet();
+        }
+    }
+
+    @VisibleForTesting
+    long getAssignedLedgers(int journalIndex) {
+        return assignedLedgers[journalIndex].get();
+    }
+
+    @Override
+    public Checkpoint newCheckpoint() {
+        // The journal checkpoints listed before are already taken, the ledgers written after them use the next epoch
+        return new EpochCheckpoint(epoch.getAndIncrement());
+    }
+
+    /**
+     * Forget the ledgers not written since the checkpoint before the completed one, which are before the log marks
+     * persisted by the journals listed before.
+     */
+    @Override
+    public void checkpointComplete(Checkpoint checkpoint, boolean compact) throws IOException {
+        if (checkpoint == Checkpoint.MAX || checkpoint == Checkpoint.MIN) {
+            return;
+        }
+        long idleEpoch = ((EpochCheckpoint) checkpoint).epoch;
+        ledgerToJournal.removeIf((ledgerId, assignment) -> {
+            if (epochOf(assignment) < idleEpoch) {
+                assignedLedgers[journalIndexOf(assignment)].decrementAndGet();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private static class EpochCheckpoint implements Checkpoint {
+        private final long epoch;
+
+        EpochCheckpoint(long epoch) {
+            this.epoch = epoch;
+        }
+
+        @Override
+        public int compareTo(Checkpoint o) {
+            if (o == Checkpoint.MAX) {
+                return -1;
+            } else if (o == Checkpoint.MIN) {
+                return 1;
+            }
+            return Long.compare(epoch, ((EpochCheckpoint) o).epoch);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof EpochCheckpoint)) {
+                return false;
+            }
+            return 0 == compareTo((EpochCheckpoint) o);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(epoch);
+        }
+
+        @Override
+        public String toString() {
+            return "epoch " + epoch;
+        }
+    }
+
+    private synchronized int assign() {
+        updateLoads(MathUtils.nowInNano());
+
+        long minLoad = Long.MAX_VALUE;
+        for (int i = 0; i < journals.size(); i++) {
+            minLoad = Math.min(minLoad, loadBytesPerSecond[i].get());
+        }
+        int selected = -1;
+        for (int i = 0; i < journals.size(); i++) {
+            if (loadBytesPerSecond[i].get() <= minLoad * LOAD_TOLERANCE
+                    && (selected < 0 || assignedLedgers[i].get() < assignedLedgers[selected].get())) {
+                selected = i;
+            }
+        }
+        assignedLedgers[selected].incrementAndGet();
+        return selected;
+    }
+
+    private void updateLoads(long nowNanos) {
+        long elapsedNanos = nowNanos - lastUpdateNanos;
+        boolean updateRates = elapsedNanos >= RATE_UPDATE_INTERVAL_NANOS;
+        for (int i = 0; i < journals.size(); i++) {
+            Journal journal = journals.get(i);
+            if (updateRates) {
+                long enqueuedBytes = journal.getEnqueuedBytes();
+                double rate = (enqueuedBytes - lastEnqueuedBytes[i]) * 1e9 / elapsedNanos;
+                bytesPerSecond[i] += ALPHA * (rate - bytesPerSecond[i]);
+                lastEnqueuedBytes[i] = enqueuedBytes;
+            }
+            loadBytesPerSecond[i].set((long) (bytesPerSecond[i] + journal.getMemoryUsage() / QUEUE_DRAIN_SECONDS));
+        }
+        if (updateRates) {
+            lastUpdateNanos = nowNanos;
+        }
+    }
+}
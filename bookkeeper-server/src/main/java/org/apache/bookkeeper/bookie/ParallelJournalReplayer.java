@@ -0,0 +1,150 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.bookie.Journal.JournalScanner;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+
+/**
+ * Applies the records read from the journals to the ledger storage from a pool of threads.
+ *
+ * <p>Records are dispatched by ledger id, so the records of a ledger are applied in the order they were read while
+ * different ledgers are applied concurrently. The amount of memory used by the records waiting to be applied is
+ * bounded.
+ */
+class ParallelJournalReplayer implements AutoCloseable {
+
+    private static final int MAX_PENDING_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * Apply a single journal record.
+     */
+    interface RecordProcessor {
+        void process(int journalVersion, ByteBuffer record) throws IOException;
+    }
+
+    private final RecordProcessor processor;
+    private final OrderedExecutor executor;
+    private final Semaphore pendingBytes = new Semaphore(MAX_PENDING_BYTES);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    ParallelJournalReplayer(int numThreads, RecordProcessor processor) {
+        this.processor = processor;
+        this.executor = OrderedExecutor.newBuilder()
+                .name("JournalReplay")
+                .numThreads(numThreads)
+                .build();
+    }
+
+    /**
+     * @return a scanner dispatching the records of a journal
+     */
+    Scanner newScanner() {
+        return new Scanner();
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable t = failure.get();
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        } else if (t != null) {
+            throw new IOException("Failed to replay journal record", t);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Scanner of a journal, keeping track of its records not applied yet.
+     */
+    class Scanner implements JournalScanner {
+
+        private int pendingRecords = 0;
+
+        @Override
+        public void process(int journalVersion, long offset, ByteBuffer recBuff) throws IOException {
+            checkFailure();
+
+            // The scanned buffer is reused for the next record
+            int size = recBuff.remaining();
+            ByteBuffer record = ByteBuffer.allocate(size);
+            record.put(recBuff.duplicate());
+            record.flip();
+            long ledgerId = record.getLong(0);
+
+            int permits = Math.min(size, MAX_PENDING_BYTES);
+            try {
+                pendingBytes.acquire(permits);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while replaying journal", e);
+            }
+
+            synchronized (this) {
+                ++pendingRecords;
+            }
+            executor.executeOrdered(ledgerId, () -> {
+                try {
+                    if (failure.get() == null) {
+                        processor.process(journalVersion, record);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    pendingBytes.release(permits);
+                    synchronized (Scanner.this) {
+                        if (--pendingRecords == 0) {
+                            Scanner.this.notifyAll();
+                        }
+                    }
+                }
+            });
+        }
+
+        /**
+         * Wait until all the records dispatched by this scanner are applied.
+         */
+        synchronized void awaitProcessed() throws IOException {
+            try {
+                while (pendingRecords > 0) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while replaying journal", e);
+            }
+            checkFailure();
+        }
+    }
+}
@@ -32,11 +32,15 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_LIST_OF_ENTRIES_OF_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_DIRS;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_QUEUE_MAX_SIZE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_REPLAY_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_REPLAY_ENTRIES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_REPLAY_PROGRESS;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WRITE_BYTES;
 
 import lombok.Getter;
+import org.apache.bookkeeper.bookie.JournalReplayProgress;
 import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.OpStatsLogger;
@@ -92,8 +96,18 @@ public class BookieStats {
     private final Gauge<Integer> journalDirsGauge;
     @StatsDoc(name = JOURNAL_QUEUE_MAX_SIZE, help = "maximum length of a journal queue")
     private final Gauge<Integer> journalQueueMaxQueueSizeGauge;
+    @StatsDoc(name = JOURNAL_REPLAY_ENTRIES, help = "number of journal records replayed on bookie startup")
+    private final Gauge<Long> journalReplayEntriesGauge;
+    @StatsDoc(name = JOURNAL_REPLAY_BYTES, help = "bytes of journal records replayed on bookie startup")
+    private final Gauge<Long> journalReplayBytesGauge;
+    @StatsDoc(
+        name = JOURNAL_REPLAY_PROGRESS,
+        help = "percentage of the journal files replayed on bookie startup"
+    )
+    private final Gauge<Long> journalReplayProgressGauge;
 
-    public BookieStats(StatsLogger statsLogger, int numJournalDirs, int maxJournalQueueSize) {
+    public BookieStats(StatsLogger statsLogger, int numJournalDirs, int maxJournalQueueSize,
+                       JournalReplayProgress journalReplayProgress) {
         this.statsLogger = statsLogger;
         writeBytes = statsLogger.getCounter(WRITE_BYTES);
         readBytes = statsLogger.getCounter(READ_BYTES);
@@ -128,6 +142,42 @@ public class BookieStats {
             }
         };
         statsLogger.registerGauge(JOURNAL_QUEUE_MAX_SIZE, journalQueueMaxQueueSizeGauge);
+        journalReplayEntriesGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return journalReplayProgress.getReplayedEntries();
+            }
+        };
+        statsLogger.registerGauge(JOURNAL_REPLAY_ENTRIES, journalReplayEntriesGauge);
+        journalReplayBytesGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return journalReplayProgress.getReplayedBytes();
+            }
+        };
+        statsLogger.registerGauge(JOURNAL_REPLAY_BYTES, journalReplayBytesGauge);
+        journalReplayProgressGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return (long) journalReplayProgress.getProgressPercent();
+            }
+        };
+        statsLogger.registerGauge(JOURNAL_REPLAY_PROGRESS, journalReplayProgressGauge);
     }
 
 
@@ -23,6 +23,14 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FORCE_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ADD_ENTRY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ADD_STAGE_CALLBACK;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ADD_STAGE_FLUSH;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ADD_STAGE_FORCE_WRITE_QUEUE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ADD_STAGE_FSYNC;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ADD_STAGE_GROUP_WAIT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ADD_STAGE_QUEUE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ADD_STAGE_RESPONSE_FLUSH;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_COMPRESSED_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_CREATION_LATENCY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FLUSH_LATENCY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_LEDGER;
@@ -31,6 +39,8 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_W
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_ENQUEUE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_GROUPING_COUNT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_QUEUE_SIZE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_COMMIT_BATCH_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_COMMIT_WINDOW;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_MEMORY_MAX;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_MEMORY_USED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_NUM_FLUSH_EMPTY_QUEUE;
@@ -41,6 +51,7 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_QUEUE_L
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_QUEUE_SIZE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SYNC;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_UNCOMPRESSED_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_WRITE_BYTES;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -162,6 +173,16 @@ public class JournalStats {
         help = "The number of bytes appended to the journal"
     )
     private final Counter journalWriteBytes;
+    @StatsDoc(
+        name = JOURNAL_UNCOMPRESSED_BYTES,
+        help = "The number of bytes of records given to the journal compression"
+    )
+    private final Counter journalUncompressedBytes;
+    @StatsDoc(
+        name = JOURNAL_COMPRESSED_BYTES,
+        help = "The number of bytes written by the journal compression for these records"
+    )
+    private final Counter journalCompressedBytes;
     @StatsDoc(
             name = JOURNAL_MEMORY_MAX,
             help = "The max amount of memory in bytes that can be used by the bookie journal"
@@ -172,9 +193,68 @@ public class JournalStats {
             help = "The actual amount of memory in bytes currently used by the bookie journal"
     )
     private final Gauge<Long> journalMemoryUsedStats;
+    @StatsDoc(
+            name = JOURNAL_GROUP_COMMIT_WINDOW,
+            help = "The maximum time in microseconds an entry waits in the journal to be grouped with other entries"
+    )
+    private final Gauge<Long> groupCommitWindowStats;
+    @StatsDoc(
+            name = JOURNAL_GROUP_COMMIT_BATCH_BYTES,
+            help = "The amount of buffered bytes after which the journal is flushed"
+    )
+    private final Gauge<Long> groupCommitBatchBytesStats;
+    @StatsDoc(
+            name = JOURNAL_ADD_STAGE_QUEUE,
+            help = "traced adds: time from the enqueue in the journal queue to the dequeue by the journal thread",
+            parent = JOURNAL_ADD_ENTRY
+    )
+    private final OpStatsLogger addStageQueueStats;
+    @StatsDoc(
+            name = JOURNAL_ADD_STAGE_GROUP_WAIT,
+            help = "traced adds: time from the dequeue to the flush of the group commit",
+            parent = JOURNAL_ADD_ENTRY
+    )
+    private final OpStatsLogger addStageGroupWaitStats;
+    @StatsDoc(
+            name = JOURNAL_ADD_STAGE_FLUSH,
+            help = "traced adds: time to write the group commit to the journal file",
+            parent = JOURNAL_ADD_ENTRY
+    )
+    private final OpStatsLogger addStageFlushStats;
+    @StatsDoc(
+            name = JOURNAL_ADD_STAGE_FORCE_WRITE_QUEUE,
+            help = "traced adds: time from the flush to the start of the fsync",
+            parent = JOURNAL_ADD_ENTRY
+    )
+    private final OpStatsLogger addStageForceWriteQueueStats;
+    @StatsDoc(
+            name = JOURNAL_ADD_STAGE_FSYNC,
+            help = "traced adds: time to fsync the journal file",
+            parent = JOURNAL_ADD_ENTRY
+    )
+    private final OpStatsLogger addStageFsyncStats;
+    @StatsDoc(
+            name = JOURNAL_ADD_STAGE_CALLBACK,
+            help = "traced adds: time from the flush or fsync to the end of the add callback",
+            parent = JOURNAL_ADD_ENTRY
+    )
+    private final OpStatsLogger addStageCallbackStats;
+    @StatsDoc(
+            name = JOURNAL_ADD_STAGE_RESPONSE_FLUSH,
+            help = "traced adds: time from the add callback to the flush of the pending responses",
+            parent = JOURNAL_ADD_ENTRY
+    )
+    private final OpStatsLogger addStageResponseFlushStats;
 
     public JournalStats(StatsLogger statsLogger, final long maxJournalMemoryBytes,
                         Supplier<Long> currentJournalMemoryBytes) {
+        this(statsLogger, maxJournalMemoryBytes, currentJournalMemoryBytes, () -> 0L, () -> 0L);
+    }
+
+    public JournalStats(StatsLogger statsLogger, final long maxJournalMemoryBytes,
+                        Supplier<Long> currentJournalMemoryBytes,
+                        Supplier<Long> groupCommitWindowMicros,
+                        Supplier<Long> groupCommitBatchBytes) {
         journalAddEntryStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_ADD_ENTRY);
         journalForceLedgerStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_FORCE_LEDGER);
         journalSyncStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_SYNC);
@@ -195,6 +275,17 @@ public class JournalStats {
                 statsLogger.getCounter(BookKeeperServerStats.JOURNAL_NUM_FLUSH_MAX_OUTSTANDING_BYTES);
         flushEmptyQueueCounter = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_NUM_FLUSH_EMPTY_QUEUE);
         journalWriteBytes = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_WRITE_BYTES);
+        journalUncompressedBytes = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_UNCOMPRESSED_BYTES);
+        journalCompressedBytes = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_COMPRESSED_BYTES);
+        addStageQueueStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_ADD_STAGE_QUEUE);
+        addStageGroupWaitStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_ADD_STAGE_GROUP_WAIT);
+        addStageFlushStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_ADD_STAGE_FLUSH);
+        addStageForceWriteQueueStats =
+                statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_ADD_STAGE_FORCE_WRITE_QUEUE);
+        addStageFsyncStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_ADD_STAGE_FSYNC);
+        addStageCallbackStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_ADD_STAGE_CALLBACK);
+        addStageResponseFlushStats =
+                statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_ADD_STAGE_RESPONSE_FLUSH);
 
         journalMemoryMaxStats = new Gauge<Long>() {
             @Override
@@ -221,6 +312,32 @@ public class JournalStats {
             }
         };
         statsLogger.registerGauge(JOURNAL_MEMORY_USED, journalMemoryUsedStats);
+
+        groupCommitWindowStats = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return groupCommitWindowMicros.get();
+            }
+        };
+        statsLogger.registerGauge(JOURNAL_GROUP_COMMIT_WINDOW, groupCommitWindowStats);
+
+        groupCommitBatchBytesStats = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return groupCommitBatchBytes.get();
+            }
+        };
+        statsLogger.registerGauge(JOURNAL_GROUP_COMMIT_BATCH_BYTES, groupCommitBatchBytesStats);
     }
 
     @VisibleForTesting
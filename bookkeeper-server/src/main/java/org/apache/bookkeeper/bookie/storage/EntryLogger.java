@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.bookie.storage;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import java.io.IOException;
 import java.util.Collection;
 import org.apache.bookkeeper.bookie.AbstractLogCompactor;
@@ -67,6 +68,47 @@ public interface EntryLogger extends AutoCloseable {
     ByteBuf readEntry(long ledgerId, long entryId, long entryLocation)
             throws IOException, NoEntryException;
 
+    /**
+     * Read a contiguous range of an entrylog with a single sequential read.
+     * The range starts with the size header of the entry at the given location and it is
+     * made of consecutive (size, entry) records. The last record may be truncated, and the
+     * range may be shorter than requested when the end of the log is reached.
+     * @param entryLocation the location of the first entry of the range
+     * @param maxSize the maximum number of bytes to read
+     * @return the bytes read. The caller must release.
+     */
+    default ByteBuf readEntryRange(long entryLocation, int maxSize) throws IOException {
+        ByteBuf range = Unpooled.buffer(maxSize, maxSize);
+        long location = entryLocation;
+        try {
+            while (range.isWritable(Integer.BYTES + 1)) {
+                ByteBuf entry;
+                try {
+                    entry = readEntry(location);
+                } catch (IOException e) {
+                    if (range.isReadable()) {
+                        // Reached the end of the log
+                        break;
+                    }
+                    throw e;
+                }
+
+                try {
+                    int entrySize = entry.readableBytes();
+                    range.writeInt(entrySize);
+                    range.writeBytes(entry, entry.readerIndex(), Math.min(entrySize, range.writableBytes()));
+                    location += Integer.BYTES + entrySize;
+                } finally {
+                    entry.release();
+                }
+            }
+        } catch (IOException e) {
+            range.release();
+            throw e;
+        }
+        return range;
+    }
+
     /**
      * Flush any outstanding writes to disk.
      */
@@ -0,0 +1,252 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntPredicate;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+
+/**
+ * Off-heap cache of the blocks read from the entry logs, shared by all the readers of an entry logger.
+ *
+ * <p>Blocks are keyed by log id and block offset, and evicted with the CLOCK algorithm. Only the blocks of the logs
+ * which are fully flushed are cached, since the blocks of the logs being written can still change. Log ids can be
+ * reused once a log is removed, so the blocks of a log must be invalidated when it is removed.
+ *
+ * <p>Lookups are lock free: the content of a block is copied optimistically, and discarded if the block was
+ * replaced in the meantime. The lookups only hold a reference on the cache memory while copying, so that it is only
+ * released once the cache is closed and the lookups in progress are done.
+ */
+class BlockCache implements AutoCloseable {
+    static final int BLOCK_SIZE = Buffer.ALIGNMENT;
+
+    private static final long EMPTY = -1L;
+    private static final int LOCK_STRIPES = 64;
+    private static final int MIN_INDEX_ITEMS = 16;
+
+    private final ByteBuf cache;
+    private final int numBlocks;
+    private final ConcurrentLongLongHashMap index;
+    private final AtomicLongArray blockKeys;
+    private final AtomicIntegerArray referenced;
+    private final StampedLock[] locks;
+    private final IntPredicate cacheableLog;
+    private final DirectEntryLoggerStats stats;
+
+    // References on the cache memory, held by the cache until it is closed and by the lookups in progress
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    // Guarded by this
+    private int clockHand = 0;
+    // Incremented when blocks are invalidated, so that the blocks read before are not added afterwards
+    private final AtomicLong generation = new AtomicLong();
+    // Guarded by this
+    private boolean closed = false;
+
+    BlockCache(ByteBufAllocator allocator, long size, IntPredicate cacheableLog, DirectEntryLoggerStats stats) {
+        this.numBlocks = (int) Math.min(size / BLOCK_SIZE, Integer.MAX_VALUE / BLOCK_SIZE);
+        this.cache = allocator.directBuffer(numBlocks * BLOCK_SIZE, numBlocks * BLOCK_SIZE);
+        this.index = ConcurrentLongLongHashMap.newBuilder()
+                // At least one item per section of the map
+                .expectedItems(Math.max(numBlocks, MIN_INDEX_ITEMS))
+                .build();
+        this.blockKeys = new AtomicLongArray(numBlocks);
+        this.referenced = new AtomicIntegerArray(numBlocks);
+        this.locks = new StampedLock[LOCK_STRIPES];
+        for (int i = 0; i < numBlocks; i++) {
+            blockKeys.set(i, EMPTY);
+        }
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new StampedLock();
+        }
+        this.cacheableLog = cacheableLog;
+        this.stats = stats;
+    }
+
+    /**
+     * Read the bytes at the given offset of a log from the cache, up to the end of the block containing the offset.
+     *
+     * @return the number of bytes read, or -1 if the block is not cached
+     */
+    int read(int logId, long offset, ByteBuf dst, int size) {
+        if (!cacheableLog.test(logId)) {
+            return -1;
+        }
+        long blockStart = blockStart(offset);
+        long key = key(logId, blockStart);
+        int block = (int) index.get(key);
+        if (block >= 0 && retain()) {
+            try {
+                int offsetInBlock = (int) (offset - blockStart);
+                int bytesToRead = Math.min(size, BLOCK_SIZE - offsetInBlock);
+                StampedLock lock = lock(block);
+                long stamp = lock.tryOptimisticRead();
+                if (stamp != 0 && blockKeys.get(block) == key) {
+                    int writerIndex = dst.writerIndex();
+                    dst.writeBytes(cache, block * BLOCK_SIZE + offsetInBlock, bytesToRead);
+                    if (lock.validate(stamp)) {
+                        referenced.set(block, 1);
+                        stats.getBlockCacheHitCounter().inc();
+                        return bytesToRead;
+                    }
+                    // The block was replaced while copying it
+                    dst.writerIndex(writerIndex);
+                }
+            } finally {
+                release();
+            }
+        }
+        stats.getBlockCacheMissCounter().inc();
+        return -1;
+    }
+
+    /**
+     * Get the generation of the cache, to pass to {@link #put} for the blocks read from the logs after calling it.
+     */
+    long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Add a block of a log to the cache.
+     *
+     * @param blockStart offset of the block in the log, must be a multiple of {@link #BLOCK_SIZE}
+     * @param src the buffer containing the block
+     * @param offsetInSrc offset of the block in the buffer
+     * @param generation the generation of the cache before the block was read, the block is not added if blocks were
+     *                   invalidated since then
+     */
+    void put(int logId, long blockStart, Buffer src, int offsetInSrc, long generation) throws IOException {
+        if (!cacheableLog.test(logId)) {
+            return;
+        }
+        long key = key(logId, blockStart);
+        synchronized (this) {
+            if (closed || generation != this.generation.get() || index.containsKey(key)) {
+                return;
+            }
+            int block = nextVictim();
+            StampedLock lock = lock(block);
+            long stamp = lock.writeLock();
+            try {
+                long previousKey = blockKeys.get(block);
+                if (previousKey != EMPTY) {
+                    index.remove(previousKey, block);
+                }
+                ByteBuf dst = cache.slice(block * BLOCK_SIZE, BLOCK_SIZE);
+                dst.writerIndex(0);
+                if (src.readByteBuf(dst, offsetInSrc, BLOCK_SIZE) != BLOCK_SIZE) {
+                    blockKeys.set(block, EMPTY);
+                    return;
+                }
+                blockKeys.set(block, key);
+                referenced.set(block, 0);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            index.put(key, block);
+        }
+    }
+
+    /**
+     * Drop the cached blocks of a log.
+     */
+    synchronized void invalidate(int logId) {
+        if (closed) {
+            return;
+        }
+        // Invalidations are rare, so the blocks of all the logs read concurrently are dropped rather than tracking
+        // a generation per log
+        generation.incrementAndGet();
+        for (int block = 0; block < numBlocks; block++) {
+            long key = blockKeys.get(block);
+            if (key != EMPTY && (int) (key >>> 32) == logId) {
+                StampedLock lock = lock(block);
+                long stamp = lock.writeLock();
+                try {
+                    index.remove(key, block);
+                    blockKeys.set(block, EMPTY);
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        index.clear();
+        // The memory is released once the lookups in progress are done
+        release();
+    }
+
+    private boolean retain() {
+        int count;
+        do {
+            count = refCount.get();
+            if (count == 0) {
+                return false;
+            }
+        } while (!refCount.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    private void release() {
+        if (refCount.decrementAndGet() == 0) {
+            ReferenceCountUtil.release(cache);
+        }
+    }
+
+    // Guarded by this
+    private int nextVictim() {
+        while (true) {
+            int block = clockHand;
+            clockHand = (clockHand + 1) % numBlocks;
+            if (blockKeys.get(block) == EMPTY || referenced.getAndSet(block, 0) == 0) {
+                return block;
+            }
+        }
+    }
+
+    private StampedLock lock(int block) {
+        return locks[block % LOCK_STRIPES];
+    }
+
+    static long blockStart(long offset) {
+        return offset & ~(BLOCK_SIZE - 1);
+    }
+
+    private static long key(int logId, long blockStart) {
+        return ((long) logId << 32) | (blockStart / BLOCK_SIZE);
+    }
+}
@@ -83,6 +83,7 @@ public class DirectEntryLogger implements EntryLogger {
     private final NativeIO nativeIO;
     private final List<Cache<?, ?>> allCaches = new CopyOnWriteArrayList<>();
     private final ThreadLocal<Cache<Integer, LogReader>> caches;
+    private final BlockCache blockCache;
 
     private static final int NUMBER_OF_WRITE_BUFFERS = 8;
 
@@ -97,6 +98,7 @@ public class DirectEntryLogger implements EntryLogger {
                              long totalWriteBufferSize,
                              long totalReadBufferSize,
                              int readBufferSize,
+                             long blockCacheSize,
                              int numReadThreads,
                              int maxFdCacheTimeSeconds,
                              Slogger slogParent,
@@ -150,8 +152,14 @@ public class DirectEntryLogger implements EntryLogger {
             .kv("perThreadBufferSize", perThreadBufferSize)
             .kv("maxCachedReadersPerThread", maxCachedReadersPerThread)
             .kv("maxCachedReaders", maxCachedReaders)
+            .kv("blockCacheSize", blockCacheSize)
             .info(Events.ENTRYLOGGER_CREATED);
 
+        // The blocks of the logs being written can still change
+        this.blockCache = blockCacheSize >= BlockCache.BLOCK_SIZE
+                ? new BlockCache(allocator, blockCacheSize, logId -> !unflushedLogs.contains(logId), this.stats)
+                : null;
+
         this.caches = ThreadLocal.withInitial(() -> {
             RemovalListener<Integer, LogReader> rl = (notification) -> {
                 try {
@@ -211,12 +219,26 @@ public class DirectEntryLogger implements EntryLogger {
         return internalReadEntry(ledgerId, entryId, entryLocation, true);
     }
 
+    @Override
+    public ByteBuf readEntryRange(long entryLocation, int maxSize) throws IOException {
+        int logId = (int) (entryLocation >> 32);
+        // Include the size header of the first entry
+        long offset = (entryLocation & 0xFFFFFFFFL) - Integer.BYTES;
+
+        LogReader reader = getReader(logId);
+        int size = (int) Math.min(maxSize, reader.maxOffset() - offset);
+        if (size <= 0) {
+            return allocator.buffer(0);
+        }
+        return reader.readBufferAt(offset, size);
+    }
+
     private LogReader getReader(int logId) throws IOException {
         Cache<Integer, LogReader> cache = caches.get();
         try {
             LogReader reader = cache.get(logId, () -> {
                 this.stats.getOpenReaderCounter().inc();
-                return newDirectReader(logId);
+                return newCachingDirectReader(logId);
             });
 
             // it is possible though unlikely, that the cache has already cleaned up this cache entry
@@ -361,6 +383,9 @@ public class DirectEntryLogger implements EntryLogger {
         for (Cache<?, ?> c : allCaches) {
             c.invalidateAll();
         }
+        if (blockCache != null) {
+            blockCache.close();
+        }
 
         writeBuffers.close();
     }
@@ -378,6 +403,10 @@ public class DirectEntryLogger implements EntryLogger {
         checkArgument(entryLogId < Integer.MAX_VALUE, "Entry log id must be an int [%d]", entryLogId);
         File file = logFile(ledgerDir, (int) entryLogId);
         boolean result = file.delete();
+        if (blockCache != null) {
+            // The id can be reused by a new log
+            blockCache.invalidate((int) entryLogId);
+        }
         slog.kv("file", file).kv("logId", entryLogId).kv("result", result).info(Events.LOG_DELETED);
         return result;
     }
@@ -447,6 +476,13 @@ public class DirectEntryLogger implements EntryLogger {
                                 maxSaneEntrySize, stats.getReadBlockStats());
     }
 
+    private LogReader newCachingDirectReader(int logId) throws IOException {
+        // Scans are not using the block cache, to not evict the blocks of the entry reads
+        return new DirectReader(logId, logFilename(ledgerDir, logId),
+                                allocator, nativeIO, readBufferSize,
+                                maxSaneEntrySize, stats.getReadBlockStats(), blockCache);
+    }
+
     private LogWriter newDirectWriter(int newId) throws IOException {
         unflushedLogs.add(newId);
         LogWriter writer = new DirectWriter(newId, logFilename(ledgerDir, newId), maxFileSize,
@@ -43,6 +43,8 @@ class DirectEntryLoggerStats {
     private static final String READER_OPEN = "entrylog-open-reader";
     private static final String READER_CLOSE = "entrylog-close-reader";
     private static final String CACHED_READER_SERVED_CLOSED = "entrylog-cached-reader-closed";
+    private static final String BLOCK_CACHE_HIT = "entrylog-block-cache-hit";
+    private static final String BLOCK_CACHE_MISS = "entrylog-block-cache-miss";
 
     @StatsDoc(
               name = ADD_ENTRY,
@@ -94,6 +96,18 @@ class DirectEntryLoggerStats {
     )
     private static ThreadLocal<Counter> cachedReadersServedClosed;
 
+    @StatsDoc(
+            name = BLOCK_CACHE_HIT,
+            help = "Number of reads served from the entrylog block cache"
+    )
+    private static ThreadLocal<Counter> blockCacheHits;
+
+    @StatsDoc(
+            name = BLOCK_CACHE_MISS,
+            help = "Number of reads of flushed entrylogs which missed the entrylog block cache"
+    )
+    private static ThreadLocal<Counter> blockCacheMisses;
+
     DirectEntryLoggerStats(StatsLogger stats) {
         addEntryStats = stats.getOpStatsLogger(ADD_ENTRY);
 
@@ -141,6 +155,22 @@ class DirectEntryLoggerStats {
                     .getCounter(CACHED_READER_SERVED_CLOSED);
             }
         };
+
+        DirectEntryLoggerStats.blockCacheHits = new ThreadLocal<Counter>() {
+            @Override
+            public Counter initialValue() {
+                return stats.scopeLabel("thread", String.valueOf(Thread.currentThread().getId()))
+                    .getCounter(BLOCK_CACHE_HIT);
+            }
+        };
+
+        DirectEntryLoggerStats.blockCacheMisses = new ThreadLocal<Counter>() {
+            @Override
+            public Counter initialValue() {
+                return stats.scopeLabel("thread", String.valueOf(Thread.currentThread().getId()))
+                    .getCounter(BLOCK_CACHE_MISS);
+            }
+        };
     }
 
     OpStatsLogger getAddEntryStats() {
@@ -174,4 +204,12 @@ class DirectEntryLoggerStats {
     Counter getCachedReadersServedClosedCounter() {
         return cachedReadersServedClosed.get();
     }
+
+    Counter getBlockCacheHitCounter() {
+        return blockCacheHits.get();
+    }
+
+    Counter getBlockCacheMissCounter() {
+        return blockCacheMisses.get();
+    }
 }
@@ -42,6 +42,7 @@ class DirectReader implements LogReader {
     private final int fd;
     private final int maxSaneEntrySize;
     private final OpStatsLogger readBlockStats;
+    private final BlockCache blockCache;
     private long currentBlock = -1;
     private long currentBlockEnd = -1;
     private long maxOffset;
@@ -50,12 +51,20 @@ class DirectReader implements LogReader {
     DirectReader(int logId, String filename, ByteBufAllocator allocator,
                  NativeIO nativeIO, int bufferSize,
                  int maxSaneEntrySize, OpStatsLogger readBlockStats) throws IOException {
+        this(logId, filename, allocator, nativeIO, bufferSize, maxSaneEntrySize, readBlockStats, null);
+    }
+
+    DirectReader(int logId, String filename, ByteBufAllocator allocator,
+                 NativeIO nativeIO, int bufferSize,
+                 int maxSaneEntrySize, OpStatsLogger readBlockStats,
+                 BlockCache blockCache) throws IOException {
         this.nativeIO = nativeIO;
         this.allocator = allocator;
         this.logId = logId;
         this.filename = filename;
         this.maxSaneEntrySize = maxSaneEntrySize;
         this.readBlockStats = readBlockStats;
+        this.blockCache = blockCache;
         closed = false;
 
         try {
@@ -146,7 +155,17 @@ class DirectReader implements LogReader {
     private int readBytesIntoBuf(ByteBuf buf, long offset, int size) throws IOException, EOFException {
         synchronized (nativeBuffer) {
             if (offset < currentBlock || offset >= currentBlockEnd) {
+                if (blockCache != null) {
+                    int bytesRead = blockCache.read(logId, offset, buf, size);
+                    if (bytesRead > 0) {
+                        return bytesRead;
+                    }
+                }
+                long cacheGeneration = blockCache != null ? blockCache.generation() : 0;
                 readBlock(offset);
+                if (blockCache != null) {
+                    cacheBlocks(offset, size, cacheGeneration);
+                }
             }
             int offsetInBuffer = offsetInBlock(offset);
             int sizeInBuffer = sizeInBlock(offset, size);
@@ -161,6 +180,18 @@ class DirectReader implements LogReader {
         }
     }
 
+    /**
+     * Add the complete cache blocks of the read buffer covering the given range to the block cache.
+     */
+    private void cacheBlocks(long offset, int size, long cacheGeneration) throws IOException {
+        long end = Math.min(offset + size, currentBlockEnd);
+        for (long blockStart = BlockCache.blockStart(offset);
+             blockStart < end && blockStart + BlockCache.BLOCK_SIZE <= currentBlockEnd;
+             blockStart += BlockCache.BLOCK_SIZE) {
+            blockCache.put(logId, blockStart, nativeBuffer, offsetInBlock(blockStart), cacheGeneration);
+        }
+    }
+
     @Override
     public ByteBuf readEntryAt(int offset) throws IOException, EOFException {
         assertValidEntryOffset(offset);
@@ -23,7 +23,7 @@ package org.apache.bookkeeper.bookie.storage.ldb;
 import java.nio.ByteOrder;
 
 /**
- * Utility to serialize/deserialize longs into byte arrays.
+ * Utility to serialize/deserialize longs and ints into byte arrays.
  */
 class ArrayUtil {
 
@@ -63,6 +63,20 @@ class ArrayUtil {
         }
     }
 
+    public static int getInt(byte[] array, int index) {
+        return (array[index] & 0xff) << 24
+                | (array[index + 1] & 0xff) << 16
+                | (array[index + 2] & 0xff) << 8
+                | array[index + 3] & 0xff;
+    }
+
+    public static void setInt(byte[] array, int index, int value) {
+        array[index] = (byte) (value >>> 24);
+        array[index + 1] = (byte) (value >>> 16);
+        array[index + 2] = (byte) (value >>> 8);
+        array[index + 3] = (byte) value;
+    }
+
     public static boolean isArrayAllZeros(final byte[] array) {
         return io.netty.util.internal.PlatformDependent.isZero(array, 0, array.length);
     }
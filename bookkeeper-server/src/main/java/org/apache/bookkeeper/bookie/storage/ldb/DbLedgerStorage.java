@@ -39,6 +39,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.PrimitiveIterator.OfLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
@@ -69,6 +71,7 @@ import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.annotations.StatsDoc;
+import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.DiskChecker;
 import org.apache.commons.lang3.StringUtils;
 // CHECKSTYLE.ON: IllegalImport
@@ -91,9 +94,21 @@ public class DbLedgerStorage implements LedgerStorage {
         "dbStorage_directIOEntryLoggerReadBufferSizeMB";
     public static final String DIRECT_IO_ENTRYLOGGER_MAX_FD_CACHE_TIME_SECONDS =
         "dbStorage_directIOEntryLoggerMaxFdCacheTimeSeconds";
+    public static final String DIRECT_IO_ENTRYLOGGER_BLOCK_CACHE_SIZE_MB =
+        "dbStorage_directIOEntryLoggerBlockCacheSizeMB";
 
     static final String MAX_THROTTLE_TIME_MILLIS = "dbStorage_maxThrottleTimeMs";
 
+    static final String ZERO_COPY_CACHE_READS = "dbStorage_zeroCopyCacheReads";
+
+    static final String WRITE_CACHE_RING_SIZE = "dbStorage_writeCacheRingSize";
+    static final String FLUSH_WRITER_THREADS = "dbStorage_flushWriterThreads";
+    static final String ENTRY_LOCATION_CACHE_MAX_SIZE_MB = "dbStorage_entryLocationCacheMaxSizeMb";
+    static final String ENTRY_LOCATION_INDEX_FORMAT = "dbStorage_entryLocationIndexFormat";
+
+    static final String READ_CACHE_POLICY = "dbStorage_readCachePolicy";
+    static final String READ_CACHE_PROBATION_RATIO = "dbStorage_readCacheProbationRatio";
+
     private static final int MB = 1024 * 1024;
 
     private static final long DEFAULT_WRITE_CACHE_MAX_SIZE_MB =
@@ -103,6 +118,11 @@ public class DbLedgerStorage implements LedgerStorage {
 
     static final String READ_AHEAD_CACHE_BATCH_SIZE = "dbStorage_readAheadCacheBatchSize";
     static final String READ_AHEAD_CACHE_BATCH_BYTES_SIZE = "dbStorage_readAheadCacheBatchBytesSize";
+    static final String READ_AHEAD_ASYNC_THREADS = "dbStorage_readAheadAsyncThreads";
+    static final String READ_AHEAD_ASYNC_MAX_PENDING = "dbStorage_readAheadAsyncMaxPending";
+    static final String READ_AHEAD_ADAPTIVE_BATCH_SIZE = "dbStorage_readAheadAdaptiveBatchSize";
+    static final String ENTRY_LOG_READ_THREADS = "dbStorage_entryLogReadThreads";
+    static final String ENTRY_LOG_READ_MAX_PENDING = "dbStorage_entryLogReadMaxPending";
     private static final int DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE = 100;
     // the default value is -1. this feature(limit of read ahead bytes) is disabled
     private static final int DEFAULT_READ_AHEAD_CACHE_BATCH_BYTES_SIZE = -1;
@@ -116,6 +136,7 @@ public class DbLedgerStorage implements LedgerStorage {
     private static final long DEFAULT_DIRECT_IO_READBUFFER_SIZE_MB = 8;
 
     private static final int DEFAULT_DIRECT_IO_MAX_FD_CACHE_TIME_SECONDS = 300;
+    private static final long DEFAULT_DIRECT_IO_BLOCK_CACHE_SIZE_MB = 0;
 
     // use the storage assigned to ledger 0 for flags.
     // if the storage configuration changes, the flags may be lost
@@ -213,6 +234,10 @@ public class DbLedgerStorage implements LedgerStorage {
                     conf,
                     DIRECT_IO_ENTRYLOGGER_MAX_FD_CACHE_TIME_SECONDS,
                     DEFAULT_DIRECT_IO_MAX_FD_CACHE_TIME_SECONDS);
+                long perDirectoryBlockCacheSize = MB * getLongVariableOrDefault(
+                    conf,
+                    DIRECT_IO_ENTRYLOGGER_BLOCK_CACHE_SIZE_MB,
+                    DEFAULT_DIRECT_IO_BLOCK_CACHE_SIZE_MB) / numberOfDirs;
                 Slf4jSlogger slog = new Slf4jSlogger(DbLedgerStorage.class);
                 entryLoggerWriteExecutor = Executors.newSingleThreadExecutor(
                     new DefaultThreadFactory("EntryLoggerWrite"));
@@ -232,6 +257,7 @@ public class DbLedgerStorage implements LedgerStorage {
                     perDirectoryTotalWriteBufferSize,
                     perDirectoryTotalReadBufferSize,
                     readBufferSize,
+                    perDirectoryBlockCacheSize,
                     numReadThreads,
                     maxFdCacheTimeSeconds,
                     slog, statsLogger);
@@ -361,6 +387,17 @@ public class DbLedgerStorage implements LedgerStorage {
         return getLedgerStorage(ledgerId).getEntry(ledgerId, entryId);
     }
 
+    @Override
+    public CompletableFuture<ByteBuf> getEntryAsync(long ledgerId, long entryId, Executor executor) {
+        return getLedgerStorage(ledgerId).getEntryAsync(ledgerId, entryId, executor);
+    }
+
+    @Override
+    public ByteBufList getEntries(long ledgerId, long firstEntryId, int maxCount, long maxSize)
+            throws IOException, BookieException {
+        return getLedgerStorage(ledgerId).getEntries(ledgerId, firstEntryId, maxCount, maxSize);
+    }
+
     @Override
     public long getLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         return getLedgerStorage(ledgerId).getLastAddConfirmed(ledgerId);
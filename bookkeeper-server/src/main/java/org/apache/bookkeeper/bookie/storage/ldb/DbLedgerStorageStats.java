@@ -24,8 +24,12 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_READ_ENT
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
 
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.function.Supplier;
+import lombok.AccessLevel;
 import lombok.Getter;
+import org.apache.bookkeeper.bookie.storage.ldb.ReadCachePolicy.Source;
 import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.OpStatsLogger;
@@ -48,18 +52,31 @@ class DbLedgerStorageStats {
     private static final String READ_ENTRY = "read-entry";
     private static final String READ_ENTRY_LOCATIONS_INDEX_TIME = "read-locations-index-time";
     private static final String READ_ENTRYLOG_TIME = "read-entrylog-time";
+    private static final String READ_ENTRYLOG_ASYNC_QUEUE = "read-entrylog-async-queue";
+    private static final String READ_ENTRYLOG_ASYNC_REJECTED = "read-entrylog-async-rejected";
     private static final String WRITE_CACHE_HITS = "write-cache-hits";
     private static final String WRITE_CACHE_MISSES = "write-cache-misses";
     private static final String READ_CACHE_HITS = "read-cache-hits";
     private static final String READ_CACHE_MISSES = "read-cache-misses";
+    private static final String READ_CACHE_SOURCE_HITS = "read-cache-source-hits";
+    private static final String READ_CACHE_SOURCE_MISSES = "read-cache-source-misses";
+    private static final String READ_CACHE_INSERTS = "read-cache-inserts";
+    private static final String READ_CACHE_SOURCE_LABEL = "source";
+    private static final String READ_CACHE_DROPPED_PUTS = "read-cache-dropped-puts";
+    private static final String READ_CACHE_RETIRED_SIZE = "read-cache-retired-size";
+    private static final String WRITE_CACHE_RETIRED_SIZE = "write-cache-retired-size";
     private static final String READAHEAD_BATCH_COUNT = "readahead-batch-count";
     private static final String READAHEAD_BATCH_SIZE = "readahead-batch-size";
     private static final String READAHEAD_TIME = "readahead-time";
+    private static final String READAHEAD_ASYNC_REJECTED = "readahead-async-rejected";
     private static final String FLUSH = "flush";
     private static final String FLUSH_ENTRYLOG = "flush-entrylog";
     private static final String FLUSH_LOCATIONS_INDEX = "flush-locations-index";
     private static final String FLUSH_LEDGER_INDEX = "flush-ledger-index";
     private static final String FLUSH_SIZE = "flush-size";
+    private static final String FLUSH_WRITER = "flush-writer";
+    private static final String FLUSH_WRITER_BYTES = "flush-writer-bytes";
+    private static final String FLUSH_WRITER_LABEL = "writer";
 
     @Deprecated
     private static final String THROTTLED_WRITE_REQUESTS = "throttled-write-requests";
@@ -95,6 +112,17 @@ class DbLedgerStorageStats {
             parent = READ_ENTRY
     )
     private final Counter readFromEntryLogTime;
+    @StatsDoc(
+        name = READ_ENTRYLOG_ASYNC_QUEUE,
+        help = "operation stats of the time spent by the entry log reads waiting for an entry log read thread",
+        parent = READ_ENTRY
+    )
+    private final OpStatsLogger readEntryLogAsyncQueueStats;
+    @StatsDoc(
+        name = READ_ENTRYLOG_ASYNC_REJECTED,
+        help = "number of entry log reads done by the request thread because the entry log read queue was full"
+    )
+    private final Counter readEntryLogAsyncRejectedCounter;
     @StatsDoc(
             name = WRITE_CACHE_HITS,
             help = "number of write cache hits (on reads)",
@@ -119,6 +147,41 @@ class DbLedgerStorageStats {
         parent = READ_ENTRY
     )
     private final Counter readCacheMissCounter;
+    @StatsDoc(
+        name = READ_CACHE_SOURCE_HITS,
+        help = "number of read cache hits, by source (tail or catch-up)",
+        parent = READ_ENTRY
+    )
+    @Getter(AccessLevel.NONE)
+    private final Map<Source, Counter> readCacheHitCounters = new EnumMap<>(Source.class);
+    @StatsDoc(
+        name = READ_CACHE_SOURCE_MISSES,
+        help = "number of read cache misses, by source (tail or catch-up)",
+        parent = READ_ENTRY
+    )
+    @Getter(AccessLevel.NONE)
+    private final Map<Source, Counter> readCacheMissCounters = new EnumMap<>(Source.class);
+    @StatsDoc(
+        name = READ_CACHE_INSERTS,
+        help = "number of entries offered to the read cache, by source (tail, catch-up or read-ahead)"
+    )
+    @Getter(AccessLevel.NONE)
+    private final Map<Source, Counter> readCacheInsertCounters = new EnumMap<>(Source.class);
+    @StatsDoc(
+        name = READ_CACHE_DROPPED_PUTS,
+        help = "number of entries not inserted into the read cache because of a concurrent segment rotation"
+    )
+    private final Counter readCacheDroppedPutsCounter;
+    @StatsDoc(
+        name = READ_CACHE_RETIRED_SIZE,
+        help = "size of the rotated read cache segments still referenced by zero-copy reads"
+    )
+    private final Counter readCacheRetiredSizeCounter;
+    @StatsDoc(
+        name = WRITE_CACHE_RETIRED_SIZE,
+        help = "size of the cleared write cache segments still referenced by zero-copy reads"
+    )
+    private final Counter writeCacheRetiredSizeCounter;
     @StatsDoc(
         name = READAHEAD_BATCH_COUNT,
         help = "the distribution of num of entries to read in one readahead batch"
@@ -134,6 +197,11 @@ class DbLedgerStorageStats {
             help = "Time spent on readahead operations"
     )
     private final Counter readAheadTime;
+    @StatsDoc(
+        name = READAHEAD_ASYNC_REJECTED,
+        help = "number of asynchronous readahead requests dropped because the readahead executor was saturated"
+    )
+    private final Counter readAheadAsyncRejectedCounter;
     @StatsDoc(
         name = FLUSH,
         help = "operation stats of flushing write cache to entry log files"
@@ -159,6 +227,20 @@ class DbLedgerStorageStats {
         help = "the distribution of number of bytes flushed from write cache to entry log files"
     )
     private final OpStatsLogger flushSizeStats;
+    @StatsDoc(
+        name = FLUSH_WRITER,
+        help = "operation stats of writing a partition of the write cache to the entry log, by flush writer",
+        parent = FLUSH
+    )
+    @Getter(AccessLevel.NONE)
+    private final OpStatsLogger[] flushWriterStats;
+    @StatsDoc(
+        name = FLUSH_WRITER_BYTES,
+        help = "number of bytes written to the entry log during flushes, by flush writer",
+        parent = FLUSH
+    )
+    @Getter(AccessLevel.NONE)
+    private final Counter[] flushWriterBytesCounters;
     @StatsDoc(
         name = THROTTLED_WRITE_REQUESTS,
         help = "The number of requests throttled due to write cache is full"
@@ -201,22 +283,53 @@ class DbLedgerStorageStats {
                          Supplier<Long> writeCacheCountSupplier,
                          Supplier<Long> readCacheSizeSupplier,
                          Supplier<Long> readCacheCountSupplier) {
+        this(stats, writeCacheSizeSupplier, writeCacheCountSupplier, readCacheSizeSupplier, readCacheCountSupplier, 0);
+    }
+
+    DbLedgerStorageStats(StatsLogger stats,
+                         Supplier<Long> writeCacheSizeSupplier,
+                         Supplier<Long> writeCacheCountSupplier,
+                         Supplier<Long> readCacheSizeSupplier,
+                         Supplier<Long> readCacheCountSupplier,
+                         int flushWriters) {
         addEntryStats = stats.getThreadScopedOpStatsLogger(ADD_ENTRY);
         readEntryStats = stats.getThreadScopedOpStatsLogger(READ_ENTRY);
         readFromLocationIndexTime = stats.getThreadScopedCounter(READ_ENTRY_LOCATIONS_INDEX_TIME);
         readFromEntryLogTime = stats.getThreadScopedCounter(READ_ENTRYLOG_TIME);
+        readEntryLogAsyncQueueStats = stats.getOpStatsLogger(READ_ENTRYLOG_ASYNC_QUEUE);
+        readEntryLogAsyncRejectedCounter = stats.getCounter(READ_ENTRYLOG_ASYNC_REJECTED);
         readCacheHitCounter = stats.getCounter(READ_CACHE_HITS);
         readCacheMissCounter = stats.getCounter(READ_CACHE_MISSES);
+        for (Source source : Source.values()) {
+            StatsLogger sourceStats = stats.scopeLabel(READ_CACHE_SOURCE_LABEL, source.getLabel());
+            if (source != Source.READ_AHEAD) {
+                // Read-ahead only inserts entries
+                readCacheHitCounters.put(source, sourceStats.getCounter(READ_CACHE_SOURCE_HITS));
+                readCacheMissCounters.put(source, sourceStats.getCounter(READ_CACHE_SOURCE_MISSES));
+            }
+            readCacheInsertCounters.put(source, sourceStats.getCounter(READ_CACHE_INSERTS));
+        }
+        readCacheDroppedPutsCounter = stats.getCounter(READ_CACHE_DROPPED_PUTS);
+        readCacheRetiredSizeCounter = stats.getCounter(READ_CACHE_RETIRED_SIZE);
+        writeCacheRetiredSizeCounter = stats.getCounter(WRITE_CACHE_RETIRED_SIZE);
         writeCacheHitCounter = stats.getCounter(WRITE_CACHE_HITS);
         writeCacheMissCounter = stats.getCounter(WRITE_CACHE_MISSES);
         readAheadBatchCountStats = stats.getOpStatsLogger(READAHEAD_BATCH_COUNT);
         readAheadBatchSizeStats = stats.getOpStatsLogger(READAHEAD_BATCH_SIZE);
         readAheadTime = stats.getThreadScopedCounter(READAHEAD_TIME);
+        readAheadAsyncRejectedCounter = stats.getCounter(READAHEAD_ASYNC_REJECTED);
         flushStats = stats.getOpStatsLogger(FLUSH);
         flushEntryLogStats = stats.getOpStatsLogger(FLUSH_ENTRYLOG);
         flushLocationIndexStats = stats.getOpStatsLogger(FLUSH_LOCATIONS_INDEX);
         flushLedgerIndexStats = stats.getOpStatsLogger(FLUSH_LEDGER_INDEX);
         flushSizeStats = stats.getOpStatsLogger(FLUSH_SIZE);
+        flushWriterStats = new OpStatsLogger[flushWriters];
+        flushWriterBytesCounters = new Counter[flushWriters];
+        for (int i = 0; i < flushWriters; i++) {
+            StatsLogger writerStats = stats.scopeLabel(FLUSH_WRITER_LABEL, String.valueOf(i));
+            flushWriterStats[i] = writerStats.getOpStatsLogger(FLUSH_WRITER);
+            flushWriterBytesCounters[i] = writerStats.getCounter(FLUSH_WRITER_BYTES);
+        }
 
         throttledWriteRequests = stats.getThreadScopedCounter(THROTTLED_WRITE_REQUESTS);
         throttledWriteStats = stats.getOpStatsLogger(THROTTLED_WRITE);
@@ -273,4 +386,23 @@ class DbLedgerStorageStats {
         stats.registerGauge(READ_CACHE_COUNT, readCacheCountGauge);
     }
 
+    Counter getReadCacheHitCounter(Source source) {
+        return readCacheHitCounters.get(source);
+    }
+
+    Counter getReadCacheMissCounter(Source source) {
+        return readCacheMissCounters.get(source);
+    }
+
+    Counter getReadCacheInsertCounter(Source source) {
+        return readCacheInsertCounters.get(source);
+    }
+
+    OpStatsLogger getFlushWriterStats(int writer) {
+        return flushWriterStats[writer];
+    }
+
+    Counter getFlushWriterBytesCounter(int writer) {
+        return flushWriterBytesCounters[writer];
+    }
 }
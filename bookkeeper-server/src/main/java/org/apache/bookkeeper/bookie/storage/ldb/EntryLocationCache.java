@@ -0,0 +1,390 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * Off-heap cache of recently flushed entry locations, consulted before the entry location index database.
+ *
+ * <p>The locations of each ledger are kept as a sorted array of runs. A run covers consecutive entry ids stored in
+ * the same entry log, and the entry log id is kept once. When the offsets of the entries of a run advance by a
+ * constant stride, as with entries of the same size written sequentially, the run is run-length encoded as its first
+ * offset and the stride. Otherwise each entry takes the 4 bytes of its offset in the log, stored in a direct buffer.
+ * When the memory budget is exceeded, the oldest runs are evicted.
+ */
+class EntryLocationCache implements Closeable {
+
+    // Approximate on-heap footprint of a run, accounted in the cache size
+    private static final int RUN_OVERHEAD = 64;
+
+    private final ByteBufAllocator allocator;
+    private final long maxSize;
+    private final AtomicLong size = new AtomicLong();
+
+    private final ConcurrentLongHashMap<LedgerRuns> ledgers = ConcurrentLongHashMap.<LedgerRuns>newBuilder()
+            .expectedItems(4096)
+            .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+            .build();
+
+    // Runs in insertion order, used for eviction. Runs that were already removed are skipped.
+    private final Queue<Run> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    EntryLocationCache(ByteBufAllocator allocator, long maxSize) {
+        this.allocator = allocator;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the location of the entry, or 0 if it's not in the cache
+     */
+    long get(long ledgerId, long entryId) {
+        LedgerRuns runs = ledgers.get(ledgerId);
+        return runs != null ? runs.get(entryId) : 0;
+    }
+
+    /**
+     * Insert the locations passed as (ledgerId, entryId, location) triplets. The triplets are expected to be grouped
+     * by ledger and sorted by entry id, so that they can be encoded as runs.
+     */
+    void put(long[] locations, int length) {
+        int runStart = 0;
+        for (int i = 3; i <= length; i += 3) {
+            if (i == length || !isSameRun(locations, i - 3, i)) {
+                insertRun(locations, runStart, i);
+                runStart = i;
+            }
+        }
+
+        evictIfNeeded();
+    }
+
+    /**
+     * Remove the run that contains the given entry, if any.
+     */
+    void invalidate(long ledgerId, long entryId) {
+        LedgerRuns runs = ledgers.get(ledgerId);
+        if (runs != null) {
+            runs.removeOverlapping(entryId, entryId + 1);
+        }
+    }
+
+    void removeLedger(long ledgerId) {
+        LedgerRuns runs = ledgers.remove(ledgerId);
+        if (runs != null) {
+            runs.close();
+        }
+    }
+
+    long size() {
+        return size.get();
+    }
+
+    @Override
+    public void close() {
+        ledgers.forEach((ledgerId, runs) -> runs.close());
+        ledgers.clear();
+        insertionOrder.clear();
+    }
+
+    private static boolean isSameRun(long[] locations, int previous, int current) {
+        return locations[current] == locations[previous]
+                && locations[current + 1] == locations[previous + 1] + 1
+                && (locations[current + 2] >>> 32) == (locations[previous + 2] >>> 32);
+    }
+
+    private void insertRun(long[] locations, int from, int to) {
+        long ledgerId = locations[from];
+        int count = (to - from) / 3;
+
+        long firstOffset = offset(locations[from + 2]);
+        long stride = count > 1 ? offset(locations[from + 5]) - firstOffset : 0;
+        boolean strided = true;
+        for (int i = from + 3; i < to && strided; i += 3) {
+            strided = offset(locations[i + 2]) - offset(locations[i - 1]) == stride;
+        }
+
+        ByteBuf offsets = null;
+        if (!strided) {
+            offsets = allocator.directBuffer(count * Integer.BYTES, count * Integer.BYTES);
+            for (int i = from; i < to; i += 3) {
+                offsets.writeInt((int) locations[i + 2]);
+            }
+        }
+
+        Run run = new Run(ledgerId, locations[from + 1], count, locations[from + 2] >>> 32, firstOffset, stride,
+                offsets);
+        size.addAndGet(run.size());
+
+        while (true) {
+            LedgerRuns runs = ledgers.computeIfAbsent(ledgerId, k -> new LedgerRuns());
+            if (runs.add(run)) {
+                break;
+            }
+            // The ledger runs were emptied and removed concurrently, retry with a new instance
+        }
+
+        insertionOrder.add(run);
+    }
+
+    private static long offset(long location) {
+        return location & 0xFFFFFFFFL;
+    }
+
+    private void evictIfNeeded() {
+        // Drop the runs already removed by invalidations
+        Run head;
+        while ((head = insertionOrder.peek()) != null && head.removed) {
+            insertionOrder.poll();
+        }
+
+        while (size.get() > maxSize) {
+            Run run = insertionOrder.poll();
+            if (run == null) {
+                return;
+            }
+
+            LedgerRuns runs = ledgers.get(run.ledgerId);
+            if (runs != null && runs.remove(run)) {
+                ledgers.remove(run.ledgerId, runs);
+            }
+        }
+    }
+
+    private final class Run {
+        final long ledgerId;
+        final long firstEntryId;
+        final int count;
+        final long logId;
+        final long firstOffset;
+        final long stride;
+        // Offsets of the entries, or null when they advance by the stride
+        final ByteBuf offsets;
+        volatile boolean removed;
+
+        Run(long ledgerId, long firstEntryId, int count, long logId, long firstOffset, long stride, ByteBuf offsets) {
+            this.ledgerId = ledgerId;
+            this.firstEntryId = firstEntryId;
+            this.count = count;
+            this.logId = logId;
+            this.firstOffset = firstOffset;
+            this.stride = stride;
+            this.offsets = offsets;
+        }
+
+        long lastEntryId() {
+            return firstEntryId + count - 1;
+        }
+
+        long size() {
+            return RUN_OVERHEAD + (offsets != null ? offsets.capacity() : 0);
+        }
+
+        long location(long entryId) {
+            int index = (int) (entryId - firstEntryId);
+            long offset = offsets != null
+                    ? offset(offsets.getInt(index * Integer.BYTES))
+                    : firstOffset + index * stride;
+            return (logId << 32) | offset;
+        }
+
+        void release() {
+            removed = true;
+            size.addAndGet(-size());
+            if (offsets != null) {
+                offsets.release();
+            }
+        }
+    }
+
+    /**
+     * The runs of a ledger, sorted by first entry id and not overlapping. The array of runs is replaced on each change.
+     * The lookups in strided runs are optimistic reads, validated against the changes. The offset buffers of the other
+     * runs are only read under the read lock, so that they cannot be released while being read.
+     */
+    private final class LedgerRuns {
+        private final StampedLock lock = new StampedLock();
+        private volatile Run[] runs = new Run[0];
+        private boolean closed;
+
+        long get(long entryId) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                Run run = find(runs, entryId);
+                if (run == null || run.offsets == null) {
+                    long location = run != null ? run.location(entryId) : 0;
+                    if (lock.validate(stamp)) {
+                        return location;
+                    }
+                }
+            }
+
+            stamp = lock.readLock();
+            try {
+                Run run = find(runs, entryId);
+                return run != null ? run.location(entryId) : 0;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * @return false if the runs were closed and the run was not added
+         */
+        boolean add(Run run) {
+            long stamp = lock.writeLock();
+            try {
+                if (closed) {
+                    return false;
+                }
+
+                doRemoveOverlapping(run.firstEntryId, run.firstEntryId + run.count);
+
+                Run[] current = runs;
+                int idx = floor(current, run.firstEntryId) + 1;
+                Run[] newRuns = new Run[current.length + 1];
+                System.arraycopy(current, 0, newRuns, 0, idx);
+                newRuns[idx] = run;
+                System.arraycopy(current, idx, newRuns, idx + 1, current.length - idx);
+                runs = newRuns;
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Remove the runs that contain entries in the range [firstEntryId, endEntryId).
+         */
+        void removeOverlapping(long firstEntryId, long endEntryId) {
+            long stamp = lock.writeLock();
+            try {
+                doRemoveOverlapping(firstEntryId, endEntryId);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void doRemoveOverlapping(long firstEntryId, long endEntryId) {
+            Run[] current = runs;
+            int first = Math.max(floor(current, firstEntryId), 0);
+            int last = first;
+            while (last < current.length && current[last].firstEntryId < endEntryId) {
+                last++;
+            }
+
+            int removed = 0;
+            for (int i = first; i < last; i++) {
+                if (current[i].lastEntryId() >= firstEntryId) {
+                    current[i].release();
+                    removed++;
+                }
+            }
+
+            if (removed > 0) {
+                Run[] newRuns = new Run[current.length - removed];
+                int j = 0;
+                for (Run run : current) {
+                    if (!run.removed) {
+                        newRuns[j++] = run;
+                    }
+                }
+                runs = newRuns;
+            }
+        }
+
+        /**
+         * Remove the given run when evicted.
+         *
+         * @return true if there are no more runs for the ledger, in which case the runs are closed
+         */
+        boolean remove(Run run) {
+            long stamp = lock.writeLock();
+            try {
+                Run[] current = runs;
+                if (!run.removed) {
+                    run.release();
+                    int j = 0;
+                    Run[] newRuns = new Run[current.length - 1];
+                    for (Run r : current) {
+                        if (r != run) {
+                            newRuns[j++] = r;
+                        }
+                    }
+                    runs = newRuns;
+                }
+
+                if (runs.length == 0) {
+                    closed = true;
+                    return true;
+                }
+                return false;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void close() {
+            long stamp = lock.writeLock();
+            try {
+                closed = true;
+                for (Run run : runs) {
+                    run.release();
+                }
+                runs = new Run[0];
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * @return the run containing the entry, or null
+     */
+    private static Run find(Run[] runs, long entryId) {
+        int idx = floor(runs, entryId);
+        return idx >= 0 && entryId <= runs[idx].lastEntryId() ? runs[idx] : null;
+    }
+
+    /**
+     * @return the index of the last run starting at or before the entry, or -1
+     */
+    private static int floor(Run[] runs, long entryId) {
+        int low = 0;
+        int high = runs.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (runs[mid].firstEntryId <= entryId) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+}
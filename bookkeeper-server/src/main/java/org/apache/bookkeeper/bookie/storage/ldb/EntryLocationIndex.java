@@ -21,14 +21,28 @@
 package org.apache.bookkeeper.bookie.storage.ldb;
 
 import com.google.common.collect.Iterables;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.EntryLocation;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.conf.ServerConfiguration;
@@ -42,6 +56,16 @@ import org.slf4j.LoggerFactory;
  *
  * <p>For each ledger multiple entries are stored in the same "record", represented
  * by the {@link LedgerIndexPage} class.
+ *
+ * <p>With the {@link #FORMAT_RANGE} format, each record stores the locations of the entries of a block of consecutive
+ * entry ids of a ledger instead, as runs encoded by {@link EntryLocationRanges}. The runs of a ledger never overlap:
+ * when locations are updated, the existing runs they overlap with are split when the batch is flushed. The format of
+ * an existing index is stored in the index itself, under a key outside of the (ledgerId, entryId) keys, and takes
+ * precedence over the configured one.
+ *
+ * <p>Optionally, the locations written through the batches returned by {@link #newBatch()} are also kept in an
+ * {@link EntryLocationCache} once the batch is flushed, so that the lookups of recently flushed entries do not need
+ * to hit the database.
  */
 public class EntryLocationIndex implements Closeable {
 
@@ -50,9 +74,47 @@ public class EntryLocationIndex implements Closeable {
     private final EntryLocationIndexStats stats;
     private boolean isCompacting;
 
+    static final String FORMAT_ENTRY = "entry";
+    static final String FORMAT_RANGE = "range";
+
+    // Key of the record storing the index format. It is longer than the (ledgerId, entryId) keys, so that it is not
+    // the key of any entry, and it is sorted after all of them, so that the floor lookups of the ledgers never find
+    // it. When missing, the index uses the per-entry format.
+    private static final byte[] FORMAT_KEY = new byte[2 * Long.BYTES + 1];
+
+    static {
+        Arrays.fill(FORMAT_KEY, (byte) 0xFF);
+    }
+
+    private final boolean rangeFormat;
+    // Whether the format of the index is stored in it, only accessed by the range batches once the index is created
+    private volatile boolean formatStored = false;
+
+    // Hot tier for the recently flushed locations, null if disabled
+    private final EntryLocationCache locationCache;
+    // Incremented whenever locations are changed or removed outside of the batches, so that a batch flushed
+    // concurrently does not insert stale locations in the cache
+    private final AtomicLong locationCacheInvalidations = new AtomicLong();
+
+    private static final long MB = 1024 * 1024;
+
     public EntryLocationIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
             StatsLogger stats) throws IOException {
+        this(conf, storageFactory, basePath, stats, PooledByteBufAllocator.DEFAULT);
+    }
+
+    /**
+     * @param allocator the allocator of the buffers of the entry location cache
+     */
+    public EntryLocationIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
+            StatsLogger stats, ByteBufAllocator allocator) throws IOException {
         locationsDb = storageFactory.newKeyValueStorage(basePath, "locations", DbConfigType.EntryLocation, conf);
+        rangeFormat = FORMAT_RANGE.equals(initFormat(conf.getString(DbLedgerStorage.ENTRY_LOCATION_INDEX_FORMAT,
+                FORMAT_ENTRY)));
+
+        long locationCacheMaxSize = conf.getLong(DbLedgerStorage.ENTRY_LOCATION_CACHE_MAX_SIZE_MB, 0) * MB;
+        locationCache = locationCacheMaxSize > 0
+                ? new EntryLocationCache(allocator, locationCacheMaxSize) : null;
 
         this.stats = new EntryLocationIndexStats(
             stats,
@@ -62,15 +124,75 @@ public class EntryLocationIndex implements Closeable {
                 } catch (IOException e) {
                     return -1L;
                 }
-            });
+            },
+            () -> locationCache != null ? locationCache.size() : 0L);
+    }
+
+    private String initFormat(String configuredFormat) throws IOException {
+        if (!FORMAT_ENTRY.equals(configuredFormat) && !FORMAT_RANGE.equals(configuredFormat)) {
+            throw new IllegalArgumentException("Unknown entry location index format: " + configuredFormat);
+        }
+
+        String format = getFormat(locationsDb);
+        if (format == null) {
+            // New index. The range format is stored with the first runs written, so that nothing is written to an
+            // index opened read-only.
+            return configuredFormat;
+        }
+        formatStored = true;
+
+        if (!format.equals(configuredFormat)) {
+            log.warn("The entry location index at {} uses the {} format instead of the configured {} format. "
+                    + "Run the convert-db-ledger-locations-index command to convert it",
+                    locationsDb.getDBPath(), format, configuredFormat);
+        }
+        return format;
+    }
+
+    /**
+     * @return the format of the given entry locations storage, or null if it's empty
+     */
+    static String getFormat(KeyValueStorage locationsDb) throws IOException {
+        byte[] format = locationsDb.get(FORMAT_KEY);
+        if (format != null) {
+            return new String(format, StandardCharsets.UTF_8);
+        }
+
+        try (CloseableIterator<byte[]> keys = locationsDb.keys()) {
+            return keys.hasNext() ? FORMAT_ENTRY : null;
+        }
+    }
+
+    static boolean isFormatKey(byte[] key) {
+        return Arrays.equals(key, FORMAT_KEY);
+    }
+
+    public boolean isRangeFormat() {
+        return rangeFormat;
     }
 
     @Override
     public void close() throws IOException {
         locationsDb.close();
+        if (locationCache != null) {
+            locationCache.close();
+        }
     }
 
     public long getLocation(long ledgerId, long entryId) throws IOException {
+        if (locationCache != null) {
+            long location = locationCache.get(ledgerId, entryId);
+            if (location != 0) {
+                stats.getLocationCacheHits().inc();
+                return location;
+            }
+            stats.getLocationCacheMisses().inc();
+        }
+
+        if (rangeFormat) {
+            return getLocationFromRange(ledgerId, entryId);
+        }
+
         LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
         LongWrapper value = LongWrapper.get();
 
@@ -98,6 +220,135 @@ public class EntryLocationIndex implements Closeable {
         }
     }
 
+    private long getLocationFromRange(long ledgerId, long entryId) throws IOException {
+        // Point lookup of the block holding the entry
+        long blockFirstEntryId = EntryLocationRanges.blockOf(entryId);
+        LongPairWrapper key = LongPairWrapper.get(ledgerId, blockFirstEntryId);
+
+        long startTimeNanos = MathUtils.nowInNano();
+        boolean operationSuccess = false;
+        try {
+            byte[] block = locationsDb.get(key.array);
+            long location = block != null ? EntryLocationRanges.getLocation(block, blockFirstEntryId, entryId) : 0;
+            if (location == 0) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Entry not found {}@{} in db index", ledgerId, entryId);
+                }
+                return 0;
+            }
+            operationSuccess = true;
+            return location;
+        } finally {
+            key.recycle();
+            if (operationSuccess) {
+                stats.getLookupEntryLocationStats()
+                        .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            } else {
+                stats.getLookupEntryLocationStats()
+                        .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Get the locations of consecutive entries of a ledger with a single index scan, starting from the given entry
+     * and stopping at the first entry that is not found.
+     *
+     * @return the number of locations stored in the array
+     */
+    public int getLocations(long ledgerId, long firstEntryId, long[] locations) throws IOException {
+        int count = 0;
+        if (locationCache != null) {
+            // Recent entries are likely to be found in the cache
+            while (count < locations.length) {
+                long location = locationCache.get(ledgerId, firstEntryId + count);
+                if (location == 0) {
+                    break;
+                }
+                locations[count++] = location;
+            }
+            if (count > 0) {
+                stats.getLocationCacheHits().addCount(count);
+            }
+            if (count == locations.length) {
+                return count;
+            }
+            stats.getLocationCacheMisses().inc();
+        }
+
+        long startTimeNanos = MathUtils.nowInNano();
+        int found = rangeFormat
+                ? getLocationsFromRanges(ledgerId, firstEntryId + count, locations, count)
+                : getLocationsFromEntries(ledgerId, firstEntryId + count, locations, count);
+        if (found > 0) {
+            stats.getLookupEntryLocationStats()
+                    .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        } else {
+            stats.getLookupEntryLocationStats()
+                    .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        }
+        return count + found;
+    }
+
+    private int getLocationsFromEntries(long ledgerId, long firstEntryId, long[] locations, int offset)
+            throws IOException {
+        LongPairWrapper firstKey = LongPairWrapper.get(ledgerId, firstEntryId);
+        LongPairWrapper lastKey = LongPairWrapper.get(ledgerId, firstEntryId + locations.length - offset);
+        int found = 0;
+        try (CloseableIterator<Entry<byte[], byte[]>> iterator = locationsDb.iterator(firstKey.array, lastKey.array)) {
+            while (iterator.hasNext()) {
+                Entry<byte[], byte[]> entry = iterator.next();
+                if (ArrayUtil.getLong(entry.getKey(), 8) != firstEntryId + found) {
+                    // Gap in the ledger entries
+                    break;
+                }
+                locations[offset + found++] = ArrayUtil.getLong(entry.getValue(), 0);
+            }
+        } finally {
+            firstKey.recycle();
+            lastKey.recycle();
+        }
+        return found;
+    }
+
+    private int getLocationsFromRanges(long ledgerId, long firstEntryId, long[] locations, int offset)
+            throws IOException {
+        LongPairWrapper key = LongPairWrapper.get(ledgerId, firstEntryId);
+        // Runs of the current block, by first entry id
+        TreeMap<Long, long[]> runs = new TreeMap<>();
+        long blockFirstEntryId = -1;
+        int found = 0;
+        try {
+            while (offset + found < locations.length) {
+                long entryId = firstEntryId + found;
+                if (EntryLocationRanges.blockOf(entryId) != blockFirstEntryId) {
+                    blockFirstEntryId = EntryLocationRanges.blockOf(entryId);
+                    key.set(ledgerId, blockFirstEntryId);
+                    byte[] block = locationsDb.get(key.array);
+                    if (block == null) {
+                        break;
+                    }
+                    runs.clear();
+                    EntryLocationRanges.decodeBlock(block, blockFirstEntryId, runs);
+                }
+
+                // Search the run containing the next entry
+                Entry<Long, long[]> run = runs.floorEntry(entryId);
+                if (run == null || entryId - run.getKey() >= run.getValue().length) {
+                    break;
+                }
+
+                int index = (int) (entryId - run.getKey());
+                int length = Math.min(run.getValue().length - index, locations.length - offset - found);
+                System.arraycopy(run.getValue(), index, locations, offset + found, length);
+                found += length;
+            }
+        } finally {
+            key.recycle();
+        }
+        return found;
+    }
+
     public long getLastEntryInLedger(long ledgerId) throws IOException {
         if (deletedLedgers.contains(ledgerId)) {
             // Ledger already deleted
@@ -134,6 +385,9 @@ public class EntryLocationIndex implements Closeable {
         } else {
             long foundLedgerId = ArrayUtil.getLong(entry.getKey(), 0);
             long lastEntryId = ArrayUtil.getLong(entry.getKey(), 8);
+            if (rangeFormat) {
+                lastEntryId = EntryLocationRanges.lastEntryId(entry.getValue(), lastEntryId);
+            }
 
             if (foundLedgerId == ledgerId) {
                 if (log.isDebugEnabled()) {
@@ -147,17 +401,38 @@ public class EntryLocationIndex implements Closeable {
     }
 
     public void addLocation(long ledgerId, long entryId, long location) throws IOException {
-        try (Batch batch = locationsDb.newBatch()) {
+        try (Batch batch = newLocationsBatch()) {
             addLocation(batch, ledgerId, entryId, location);
             batch.flush();
         }
+        invalidateLocationCache(ledgerId, entryId);
     }
 
     public Batch newBatch() {
-        return locationsDb.newBatch();
+        Batch batch = newLocationsBatch();
+        return locationCache != null ? new LocationCacheBatch(batch) : batch;
+    }
+
+    private Batch newLocationsBatch() {
+        Batch batch = locationsDb.newBatch();
+        return rangeFormat ? new RangeBatch(batch) : batch;
     }
 
     public void addLocation(Batch batch, long ledgerId, long entryId, long location) throws IOException {
+        if (batch instanceof LocationCacheBatch) {
+            LocationCacheBatch cacheBatch = (LocationCacheBatch) batch;
+            cacheBatch.addLocation(ledgerId, entryId, location);
+            batch = cacheBatch.batch;
+        }
+
+        if (batch instanceof RangeBatch) {
+            if (log.isDebugEnabled()) {
+                log.debug("Add location - ledger: {} -- entry: {} -- location: {}", ledgerId, entryId, location);
+            }
+            ((RangeBatch) batch).addLocation(ledgerId, entryId, location);
+            return;
+        }
+
         LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
         LongWrapper value = LongWrapper.get(location);
 
@@ -173,12 +448,21 @@ public class EntryLocationIndex implements Closeable {
         }
     }
 
+    private void invalidateLocationCache(long ledgerId, long entryId) {
+        if (locationCache != null) {
+            synchronized (locationCache) {
+                locationCacheInvalidations.incrementAndGet();
+                locationCache.invalidate(ledgerId, entryId);
+            }
+        }
+    }
+
     public void updateLocations(Iterable<EntryLocation> newLocations) throws IOException {
         if (log.isDebugEnabled()) {
             log.debug("Update locations -- {}", Iterables.size(newLocations));
         }
 
-        try (Batch batch = newBatch()) {
+        try (Batch batch = newLocationsBatch()) {
             // Update all the ledger index pages with the new locations
             for (EntryLocation e : newLocations) {
                 if (log.isDebugEnabled()) {
@@ -189,12 +473,23 @@ public class EntryLocationIndex implements Closeable {
             }
             batch.flush();
         }
+
+        // Relocated entries are not hot, only remove their previous locations from the cache
+        for (EntryLocation e : newLocations) {
+            invalidateLocationCache(e.ledger, e.entry);
+        }
     }
 
     public void delete(long ledgerId) throws IOException {
         // We need to find all the LedgerIndexPage records belonging to one specific
         // ledgers
         deletedLedgers.add(ledgerId);
+        if (locationCache != null) {
+            synchronized (locationCache) {
+                locationCacheInvalidations.incrementAndGet();
+                locationCache.removeLedger(ledgerId);
+            }
+        }
     }
 
     public String getEntryLocationDBPath() {
@@ -252,5 +547,281 @@ public class EntryLocationIndex implements Closeable {
                 TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) / 1000.0);
     }
 
+    /**
+     * Load into the given runs of a ledger the runs of the blocks holding the entries [firstEntryId, endEntryId) that
+     * were not loaded yet.
+     */
+    private void loadBlocks(long ledgerId, long firstEntryId, long endEntryId, LedgerRuns runs) throws IOException {
+        LongPairWrapper key = LongPairWrapper.get(ledgerId, firstEntryId);
+        try {
+            for (long blockFirstEntryId = EntryLocationRanges.blockOf(firstEntryId); blockFirstEntryId < endEntryId;
+                    blockFirstEntryId += EntryLocationRanges.BLOCK_ENTRIES) {
+                if (!runs.loadedBlocks.add(blockFirstEntryId)) {
+                    continue;
+                }
+
+                key.set(ledgerId, blockFirstEntryId);
+                byte[] block = locationsDb.get(key.array);
+                if (block != null) {
+                    // The blocks are loaded before the runs overlapping with them are added
+                    EntryLocationRanges.decodeBlock(block, blockFirstEntryId, runs.runs);
+                }
+            }
+        } finally {
+            key.recycle();
+        }
+    }
+
+    /**
+     * Write the blocks holding the given runs of a ledger.
+     */
+    private static void putBlocks(Batch batch, long ledgerId, TreeMap<Long, long[]> runs) throws IOException {
+        LongPairWrapper key = LongPairWrapper.get(ledgerId, 0);
+        try {
+            while (!runs.isEmpty()) {
+                long blockFirstEntryId = EntryLocationRanges.blockOf(runs.firstKey());
+                SortedMap<Long, long[]> blockRuns =
+                        runs.headMap(blockFirstEntryId + EntryLocationRanges.BLOCK_ENTRIES);
+                key.set(ledgerId, blockFirstEntryId);
+                batch.put(key.array, EntryLocationRanges.encodeBlock(blockFirstEntryId, blockRuns));
+                blockRuns.clear();
+            }
+        } finally {
+            key.recycle();
+        }
+    }
+
+    /**
+     * The runs of a ledger changed by a batch.
+     */
+    private static final class LedgerRuns {
+        // Locations of the runs, by first entry id. They never overlap.
+        final TreeMap<Long, long[]> runs = new TreeMap<>();
+        // First entry id of the blocks loaded from the database
+        final Set<Long> loadedBlocks = new HashSet<>();
+
+        /**
+         * Add a run, replacing the parts of the existing runs overlapping with it.
+         */
+        void add(long firstEntryId, long[] locations) {
+            long endEntryId = firstEntryId + locations.length;
+
+            Entry<Long, long[]> floor = runs.lowerEntry(firstEntryId);
+            if (floor != null && floor.getKey() + floor.getValue().length > firstEntryId) {
+                long[] run = floor.getValue();
+                runs.put(floor.getKey(), Arrays.copyOf(run, (int) (firstEntryId - floor.getKey())));
+                if (floor.getKey() + run.length > endEntryId) {
+                    runs.put(endEntryId, Arrays.copyOfRange(run, (int) (endEntryId - floor.getKey()), run.length));
+                }
+            }
+
+            Iterator<Entry<Long, long[]>> overlapping = runs.subMap(firstEntryId, endEntryId).entrySet().iterator();
+            long[] tail = null;
+            while (overlapping.hasNext()) {
+                Entry<Long, long[]> run = overlapping.next();
+                if (run.getKey() + run.getValue().length > endEntryId) {
+                    tail = Arrays.copyOfRange(run.getValue(), (int) (endEntryId - run.getKey()),
+                            run.getValue().length);
+                }
+                overlapping.remove();
+            }
+            if (tail != null) {
+                runs.put(endEntryId, tail);
+            }
+
+            runs.put(firstEntryId, locations);
+        }
+    }
+
+    /**
+     * Batch that groups the locations added to it into runs.
+     *
+     * <p>The runs never cross the boundaries of the blocks. They are only merged with the runs of the database when
+     * the batch is flushed, since the blocks they belong to are looked up in the database: the batches must be
+     * flushed in the order of their changes, which is what the callers do for the other index updates as well. The
+     * format of a new index is stored along with the first runs written to it.
+     */
+    private final class RangeBatch implements Batch {
+        private final Batch batch;
+
+        // Run being built
+        private long ledgerId = -1;
+        private long firstEntryId;
+        private final long[] locations = new long[EntryLocationRanges.MAX_RUN_ENTRIES];
+        private int count;
+
+        // Runs added to the batch, by ledger, in the order they were added
+        private final Map<Long, List<PendingRun>> pendingRuns = new LinkedHashMap<>();
+
+        RangeBatch(Batch batch) {
+            this.batch = batch;
+        }
+
+        void addLocation(long ledgerId, long entryId, long location) {
+            if (count == 0 || ledgerId != this.ledgerId || entryId != firstEntryId + count
+                    || count == EntryLocationRanges.MAX_RUN_ENTRIES
+                    || EntryLocationRanges.blockOf(entryId) != EntryLocationRanges.blockOf(firstEntryId)
+                    || !EntryLocationRanges.canAppend(locations[count - 1], location)) {
+                endRun();
+                this.ledgerId = ledgerId;
+                this.firstEntryId = entryId;
+            }
+            locations[count++] = location;
+        }
+
+        private void endRun() {
+            if (count == 0) {
+                return;
+            }
+
+            pendingRuns.computeIfAbsent(ledgerId, l -> new ArrayList<>())
+                    .add(new PendingRun(firstEntryId, Arrays.copyOf(locations, count)));
+            count = 0;
+        }
+
+        private void writeRuns() throws IOException {
+            endRun();
+            if (pendingRuns.isEmpty()) {
+                return;
+            }
+
+            if (!formatStored) {
+                batch.put(FORMAT_KEY, FORMAT_RANGE.getBytes(StandardCharsets.UTF_8));
+            }
+
+            for (Map.Entry<Long, List<PendingRun>> ledger : pendingRuns.entrySet()) {
+                long ledgerId = ledger.getKey();
+                LedgerRuns runs = new LedgerRuns();
+                for (PendingRun run : ledger.getValue()) {
+                    loadBlocks(ledgerId, run.firstEntryId, run.firstEntryId + run.locations.length, runs);
+                    runs.add(run.firstEntryId, run.locations);
+                }
+
+                putBlocks(batch, ledgerId, runs.runs);
+            }
+            pendingRuns.clear();
+        }
+
+        @Override
+        public void put(byte[] key, byte[] value) throws IOException {
+            batch.put(key, value);
+        }
+
+        @Override
+        public void remove(byte[] key) throws IOException {
+            batch.remove(key);
+        }
+
+        @Override
+        public void deleteRange(byte[] beginKey, byte[] endKey) throws IOException {
+            batch.deleteRange(beginKey, endKey);
+        }
+
+        @Override
+        public void clear() {
+            batch.clear();
+            pendingRuns.clear();
+            count = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeRuns();
+            batch.flush();
+            formatStored = true;
+        }
+
+        @Override
+        public int batchCount() {
+            return batch.batchCount();
+        }
+
+        @Override
+        public void close() throws IOException {
+            batch.close();
+        }
+    }
+
+    private static final class PendingRun {
+        final long firstEntryId;
+        final long[] locations;
+
+        PendingRun(long firstEntryId, long[] locations) {
+            this.firstEntryId = firstEntryId;
+            this.locations = locations;
+        }
+    }
+
+    /**
+     * Batch that keeps track of the locations added to it, to insert them in the location cache once flushed.
+     */
+    private final class LocationCacheBatch implements Batch {
+        private final Batch batch;
+
+        // (ledgerId, entryId, location) triplets
+        private long[] locations = new long[3 * 1024];
+        private int locationsIdx;
+
+        LocationCacheBatch(Batch batch) {
+            this.batch = batch;
+        }
+
+        void addLocation(long ledgerId, long entryId, long location) {
+            if (locationsIdx + 3 > locations.length) {
+                locations = Arrays.copyOf(locations, locations.length * 2);
+            }
+            locations[locationsIdx] = ledgerId;
+            locations[locationsIdx + 1] = entryId;
+            locations[locationsIdx + 2] = location;
+            locationsIdx += 3;
+        }
+
+        @Override
+        public void put(byte[] key, byte[] value) throws IOException {
+            batch.put(key, value);
+        }
+
+        @Override
+        public void remove(byte[] key) throws IOException {
+            batch.remove(key);
+        }
+
+        @Override
+        public void deleteRange(byte[] beginKey, byte[] endKey) throws IOException {
+            batch.deleteRange(beginKey, endKey);
+        }
+
+        @Override
+        public void clear() {
+            batch.clear();
+            locationsIdx = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long invalidations = locationCacheInvalidations.get();
+            batch.flush();
+
+            // Skip the cache insertion if some locations were invalidated in the meantime, since the batch might
+            // contain stale locations for them
+            synchronized (locationCache) {
+                if (locationCacheInvalidations.get() == invalidations) {
+                    locationCache.put(locations, locationsIdx);
+                }
+            }
+            locationsIdx = 0;
+        }
+
+        @Override
+        public int batchCount() {
+            return batch.batchCount();
+        }
+
+        @Override
+        public void close() throws IOException {
+            batch.close();
+        }
+    }
+
     private static final Logger log = LoggerFactory.getLogger(EntryLocationIndex.class);
 }
@@ -24,6 +24,7 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER
 
 import java.util.function.Supplier;
 import lombok.Getter;
+import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -43,6 +44,9 @@ class EntryLocationIndexStats {
     private static final String ENTRIES_COUNT = "entries-count";
     private static final String LOOKUP_ENTRY_LOCATION = "lookup-entry-location";
     private static final String GET_LAST_ENTRY_IN_LEDGER = "get-last-entry-in-ledger";
+    private static final String LOCATION_CACHE_HITS = "location-cache-hits";
+    private static final String LOCATION_CACHE_MISSES = "location-cache-misses";
+    private static final String LOCATION_CACHE_SIZE = "location-cache-size";
 
     @StatsDoc(
         name = ENTRIES_COUNT,
@@ -62,8 +66,27 @@ class EntryLocationIndexStats {
     )
     private final OpStatsLogger getLastEntryInLedgerStats;
 
+    @StatsDoc(
+            name = LOCATION_CACHE_HITS,
+            help = "number of entry location lookups served by the location cache"
+    )
+    private final Counter locationCacheHits;
+
+    @StatsDoc(
+            name = LOCATION_CACHE_MISSES,
+            help = "number of entry location lookups not found in the location cache"
+    )
+    private final Counter locationCacheMisses;
+
+    @StatsDoc(
+        name = LOCATION_CACHE_SIZE,
+        help = "Current number of bytes used by the location cache"
+    )
+    private final Gauge<Long> locationCacheSizeGauge;
+
     EntryLocationIndexStats(StatsLogger statsLogger,
-                            Supplier<Long> entriesCountSupplier) {
+                            Supplier<Long> entriesCountSupplier,
+                            Supplier<Long> locationCacheSizeSupplier) {
         entriesCountGauge = new Gauge<Long>() {
             @Override
             public Long getDefaultValue() {
@@ -78,6 +101,20 @@ class EntryLocationIndexStats {
         statsLogger.registerGauge(ENTRIES_COUNT, entriesCountGauge);
         lookupEntryLocationStats = statsLogger.getOpStatsLogger(LOOKUP_ENTRY_LOCATION);
         getLastEntryInLedgerStats = statsLogger.getOpStatsLogger(GET_LAST_ENTRY_IN_LEDGER);
+        locationCacheHits = statsLogger.getCounter(LOCATION_CACHE_HITS);
+        locationCacheMisses = statsLogger.getCounter(LOCATION_CACHE_MISSES);
+        locationCacheSizeGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return locationCacheSizeSupplier.get();
+            }
+        };
+        statsLogger.registerGauge(LOCATION_CACHE_SIZE, locationCacheSizeGauge);
     }
 
 }
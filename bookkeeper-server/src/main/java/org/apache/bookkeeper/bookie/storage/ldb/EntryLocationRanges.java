@@ -0,0 +1,232 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Encoding of the entry location index records in the range format.
+ *
+ * <p>The entries of a ledger are grouped in blocks of {@link #BLOCK_ENTRIES} consecutive entry ids, and each block is
+ * stored in a single record keyed by (ledgerId, first entry id of the block). Looking up an entry is then a point
+ * lookup of the key of its block, which can use the bloom filters of the database.
+ *
+ * <p>The value of a block record is the sequence of the runs of the block, sorted by first entry id. A run stores the
+ * locations of consecutive entries of the ledger, written in the same entry log at increasing offsets:
+ *
+ * <pre>
+ * [first entry offset in the block: 4 bytes][encoded run length: 4 bytes][encoded run]
+ * </pre>
+ *
+ * <p>and an encoded run is:
+ *
+ * <pre>
+ * [first entry location: 8 bytes][entries count: 4 bytes][location delta of each following entry: varint]...
+ * </pre>
+ *
+ * <p>Since the entries of a run are usually adjacent in the entry log, the deltas are the entry sizes and mostly take
+ * 1 or 2 bytes.
+ */
+final class EntryLocationRanges {
+
+    /**
+     * Maximum number of entries in a run, to bound the cost of decoding a location.
+     */
+    static final int MAX_RUN_ENTRIES = 1024;
+
+    /**
+     * Number of entry ids covered by a block record. The runs never cross the boundaries of the blocks.
+     */
+    static final int BLOCK_ENTRIES = MAX_RUN_ENTRIES;
+
+    private static final int HEADER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private static final int RUN_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private EntryLocationRanges() {}
+
+    /**
+     * @return the first entry id of the block holding the given entry
+     */
+    static long blockOf(long entryId) {
+        return entryId & -BLOCK_ENTRIES;
+    }
+
+    /**
+     * @return whether an entry at the given location can follow an entry at the previous location in the same run
+     */
+    static boolean canAppend(long previousLocation, long location) {
+        return (previousLocation >>> 32) == (location >>> 32) && location > previousLocation;
+    }
+
+    /**
+     * Encode the locations in [from, to) of the given array as a run.
+     */
+    static byte[] encode(long[] locations, int from, int to) {
+        byte[] value = new byte[HEADER_SIZE + (to - from - 1) * 5];
+        ArrayUtil.setLong(value, 0, locations[from]);
+        ArrayUtil.setInt(value, Long.BYTES, to - from);
+
+        int idx = HEADER_SIZE;
+        for (int i = from + 1; i < to; i++) {
+            long delta = locations[i] - locations[i - 1];
+            while ((delta & ~0x7FL) != 0) {
+                value[idx++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            value[idx++] = (byte) delta;
+        }
+        return idx == value.length ? value : Arrays.copyOf(value, idx);
+    }
+
+    static int count(byte[] value) {
+        return count(value, 0);
+    }
+
+    private static int count(byte[] value, int runOffset) {
+        return ArrayUtil.getInt(value, runOffset + Long.BYTES);
+    }
+
+    /**
+     * @return the location of the entry at the given position in the run
+     */
+    static long getLocation(byte[] value, int index) {
+        return getLocation(value, 0, index);
+    }
+
+    private static long getLocation(byte[] value, int runOffset, int index) {
+        long location = ArrayUtil.getLong(value, runOffset);
+        int idx = runOffset + HEADER_SIZE;
+        for (int i = 0; i < index; i++) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = value[idx++];
+                delta |= (b & 0x7FL) << shift;
+                shift += 7;
+            } while (b < 0);
+            location += delta;
+        }
+        return location;
+    }
+
+    /**
+     * @return the locations of all the entries of the run
+     */
+    static long[] decode(byte[] value) {
+        return decode(value, 0);
+    }
+
+    private static long[] decode(byte[] value, int runOffset) {
+        long[] locations = new long[count(value, runOffset)];
+        locations[0] = ArrayUtil.getLong(value, runOffset);
+        int idx = runOffset + HEADER_SIZE;
+        for (int i = 1; i < locations.length; i++) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = value[idx++];
+                delta |= (b & 0x7FL) << shift;
+                shift += 7;
+            } while (b < 0);
+            locations[i] = locations[i - 1] + delta;
+        }
+        return locations;
+    }
+
+    /**
+     * Encode the runs of a block, keyed by their first entry id. The runs must not overlap and must be within the
+     * block.
+     */
+    static byte[] encodeBlock(long blockFirstEntryId, SortedMap<Long, long[]> runs) {
+        List<byte[]> encodedRuns = new ArrayList<>(runs.size());
+        int size = 0;
+        for (long[] locations : runs.values()) {
+            byte[] encoded = encode(locations, 0, locations.length);
+            encodedRuns.add(encoded);
+            size += RUN_HEADER_SIZE + encoded.length;
+        }
+
+        byte[] value = new byte[size];
+        int idx = 0;
+        int i = 0;
+        for (long firstEntryId : runs.keySet()) {
+            byte[] encoded = encodedRuns.get(i++);
+            ArrayUtil.setInt(value, idx, (int) (firstEntryId - blockFirstEntryId));
+            ArrayUtil.setInt(value, idx + Integer.BYTES, encoded.length);
+            System.arraycopy(encoded, 0, value, idx + RUN_HEADER_SIZE, encoded.length);
+            idx += RUN_HEADER_SIZE + encoded.length;
+        }
+        return value;
+    }
+
+    /**
+     * @return the location of the entry in the given block, or 0 if the entry is not in any of its runs
+     */
+    static long getLocation(byte[] block, long blockFirstEntryId, long entryId) {
+        int idx = 0;
+        while (idx < block.length) {
+            long firstEntryId = blockFirstEntryId + ArrayUtil.getInt(block, idx);
+            if (entryId < firstEntryId) {
+                // The runs are sorted
+                return 0;
+            }
+
+            int runOffset = idx + RUN_HEADER_SIZE;
+            if (entryId < firstEntryId + count(block, runOffset)) {
+                return getLocation(block, runOffset, (int) (entryId - firstEntryId));
+            }
+            idx = runOffset + ArrayUtil.getInt(block, idx + Integer.BYTES);
+        }
+        return 0;
+    }
+
+    /**
+     * Decode the runs of the given block into the map, keyed by their first entry id.
+     */
+    static void decodeBlock(byte[] block, long blockFirstEntryId, Map<Long, long[]> runs) {
+        int idx = 0;
+        while (idx < block.length) {
+            int runOffset = idx + RUN_HEADER_SIZE;
+            runs.put(blockFirstEntryId + ArrayUtil.getInt(block, idx), decode(block, runOffset));
+            idx = runOffset + ArrayUtil.getInt(block, idx + Integer.BYTES);
+        }
+    }
+
+    /**
+     * @return the id of the last entry of the given block
+     */
+    static long lastEntryId(byte[] block, long blockFirstEntryId) {
+        int idx = 0;
+        int lastRun = 0;
+        while (idx < block.length) {
+            lastRun = idx;
+            idx += RUN_HEADER_SIZE + ArrayUtil.getInt(block, idx + Integer.BYTES);
+        }
+        return blockFirstEntryId + ArrayUtil.getInt(block, lastRun) + count(block, lastRun + RUN_HEADER_SIZE) - 1;
+    }
+}
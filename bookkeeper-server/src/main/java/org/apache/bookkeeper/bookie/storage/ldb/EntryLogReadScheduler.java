@@ -0,0 +1,149 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.common.util.MathUtils;
+
+/**
+ * Serves the entry log reads of a ledger directory on dedicated I/O threads, so that a slow disk does not hold the
+ * threads processing the read requests.
+ *
+ * <p>The reads are queued in a bounded queue. Each I/O thread takes the queued reads in batches and serves them
+ * sorted by location, so that the reads of the same entry log are issued in file order. When the queue is full, the
+ * read is done by the calling thread.
+ */
+class EntryLogReadScheduler {
+
+    private static final int MAX_BATCH_SIZE = 64;
+    // Bounds the time to notice the shutdown. The I/O threads are not interrupted, since an interrupt would close the
+    // file channels of the entry logger.
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private static final Comparator<ReadRequest> BY_LOCATION = Comparator.comparingLong(r -> r.entryLocation);
+
+    private final EntryLogger entryLogger;
+    private final BlockingQueue<ReadRequest> queue;
+    private final Thread[] threads;
+    private final DbLedgerStorageStats stats;
+    private volatile boolean running = true;
+
+    EntryLogReadScheduler(EntryLogger entryLogger, int numThreads, int maxPendingReads, DbLedgerStorageStats stats) {
+        this.entryLogger = entryLogger;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, maxPendingReads));
+        this.stats = stats;
+
+        ThreadFactory threadFactory = new DefaultThreadFactory("db-storage-entrylog-read");
+        this.threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            threads[i] = threadFactory.newThread(this::run);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Read an entry from the entry log on an I/O thread.
+     *
+     * @return a future completed with the entry on the I/O thread, the caller must release the entry
+     */
+    CompletableFuture<ByteBuf> readEntryAsync(long ledgerId, long entryId, long entryLocation) {
+        ReadRequest request = new ReadRequest(ledgerId, entryId, entryLocation);
+        if (!running || !queue.offer(request)) {
+            stats.getReadEntryLogAsyncRejectedCounter().inc();
+            request.read();
+        }
+        return request.future;
+    }
+
+    private void run() {
+        List<ReadRequest> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        try {
+            while (running) {
+                ReadRequest first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                batch.sort(BY_LOCATION);
+
+                for (int i = 0; i < batch.size(); i++) {
+                    ReadRequest request = batch.get(i);
+                    stats.getReadEntryLogAsyncQueueStats().registerSuccessfulEvent(
+                            MathUtils.elapsedNanos(request.enqueueNanos), TimeUnit.NANOSECONDS);
+                    request.read();
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void shutdown() throws InterruptedException {
+        running = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        ReadRequest request;
+        while ((request = queue.poll()) != null) {
+            request.future.completeExceptionally(new IOException("Entry log read scheduler is shut down"));
+        }
+    }
+
+    private class ReadRequest {
+        final long ledgerId;
+        final long entryId;
+        final long entryLocation;
+        final long enqueueNanos;
+        final CompletableFuture<ByteBuf> future = new CompletableFuture<>();
+
+        ReadRequest(long ledgerId, long entryId, long entryLocation) {
+            this.ledgerId = ledgerId;
+            this.entryId = entryId;
+            this.entryLocation = entryLocation;
+            this.enqueueNanos = MathUtils.nowInNano();
+        }
+
+        void read() {
+            ByteBuf entry;
+            try {
+                entry = entryLogger.readEntry(ledgerId, entryId, entryLocation);
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+                return;
+            }
+            future.complete(entry);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.concurrent.Executor;
+
+/**
+ * Read cache policy that admits every entry into a single {@link ReadCache}, evicting the oldest
+ * segment first.
+ */
+class FifoReadCachePolicy implements ReadCachePolicy {
+
+    private final ReadCache readCache;
+    private final DbLedgerStorageStats stats;
+
+    FifoReadCachePolicy(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, boolean zeroCopyReads,
+                        Executor purgeExecutor, DbLedgerStorageStats stats) {
+        this.readCache = new ReadCache(allocator, maxCacheSize, maxSegmentSize, zeroCopyReads, purgeExecutor,
+                stats.getReadCacheDroppedPutsCounter(),
+                stats.getReadCacheRetiredSizeCounter());
+        this.stats = stats;
+    }
+
+    @Override
+    public void put(long ledgerId, long entryId, ByteBuf entry, Source source) {
+        readCache.put(ledgerId, entryId, entry);
+        stats.getReadCacheInsertCounter(source).inc();
+    }
+
+    @Override
+    public ByteBuf get(long ledgerId, long entryId, Source source) {
+        ByteBuf entry = readCache.get(ledgerId, entryId);
+        if (entry != null) {
+            stats.getReadCacheHitCounter(source).inc();
+        } else {
+            stats.getReadCacheMissCounter(source).inc();
+        }
+        return entry;
+    }
+
+    @Override
+    public boolean hasEntry(long ledgerId, long entryId) {
+        return readCache.hasEntry(ledgerId, entryId);
+    }
+
+    @Override
+    public long size() {
+        return readCache.size();
+    }
+
+    @Override
+    public long count() {
+        return readCache.count();
+    }
+
+    @Override
+    public void close() {
+        readCache.close();
+    }
+}
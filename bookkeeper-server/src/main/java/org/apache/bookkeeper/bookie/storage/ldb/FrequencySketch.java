@@ -0,0 +1,109 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Count-min sketch estimating the access frequency of (ledgerId, entryId) pairs, in the style of
+ * TinyLFU.
+ *
+ * <p>Counters saturate at {@link #MAX_FREQUENCY} and all of them are halved every time the number of
+ * recorded accesses reaches a sample size proportional to the sketch width, so that the sketch
+ * reflects the recent accesses. Updates are lock-free and the estimate is approximate.
+ */
+class FrequencySketch {
+
+    static final int DEFAULT_WIDTH = 64 * 1024;
+
+    static final int MAX_FREQUENCY = 15;
+
+    private static final int DEPTH = 4;
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private final AtomicIntegerArray counters;
+    private final int widthMask;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger(0);
+
+    FrequencySketch(int width) {
+        checkArgument(width > 0 && Integer.bitCount(width) == 1, "Width needs to be in form of 2^n");
+        this.counters = new AtomicIntegerArray(DEPTH * width);
+        this.widthMask = width - 1;
+        this.sampleSize = 10 * width;
+    }
+
+    /**
+     * Record an access and return the updated frequency estimate.
+     */
+    int increment(long ledgerId, long entryId) {
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            int idx = indexOf(i, ledgerId, entryId);
+            int value;
+            while (true) {
+                value = counters.get(idx);
+                if (value >= MAX_FREQUENCY || counters.compareAndSet(idx, value, value + 1)) {
+                    break;
+                }
+            }
+            frequency = Math.min(frequency, Math.min(value + 1, MAX_FREQUENCY));
+        }
+
+        if (additions.incrementAndGet() == sampleSize) {
+            reset();
+        }
+        return frequency;
+    }
+
+    int frequency(long ledgerId, long entryId) {
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, counters.get(indexOf(i, ledgerId, entryId)));
+        }
+        return frequency;
+    }
+
+    /**
+     * Age the sketch by halving all the counters.
+     */
+    private void reset() {
+        additions.set(0);
+        for (int i = 0; i < counters.length(); i++) {
+            int value;
+            do {
+                value = counters.get(i);
+            } while (!counters.compareAndSet(i, value, value >>> 1));
+        }
+    }
+
+    private int indexOf(int row, long ledgerId, long entryId) {
+        long hash = (ledgerId * 31 + entryId) * SEEDS[row];
+        hash ^= hash >>> 32;
+        return row * (widthMask + 1) + ((int) hash & widthMask);
+    }
+}
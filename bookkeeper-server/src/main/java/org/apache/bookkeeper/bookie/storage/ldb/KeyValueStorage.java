@@ -22,7 +22,9 @@ package org.apache.bookkeeper.bookie.storage.ldb;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.AbstractMap;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 
 /**
  * Abstraction of a generic key-value local database.
@@ -142,6 +144,52 @@ public interface KeyValueStorage extends Closeable {
      */
     CloseableIterator<Entry<byte[], byte[]>> iterator();
 
+    /**
+     * Get an iterator over to scan sequentially through all the entries within a
+     * specified range.
+     *
+     * <p>By default the values of the {@link #keys(byte[], byte[])} in the range are looked up one by one.
+     *
+     * @param firstKey
+     *            the first key in the range (included)
+     * @param lastKey
+     *            the lastKey in the range (not included)
+     */
+    default CloseableIterator<Entry<byte[], byte[]>> iterator(byte[] firstKey, byte[] lastKey) {
+        CloseableIterator<byte[]> keys = keys(firstKey, lastKey);
+        return new CloseableIterator<Entry<byte[], byte[]>>() {
+            private Entry<byte[], byte[]> next = null;
+
+            @Override
+            public boolean hasNext() throws IOException {
+                while (next == null && keys.hasNext()) {
+                    byte[] key = keys.next();
+                    byte[] value = get(key);
+                    if (value != null) {
+                        // Skip the keys deleted since they were listed
+                        next = new AbstractMap.SimpleImmutableEntry<>(key, value);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Entry<byte[], byte[]> next() throws IOException {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Entry<byte[], byte[]> entry = next;
+                next = null;
+                return entry;
+            }
+
+            @Override
+            public void close() throws IOException {
+                keys.close();
+            }
+        };
+    }
+
     /**
      * Commit all pending write to durable storage.
      */
@@ -0,0 +1,150 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.commons.lang3.time.DurationFormatUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Convert the locations index to the per-entry or to the range format, by copying all the locations into a new index.
+ */
+public class LocationsIndexConvertOp {
+    private final ServerConfiguration conf;
+    private final String format;
+
+    public LocationsIndexConvertOp(ServerConfiguration conf, String format) {
+        this.conf = conf;
+        this.format = format;
+    }
+
+    private static final int BATCH_COMMIT_SIZE = 10_000;
+
+    public void initiate() throws IOException {
+        if (!EntryLocationIndex.FORMAT_ENTRY.equals(format) && !EntryLocationIndex.FORMAT_RANGE.equals(format)) {
+            throw new IllegalArgumentException("Unknown entry location index format: " + format);
+        }
+
+        LOG.info("Starting locations index conversion to the {} format", format);
+        File[] indexDirs = conf.getIndexDirs();
+        if (indexDirs == null) {
+            indexDirs = conf.getLedgerDirs();
+        }
+        long startTime = System.nanoTime();
+
+        ServerConfiguration newIndexConf = new ServerConfiguration(conf);
+        newIndexConf.setProperty(DbLedgerStorage.ENTRY_LOCATION_INDEX_FORMAT, format);
+        newIndexConf.setProperty(DbLedgerStorage.ENTRY_LOCATION_CACHE_MAX_SIZE_MB, 0);
+
+        for (File indexDir : indexDirs) {
+            String iBasePath = BookieImpl.getCurrentDirectory(indexDir).toString();
+
+            String currentFormat;
+            try (KeyValueStorage currentIndex = KeyValueStorageRocksDB.factory.newKeyValueStorage(iBasePath,
+                    "locations", DbConfigType.EntryLocation, conf)) {
+                currentFormat = EntryLocationIndex.getFormat(currentIndex);
+            }
+            if (currentFormat == null || currentFormat.equals(format)) {
+                LOG.info("Locations index at {} already uses the {} format", iBasePath, format);
+                continue;
+            }
+
+            // Move locations index to a backup directory
+            Path indexCurrentPath = FileSystems.getDefault().getPath(iBasePath, "locations");
+            String timestamp = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(new Date());
+            String backupName = "locations.BACKUP-" + timestamp;
+            Path backupPath = FileSystems.getDefault().getPath(iBasePath, backupName);
+            Files.move(indexCurrentPath, backupPath);
+
+            LOG.info("Created locations index backup at {}", backupPath);
+
+            boolean rangeSource = EntryLocationIndex.FORMAT_RANGE.equals(currentFormat);
+            long convertedEntries = 0;
+            try (KeyValueStorage oldIndex = KeyValueStorageRocksDB.factory.newKeyValueStorage(iBasePath, backupName,
+                    DbConfigType.EntryLocation, conf);
+                 EntryLocationIndex newIndex = new EntryLocationIndex(newIndexConf, KeyValueStorageRocksDB.factory,
+                         iBasePath, NullStatsLogger.INSTANCE);
+                 Batch batch = newIndex.newBatch();
+                 CloseableIterator<Entry<byte[], byte[]>> iterator = oldIndex.iterator()) {
+                // Runs of the current block of the range source, by first entry id
+                TreeMap<Long, long[]> runs = new TreeMap<>();
+                int count = 0;
+                while (iterator.hasNext()) {
+                    Entry<byte[], byte[]> record = iterator.next();
+                    if (EntryLocationIndex.isFormatKey(record.getKey())) {
+                        continue;
+                    }
+
+                    long ledgerId = ArrayUtil.getLong(record.getKey(), 0);
+                    long entryId = ArrayUtil.getLong(record.getKey(), 8);
+                    if (rangeSource) {
+                        runs.clear();
+                        EntryLocationRanges.decodeBlock(record.getValue(), entryId, runs);
+                        for (Entry<Long, long[]> run : runs.entrySet()) {
+                            long[] locations = run.getValue();
+                            for (int i = 0; i < locations.length; i++) {
+                                newIndex.addLocation(batch, ledgerId, run.getKey() + i, locations[i]);
+                            }
+                            count += locations.length;
+                        }
+                    } else {
+                        newIndex.addLocation(batch, ledgerId, entryId, ArrayUtil.getLong(record.getValue(), 0));
+                        count++;
+                    }
+
+                    if (count > BATCH_COMMIT_SIZE) {
+                        batch.flush();
+                        batch.clear();
+                        convertedEntries += count;
+                        count = 0;
+                    }
+                }
+
+                batch.flush();
+                convertedEntries += count;
+            }
+
+            LOG.info("Converted {} entry locations at {} from the {} format", convertedEntries, iBasePath,
+                    currentFormat);
+        }
+        LOG.info("Converting index is done. Total time: {}",
+                DurationFormatUtils.formatDurationHMS(
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)));
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(LocationsIndexConvertOp.class);
+}
@@ -37,7 +37,6 @@ import org.apache.bookkeeper.bookie.BookieImpl;
 import org.apache.bookkeeper.bookie.DefaultEntryLogger;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
 import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
-import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.util.DiskChecker;
@@ -88,8 +87,9 @@ public class LocationsIndexRebuildOp {
             Set<Long> activeLedgers = getActiveLedgers(conf, KeyValueStorageRocksDB.factory, iBasePath);
             LOG.info("Found {} active ledgers in ledger manager", activeLedgers.size());
 
-            KeyValueStorage newIndex = KeyValueStorageRocksDB.factory.newKeyValueStorage(iBasePath, "locations",
-                    DbConfigType.Default, conf);
+            // Rebuild the index in the configured format
+            EntryLocationIndex newIndex = new EntryLocationIndex(conf, KeyValueStorageRocksDB.factory, iBasePath,
+                    NullStatsLogger.INSTANCE);
 
             int totalEntryLogs = entryLogs.size();
             int completedEntryLogs = 0;
@@ -112,15 +112,7 @@ public class LocationsIndexRebuildOp {
                         }
 
                         // Update the ledger index page
-                        LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
-                        LongWrapper value = LongWrapper.get(location);
-
-                        try {
-                            batch.get().put(key.array, value.array);
-                        } finally {
-                            key.recycle();
-                            value.recycle();
-                        }
+                        newIndex.addLocation(batch.get(), ledgerId, entryId, location);
 
                         if (count.incrementAndGet() > BATCH_COMMIT_SIZE) {
                             batch.get().flush();
@@ -145,7 +137,6 @@ public class LocationsIndexRebuildOp {
             batch.get().flush();
             batch.get().close();
 
-            newIndex.sync();
             newIndex.close();
         }
         LOG.info("Rebuilding index is done. Total time: {}",
@@ -0,0 +1,120 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.concurrent.Executor;
+
+/**
+ * Scan resistant read cache policy.
+ *
+ * <p>The cache memory is split between a main cache and a smaller probation cache. Entries read by
+ * tail readers are admitted in the main cache, while entries loaded by read-ahead or read by
+ * catch-up readers are admitted in the probation cache, so that a reader scanning an old ledger
+ * only churns the probation cache and does not flush the working set of the tail readers.
+ *
+ * <p>A {@link FrequencySketch} records the lookups of the entries missing from the main cache, whether
+ * they hit the probation cache or miss both caches. An entry is moved from the probation cache to the
+ * main cache when it is hit by a tail read or when it is accessed frequently. Since the sketch keeps
+ * the history of the entries after they are evicted, a frequently read entry that was evicted before
+ * being promoted is admitted in the main cache directly when it is loaded again.
+ */
+class ProbationReadCachePolicy implements ReadCachePolicy {
+
+    // Number of probation hits after which an entry is promoted to the main cache
+    private static final int PROMOTION_FREQUENCY = 2;
+
+    private final ReadCache mainCache;
+    private final ReadCache probationCache;
+    private final FrequencySketch sketch;
+    private final DbLedgerStorageStats stats;
+
+    ProbationReadCachePolicy(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, double probationRatio,
+                             boolean zeroCopyReads, Executor purgeExecutor, DbLedgerStorageStats stats) {
+        long probationCacheSize = (long) (maxCacheSize * probationRatio);
+        this.mainCache = new ReadCache(allocator, maxCacheSize - probationCacheSize, maxSegmentSize, zeroCopyReads,
+                purgeExecutor, stats.getReadCacheDroppedPutsCounter(),
+                stats.getReadCacheRetiredSizeCounter());
+        this.probationCache = new ReadCache(allocator, probationCacheSize, maxSegmentSize, zeroCopyReads,
+                purgeExecutor, stats.getReadCacheDroppedPutsCounter(),
+                stats.getReadCacheRetiredSizeCounter());
+        this.sketch = new FrequencySketch(FrequencySketch.DEFAULT_WIDTH);
+        this.stats = stats;
+    }
+
+    @Override
+    public void put(long ledgerId, long entryId, ByteBuf entry, Source source) {
+        if (source == Source.TAIL || sketch.frequency(ledgerId, entryId) >= PROMOTION_FREQUENCY) {
+            mainCache.put(ledgerId, entryId, entry);
+        } else {
+            probationCache.put(ledgerId, entryId, entry);
+        }
+        stats.getReadCacheInsertCounter(source).inc();
+    }
+
+    @Override
+    public ByteBuf get(long ledgerId, long entryId, Source source) {
+        ByteBuf entry = mainCache.get(ledgerId, entryId);
+        if (entry != null) {
+            stats.getReadCacheHitCounter(source).inc();
+            return entry;
+        }
+
+        int frequency = sketch.increment(ledgerId, entryId);
+        entry = probationCache.get(ledgerId, entryId);
+        if (entry == null) {
+            stats.getReadCacheMissCounter(source).inc();
+            return null;
+        }
+
+        // The entry was speculatively loaded in the probation cache
+        stats.getReadCacheHitCounter(source).inc();
+        if (source == Source.TAIL || frequency >= PROMOTION_FREQUENCY) {
+            mainCache.put(ledgerId, entryId, entry);
+            if (mainCache.hasEntry(ledgerId, entryId)) {
+                probationCache.remove(ledgerId, entryId);
+            }
+        }
+        return entry;
+    }
+
+    @Override
+    public boolean hasEntry(long ledgerId, long entryId) {
+        return mainCache.hasEntry(ledgerId, entryId) || probationCache.hasEntry(ledgerId, entryId);
+    }
+
+    @Override
+    public long size() {
+        return mainCache.size() + probationCache.size();
+    }
+
+    @Override
+    public long count() {
+        return mainCache.count() + probationCache.count();
+    }
+
+    @Override
+    public void close() {
+        mainCache.close();
+        probationCache.close();
+    }
+}
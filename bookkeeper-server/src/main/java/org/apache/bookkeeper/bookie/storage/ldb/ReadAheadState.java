@@ -0,0 +1,79 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the read pattern of a single ledger to size its read-ahead batches.
+ *
+ * <p>A cache miss that lands inside, or right after, the window covered by the previous read-ahead is a sign of a
+ * sequential reader that consumed the prefetched entries: the next batch is doubled, up to the maximum. Any other
+ * miss is considered random access and halves the batch, down to the minimum.
+ */
+class ReadAheadState {
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+
+    private int batchSize;
+
+    // Window [firstEntryId, lastEntryId] covered by the last read-ahead
+    private long firstEntryId = -1;
+    private long lastEntryId = -1;
+
+    private volatile long lastAccessed;
+
+    ReadAheadState(int initialBatchSize, int minBatchSize, int maxBatchSize) {
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.batchSize = Math.max(minBatchSize, Math.min(initialBatchSize, maxBatchSize));
+        this.lastAccessed = System.currentTimeMillis();
+    }
+
+    /**
+     * Record a read-ahead cache miss on the given entry and return the number of entries to read ahead after it.
+     */
+    synchronized int onCacheMiss(long entryId) {
+        lastAccessed = System.currentTimeMillis();
+        if (firstEntryId >= 0) {
+            if (entryId >= firstEntryId && entryId <= lastEntryId + batchSize) {
+                batchSize = Math.min(batchSize * 2, maxBatchSize);
+            } else {
+                batchSize = Math.max(batchSize / 2, minBatchSize);
+            }
+        }
+        return batchSize;
+    }
+
+    /**
+     * Record the range of entries that were loaded by a read-ahead.
+     */
+    synchronized void onReadAhead(long firstEntryId, int count) {
+        this.firstEntryId = firstEntryId;
+        this.lastEntryId = firstEntryId + Math.max(count, 1) - 1;
+    }
+
+    boolean isStale() {
+        return (lastAccessed + TimeUnit.MINUTES.toMillis(TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES))
+                < System.currentTimeMillis();
+    }
+}
@@ -22,15 +22,19 @@ package org.apache.bookkeeper.bookie.storage.ldb;
 
 import static org.apache.bookkeeper.bookie.storage.ldb.WriteCache.align64;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.MoreExecutors;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.util.ReferenceCountUtil;
 import java.io.Closeable;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
 import org.slf4j.Logger;
@@ -45,186 +49,369 @@ import org.slf4j.LoggerFactory;
  * ring-buffer fashion. When the read cache is full, the oldest segment
  * is cleared and rotated to make space for new entries to be added to
  * the read cache.
+ *
+ * <p>All the segments share a single index, that maps each (ledgerId, entryId)
+ * to the generation of the segment holding the entry and to its position in
+ * the segment. Every rotation assigns a new generation to the segment being
+ * reused, so the index entries pointing to the previous content of that segment
+ * become stale and are lazily discarded when they are looked up. The stale
+ * entries that are never looked up are purged once every full cycle of the
+ * ring, by the purge executor so that the put performing the rotation does
+ * not scan the index. Both hits and misses are a single hash lookup, regardless of the
+ * number of segments.
+ *
+ * <p>Puts and gets never take a lock. Every operation on a segment registers
+ * itself in the segment in-flight counter. When the oldest segment needs to be
+ * reused, the thread performing the rotation marks it as recycling, so that no
+ * new operation can enter it, and waits for the grace period where the ongoing
+ * operations on that segment are completed before clearing it and publishing it
+ * as the current segment. Puts that find a rotation already in progress are
+ * skipped, since the cache is best-effort, and counted as dropped.
+ *
+ * <p>When zero-copy reads are enabled, cache hits return a retained slice of
+ * the segment instead of a copy. Each slice holds a reference on its segment
+ * buffer, so a segment that still has outstanding slices when it gets rotated
+ * is retired and replaced with a fresh buffer: the retired memory is released
+ * only after the last slice has been released. Once the retired memory exceeds
+ * one segment, the hits are copied until enough slices are released.
  */
 public class ReadCache implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(ReadCache.class);
 
     private static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
 
-    private final List<ByteBuf> cacheSegments;
-    private final List<ConcurrentLongLongPairHashMap> cacheIndexes;
+    private final Segment[] segments;
 
-    private int currentSegmentIdx;
-    private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
+    // (ledgerId, entryId) -> (segment generation, offset << 32 | size)
+    private final ConcurrentLongLongPairHashMap index;
+
+    // Generation of the current segment. The segment holding generation g is always at position g % segments.length
+    private volatile long currentGeneration = 0;
+    private final AtomicBoolean rotationInProgress = new AtomicBoolean(false);
+    private final AtomicBoolean purgeInProgress = new AtomicBoolean(false);
 
     private final int segmentSize;
 
     private ByteBufAllocator allocator;
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final boolean zeroCopyReads;
+
+    private final Executor purgeExecutor;
+
+    // Puts skipped because another thread was rotating the segments
+    private final Counter droppedPutsCounter;
+
+    // Segments detached by the rotations while zero-copy slices were still referencing them
+    private final RetiredSegments retiredSegments;
+
+    /**
+     * A segment of the read cache.
+     */
+    private static final class Segment {
+        volatile ByteBuf buffer;
+        volatile long generation;
+        final AtomicInteger offset = new AtomicInteger(0);
+        final AtomicInteger entriesCount = new AtomicInteger(0);
+
+        // Number of operations currently accessing the segment
+        final AtomicInteger inFlight = new AtomicInteger(0);
+
+        // Set while the segment is being cleared, to prevent new operations from accessing it
+        volatile boolean recycling = false;
+
+        Segment(int segmentSize, long generation) {
+            this.buffer = Unpooled.directBuffer(segmentSize, segmentSize);
+            this.generation = generation;
+        }
+
+        boolean enter() {
+            inFlight.incrementAndGet();
+            if (recycling) {
+                inFlight.decrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        void exit() {
+            inFlight.decrementAndGet();
+        }
+    }
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize) {
         this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
     }
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, false);
+    }
+
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, boolean zeroCopyReads) {
+        this(allocator, maxCacheSize, maxSegmentSize, zeroCopyReads, MoreExecutors.directExecutor(),
+                NullStatsLogger.INSTANCE.getCounter("read-cache-dropped-puts"),
+                NullStatsLogger.INSTANCE.getCounter("read-cache-retired-size"));
+    }
+
+    /**
+     * @param purgeExecutor executor purging the stale entries from the index, after the rotations
+     * @param droppedPutsCounter counter of the entries not inserted because they raced with a rotation
+     * @param retiredSizeCounter size of the rotated segments kept alive by zero-copy slices
+     */
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, boolean zeroCopyReads,
+                     Executor purgeExecutor, Counter droppedPutsCounter, Counter retiredSizeCounter) {
         this.allocator = allocator;
+        this.zeroCopyReads = zeroCopyReads;
+        this.purgeExecutor = purgeExecutor;
+        this.droppedPutsCounter = droppedPutsCounter;
         int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
         segmentSize = (int) (maxCacheSize / segmentsCount);
+        // Beyond one segment of retired memory, the hits are copied instead of sliced
+        retiredSegments = new RetiredSegments(segmentSize, retiredSizeCounter);
 
-        cacheSegments = new ArrayList<>();
-        cacheIndexes = new ArrayList<>();
-
+        segments = new Segment[segmentsCount];
         for (int i = 0; i < segmentsCount; i++) {
-            cacheSegments.add(Unpooled.directBuffer(segmentSize, segmentSize));
-            ConcurrentLongLongPairHashMap concurrentLongLongPairHashMap = ConcurrentLongLongPairHashMap.newBuilder()
-                    .expectedItems(4096)
-                    .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
-                    .build();
-            cacheIndexes.add(concurrentLongLongPairHashMap);
+            // Only the first segment is live, the others will get a valid generation when they are rotated in
+            segments[i] = new Segment(segmentSize, i == 0 ? 0 : -1);
         }
+
+        index = ConcurrentLongLongPairHashMap.newBuilder()
+                .expectedItems(4096 * segmentsCount)
+                .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                .build();
     }
 
     @Override
     public void close() {
-        cacheSegments.forEach(ReferenceCountUtil::safeRelease);
+        for (Segment segment : segments) {
+            ReferenceCountUtil.safeRelease(segment.buffer);
+        }
     }
 
     public void put(long ledgerId, long entryId, ByteBuf entry) {
         int entrySize = entry.readableBytes();
         int alignedSize = align64(entrySize);
 
-        lock.readLock().lock();
+        if (entrySize > segmentSize) {
+            log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
+            return;
+        }
+
+        // At most one rotation is attempted by each put
+        for (int attempt = 0; attempt < 2; attempt++) {
+            long generation = currentGeneration;
+            Segment segment = segmentFor(generation);
+            if (segment.enter()) {
+                try {
+                    int offset = segment.offset.getAndAdd(alignedSize);
+                    if (segment.generation == generation && offset >= 0 && offset <= segmentSize - entrySize) {
+                        // Copy entry into read cache segment
+                        segment.buffer.setBytes(offset, entry, entry.readerIndex(), entrySize);
+                        segment.entriesCount.incrementAndGet();
+                        index.put(ledgerId, entryId, generation, position(offset, entrySize));
+                        return;
+                    }
+                } finally {
+                    segment.exit();
+                }
+            }
+
+            if (!rotateSegment(generation)) {
+                // Another thread is rotating the segments, skip inserting this entry
+                break;
+            }
+        }
+        droppedPutsCounter.inc();
+    }
+
+    /**
+     * Roll-over to the next segment, if the current generation is still the one that was found full.
+     *
+     * @return false if another thread is already performing the rotation
+     */
+    private boolean rotateSegment(long fullGeneration) {
+        if (!rotationInProgress.compareAndSet(false, true)) {
+            return false;
+        }
 
+        long newGeneration;
         try {
-            if (entrySize > segmentSize) {
-                log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
-                return;
+            if (currentGeneration != fullGeneration) {
+                // Segments were already rotated
+                return true;
             }
-            int offset = currentSegmentOffset.getAndAdd(alignedSize);
-            if (offset + entrySize > segmentSize) {
-                // Roll-over the segment (outside the read-lock)
-            } else {
-                // Copy entry into read cache segment
-                cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(),
-                        entry.readableBytes());
-                cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
-                return;
+
+            newGeneration = fullGeneration + 1;
+            Segment next = segmentFor(newGeneration);
+
+            // Prevent new operations from accessing the segment and wait for the grace period where all the
+            // ongoing operations are completed
+            next.recycling = true;
+            while (next.inFlight.get() > 0) {
+                Thread.yield();
             }
+
+            // All the index entries pointing to the old generation of this segment are now stale
+            next.generation = newGeneration;
+            next.entriesCount.set(0);
+            ByteBuf buffer = next.buffer;
+            if (buffer.refCnt() > 1) {
+                // There are still slices pointing into the segment, detach it so that it will be freed when the last
+                // slice gets released
+                next.buffer = Unpooled.directBuffer(segmentSize, segmentSize);
+                buffer.release();
+                retiredSegments.retire(buffer);
+            }
+            next.offset.set(0);
+            next.recycling = false;
+
+            currentGeneration = newGeneration;
         } finally {
-            lock.readLock().unlock();
+            rotationInProgress.set(false);
         }
 
-        // We could not insert in segment, we to get the write lock and roll-over to
-        // next segment
-        lock.writeLock().lock();
+        if (newGeneration % segments.length == 0) {
+            // Once per cycle of the ring, remove the stale entries that were never looked up
+            schedulePurge(newGeneration - segments.length + 1);
+        }
+        return true;
+    }
+
+    private void schedulePurge(long oldestLiveGeneration) {
+        if (!purgeInProgress.compareAndSet(false, true)) {
+            // The entries left by a purge still running are purged in the next cycle
+            return;
+        }
 
         try {
-            int offset = currentSegmentOffset.getAndAdd(entrySize);
-            if (offset + entrySize > segmentSize) {
-                // Rollover to next segment
-                currentSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.size();
-                currentSegmentOffset.set(alignedSize);
-                cacheIndexes.get(currentSegmentIdx).clear();
-                offset = 0;
-            }
+            purgeExecutor.execute(() -> purgeStaleEntries(oldestLiveGeneration));
+        } catch (RejectedExecutionException e) {
+            purgeInProgress.set(false);
+        }
+    }
 
-            // Copy entry into read cache segment
-            cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(), entry.readableBytes());
-            cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
+    private void purgeStaleEntries(long oldestLiveGeneration) {
+        try {
+            int removed = index.removeIf((ledgerId, entryId, generation, position) ->
+                    generation < oldestLiveGeneration);
+            if (log.isDebugEnabled()) {
+                log.debug("Removed {} stale entries from read cache index", removed);
+            }
         } finally {
-            lock.writeLock().unlock();
+            purgeInProgress.set(false);
         }
     }
 
     public ByteBuf get(long ledgerId, long entryId) {
-        lock.readLock().lock();
+        LongPair res = index.get(ledgerId, entryId);
+        if (res == null) {
+            // Entry not found in any segment
+            return null;
+        }
 
-        try {
-            // We need to check all the segments, starting from the current one and looking
-            // backward to minimize the
-            // checks for recently inserted entries
-            int size = cacheSegments.size();
-            for (int i = 0; i < size; i++) {
-                int segmentIdx = (currentSegmentIdx + (size - i)) % size;
-
-                LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
-                if (res != null) {
-                    int entryOffset = (int) res.first;
+        long generation = res.first;
+        Segment segment = segmentFor(generation);
+        if (segment.enter()) {
+            try {
+                if (segment.generation == generation) {
+                    int entryOffset = (int) (res.second >>> 32);
                     int entryLen = (int) res.second;
 
+                    if (zeroCopyReads && retiredSegments.allowSlices()) {
+                        // The slice keeps the segment alive until it is released
+                        return segment.buffer.retainedSlice(entryOffset, entryLen);
+                    }
+
                     ByteBuf entry = allocator.buffer(entryLen, entryLen);
-                    entry.writeBytes(cacheSegments.get(segmentIdx), entryOffset, entryLen);
+                    entry.writeBytes(segment.buffer, entryOffset, entryLen);
                     return entry;
                 }
+            } finally {
+                segment.exit();
             }
-        } finally {
-            lock.readLock().unlock();
         }
 
-        // Entry not found in any segment
+        // The segment was rotated, the entry is no longer in the cache
+        index.remove(ledgerId, entryId, res.first, res.second);
         return null;
     }
 
-    public boolean hasEntry(long ledgerId, long entryId) {
-        lock.readLock().lock();
-
-        try {
-            int size = cacheSegments.size();
-            for (int i = 0; i < size; i++) {
-                int segmentIdx = (currentSegmentIdx + (size - i)) % size;
+    /**
+     * Remove an entry from the index. Its space in the segment is reclaimed when the segment is rotated.
+     */
+    public void remove(long ledgerId, long entryId) {
+        LongPair res = index.get(ledgerId, entryId);
+        if (res == null || !index.remove(ledgerId, entryId, res.first, res.second)) {
+            return;
+        }
 
-                LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
-                if (res != null) {
-                    return true;
+        Segment segment = segmentFor(res.first);
+        if (segment.enter()) {
+            try {
+                if (segment.generation == res.first) {
+                    segment.entriesCount.decrementAndGet();
                 }
+            } finally {
+                segment.exit();
             }
-        } finally {
-            lock.readLock().unlock();
         }
+    }
+
+    public boolean hasEntry(long ledgerId, long entryId) {
+        LongPair res = index.get(ledgerId, entryId);
+        return res != null && segmentFor(res.first).generation == res.first;
+    }
 
-        // Entry not found in any segment
-        return false;
+    private Segment segmentFor(long generation) {
+        return segments[(int) (generation % segments.length)];
+    }
+
+    private static long position(int offset, int size) {
+        return ((long) offset << 32) | size;
     }
 
     /**
      * @return the total size of cached entries
      */
     public long size() {
-        lock.readLock().lock();
-
-        try {
-            long size = 0;
-            for (int i = 0; i < cacheIndexes.size(); i++) {
-                if (i == currentSegmentIdx) {
-                    size += currentSegmentOffset.get();
-                } else if (!cacheIndexes.get(i).isEmpty()) {
-                    size += segmentSize;
-                } else {
-                    // the segment is empty
-                }
+        long size = 0;
+        Segment current = segmentFor(currentGeneration);
+        for (Segment segment : segments) {
+            if (segment == current) {
+                size += Math.min(segment.offset.get(), segmentSize);
+            } else if (segment.entriesCount.get() > 0) {
+                size += segmentSize;
+            } else {
+                // the segment is empty
             }
-
-            return size;
-        } finally {
-            lock.readLock().unlock();
         }
+
+        return size;
     }
 
     /**
-     * @return the total number of cached entries
+     * @return the size of the rotated segments that are still referenced by zero-copy slices
      */
-    public long count() {
-        lock.readLock().lock();
+    public long retiredSize() {
+        return retiredSegments.size();
+    }
 
-        try {
-            long count = 0;
-            for (int i = 0; i < cacheIndexes.size(); i++) {
-                count += cacheIndexes.get(i).size();
-            }
+    /**
+     * @return the number of entries of the index, including the stale ones not purged yet
+     */
+    @VisibleForTesting
+    long indexSize() {
+        return index.size();
+    }
 
-            return count;
-        } finally {
-            lock.readLock().unlock();
+    /**
+     * @return the total number of cached entries
+     */
+    public long count() {
+        long count = 0;
+        for (Segment segment : segments) {
+            count += segment.entriesCount.get();
         }
+
+        return count;
     }
 }
@@ -0,0 +1,87 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import java.io.Closeable;
+
+/**
+ * Policy that decides where the entries read from the entry logs are cached and how they are
+ * looked up, so that different admission and eviction strategies can be plugged into
+ * {@link SingleDirectoryDbLedgerStorage}.
+ */
+public interface ReadCachePolicy extends Closeable {
+
+    /**
+     * The kind of read that is inserting or looking up an entry.
+     */
+    enum Source {
+        /**
+         * Read close to the last add confirmed of the ledger.
+         */
+        TAIL("tail"),
+        /**
+         * Read of older entries of a ledger, eg: a reader replaying the ledger.
+         */
+        CATCH_UP("catch-up"),
+        /**
+         * Entry speculatively loaded after a cache miss. Only used to insert entries.
+         */
+        READ_AHEAD("read-ahead");
+
+        private final String label;
+
+        Source(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * Offer an entry to the cache. The policy may decide to not store it.
+     */
+    void put(long ledgerId, long entryId, ByteBuf entry, Source source);
+
+    /**
+     * Look up an entry, for a read of the given source: {@link Source#TAIL} or {@link Source#CATCH_UP}.
+     *
+     * @return the cached entry or null if the entry is not in the cache
+     */
+    ByteBuf get(long ledgerId, long entryId, Source source);
+
+    boolean hasEntry(long ledgerId, long entryId);
+
+    /**
+     * @return the total size of cached entries
+     */
+    long size();
+
+    /**
+     * @return the total number of cached entries
+     */
+    long count();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,102 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.stats.Counter;
+
+/**
+ * Tracks the cache segments that were detached from a cache while zero-copy slices still referenced them.
+ *
+ * <p>A retired segment is freed when its last slice is released. To bound the memory held by the retired
+ * segments, the caches stop returning slices once it exceeds the given limit and copy the entries instead,
+ * until enough slices are released.
+ *
+ * <p>The freed segments are accounted lazily, on the next retirement or on the reads while over the limit.
+ */
+class RetiredSegments {
+
+    private final long maxRetiredSize;
+    private final Counter retiredSizeCounter;
+
+    // ByteBuf equality compares the content, the segments are queued in holders compared by identity
+    private static final class Segment {
+        final ByteBuf buffer;
+        final int size;
+
+        Segment(ByteBuf buffer) {
+            this.buffer = buffer;
+            this.size = buffer.capacity();
+        }
+    }
+
+    private final Queue<Segment> segments = new ConcurrentLinkedQueue<>();
+    private final AtomicLong retiredSize = new AtomicLong(0);
+
+    RetiredSegments(long maxRetiredSize, Counter retiredSizeCounter) {
+        this.maxRetiredSize = maxRetiredSize;
+        this.retiredSizeCounter = retiredSizeCounter;
+    }
+
+    /**
+     * Track a segment buffer detached from its cache, after the cache has released its own reference.
+     */
+    void retire(ByteBuf buffer) {
+        Segment segment = new Segment(buffer);
+        segments.add(segment);
+        retiredSize.addAndGet(segment.size);
+        retiredSizeCounter.addCount(segment.size);
+        releaseFreedSegments();
+    }
+
+    /**
+     * @return whether new slices can be taken on the cache segments, or the entries need to be copied
+     */
+    boolean allowSlices() {
+        if (retiredSize.get() <= maxRetiredSize) {
+            return true;
+        }
+
+        releaseFreedSegments();
+        return retiredSize.get() <= maxRetiredSize;
+    }
+
+    /**
+     * @return the size of the retired segments that are not freed yet
+     */
+    long size() {
+        releaseFreedSegments();
+        return retiredSize.get();
+    }
+
+    private void releaseFreedSegments() {
+        for (Segment segment : segments) {
+            // Only the thread that removes the segment from the queue accounts for it
+            if (segment.buffer.refCnt() == 0 && segments.remove(segment)) {
+                retiredSize.addAndGet(-segment.size);
+                retiredSizeCounter.addCount(-segment.size);
+            }
+        }
+    }
+}
@@ -24,6 +24,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.protobuf.ByteString;
@@ -35,17 +36,29 @@ import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.PrimitiveIterator.OfLong;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.StampedLock;
 import org.apache.bookkeeper.bookie.Bookie;
@@ -77,7 +90,9 @@ import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.ThreadRegistry;
+import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.mutable.MutableLong;
 import org.slf4j.Logger;
@@ -102,11 +117,23 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     // Write cache where all new entries are inserted into
     protected volatile WriteCache writeCache;
 
-    // Write cache that is used to swap with writeCache during flushes
-    protected volatile WriteCache writeCacheBeingFlushed;
+    // Write caches that were rotated out and whose entries are not yet committed in the location index, oldest first
+    protected volatile List<WriteCache> writeCachesBeingFlushed = ImmutableList.of();
+
+    // Empty write caches ready to replace the current one
+    private final Queue<WriteCache> freeWriteCaches = new ConcurrentLinkedQueue<>();
+
+    // All the write caches of the ring
+    private final List<WriteCache> allWriteCaches;
+
+    // Write caches whose entries were written to the entry logger and whose index batch is queued for commit
+    private final Set<WriteCache> submittedWriteCaches = ConcurrentHashMap.newKeySet();
+
+    // Last index batch commit queued on the indexFlushExecutor, guarded by flushMutex
+    private CompletableFuture<Void> lastIndexFlush = CompletableFuture.completedFuture(null);
 
     // Cache where we insert entries for speculative reading
-    private final ReadCache readCache;
+    private final ReadCachePolicy readCache;
 
     private final StampedLock writeCacheRotationLock = new StampedLock();
 
@@ -124,15 +151,36 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 }
             });
 
+    // Executor used to commit, in order, the location index batches of the flushed write caches
+    private final ExecutorService indexFlushExecutor = Executors.newSingleThreadExecutor(
+            new DefaultThreadFactory("db-storage-index-flush"));
+
+    // Writers used to write the write cache entries in parallel, null when the entries are written by the flush thread
+    private final FlushWriter[] flushWriters;
+    private final ExecutorService flushWriterExecutor;
+
     // Executor used to for db index cleanup
     private final ScheduledExecutorService cleanupExecutor = Executors
             .newSingleThreadScheduledExecutor(new DefaultThreadFactory("db-storage-cleanup"));
 
+    // Executor used for asynchronous read-ahead, null when read-ahead is done inline with the triggering read
+    private final ExecutorService readAheadExecutor;
+    // Ledgers that have a read-ahead queued or running on the readAheadExecutor
+    private final ConcurrentLongHashSet pendingReadAheads;
+
+    // Serves the entry log reads of getEntryAsync, null when they are done by the calling thread
+    private final EntryLogReadScheduler entryLogReadScheduler;
+
+    // Per ledger read-ahead sizing, only used when adaptive read-ahead is enabled
+    private final boolean adaptiveReadAhead;
+    private final ConcurrentLongHashMap<ReadAheadState> readAheadStates;
+
     private final CopyOnWriteArrayList<LedgerDeletionListener> ledgerDeletionListeners = Lists
             .newCopyOnWriteArrayList();
 
     private CheckpointSource checkpointSource = CheckpointSource.DEFAULT;
-    private Checkpoint lastCheckpoint = Checkpoint.MIN;
+    // Concurrent checkpoints may complete out of order, so it only ever moves forward
+    private final AtomicReference<Checkpoint> lastCheckpoint = new AtomicReference<>(Checkpoint.MIN);
 
     private final long writeCacheMaxSize;
     private final long readCacheMaxSize;
@@ -145,6 +193,24 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     private static final long DEFAULT_MAX_THROTTLE_TIME_MILLIS = TimeUnit.SECONDS.toMillis(10);
 
+    private static final int WRITE_CACHE_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
+    private static final int DEFAULT_WRITE_CACHE_RING_SIZE = 2;
+    private static final int READ_CACHE_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
+
+    static final String READ_CACHE_POLICY_FIFO = "fifo";
+    static final String READ_CACHE_POLICY_PROBATION = "probation";
+    private static final double DEFAULT_READ_CACHE_PROBATION_RATIO = 0.25;
+
+    private static final int DEFAULT_READ_AHEAD_ASYNC_MAX_PENDING = 64;
+    private static final int DEFAULT_ENTRY_LOG_READ_MAX_PENDING = 1024;
+    // Upper bound to the size of a single sequential read issued by the read-ahead
+    private static final int MAX_READ_AHEAD_RANGE_SIZE = 8 * 1024 * 1024;
+    // Maximum number of locations looked up at once by a batch read
+    private static final int MAX_BATCH_READ_LOCATIONS = 1024;
+    // Adaptive read-ahead can grow a ledger batch up to this factor of the configured batch size
+    private static final int ADAPTIVE_READ_AHEAD_MAX_FACTOR = 8;
+    private static final int ENTRY_HEADER_SIZE = 2 * Long.BYTES; // ledgerId + entryId
+
     private final long maxReadAheadBytesSize;
 
     private final Counter flushExecutorTime;
@@ -177,9 +243,41 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 .scopeLabel("ledgerDir", ledgerBaseDir)
                 .scopeLabel("indexDir", indexBaseDir);
 
+        // When enabled, cache hits are served as slices of the cache segments instead of copies
+        boolean zeroCopyCacheReads = conf.getBoolean(DbLedgerStorage.ZERO_COPY_CACHE_READS, false);
+
+        int flushWriterThreads = conf.getInt(DbLedgerStorage.FLUSH_WRITER_THREADS, 1);
+        if (flushWriterThreads > 1 && !conf.isEntryLogPerLedgerEnabled()) {
+            // The writers would only contend on the single current entry log
+            log.warn("{}={} requires entryLogPerLedgerEnabled, the entries are flushed by a single writer",
+                    DbLedgerStorage.FLUSH_WRITER_THREADS, flushWriterThreads);
+            flushWriterThreads = 1;
+        }
+        dbLedgerStorageStats = new DbLedgerStorageStats(
+            ledgerIndexDirStatsLogger,
+            this::getWriteCacheSize,
+            this::getWriteCacheCount,
+            this::getReadCacheSize,
+            this::getReadCacheCount,
+            flushWriterThreads > 1 ? flushWriterThreads : 0
+        );
+
         this.writeCacheMaxSize = writeCacheSize;
-        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2);
-        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2);
+
+        // The write cache memory is split across a ring of caches: one receives the new entries while the others
+        // are being flushed or wait to be reused
+        int writeCacheRingSize = Math.max(DEFAULT_WRITE_CACHE_RING_SIZE,
+                conf.getInt(DbLedgerStorage.WRITE_CACHE_RING_SIZE, DEFAULT_WRITE_CACHE_RING_SIZE));
+        ImmutableList.Builder<WriteCache> writeCaches = ImmutableList.builder();
+        for (int i = 0; i < writeCacheRingSize; i++) {
+            writeCaches.add(new WriteCache(allocator, writeCacheMaxSize / writeCacheRingSize,
+                    WRITE_CACHE_MAX_SEGMENT_SIZE, zeroCopyCacheReads,
+                    dbLedgerStorageStats.getWriteCacheRetiredSizeCounter()));
+        }
+        this.allWriteCaches = writeCaches.build();
+        this.writeCache = allWriteCaches.get(0);
+        this.freeWriteCaches.addAll(allWriteCaches.subList(1, writeCacheRingSize));
+
         this.singleLedgerDirs = conf.getLedgerDirs().length == 1;
 
         readCacheMaxSize = readCacheSize;
@@ -189,16 +287,29 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         // Do not attempt to perform read-ahead more than half the total size of the cache
         maxReadAheadBytesSize = readCacheMaxSize / 2;
 
+        int readAheadAsyncThreads = conf.getInt(DbLedgerStorage.READ_AHEAD_ASYNC_THREADS, 0);
+        if (readAheadAsyncThreads > 0) {
+            int maxPending = conf.getInt(DbLedgerStorage.READ_AHEAD_ASYNC_MAX_PENDING,
+                    DEFAULT_READ_AHEAD_ASYNC_MAX_PENDING);
+            readAheadExecutor = new ThreadPoolExecutor(readAheadAsyncThreads, readAheadAsyncThreads,
+                    0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, maxPending)),
+                    new DefaultThreadFactory("db-storage-readahead"));
+        } else {
+            readAheadExecutor = null;
+        }
+        pendingReadAheads = ConcurrentLongHashSet.newBuilder().build();
+
+        adaptiveReadAhead = conf.getBoolean(DbLedgerStorage.READ_AHEAD_ADAPTIVE_BATCH_SIZE, false);
+        readAheadStates = ConcurrentLongHashMap.<ReadAheadState>newBuilder().build();
+
         long maxThrottleTimeMillis = conf.getLong(DbLedgerStorage.MAX_THROTTLE_TIME_MILLIS,
                 DEFAULT_MAX_THROTTLE_TIME_MILLIS);
         maxThrottleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleTimeMillis);
 
-        readCache = new ReadCache(allocator, readCacheMaxSize);
-
         ledgerIndex = new LedgerMetadataIndex(conf,
                 KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
         entryLocationIndex = new EntryLocationIndex(conf,
-                KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
+                KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger, allocator);
 
         transientLedgerInfoCache = ConcurrentLongHashMap.<TransientLedgerInfo>newBuilder()
                 .expectedItems(16 * 1024)
@@ -212,13 +323,30 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         gcThread = new GarbageCollectorThread(conf,
                 ledgerManager, ledgerDirsManager, this, entryLogger, ledgerIndexDirStatsLogger);
 
-        dbLedgerStorageStats = new DbLedgerStorageStats(
-            ledgerIndexDirStatsLogger,
-            () -> writeCache.size() + writeCacheBeingFlushed.size(),
-            () -> writeCache.count() + writeCacheBeingFlushed.count(),
-            () -> readCache.size(),
-            () -> readCache.count()
-        );
+        if (flushWriterThreads > 1) {
+            flushWriters = new FlushWriter[flushWriterThreads];
+            for (int i = 0; i < flushWriterThreads; i++) {
+                flushWriters[i] = new FlushWriter(i);
+            }
+            flushWriterExecutor = Executors.newFixedThreadPool(flushWriterThreads,
+                    new DefaultThreadFactory("db-storage-flush-writer"));
+        } else {
+            flushWriters = null;
+            flushWriterExecutor = null;
+        }
+
+        // The stale entries of the read cache index are purged by the cleanup thread
+        readCache = newReadCachePolicy(conf, allocator, readCacheMaxSize, zeroCopyCacheReads, cleanupExecutor,
+                dbLedgerStorageStats);
+
+        int entryLogReadThreads = conf.getInt(DbLedgerStorage.ENTRY_LOG_READ_THREADS, 0);
+        if (entryLogReadThreads > 0) {
+            entryLogReadScheduler = new EntryLogReadScheduler(entryLogger, entryLogReadThreads,
+                    conf.getInt(DbLedgerStorage.ENTRY_LOG_READ_MAX_PENDING, DEFAULT_ENTRY_LOG_READ_MAX_PENDING),
+                    dbLedgerStorageStats);
+        } else {
+            entryLogReadScheduler = null;
+        }
 
         flushExecutorTime = ledgerIndexDirStatsLogger.getThreadScopedCounter("db-storage-thread-time");
 
@@ -234,6 +362,51 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
     }
 
+    private long getWriteCacheSize() {
+        long size = 0;
+        for (WriteCache cache : allWriteCaches) {
+            size += cache.size();
+        }
+        return size;
+    }
+
+    private long getWriteCacheCount() {
+        long count = 0;
+        for (WriteCache cache : allWriteCaches) {
+            count += cache.count();
+        }
+        return count;
+    }
+
+    private long getReadCacheSize() {
+        return readCache.size();
+    }
+
+    private long getReadCacheCount() {
+        return readCache.count();
+    }
+
+    private static ReadCachePolicy newReadCachePolicy(ServerConfiguration conf, ByteBufAllocator allocator,
+                                                      long readCacheMaxSize, boolean zeroCopyCacheReads,
+                                                      Executor purgeExecutor, DbLedgerStorageStats stats) {
+        String policy = conf.getString(DbLedgerStorage.READ_CACHE_POLICY, READ_CACHE_POLICY_FIFO);
+        switch (policy) {
+        case READ_CACHE_POLICY_FIFO:
+            return new FifoReadCachePolicy(allocator, readCacheMaxSize, READ_CACHE_MAX_SEGMENT_SIZE,
+                    zeroCopyCacheReads, purgeExecutor, stats);
+        case READ_CACHE_POLICY_PROBATION:
+            double probationRatio = conf.getDouble(DbLedgerStorage.READ_CACHE_PROBATION_RATIO,
+                    DEFAULT_READ_CACHE_PROBATION_RATIO);
+            checkArgument(probationRatio > 0 && probationRatio < 1,
+                    DbLedgerStorage.READ_CACHE_PROBATION_RATIO + " needs to be between 0 and 1");
+            log.info("Using probation read cache policy with ratio {}", probationRatio);
+            return new ProbationReadCachePolicy(allocator, readCacheMaxSize, READ_CACHE_MAX_SEGMENT_SIZE,
+                    probationRatio, zeroCopyCacheReads, purgeExecutor, stats);
+        default:
+            throw new IllegalArgumentException("Unknown read cache policy: " + policy);
+        }
+    }
+
     @Override
     public void initialize(ServerConfiguration conf, LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager,
             LedgerDirsManager indexDirsManager, StatsLogger statsLogger,
@@ -263,6 +436,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
             return isStale;
         });
+        readAheadStates.removeIf((ledgerId, state) -> state.isStale());
     }
 
     @Override
@@ -345,16 +519,31 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             flush();
 
             gcThread.shutdown();
+            if (readAheadExecutor != null) {
+                readAheadExecutor.shutdownNow();
+                readAheadExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            }
+            if (entryLogReadScheduler != null) {
+                entryLogReadScheduler.shutdown();
+            }
             entryLogger.close();
 
             cleanupExecutor.shutdown();
             cleanupExecutor.awaitTermination(1, TimeUnit.SECONDS);
 
+            indexFlushExecutor.shutdown();
+            indexFlushExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            if (flushWriterExecutor != null) {
+                flushWriterExecutor.shutdown();
+                flushWriterExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            }
+
             ledgerIndex.close();
             entryLocationIndex.close();
 
-            writeCache.close();
-            writeCacheBeingFlushed.close();
+            for (WriteCache cache : allWriteCaches) {
+                cache.close();
+            }
             readCache.close();
             executor.shutdown();
 
@@ -388,20 +577,20 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
         long stamp = writeCacheRotationLock.tryOptimisticRead();
         WriteCache localWriteCache = writeCache;
-        WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+        List<WriteCache> localWriteCachesBeingFlushed = writeCachesBeingFlushed;
         if (!writeCacheRotationLock.validate(stamp)) {
             // Fallback to regular read lock approach
             stamp = writeCacheRotationLock.readLock();
             try {
                 localWriteCache = writeCache;
-                localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+                localWriteCachesBeingFlushed = writeCachesBeingFlushed;
             } finally {
                 writeCacheRotationLock.unlockRead(stamp);
             }
         }
 
         boolean inCache = localWriteCache.hasEntry(ledgerId, entryId)
-             || localWriteCacheBeingFlushed.hasEntry(ledgerId, entryId)
+             || hasEntry(localWriteCachesBeingFlushed, ledgerId, entryId)
              || readCache.hasEntry(ledgerId, entryId);
 
         if (inCache) {
@@ -521,22 +710,23 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         long absoluteTimeoutNanos = System.nanoTime() + maxThrottleTimeNanos;
 
         while (System.nanoTime() < absoluteTimeoutNanos) {
-            // Write cache is full, we need to trigger a flush so that it gets rotated
+            // Write cache is full. If there is an empty write cache available in the ring, rotate right away so that
+            // adds can continue while the full cache is flushed in background
+            WriteCache fullWriteCache = writeCache;
+            WriteCache replacement = freeWriteCaches.poll();
+            if (replacement != null && rotateWriteCache(fullWriteCache, replacement)) {
+                hasFlushBeenTriggered.set(true);
+                log.info("Write cache is full, rotated write cache and triggering flush");
+                triggerBackgroundFlush();
+            }
+
+            // Otherwise we need to trigger a flush so that a write cache is released
             // If the flush has already been triggered or flush has already switched the
             // cache, we don't need to trigger another flush
             if (!isFlushOngoing.get() && hasFlushBeenTriggered.compareAndSet(false, true)) {
                 // Trigger an early flush in background
                 log.info("Write cache is full, triggering flush");
-                executor.execute(() -> {
-                        long startTime = System.nanoTime();
-                        try {
-                            flush();
-                        } catch (IOException e) {
-                            log.error("Error during flush", e);
-                        } finally {
-                            flushExecutorTime.addLatency(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
-                        }
-                    });
+                triggerBackgroundFlush();
             }
 
             long stamp = writeCacheRotationLock.readLock();
@@ -565,6 +755,47 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         throw new OperationRejectedException();
     }
 
+    private void triggerBackgroundFlush() {
+        executor.execute(() -> {
+                long startTime = System.nanoTime();
+                try {
+                    flush();
+                } catch (IOException e) {
+                    log.error("Error during flush", e);
+                } finally {
+                    flushExecutorTime.addLatency(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                }
+            });
+    }
+
+    private ByteBuf getFromWriteCaches(long ledgerId, long entryId) {
+        // First try to read from the write cache of recent entries. With zero-copy cache reads enabled, the returned
+        // buffers are slices of the cache segments and can be handed over as they are to Netty.
+        ByteBuf entry = writeCache.get(ledgerId, entryId);
+        if (entry != null) {
+            return entry;
+        }
+
+        // If there's a flush going on, the entry might be in one of the flush buffers. Look at the most recent first.
+        List<WriteCache> localWriteCachesBeingFlushed = writeCachesBeingFlushed;
+        for (int i = localWriteCachesBeingFlushed.size() - 1; i >= 0; i--) {
+            entry = localWriteCachesBeingFlushed.get(i).get(ledgerId, entryId);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasEntry(List<WriteCache> writeCaches, long ledgerId, long entryId) {
+        for (int i = 0; i < writeCaches.size(); i++) {
+            if (writeCaches.get(i).hasEntry(ledgerId, entryId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public ByteBuf getEntry(long ledgerId, long entryId) throws IOException, BookieException {
         long startTime = MathUtils.nowInNano();
@@ -587,32 +818,161 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return getLastEntry(ledgerId);
         }
 
-        // We need to try to read from both write caches, since recent entries could be found in either of the two. The
-        // write caches are already thread safe on their own, here we just need to make sure we get references to both
-        // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
+        ReadCachePolicy.Source source = getReadSource(ledgerId, entryId);
+        ByteBuf entry = getFromCaches(ledgerId, entryId, source);
+        if (entry != null) {
+            return entry;
+        }
+
+        // Read from main storage
+        long entryLocation = getEntryLocation(ledgerId, entryId);
+        long readEntryStartNano = MathUtils.nowInNano();
+        try {
+            entry = entryLogger.readEntry(ledgerId, entryId, entryLocation);
+        } finally {
+            dbLedgerStorageStats.getReadFromEntryLogTime().addLatency(
+                    MathUtils.elapsedNanos(readEntryStartNano), TimeUnit.NANOSECONDS);
+        }
+
+        try {
+            onEntryLogRead(ledgerId, entryId, entryLocation, entry, source);
+        } catch (Throwable t) {
+            ReferenceCountUtil.release(entry);
+            throw t;
+        }
+        return entry;
+    }
+
+    /**
+     * Read an entry, with the entry log read done by the entry log read threads when they are enabled. The caches
+     * and the locations index are still looked up by the calling thread, and the entries read from the entry log are
+     * handed back to the executor, so that the read threads only do the disk reads.
+     */
+    @Override
+    public CompletableFuture<ByteBuf> getEntryAsync(long ledgerId, long entryId, Executor executor) {
+        if (entryLogReadScheduler == null || entryId == BookieProtocol.LAST_ADD_CONFIRMED) {
+            return CompactableLedgerStorage.super.getEntryAsync(ledgerId, entryId, executor);
+        }
+
+        long startTime = MathUtils.nowInNano();
+        ReadCachePolicy.Source source;
+        long entryLocation;
+        try {
+            source = getReadSource(ledgerId, entryId);
+            ByteBuf entry = getFromCaches(ledgerId, entryId, source);
+            if (entry != null) {
+                recordSuccessfulEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+                return CompletableFuture.completedFuture(entry);
+            }
+            entryLocation = getEntryLocation(ledgerId, entryId);
+        } catch (IOException | BookieException e) {
+            recordFailedEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+            CompletableFuture<ByteBuf> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+
+        long readEntryStartNano = MathUtils.nowInNano();
+        CompletableFuture<ByteBuf> future = new CompletableFuture<>();
+        CompletableFuture<ByteBuf> read = entryLogReadScheduler.readEntryAsync(ledgerId, entryId, entryLocation);
+        if (read.isDone()) {
+            // Read by the calling thread
+            read.whenComplete((entry, e) -> completeEntryLogRead(future, ledgerId, entryId, entryLocation, source,
+                    entry, e, startTime, readEntryStartNano));
+            return future;
+        }
+        read.whenComplete((entry, e) -> {
+            Runnable complete = () -> completeEntryLogRead(future, ledgerId, entryId, entryLocation, source,
+                    entry, e, startTime, readEntryStartNano);
+            try {
+                executor.execute(complete);
+            } catch (RejectedExecutionException ree) {
+                complete.run();
+            }
+        });
+        return future;
+    }
+
+    private void completeEntryLogRead(CompletableFuture<ByteBuf> future, long ledgerId, long entryId,
+                                      long entryLocation, ReadCachePolicy.Source source, ByteBuf entry, Throwable e,
+                                      long startTime, long readEntryStartNano) {
+        dbLedgerStorageStats.getReadFromEntryLogTime().addLatency(
+                MathUtils.elapsedNanos(readEntryStartNano), TimeUnit.NANOSECONDS);
+        if (e != null) {
+            recordFailedEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+            future.completeExceptionally(e);
+            return;
+        }
+        try {
+            onEntryLogRead(ledgerId, entryId, entryLocation, entry, source);
+        } catch (Throwable t) {
+            ReferenceCountUtil.release(entry);
+            recordFailedEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+            future.completeExceptionally(t);
+            return;
+        }
+        recordSuccessfulEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+        future.complete(entry);
+    }
+
+    private long getEntryLocation(long ledgerId, long entryId) throws IOException, BookieException {
+        long locationIndexStartNano = MathUtils.nowInNano();
+        try {
+            long entryLocation = entryLocationIndex.getLocation(ledgerId, entryId);
+            if (entryLocation == 0) {
+                // Only a negative result while in limbo equates to unknown
+                throwIfLimbo(ledgerId);
+
+                throw new NoEntryException(ledgerId, entryId);
+            }
+            return entryLocation;
+        } finally {
+            dbLedgerStorageStats.getReadFromLocationIndexTime().addLatency(
+                    MathUtils.elapsedNanos(locationIndexStartNano), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Cache an entry read from the entry log, and read ahead the entries that follow it.
+     */
+    private void onEntryLogRead(long ledgerId, long entryId, long entryLocation, ByteBuf entry,
+                                ReadCachePolicy.Source source) {
+        readCache.put(ledgerId, entryId, entry, source);
+
+        // Try to read more entries
+        long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
+        int batchSize = getReadAheadBatchSize(ledgerId, entryId);
+        if (readAheadExecutor != null) {
+            // The read-ahead is done in background, this request is answered right away
+            scheduleReadAhead(ledgerId, entryId + 1, nextEntryLocation, batchSize, entry.readableBytes());
+        } else {
+            fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation, batchSize, entry.readableBytes());
+        }
+    }
+
+    /**
+     * Look up an entry in the write caches and in the read cache.
+     *
+     * @return the entry, or null if it's not cached
+     */
+    private ByteBuf getFromCaches(long ledgerId, long entryId, ReadCachePolicy.Source source) {
+        // We need to try to read from all the write caches, since recent entries could be found in any of them. The
+        // write caches are already thread safe on their own, here we just need to make sure that none of them was
+        // released and reused while we were reading it. Using an optimistic lock since the read lock is always free,
+        // unless we're rotating or releasing the caches.
         long stamp = writeCacheRotationLock.tryOptimisticRead();
-        WriteCache localWriteCache = writeCache;
-        WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+        ByteBuf entry = getFromWriteCaches(ledgerId, entryId);
         if (!writeCacheRotationLock.validate(stamp)) {
             // Fallback to regular read lock approach
+            ReferenceCountUtil.release(entry);
             stamp = writeCacheRotationLock.readLock();
             try {
-                localWriteCache = writeCache;
-                localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+                entry = getFromWriteCaches(ledgerId, entryId);
             } finally {
                 writeCacheRotationLock.unlockRead(stamp);
             }
         }
 
-        // First try to read from the write cache of recent entries
-        ByteBuf entry = localWriteCache.get(ledgerId, entryId);
-        if (entry != null) {
-            dbLedgerStorageStats.getWriteCacheHitCounter().inc();
-            return entry;
-        }
-
-        // If there's a flush going on, the entry might be in the flush buffer
-        entry = localWriteCacheBeingFlushed.get(ledgerId, entryId);
         if (entry != null) {
             dbLedgerStorageStats.getWriteCacheHitCounter().inc();
             return entry;
@@ -621,24 +981,96 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         dbLedgerStorageStats.getWriteCacheMissCounter().inc();
 
         // Try reading from read-ahead cache
-        entry = readCache.get(ledgerId, entryId);
+        entry = readCache.get(ledgerId, entryId, source);
         if (entry != null) {
             dbLedgerStorageStats.getReadCacheHitCounter().inc();
             return entry;
         }
 
         dbLedgerStorageStats.getReadCacheMissCounter().inc();
+        return null;
+    }
 
-        // Read from main storage
-        long entryLocation;
+    @Override
+    public ByteBufList getEntries(long ledgerId, long firstEntryId, int maxCount, long maxSize)
+            throws IOException, BookieException {
+        if (firstEntryId == BookieProtocol.LAST_ADD_CONFIRMED) {
+            return ByteBufList.get(getEntry(ledgerId, firstEntryId));
+        }
+
+        long startTime = MathUtils.nowInNano();
+        ByteBufList entries = ByteBufList.get();
+        try {
+            doGetEntries(ledgerId, firstEntryId, maxCount, maxSize, entries);
+            recordSuccessfulEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+            return entries;
+        } catch (IOException | BookieException e) {
+            entries.release();
+            recordFailedEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+            throw e;
+        }
+    }
+
+    private void doGetEntries(long ledgerId, long firstEntryId, int maxCount, long maxSize, ByteBufList entries)
+            throws IOException, BookieException {
+        if (log.isDebugEnabled()) {
+            log.debug("Get Entries: {}@{} - max count: {} - max size: {}", ledgerId, firstEntryId, maxCount, maxSize);
+        }
+
+        long size = 0;
+        long entryId = firstEntryId;
+        while (entries.size() < maxCount) {
+            ByteBuf entry = getFromCaches(ledgerId, entryId, getReadSource(ledgerId, entryId));
+            if (entry == null) {
+                // Read the entries that are not cached from the entry logs, as many as possible at once
+                int count;
+                try {
+                    count = readEntriesFromStorage(ledgerId, entryId, maxCount - entries.size(), maxSize - size,
+                            entries);
+                } catch (IOException | BookieException e) {
+                    if (entries.size() == 0) {
+                        throw e;
+                    }
+                    return;
+                }
+
+                if (count == 0) {
+                    return;
+                }
+                entryId += count;
+                size = entries.readableBytes();
+                continue;
+            }
+
+            if (entries.size() > 0 && size + entry.readableBytes() > maxSize) {
+                ReferenceCountUtil.release(entry);
+                return;
+            }
+            size += entry.readableBytes();
+            entries.add(entry);
+            entryId++;
+        }
+    }
+
+    /**
+     * Read consecutive entries from the entry logs. Their locations are looked up with a single index scan, and the
+     * entries stored close to each other in the same entry log are fetched with a single read, from which they are
+     * sliced out without copying. Like the single entry reads, the entries are inserted in the read cache.
+     *
+     * @return the number of entries added to the list
+     */
+    private int readEntriesFromStorage(long ledgerId, long firstEntryId, int maxCount, long maxSize,
+                                       ByteBufList entries) throws IOException, BookieException {
+        long[] locations = new long[Math.min(maxCount, MAX_BATCH_READ_LOCATIONS)];
+        int found;
         long locationIndexStartNano = MathUtils.nowInNano();
         try {
-            entryLocation = entryLocationIndex.getLocation(ledgerId, entryId);
-            if (entryLocation == 0) {
+            found = entryLocationIndex.getLocations(ledgerId, firstEntryId, locations);
+            if (found == 0 && entries.size() == 0) {
                 // Only a negative result while in limbo equates to unknown
                 throwIfLimbo(ledgerId);
 
-                throw new NoEntryException(ledgerId, entryId);
+                throw new NoEntryException(ledgerId, firstEntryId);
             }
         } finally {
             dbLedgerStorageStats.getReadFromLocationIndexTime().addLatency(
@@ -646,56 +1078,175 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
 
         long readEntryStartNano = MathUtils.nowInNano();
+        int count = 0;
+        long size = 0;
         try {
-            entry = entryLogger.readEntry(ledgerId, entryId, entryLocation);
+            boolean done = false;
+            while (!done && count < found) {
+                // Entries following the current one in the same entry log
+                int last = count;
+                while (last + 1 < found && EntryLocationRanges.canAppend(locations[last], locations[last + 1])
+                        && locations[last + 1] - locations[count] < MAX_READ_AHEAD_RANGE_SIZE) {
+                    last++;
+                }
+
+                int parsed = 0;
+                if (last > count) {
+                    long span = locations[last] - locations[count];
+                    long rangeSize = span + span / (last - count) + 4;
+                    ByteBuf range = readEntryRange(locations[count], (int) Math.min(rangeSize,
+                            MAX_READ_AHEAD_RANGE_SIZE));
+                    try {
+                        long currentLocation = locations[count];
+                        while (count <= last && range.readableBytes() >= 4) {
+                            int entrySize = range.getInt(range.readerIndex());
+                            if (entrySize < ENTRY_HEADER_SIZE || entrySize > range.readableBytes() - 4) {
+                                // Truncated record at the end of the range
+                                break;
+                            }
+
+                            if (currentLocation == locations[count]) {
+                                if (entries.size() > 0 && size + entrySize > maxSize) {
+                                    done = true;
+                                    break;
+                                }
+
+                                ByteBuf entry = range.retainedSlice(range.readerIndex() + 4, entrySize);
+                                if (entry.getLong(0) != ledgerId || entry.getLong(8) != firstEntryId + count) {
+                                    // Let the entry logger validate and report the mismatch
+                                    entry.release();
+                                    break;
+                                }
+                                entries.add(entry);
+                                readCache.put(ledgerId, firstEntryId + count, entry,
+                                        getReadSource(ledgerId, firstEntryId + count));
+                                count++;
+                                parsed++;
+                                size += entrySize;
+                            }
+
+                            // Skip the entries of other ledgers stored in between
+                            range.skipBytes(4 + entrySize);
+                            currentLocation += 4 + entrySize;
+                            if (count <= last && currentLocation > locations[count]) {
+                                break;
+                            }
+                        }
+                    } finally {
+                        ReferenceCountUtil.release(range);
+                    }
+                }
+
+                if (parsed == 0 && !done) {
+                    ByteBuf entry = entryLogger.readEntry(ledgerId, firstEntryId + count, locations[count]);
+                    if (entries.size() > 0 && size + entry.readableBytes() > maxSize) {
+                        ReferenceCountUtil.release(entry);
+                        break;
+                    }
+                    entries.add(entry);
+                    readCache.put(ledgerId, firstEntryId + count, entry,
+                            getReadSource(ledgerId, firstEntryId + count));
+                    count++;
+                    size += entry.readableBytes();
+                }
+            }
         } finally {
             dbLedgerStorageStats.getReadFromEntryLogTime().addLatency(
                     MathUtils.elapsedNanos(readEntryStartNano), TimeUnit.NANOSECONDS);
         }
+        return count;
+    }
+
+    private int getReadAheadBatchSize(long ledgerId, long entryId) {
+        if (!adaptiveReadAhead) {
+            return readAheadCacheBatchSize;
+        }
 
-        readCache.put(ledgerId, entryId, entry);
+        ReadAheadState state = readAheadStates.computeIfAbsent(ledgerId,
+                k -> new ReadAheadState(readAheadCacheBatchSize, 1,
+                        Math.max(1, readAheadCacheBatchSize * ADAPTIVE_READ_AHEAD_MAX_FACTOR)));
+        return state.onCacheMiss(entryId);
+    }
 
-        // Try to read more entries
-        long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
-        fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation);
+    private void scheduleReadAhead(long ledgerId, long firstEntryId, long firstEntryLocation, int batchSize,
+                                   int expectedEntrySize) {
+        if (!pendingReadAheads.add(ledgerId)) {
+            // There is already a read-ahead in progress for this ledger
+            return;
+        }
 
-        return entry;
+        try {
+            readAheadExecutor.execute(() -> {
+                try {
+                    fillReadAheadCache(ledgerId, firstEntryId, firstEntryLocation, batchSize, expectedEntrySize);
+                } finally {
+                    pendingReadAheads.remove(ledgerId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingReadAheads.remove(ledgerId);
+            dbLedgerStorageStats.getReadAheadAsyncRejectedCounter().inc();
+        }
     }
 
-    private void fillReadAheadCache(long originalLedgerId, long firstEntryId, long firstEntryLocation) {
+    /**
+     * Load the entries that follow the given location in the read cache. The entry log range is fetched with large
+     * sequential reads and parsed in memory, until the batch is complete, another ledger is found or the end of the
+     * entry log is reached.
+     */
+    private void fillReadAheadCache(long originalLedgerId, long firstEntryId, long firstEntryLocation,
+                                    int batchSize, int expectedEntrySize) {
         long readAheadStartNano = MathUtils.nowInNano();
         int count = 0;
         long size = 0;
 
         try {
             long firstEntryLogId = (firstEntryLocation >> 32);
-            long currentEntryLogId = firstEntryLogId;
             long currentEntryLocation = firstEntryLocation;
+            boolean done = false;
 
-            while (chargeReadAheadCache(count, size) && currentEntryLogId == firstEntryLogId) {
-                ByteBuf entry = entryLogger.readEntry(originalLedgerId,
-                        firstEntryId, currentEntryLocation);
+            while (!done && chargeReadAheadCache(batchProgress(batchSize, count), size)
+                    && (currentEntryLocation >> 32) == firstEntryLogId) {
+                ByteBuf range = readEntryRange(currentEntryLocation,
+                        getReadAheadRangeSize(batchSize - count, expectedEntrySize, size));
 
                 try {
-                    long currentEntryLedgerId = entry.getLong(0);
-                    long currentEntryId = entry.getLong(8);
+                    int parsed = 0;
+                    while (chargeReadAheadCache(batchProgress(batchSize, count), size)
+                            && range.readableBytes() >= 4) {
+                        int entrySize = range.getInt(range.readerIndex());
+                        if (entrySize < ENTRY_HEADER_SIZE || entrySize > range.readableBytes() - 4) {
+                            // Truncated record at the end of the range
+                            break;
+                        }
 
-                    if (currentEntryLedgerId != originalLedgerId) {
-                        // Found an entry belonging to a different ledger, stopping read-ahead
-                        break;
-                    }
+                        ByteBuf entry = range.slice(range.readerIndex() + 4, entrySize);
+                        long currentEntryLedgerId = entry.getLong(0);
+                        long currentEntryId = entry.getLong(8);
 
-                    // Insert entry in read cache
-                    readCache.put(originalLedgerId, currentEntryId, entry);
+                        if (currentEntryLedgerId != originalLedgerId) {
+                            // Found an entry belonging to a different ledger, stopping read-ahead
+                            done = true;
+                            break;
+                        }
 
-                    count++;
-                    firstEntryId++;
-                    size += entry.readableBytes();
+                        // Insert entry in read cache
+                        readCache.put(originalLedgerId, currentEntryId, entry, ReadCachePolicy.Source.READ_AHEAD);
+
+                        count++;
+                        parsed++;
+                        size += entrySize;
+
+                        range.skipBytes(4 + entrySize);
+                        currentEntryLocation += 4 + entrySize;
+                    }
 
-                    currentEntryLocation += 4 + entry.readableBytes();
-                    currentEntryLogId = currentEntryLocation >> 32;
+                    if (parsed == 0) {
+                        // Nothing more could be read at this location
+                        done = true;
+                    }
                 } finally {
-                    ReferenceCountUtil.release(entry);
+                    ReferenceCountUtil.release(range);
                 }
             }
         } catch (Exception e) {
@@ -703,6 +1254,12 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 log.debug("Exception during read ahead for ledger: {}: e", originalLedgerId, e);
             }
         } finally {
+            if (adaptiveReadAhead) {
+                ReadAheadState state = readAheadStates.get(originalLedgerId);
+                if (state != null) {
+                    state.onReadAhead(firstEntryId, count);
+                }
+            }
             dbLedgerStorageStats.getReadAheadBatchCountStats().registerSuccessfulValue(count);
             dbLedgerStorageStats.getReadAheadBatchSizeStats().registerSuccessfulValue(size);
             dbLedgerStorageStats.getReadAheadTime().addLatency(
@@ -710,6 +1267,67 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
     }
 
+    /**
+     * Read a range of the entry log, making sure the first record of the range is complete.
+     */
+    private ByteBuf readEntryRange(long entryLocation, int rangeSize) throws IOException {
+        ByteBuf range = entryLogger.readEntryRange(entryLocation, rangeSize);
+        if (range.readableBytes() >= 4) {
+            int recordSize = 4 + range.getInt(range.readerIndex());
+            if (recordSize > rangeSize && recordSize <= maxReadAheadBytesSize) {
+                // The first entry is bigger than estimated, read it again in full
+                ReferenceCountUtil.release(range);
+                range = entryLogger.readEntryRange(entryLocation, recordSize);
+            }
+        }
+        return range;
+    }
+
+    private int getReadAheadRangeSize(int remainingEntries, int expectedEntrySize, long currentReadAheadBytes) {
+        long bytesLimit = maxReadAheadBytesSize;
+        if (readAheadCacheBatchBytesSize > 0) {
+            bytesLimit = Math.min(bytesLimit, readAheadCacheBatchBytesSize);
+        }
+
+        long rangeSize = Math.min((long) remainingEntries * (4 + expectedEntrySize),
+                bytesLimit - currentReadAheadBytes);
+        rangeSize = Math.max(rangeSize, 4 + expectedEntrySize);
+        return (int) Math.min(rangeSize, MAX_READ_AHEAD_RANGE_SIZE);
+    }
+
+    /**
+     * Classify a read as a tail read when the entry is within one read-ahead batch from the last add confirmed
+     * known for the ledger. Ledgers without cached LAC are typically read by catch-up readers.
+     */
+    private ReadCachePolicy.Source getReadSource(long ledgerId, long entryId) {
+        TransientLedgerInfo ledgerInfo = transientLedgerInfoCache.get(ledgerId);
+        if (ledgerInfo != null) {
+            long lac = ledgerInfo.getLastAddConfirmed();
+            if (lac != TransientLedgerInfo.NOT_ASSIGNED_LAC && entryId > lac - readAheadCacheBatchSize) {
+                return ReadCachePolicy.Source.TAIL;
+            }
+        }
+        return ReadCachePolicy.Source.CATCH_UP;
+    }
+
+    /**
+     * Scale the number of entries loaded by a read-ahead batch of the given size to the configured batch size, so
+     * that {@link #chargeReadAheadCache(int, long)} completes the batches sized by the adaptive read-ahead.
+     */
+    private int batchProgress(int batchSize, int currentReadAheadCount) {
+        if (batchSize == readAheadCacheBatchSize) {
+            return currentReadAheadCount;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, (long) currentReadAheadCount * readAheadCacheBatchSize / batchSize);
+    }
+
+    /**
+     * Decide whether a read-ahead loads one more entry.
+     *
+     * @param currentReadAheadCount number of entries already loaded, relative to the configured batch size: with
+     *                              adaptive read-ahead, the batch is complete when it reaches the configured size
+     * @param currentReadAheadBytes number of bytes already loaded
+     */
     protected boolean chargeReadAheadCache(int currentReadAheadCount, long currentReadAheadBytes) {
         // compatible with old logic
         boolean chargeSizeCondition = currentReadAheadCount < readAheadCacheBatchSize
@@ -743,20 +1361,24 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 return entry;
             }
 
-            // If there's a flush going on, the entry might be in the flush buffer
-            entry = writeCacheBeingFlushed.getLastEntry(ledgerId);
-            if (entry != null) {
-                if (log.isDebugEnabled()) {
-                    entry.readLong(); // ledgerId
-                    long entryId = entry.readLong();
-                    entry.resetReaderIndex();
+            // If there's a flush going on, the entry might be in one of the flush buffers
+            List<WriteCache> localWriteCachesBeingFlushed = writeCachesBeingFlushed;
+            for (int i = localWriteCachesBeingFlushed.size() - 1; i >= 0; i--) {
+                entry = localWriteCachesBeingFlushed.get(i).getLastEntry(ledgerId);
+                if (entry != null) {
                     if (log.isDebugEnabled()) {
-                        log.debug("Found last entry for ledger {} in write cache being flushed: {}", ledgerId, entryId);
+                        entry.readLong(); // ledgerId
+                        long entryId = entry.readLong();
+                        entry.resetReaderIndex();
+                        if (log.isDebugEnabled()) {
+                            log.debug("Found last entry for ledger {} in write cache being flushed: {}", ledgerId,
+                                    entryId);
+                        }
                     }
-                }
 
-                dbLedgerStorageStats.getWriteCacheHitCounter().inc();
-                return entry;
+                    dbLedgerStorageStats.getWriteCacheHitCounter().inc();
+                    return entry;
+                }
             }
         } finally {
             writeCacheRotationLock.unlockRead(stamp);
@@ -786,7 +1408,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     boolean isFlushRequired() {
         long stamp = writeCacheRotationLock.readLock();
         try {
-            return !writeCache.isEmpty();
+            return !writeCache.isEmpty() || !writeCachesBeingFlushed.isEmpty();
         } finally {
             writeCacheRotationLock.unlockRead(stamp);
         }
@@ -795,125 +1417,251 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     @Override
     public void checkpoint(Checkpoint checkpoint) throws IOException {
         Checkpoint thisCheckpoint = checkpointSource.newCheckpoint();
-        if (lastCheckpoint.compareTo(checkpoint) > 0) {
+        if (lastCheckpoint.get().compareTo(checkpoint) > 0) {
             return;
         }
 
-        // Only a single flush operation can happen at a time
+        // Only a single flush operation can write into the entry logger at a time. The location index batches are
+        // committed on the indexFlushExecutor, so that the entry log write of a write cache overlaps with the index
+        // commit of the previous one.
+        CompletableFuture<Void> indexFlush;
+        boolean flushed;
         flushMutex.lock();
-        long startTime = -1;
         try {
-            startTime = MathUtils.nowInNano();
-        } catch (Throwable e) {
-            // Fix spotbugs warning. Should never happen
-            flushMutex.unlock();
-            throw new IOException(e);
+            isFlushOngoing.set(true);
+
+            // Write the caches that were rotated when the current write cache got full
+            flushed = submitPendingWriteCaches();
+
+            // Rotate the current write cache so that writes can continue to happen while the flush is ongoing. If
+            // all the other caches are still being flushed, wait for the oldest one to be released.
+            if (!writeCache.isEmpty()) {
+                WriteCache replacement;
+                while ((replacement = freeWriteCaches.poll()) == null) {
+                    waitForIndexFlush(lastIndexFlush);
+                    submitPendingWriteCaches();
+                }
+
+                rotateWriteCache(null, replacement);
+                flushed |= submitPendingWriteCaches();
+            }
+
+            indexFlush = lastIndexFlush;
+        } finally {
+            try {
+                isFlushOngoing.set(false);
+            } finally {
+                flushMutex.unlock();
+            }
         }
 
-        try {
-            if (writeCache.isEmpty()) {
-                return;
+        // The checkpoint is complete only when all the entries that were in the write caches are indexed
+        waitForIndexFlush(indexFlush);
+        lastCheckpoint.accumulateAndGet(thisCheckpoint,
+                (current, completed) -> completed.compareTo(current) > 0 ? completed : current);
+
+        if (!flushed) {
+            return;
+        }
+
+        cleanupExecutor.execute(() -> {
+            // There can only be one single cleanup task running because the cleanupExecutor
+            // is single-threaded
+            try {
+                if (log.isDebugEnabled()) {
+                    log.debug("Removing deleted ledgers from db indexes");
+                }
+
+                entryLocationIndex.removeOffsetFromDeletedLedgers();
+                ledgerIndex.removeDeletedLedgers();
+            } catch (Throwable t) {
+                log.warn("Failed to cleanup db indexes", t);
             }
-            // Swap the write cache so that writes can continue to happen while the flush is
-            // ongoing
-            swapWriteCache();
+        });
+    }
 
-            long sizeToFlush = writeCacheBeingFlushed.size();
-            if (log.isDebugEnabled()) {
-                log.debug("Flushing entries. count: {} -- size {} Mb", writeCacheBeingFlushed.count(),
-                        sizeToFlush / 1024.0 / 1024);
+    /**
+     * Write into the entry logger all the rotated write caches that are not yet queued for index commit, oldest first.
+     *
+     * @return whether any write cache was flushed
+     */
+    private boolean submitPendingWriteCaches() throws IOException {
+        boolean submitted = false;
+        for (WriteCache cache : writeCachesBeingFlushed) {
+            if (!submittedWriteCaches.contains(cache)) {
+                flushWriteCache(cache);
+                submitted = true;
             }
+        }
+        return submitted;
+    }
 
-            // Write all the pending entries into the entry logger and collect the offset
-            // position for each entry
+    /**
+     * Write all the entries of a rotated write cache into the entry logger and queue the commit of their locations
+     * in the index. Must be called while holding the flushMutex.
+     */
+    private void flushWriteCache(WriteCache cache) throws IOException {
+        long startTime = MathUtils.nowInNano();
+        long sizeToFlush = cache.size();
+        if (log.isDebugEnabled()) {
+            log.debug("Flushing entries. count: {} -- size {} Mb", cache.count(), sizeToFlush / 1024.0 / 1024);
+        }
 
-            try (Batch batch = entryLocationIndex.newBatch()) {
-                writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
+        // Write all the pending entries into the entry logger and collect the offset
+        // position for each entry
+        Batch batch = entryLocationIndex.newBatch();
+        try {
+            if (flushWriters == null) {
+                cache.forEach((ledgerId, entryId, entry) -> {
                     long location = entryLogger.addEntry(ledgerId, entry);
                     entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
                 });
+            } else {
+                // Write the groups of ledgers in parallel, then merge all the locations in the same index batch
+                for (FlushWriter writer : flushWriters) {
+                    writer.reset();
+                }
+                cache.forEach(flushWriters, flushWriterExecutor);
+                for (FlushWriter writer : flushWriters) {
+                    writer.addLocations(batch);
+                }
+            }
 
-                long entryLoggerStart = MathUtils.nowInNano();
-                entryLogger.flush();
-                recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
+            long entryLoggerStart = MathUtils.nowInNano();
+            entryLogger.flush();
+            recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
+        } catch (IOException | RuntimeException e) {
+            batch.close();
+            recordFailedEvent(dbLedgerStorageStats.getFlushStats(), startTime);
+            throw e;
+        }
 
-                long batchFlushStartTime = MathUtils.nowInNano();
-                batch.flush();
+        submittedWriteCaches.add(cache);
 
-                recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
-                if (log.isDebugEnabled()) {
-                    log.debug("DB batch flushed time : {} s",
-                            MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
+        // Index commits are chained so that they're applied in the same order as the entry log writes. After a
+        // failure, the following commits are failed as well and the caches will be flushed again.
+        CompletableFuture<Void> previous = lastIndexFlush.isCompletedExceptionally()
+                ? CompletableFuture.completedFuture(null) : lastIndexFlush;
+        CompletableFuture<Void> indexFlush = new CompletableFuture<>();
+        previous.whenCompleteAsync((ignore, previousFailure) -> {
+            try {
+                if (previousFailure != null) {
+                    throw new IOException("Previous location index flush failed", previousFailure);
+                }
+
+                commitWriteCacheFlush(cache, batch, sizeToFlush, startTime);
+                indexFlush.complete(null);
+            } catch (Throwable t) {
+                recordFailedEvent(dbLedgerStorageStats.getFlushStats(), startTime);
+                submittedWriteCaches.remove(cache);
+                indexFlush.completeExceptionally(t);
+            } finally {
+                try {
+                    batch.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close location index batch", e);
                 }
             }
+        }, indexFlushExecutor);
+        lastIndexFlush = indexFlush;
+    }
 
-            long ledgerIndexStartTime = MathUtils.nowInNano();
-            ledgerIndex.flush();
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushLedgerIndexStats(), ledgerIndexStartTime);
+    private void commitWriteCacheFlush(WriteCache cache, Batch batch, long sizeToFlush, long startTime)
+            throws IOException {
+        long batchFlushStartTime = MathUtils.nowInNano();
+        batch.flush();
 
-            lastCheckpoint = thisCheckpoint;
+        recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
+        if (log.isDebugEnabled()) {
+            log.debug("DB batch flushed time : {} s",
+                    MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
+        }
 
-            // Discard all the entry from the write cache, since they're now persisted
-            writeCacheBeingFlushed.clear();
+        long ledgerIndexStartTime = MathUtils.nowInNano();
+        ledgerIndex.flush();
+        recordSuccessfulEvent(dbLedgerStorageStats.getFlushLedgerIndexStats(), ledgerIndexStartTime);
 
-            double flushTimeSeconds = MathUtils.elapsedNanos(startTime) / (double) TimeUnit.SECONDS.toNanos(1);
-            double flushThroughput = sizeToFlush / 1024.0 / 1024.0 / flushTimeSeconds;
+        // Discard all the entry from the write cache, since they're now persisted, and make it available again
+        releaseWriteCache(cache);
 
-            if (log.isDebugEnabled()) {
-                log.debug("Flushing done time {} s -- Written {} MB/s", flushTimeSeconds, flushThroughput);
-            }
+        double flushTimeSeconds = MathUtils.elapsedNanos(startTime) / (double) TimeUnit.SECONDS.toNanos(1);
+        double flushThroughput = sizeToFlush / 1024.0 / 1024.0 / flushTimeSeconds;
 
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushStats(), startTime);
-            dbLedgerStorageStats.getFlushSizeStats().registerSuccessfulValue(sizeToFlush);
-        } catch (IOException e) {
-            recordFailedEvent(dbLedgerStorageStats.getFlushStats(), startTime);
-            // Leave IOException as it is
-            throw e;
-        } finally {
-            try {
-                cleanupExecutor.execute(() -> {
-                    // There can only be one single cleanup task running because the cleanupExecutor
-                    // is single-threaded
-                    try {
-                        if (log.isDebugEnabled()) {
-                            log.debug("Removing deleted ledgers from db indexes");
-                        }
+        if (log.isDebugEnabled()) {
+            log.debug("Flushing done time {} s -- Written {} MB/s", flushTimeSeconds, flushThroughput);
+        }
 
-                        entryLocationIndex.removeOffsetFromDeletedLedgers();
-                        ledgerIndex.removeDeletedLedgers();
-                    } catch (Throwable t) {
-                        log.warn("Failed to cleanup db indexes", t);
-                    }
-                });
+        recordSuccessfulEvent(dbLedgerStorageStats.getFlushStats(), startTime);
+        dbLedgerStorageStats.getFlushSizeStats().registerSuccessfulValue(sizeToFlush);
+    }
 
-                isFlushOngoing.set(false);
-            } finally {
-                flushMutex.unlock();
+    private static void waitForIndexFlush(CompletableFuture<Void> indexFlush) throws IOException {
+        try {
+            indexFlush.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the location index flush", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
             }
+            throw new IOException("Failed to flush the location index", e.getCause());
         }
     }
 
     /**
-     * Swap the current write cache with the replacement cache.
+     * Replace the current write cache with the given empty cache, and move it to the caches being flushed.
+     *
+     * <p>The rotation is skipped, and the replacement cache is returned to the free caches, when the current write
+     * cache is empty or when it's not the expected one anymore, because another thread already rotated it.
+     *
+     * @return whether the write cache was rotated
      */
-    private void swapWriteCache() {
+    private boolean rotateWriteCache(WriteCache expected, WriteCache replacement) {
         long stamp = writeCacheRotationLock.writeLock();
         try {
-            // First, swap the current write-cache map with an empty one so that writes will
-            // go on unaffected. Only a single flush is happening at the same time
-            WriteCache tmp = writeCacheBeingFlushed;
-            writeCacheBeingFlushed = writeCache;
-            writeCache = tmp;
+            WriteCache current = writeCache;
+            if ((expected != null && current != expected) || current.isEmpty()) {
+                freeWriteCaches.add(replacement);
+                return false;
+            }
+
+            writeCachesBeingFlushed = ImmutableList.<WriteCache>builder()
+                    .addAll(writeCachesBeingFlushed)
+                    .add(current)
+                    .build();
+            writeCache = replacement;
 
-            // Set to true before updating hasFlushBeenTriggered to false.
-            isFlushOngoing.set(true);
             // since the cache is switched, we can allow flush to be triggered
             hasFlushBeenTriggered.set(false);
+            return true;
         } finally {
             writeCacheRotationLock.unlockWrite(stamp);
         }
     }
 
+    /**
+     * Remove a flushed write cache from the caches being flushed and make it available for reuse.
+     */
+    private void releaseWriteCache(WriteCache cache) {
+        long stamp = writeCacheRotationLock.writeLock();
+        try {
+            ImmutableList.Builder<WriteCache> remaining = ImmutableList.builder();
+            for (WriteCache c : writeCachesBeingFlushed) {
+                if (c != cache) {
+                    remaining.add(c);
+                }
+            }
+            writeCachesBeingFlushed = remaining.build();
+        } finally {
+            writeCacheRotationLock.unlockWrite(stamp);
+        }
+
+        cache.clear();
+        submittedWriteCaches.remove(cache);
+        freeWriteCaches.add(cache);
+    }
+
     @Override
     public void flush() throws IOException {
         Checkpoint cp = checkpointSource.newCheckpoint();
@@ -949,6 +1697,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         if (tli != null) {
             tli.close();
         }
+        readAheadStates.remove(ledgerId);
     }
 
     @Override
@@ -959,7 +1708,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     @Override
     public void updateEntriesLocations(Iterable<EntryLocation> locations) throws IOException {
         // Before updating the DB with the new location for the compacted entries, we need to
-        // make sure that there is no ongoing flush() operation.
+        // make sure that no flush operation can commit older locations after them.
         // If there were a flush, we could have the following situation, which is highly
         // unlikely though possible:
         // 1. Flush operation has written the write-cache content into entry-log files
@@ -969,20 +1718,35 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         // 5. The pending flush() will overwrite the DB with the "old location", pointing
         //    to a file that no longer exists
         //
-        // To avoid this race condition, we need that all the entries that are potentially
-        // included in the compaction round to have all the indexes already flushed into
-        // the DB.
-        // The easiest lightweight way to achieve this is to wait for any pending
-        // flush operation to be completed before updating the index with the compacted
-        // entries, by blocking on the flushMutex.
+        // The index batches of the flushed write caches are committed later, in order, on the
+        // indexFlushExecutor. Queueing the update on the same chain, while holding the flushMutex,
+        // applies it after all the batches of the entries that could be included in the compaction
+        // round, and before the batches of any later flush.
+        CompletableFuture<Void> update = new CompletableFuture<>();
         flushMutex.lock();
-        flushMutex.unlock();
+        try {
+            CompletableFuture<Void> next = new CompletableFuture<>();
+            lastIndexFlush.whenCompleteAsync((ignore, previousFailure) -> {
+                try {
+                    entryLocationIndex.updateLocations(locations);
+                    update.complete(null);
+                } catch (Throwable t) {
+                    update.completeExceptionally(t);
+                } finally {
+                    // A failed update is reported to the compactor only, it does not fail the following index flushes
+                    if (previousFailure != null) {
+                        next.completeExceptionally(previousFailure);
+                    } else {
+                        next.complete(null);
+                    }
+                }
+            }, indexFlushExecutor);
+            lastIndexFlush = next;
+        } finally {
+            flushMutex.unlock();
+        }
 
-        // We don't need to keep the flush mutex locked here while updating the DB.
-        // It's fine to have a concurrent flush operation at this point, because we
-        // know that none of the entries being flushed was included in the compaction
-        // round that we are dealing with.
-        entryLocationIndex.updateLocations(locations);
+        waitForIndexFlush(update);
     }
 
     @VisibleForTesting
@@ -1300,4 +2064,62 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     DbLedgerStorageStats getDbLedgerStorageStats() {
         return dbLedgerStorageStats;
     }
+
+    /**
+     * Writes a partition of the write cache entries into the entry logger, keeping track of the entry locations.
+     */
+    private final class FlushWriter implements WriteCache.EntryConsumer {
+        private final int id;
+
+        // (ledgerId, entryId, location) triplets
+        private long[] locations = new long[3 * 1024];
+        private int locationsIdx;
+
+        private long bytes;
+        private long startTime;
+        private long lastEntryTime;
+
+        FlushWriter(int id) {
+            this.id = id;
+        }
+
+        void reset() {
+            locationsIdx = 0;
+            bytes = 0;
+            startTime = -1;
+        }
+
+        @Override
+        public void accept(long ledgerId, long entryId, ByteBuf entry) throws IOException {
+            if (startTime < 0) {
+                startTime = MathUtils.nowInNano();
+            }
+
+            int entrySize = entry.readableBytes();
+            long location = entryLogger.addEntry(ledgerId, entry);
+
+            if (locationsIdx + 3 > locations.length) {
+                locations = Arrays.copyOf(locations, locations.length * 2);
+            }
+            locations[locationsIdx] = ledgerId;
+            locations[locationsIdx + 1] = entryId;
+            locations[locationsIdx + 2] = location;
+            locationsIdx += 3;
+
+            bytes += entrySize;
+            lastEntryTime = MathUtils.nowInNano();
+        }
+
+        void addLocations(Batch batch) throws IOException {
+            for (int i = 0; i < locationsIdx; i += 3) {
+                entryLocationIndex.addLocation(batch, locations[i], locations[i + 1], locations[i + 2]);
+            }
+
+            if (startTime >= 0) {
+                dbLedgerStorageStats.getFlushWriterStats(id)
+                        .registerSuccessfulEvent(lastEntryTime - startTime, TimeUnit.NANOSECONDS);
+                dbLedgerStorageStats.getFlushWriterBytesCounter(id).addCount(bytes);
+            }
+        }
+    }
 }
@@ -27,10 +27,17 @@ import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
 import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
@@ -49,6 +56,13 @@ import org.slf4j.LoggerFactory;
  *
  * <p>There is the possibility to iterate through the stored entries in an ordered
  * way, by (ledgerId, entry).
+ *
+ * <p>When zero-copy reads are enabled, {@link #get(long, long)} returns a retained
+ * slice of the cache segment. Segments that still have outstanding slices when the
+ * cache is cleared are replaced with new buffers, so that the memory referenced by
+ * the slices is never overwritten and it is freed once the last slice is released.
+ * Once the replaced segments hold more than one segment of memory, the entries
+ * are copied until enough slices are released.
  */
 public class WriteCache implements Closeable {
 
@@ -85,18 +99,40 @@ public class WriteCache implements Closeable {
 
     private final ByteBufAllocator allocator;
 
+    private final boolean zeroCopyReads;
+
+    // Protects the segments from being replaced while a slice is being taken on them
+    private final StampedLock segmentsLock = new StampedLock();
+
+    // Segments replaced by the clears while zero-copy slices were still referencing them
+    private final RetiredSegments retiredSegments;
+
     public WriteCache(ByteBufAllocator allocator, long maxCacheSize) {
         // Default maxSegmentSize set to 1Gb
         this(allocator, maxCacheSize, 1 * 1024 * 1024 * 1024);
     }
 
     public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, false);
+    }
+
+    public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, boolean zeroCopyReads) {
+        this(allocator, maxCacheSize, maxSegmentSize, zeroCopyReads,
+                NullStatsLogger.INSTANCE.getCounter("write-cache-retired-size"));
+    }
+
+    /**
+     * @param retiredSizeCounter size of the replaced segments kept alive by zero-copy slices
+     */
+    public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, boolean zeroCopyReads,
+                      Counter retiredSizeCounter) {
         checkArgument(maxSegmentSize > 0);
 
         long alignedMaxSegmentSize = alignToPowerOfTwo(maxSegmentSize);
         checkArgument(maxSegmentSize == alignedMaxSegmentSize, "Max segment size needs to be in form of 2^n");
 
         this.allocator = allocator;
+        this.zeroCopyReads = zeroCopyReads;
         this.maxCacheSize = maxCacheSize;
         this.maxSegmentSize = (int) maxSegmentSize;
         this.segmentOffsetMask = maxSegmentSize - 1;
@@ -105,6 +141,7 @@ public class WriteCache implements Closeable {
         this.segmentsCount = 1 + (int) (maxCacheSize / maxSegmentSize);
 
         this.cacheSegments = new ByteBuf[segmentsCount];
+        this.retiredSegments = new RetiredSegments(Math.min(maxCacheSize, maxSegmentSize), retiredSizeCounter);
 
         for (int i = 0; i < segmentsCount - 1; i++) {
             // All intermediate segments will be full-size
@@ -116,6 +153,31 @@ public class WriteCache implements Closeable {
     }
 
     public void clear() {
+        if (!zeroCopyReads) {
+            doClear();
+            return;
+        }
+
+        long stamp = segmentsLock.writeLock();
+        try {
+            doClear();
+
+            for (int i = 0; i < segmentsCount; i++) {
+                ByteBuf segment = cacheSegments[i];
+                if (segment.refCnt() > 1) {
+                    // There are still slices referencing this segment, detach it so that
+                    // it will be freed when the last slice is released
+                    cacheSegments[i] = Unpooled.directBuffer(segment.capacity(), segment.capacity());
+                    segment.release();
+                    retiredSegments.retire(segment);
+                }
+            }
+        } finally {
+            segmentsLock.unlockWrite(stamp);
+        }
+    }
+
+    private void doClear() {
         cacheSize.set(0L);
         cacheOffset.set(0L);
         cacheCount.reset();
@@ -184,6 +246,10 @@ public class WriteCache implements Closeable {
     }
 
     public ByteBuf get(long ledgerId, long entryId) {
+        if (zeroCopyReads) {
+            return getSlice(ledgerId, entryId);
+        }
+
         LongPair result = index.get(ledgerId, entryId);
         if (result == null) {
             return null;
@@ -199,6 +265,40 @@ public class WriteCache implements Closeable {
         return entry;
     }
 
+    private ByteBuf getSlice(long ledgerId, long entryId) {
+        boolean allowSlices = retiredSegments.allowSlices();
+        long stamp = segmentsLock.readLock();
+        try {
+            LongPair result = index.get(ledgerId, entryId);
+            if (result == null) {
+                return null;
+            }
+
+            long offset = result.first;
+            int size = (int) result.second;
+            int localOffset = (int) (offset & segmentOffsetMask);
+            int segmentIdx = (int) (offset >>> segmentOffsetBits);
+            if (allowSlices) {
+                return cacheSegments[segmentIdx].retainedSlice(localOffset, size);
+            }
+
+            // Too much memory is held by the replaced segments, copy the entry. The lock still prevents the
+            // segment from being replaced and freed while it is read.
+            ByteBuf entry = allocator.buffer(size, size);
+            entry.writeBytes(cacheSegments[segmentIdx], localOffset, size);
+            return entry;
+        } finally {
+            segmentsLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return the size of the replaced segments that are still referenced by zero-copy slices
+     */
+    public long retiredSize() {
+        return retiredSegments.size();
+    }
+
     public boolean hasEntry(long ledgerId, long entryId) {
         return index.get(ledgerId, entryId) != null;
     }
@@ -221,66 +321,156 @@ public class WriteCache implements Closeable {
         sortedEntriesLock.lock();
 
         try {
-            int entriesToSort = (int) index.size();
-            int arrayLen = entriesToSort * 4;
-            if (sortedEntries == null || sortedEntries.length < arrayLen) {
-                sortedEntries = new long[(int) (arrayLen * 2)];
-            }
+            sortEntries();
 
             long startTime = MathUtils.nowInNano();
+            forEachSorted(consumer, 0, sortedEntriesIdx);
 
-            sortedEntriesIdx = 0;
-            index.forEach((ledgerId, entryId, offset, length) -> {
-                if (deletedLedgers.contains(ledgerId)) {
-                    // Ignore deleted ledgers
-                    return;
-                }
+            if (log.isDebugEnabled()) {
+                log.debug("entry log adding {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
+            }
+        } finally {
+            sortedEntriesLock.unlock();
+        }
+    }
 
-                sortedEntries[sortedEntriesIdx] = ledgerId;
-                sortedEntries[sortedEntriesIdx + 1] = entryId;
-                sortedEntries[sortedEntriesIdx + 2] = offset;
-                sortedEntries[sortedEntriesIdx + 3] = length;
-                sortedEntriesIdx += 4;
-            });
+    /**
+     * Scan the entries in (ledgerId, entryId) order, using multiple consumers in parallel.
+     *
+     * <p>The sorted entries are split in contiguous groups of ledgers of about the same size, one group per consumer.
+     * All the entries of a ledger are passed, in order, to the same consumer. This method returns once all the
+     * consumers are done.
+     *
+     * @param consumers the consumers, each one invoked from a single thread
+     * @param executor the executor used to run the consumers
+     */
+    public void forEach(EntryConsumer[] consumers, Executor executor) throws IOException {
+        if (consumers.length == 1) {
+            forEach(consumers[0]);
+            return;
+        }
 
-            if (log.isDebugEnabled()) {
-                log.debug("iteration took {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
+        sortedEntriesLock.lock();
+
+        try {
+            sortEntries();
+
+            long totalLength = 0;
+            for (int i = 0; i < sortedEntriesIdx; i += 4) {
+                totalLength += sortedEntries[i + 3];
             }
-            startTime = MathUtils.nowInNano();
 
-            // Sort entries by (ledgerId, entryId) maintaining the 4 items groups
-            ArrayGroupSort.sort(sortedEntries, 0, sortedEntriesIdx);
-            if (log.isDebugEnabled()) {
-                log.debug("sorting {} ms", (MathUtils.elapsedNanos(startTime) / 1e6));
+            // Cut the sorted entries at ledger boundaries, once a partition has received its share of bytes
+            int partitions = consumers.length;
+            int[] bounds = new int[partitions + 1];
+            long partitionLength = totalLength / partitions;
+            long length = 0;
+            int partition = 1;
+            for (int i = 0; i < sortedEntriesIdx && partition < partitions; i += 4) {
+                if (i > 0 && length >= partitionLength * partition && sortedEntries[i] != sortedEntries[i - 4]) {
+                    bounds[partition++] = i;
+                }
+                length += sortedEntries[i + 3];
+            }
+            while (partition <= partitions) {
+                bounds[partition++] = sortedEntriesIdx;
             }
-            startTime = MathUtils.nowInNano();
 
-            ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
-            for (int i = 0; i < segmentsCount; i++) {
-                entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
+            long startTime = MathUtils.nowInNano();
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[partitions];
+            for (int i = 0; i < partitions; i++) {
+                EntryConsumer consumer = consumers[i];
+                int from = bounds[i];
+                int to = bounds[i + 1];
+                futures[i] = CompletableFuture.runAsync(() -> {
+                    try {
+                        forEachSorted(consumer, from, to);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, executor);
             }
 
-            for (int i = 0; i < sortedEntriesIdx; i += 4) {
-                long ledgerId = sortedEntries[i];
-                long entryId = sortedEntries[i + 1];
-                long offset = sortedEntries[i + 2];
-                long length = sortedEntries[i + 3];
-
-                int localOffset = (int) (offset & segmentOffsetMask);
-                int segmentIdx = (int) (offset >>> segmentOffsetBits);
-                ByteBuf entry = entrySegments[segmentIdx];
-                entry.setIndex(localOffset, localOffset + (int) length);
-                consumer.accept(ledgerId, entryId, entry);
+            try {
+                CompletableFuture.allOf(futures).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                throw new IOException(e.getCause());
             }
 
             if (log.isDebugEnabled()) {
-                log.debug("entry log adding {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
+                log.debug("entry log adding with {} consumers {} ms", partitions,
+                        MathUtils.elapsedNanos(startTime) / 1e6);
             }
         } finally {
             sortedEntriesLock.unlock();
         }
     }
 
+    /**
+     * Collect and sort the entries by (ledgerId, entryId), ignoring the deleted ledgers. Must be called while
+     * holding the sortedEntriesLock.
+     */
+    private void sortEntries() {
+        int entriesToSort = (int) index.size();
+        int arrayLen = entriesToSort * 4;
+        if (sortedEntries == null || sortedEntries.length < arrayLen) {
+            sortedEntries = new long[(int) (arrayLen * 2)];
+        }
+
+        long startTime = MathUtils.nowInNano();
+
+        sortedEntriesIdx = 0;
+        index.forEach((ledgerId, entryId, offset, length) -> {
+            if (deletedLedgers.contains(ledgerId)) {
+                // Ignore deleted ledgers
+                return;
+            }
+
+            sortedEntries[sortedEntriesIdx] = ledgerId;
+            sortedEntries[sortedEntriesIdx + 1] = entryId;
+            sortedEntries[sortedEntriesIdx + 2] = offset;
+            sortedEntries[sortedEntriesIdx + 3] = length;
+            sortedEntriesIdx += 4;
+        });
+
+        if (log.isDebugEnabled()) {
+            log.debug("iteration took {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
+        }
+        startTime = MathUtils.nowInNano();
+
+        // Sort entries by (ledgerId, entryId) maintaining the 4 items groups
+        ArrayGroupSort.sort(sortedEntries, 0, sortedEntriesIdx);
+        if (log.isDebugEnabled()) {
+            log.debug("sorting {} ms", (MathUtils.elapsedNanos(startTime) / 1e6));
+        }
+    }
+
+    /**
+     * Pass the sorted entries in the range [from, to) of the sortedEntries array to the consumer.
+     */
+    private void forEachSorted(EntryConsumer consumer, int from, int to) throws IOException {
+        ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++) {
+            entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
+        }
+
+        for (int i = from; i < to; i += 4) {
+            long ledgerId = sortedEntries[i];
+            long entryId = sortedEntries[i + 1];
+            long offset = sortedEntries[i + 2];
+            long length = sortedEntries[i + 3];
+
+            int localOffset = (int) (offset & segmentOffsetMask);
+            int segmentIdx = (int) (offset >>> segmentOffsetBits);
+            ByteBuf entry = entrySegments[segmentIdx];
+            entry.setIndex(localOffset, localOffset + (int) length);
+            consumer.accept(ledgerId, entryId, entry);
+        }
+    }
+
     public long size() {
         return cacheSize.get();
     }
@@ -423,7 +423,11 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
             this.featureProvider = featureProvider;
         }
 
-        this.internalConf = ClientInternalConf.fromConfigAndFeatureProvider(conf, this.featureProvider);
+        // initialize stats logger
+        this.statsLogger = rootStatsLogger.scope(BookKeeperClientStats.CLIENT_SCOPE);
+        this.clientStats = BookKeeperClientStats.newInstance(this.statsLogger);
+
+        this.internalConf = ClientInternalConf.fromConfigAndFeatureProvider(conf, this.featureProvider, clientStats);
 
         // initialize resources
         this.scheduler = OrderedScheduler.newSchedulerBuilder().numThreads(1).name("BookKeeperClientScheduler").build();
@@ -439,10 +443,6 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
                 .enableBusyWait(conf.isBusyWaitEnabled())
                 .build();
 
-        // initialize stats logger
-        this.statsLogger = rootStatsLogger.scope(BookKeeperClientStats.CLIENT_SCOPE);
-        this.clientStats = BookKeeperClientStats.newInstance(this.statsLogger);
-
         // initialize metadata driver
         try {
             String metadataServiceUriStr = conf.getMetadataServiceUri();
@@ -63,6 +63,8 @@ public interface BookKeeperClientStats {
     String LAC_UPDATE_MISSES = "LAC_UPDATE_MISSES";
     String GET_BOOKIE_INFO_OP = "GET_BOOKIE_INFO";
     String SPECULATIVE_READ_COUNT = "SPECULATIVE_READ_COUNT";
+    String SPECULATIVE_READ_TIMEOUT = "SPECULATIVE_READ_TIMEOUT";
+    String SPECULATIVE_READ_BUDGET_EXHAUSTED = "SPECULATIVE_READ_BUDGET_EXHAUSTED";
     String READ_REQUESTS_REORDERED = "READ_REQUESTS_REORDERED";
     String GET_LIST_OF_ENTRIES_OF_LEDGER_OP = "GET_LIST_OF_ENTRIES_OF_LEDGER";
 
@@ -121,6 +123,8 @@ public interface BookKeeperClientStats {
     Counter getReadOpDmCounter();
     Counter getAddOpUrCounter();
     Counter getSpeculativeReadCounter();
+    OpStatsLogger getSpeculativeReadTimeoutLogger();
+    Counter getSpeculativeReadBudgetExhaustedCounter();
     Counter getEnsembleBookieDistributionCounter(String bookie);
     Counter getEnsembleChangeCounter();
     Counter getLacUpdateHitsCounter();
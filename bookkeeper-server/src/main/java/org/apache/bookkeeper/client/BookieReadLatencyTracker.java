@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+
+/**
+ * Tracks the latency of the entry reads sent to each bookie.
+ *
+ * <p>For each bookie it keeps an exponentially weighted moving average of the read latency, to pick the replica to
+ * read from, and for each {@link LedgerClass} a streaming sketch of the read latencies, a histogram with log scaled
+ * buckets, to estimate the high percentiles of the latency. The sketch counts are halved regularly so that it
+ * follows the recent behaviour of the bookie. While a bookie is not read from, its average decays toward the average
+ * read latency of all the bookies, so that a bookie which was slow once is tried again after a while, without a
+ * bookie which was fast once looking faster than the others.
+ *
+ * <p>The failed and timed out reads are recorded as reads at least {@link #FAILURE_PENALTY} times slower than the
+ * usual reads of the bookie.
+ */
+class BookieReadLatencyTracker {
+
+    /**
+     * Class of the ledgers read from, whose entries are served differently by the bookies.
+     */
+    enum LedgerClass {
+        /**
+         * Ledgers still being written, whose entries are mostly read from the memory of the bookies.
+         */
+        OPEN,
+        /**
+         * Closed ledgers, whose entries are more likely read from the disks of the bookies.
+         */
+        CLOSED;
+
+        static LedgerClass of(LedgerHandle lh) {
+            return lh.getLedgerMetadata().isClosed() ? CLOSED : OPEN;
+        }
+    }
+
+    private static final LedgerClass[] LEDGER_CLASSES = LedgerClass.values();
+
+    private static final double EWMA_WEIGHT = 0.2;
+    // Time constant of the decay of the average of a bookie not read from
+    private static final long AVERAGE_DECAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // Minimum latency of a failed read, relative to the usual latency of the bookie
+    static final double FAILURE_PENALTY = 2;
+    // Minimum number of samples of a sketch to estimate a percentile of the latency
+    private static final int MIN_PERCENTILE_SAMPLES = 100;
+    // Number of samples after which the sketch counts are halved
+    private static final int DECAY_SAMPLES = 2000;
+    // Number of samples after which a cached percentile is computed again
+    private static final int PERCENTILE_REFRESH_SAMPLES = 32;
+    // Four buckets per power of two microseconds, up to 2^36 microseconds
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int NUM_BUCKETS = 36 << SUB_BUCKET_BITS;
+
+    private final ConcurrentHashMap<BookieId, BookieLatency> bookies = new ConcurrentHashMap<>();
+    // Moving average of the successful reads from all the bookies, as a double, or -1
+    private final AtomicLong meanLatencyBits = new AtomicLong(Double.doubleToLongBits(-1));
+
+    void recordReadLatency(BookieId bookie, LedgerClass ledgerClass, long latencyNanos) {
+        recordReadLatency(bookie, ledgerClass, latencyNanos, MathUtils.nowInNano());
+    }
+
+    @VisibleForTesting
+    void recordReadLatency(BookieId bookie, LedgerClass ledgerClass, long latencyNanos, long nowNanos) {
+        long latencyMicros = TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+        getBookieLatency(bookie).record(ledgerClass, latencyMicros, nowNanos);
+
+        long bits;
+        double mean;
+        do {
+            bits = meanLatencyBits.get();
+            mean = Double.longBitsToDouble(bits);
+            mean = mean < 0 ? latencyMicros : mean + EWMA_WEIGHT * (latencyMicros - mean);
+        } while (!meanLatencyBits.compareAndSet(bits, Double.doubleToLongBits(mean)));
+    }
+
+    /**
+     * Record a read from a bookie which failed or timed out.
+     */
+    void recordReadFailure(BookieId bookie, LedgerClass ledgerClass, long latencyNanos) {
+        recordReadFailure(bookie, ledgerClass, latencyNanos, MathUtils.nowInNano());
+    }
+
+    @VisibleForTesting
+    void recordReadFailure(BookieId bookie, LedgerClass ledgerClass, long latencyNanos, long nowNanos) {
+        BookieLatency latency = getBookieLatency(bookie);
+        double usualMicros = Math.max(latency.getAverage(nowNanos, getMeanLatency()), getMeanLatency());
+        long latencyMicros = Math.max(TimeUnit.NANOSECONDS.toMicros(latencyNanos),
+                Math.round(FAILURE_PENALTY * usualMicros));
+        latency.record(ledgerClass, latencyMicros, nowNanos);
+    }
+
+    private BookieLatency getBookieLatency(BookieId bookie) {
+        BookieLatency latency = bookies.get(bookie);
+        if (latency == null) {
+            latency = bookies.computeIfAbsent(bookie, b -> new BookieLatency());
+        }
+        return latency;
+    }
+
+    private double getMeanLatency() {
+        return Double.longBitsToDouble(meanLatencyBits.get());
+    }
+
+    /**
+     * Get the moving average of the read latency of a bookie.
+     *
+     * @return the average latency in microseconds, or -1 if no read from the bookie completed yet
+     */
+    long getAverageLatencyMicros(BookieId bookie) {
+        return getAverageLatencyMicros(bookie, MathUtils.nowInNano());
+    }
+
+    @VisibleForTesting
+    long getAverageLatencyMicros(BookieId bookie, long nowNanos) {
+        BookieLatency latency = bookies.get(bookie);
+        return latency == null ? -1 : Math.round(latency.getAverage(nowNanos, getMeanLatency()));
+    }
+
+    /**
+     * Find the replica, among the ones of the write set from the given position, with the lowest read latency
+     * weighted by its number of pending requests. Replicas which failed recently, or whose channel is not writable,
+     * are only picked if all of them are in that case. Bookies never read from yet are picked first, so that their
+     * latency gets known.
+     *
+     * @return the position in the write set of the fastest replica
+     */
+    int getFastestReplica(List<BookieId> ensemble, DistributionSchedule.WriteSet writeSet, int fromReplica,
+                          BookiesHealthInfo healthInfo) {
+        long nowNanos = MathUtils.nowInNano();
+        int fastestReplica = fromReplica;
+        boolean fastestIsHealthy = false;
+        double fastestCost = Double.MAX_VALUE;
+        for (int i = fromReplica; i < writeSet.size(); i++) {
+            BookieId bookie = ensemble.get(writeSet.get(i));
+            long pendingRequests = healthInfo.getBookiePendingRequests(bookie);
+            boolean healthy = (pendingRequests & BookieClient.PENDINGREQ_NOTWRITABLE_MASK) == 0
+                    && healthInfo.getBookieFailureHistory(bookie) < 0;
+            long latencyMicros = Math.max(1, getAverageLatencyMicros(bookie, nowNanos));
+            double cost = (double) latencyMicros
+                    * ((pendingRequests & ~BookieClient.PENDINGREQ_NOTWRITABLE_MASK) + 1);
+            if ((healthy && !fastestIsHealthy) || (healthy == fastestIsHealthy && cost < fastestCost)) {
+                fastestReplica = i;
+                fastestIsHealthy = healthy;
+                fastestCost = cost;
+            }
+        }
+        return fastestReplica;
+    }
+
+    /**
+     * Get an estimate of a percentile of the recent read latencies of a bookie for a class of ledgers.
+     *
+     * @param percentile the percentile, between 0 and 1
+     * @return the latency in microseconds, or -1 if not enough reads from the bookie completed yet
+     */
+    long getLatencyPercentileMicros(BookieId bookie, LedgerClass ledgerClass, double percentile) {
+        BookieLatency latency = bookies.get(bookie);
+        return latency == null ? -1 : latency.getPercentile(ledgerClass, percentile);
+    }
+
+    static int bucketOf(long latencyMicros) {
+        if (latencyMicros < (1 << SUB_BUCKET_BITS)) {
+            return (int) Math.max(0, latencyMicros);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(latencyMicros);
+        int subBucket = (int) (latencyMicros >>> (exponent - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+        int bucket = ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+        return Math.min(bucket, NUM_BUCKETS - 1);
+    }
+
+    /**
+     * Get the exclusive upper bound of the latencies of a bucket, in microseconds.
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < (1 << SUB_BUCKET_BITS)) {
+            return bucket + 1;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        int subBucket = bucket & ((1 << SUB_BUCKET_BITS) - 1);
+        return ((long) ((1 << SUB_BUCKET_BITS) + subBucket + 1)) << shift;
+    }
+
+    private static class BookieLatency {
+        private final LatencySketch[] sketches = new LatencySketch[LEDGER_CLASSES.length];
+        private double average = -1;
+        private long lastSampleNanos;
+
+        BookieLatency() {
+            for (int i = 0; i < sketches.length; i++) {
+                sketches[i] = new LatencySketch();
+            }
+        }
+
+        synchronized void record(LedgerClass ledgerClass, long latencyMicros, long nowNanos) {
+            average = average < 0 ? latencyMicros : average + EWMA_WEIGHT * (latencyMicros - average);
+            lastSampleNanos = nowNanos;
+            sketches[ledgerClass.ordinal()].record(latencyMicros);
+        }
+
+        /**
+         * Get the average, decayed toward the given prior since the last sample, unless the prior is unknown.
+         */
+        synchronized double getAverage(long nowNanos, double prior) {
+            if (average < 0 || prior < 0) {
+                return average;
+            }
+            double decay = Math.exp(-(double) Math.max(0, nowNanos - lastSampleNanos) / AVERAGE_DECAY_NANOS);
+            return prior + (average - prior) * decay;
+        }
+
+        synchronized long getPercentile(LedgerClass ledgerClass, double percentile) {
+            return sketches[ledgerClass.ordinal()].getPercentile(percentile);
+        }
+    }
+
+    private static class LatencySketch {
+        private final int[] counts = new int[NUM_BUCKETS];
+        private int numSamples = 0;
+
+        private double cachedPercentile = -1;
+        private long cachedPercentileValue = -1;
+        private int samplesSinceCachedPercentile = 0;
+
+        void record(long latencyMicros) {
+            counts[bucketOf(latencyMicros)]++;
+            if (++numSamples >= DECAY_SAMPLES) {
+                numSamples = 0;
+                for (int i = 0; i < NUM_BUCKETS; i++) {
+                    counts[i] >>>= 1;
+                    numSamples += counts[i];
+                }
+            }
+            samplesSinceCachedPercentile++;
+        }
+
+        long getPercentile(double percentile) {
+            if (numSamples < MIN_PERCENTILE_SAMPLES) {
+                return -1;
+            }
+            if (percentile != cachedPercentile || samplesSinceCachedPercentile >= PERCENTILE_REFRESH_SAMPLES) {
+                cachedPercentile = percentile;
+                cachedPercentileValue = computePercentile(percentile);
+                samplesSinceCachedPercentile = 0;
+            }
+            return cachedPercentileValue;
+        }
+
+        private long computePercentile(double percentile) {
+            // Walk down from the slowest bucket until the samples above the percentile are seen
+            long samplesAbove = Math.max(1, (long) Math.ceil(numSamples * (1 - percentile)));
+            long seen = 0;
+            for (int i = NUM_BUCKETS - 1; i >= 0; i--) {
+                seen += counts[i];
+                if (seen >= samplesAbove) {
+                    return upperBoundOf(i);
+                }
+            }
+            return upperBoundOf(0);
+        }
+    }
+}
@@ -26,6 +26,7 @@ import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.feature.Feature;
 import org.apache.bookkeeper.feature.FeatureProvider;
 import org.apache.bookkeeper.feature.SettableFeatureProvider;
+import org.apache.bookkeeper.stats.NullStatsLogger;
 
 class ClientInternalConf {
     final Feature disableEnsembleChangeFeature;
@@ -40,6 +41,8 @@ class ClientInternalConf {
     final boolean enableParallelRecoveryRead;
     final boolean enableReorderReadSequence;
     final boolean enableStickyReads;
+    final boolean enableLatencyAwareReadSequence;
+    final BookieReadLatencyTracker readLatencyTracker;
     final int recoveryReadBatchSize;
     final int throttleValue;
     final int bookieFailureHistoryExpirationMSec;
@@ -49,6 +52,7 @@ class ClientInternalConf {
     final boolean useV2WireProtocol;
     final boolean enforceMinNumFaultDomainsForWrite;
     final boolean batchReadEnabled;
+    final boolean batchAddEnabled;
     final int nettyMaxFrameSizeBytes;
 
     static ClientInternalConf defaultValues() {
@@ -61,11 +65,19 @@ class ClientInternalConf {
 
     static ClientInternalConf fromConfigAndFeatureProvider(ClientConfiguration conf,
                                                            FeatureProvider featureProvider) {
-        return new ClientInternalConf(conf, featureProvider);
+        return fromConfigAndFeatureProvider(conf, featureProvider,
+                BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE));
+    }
+
+    static ClientInternalConf fromConfigAndFeatureProvider(ClientConfiguration conf,
+                                                           FeatureProvider featureProvider,
+                                                           BookKeeperClientStats clientStats) {
+        return new ClientInternalConf(conf, featureProvider, clientStats);
     }
 
     private ClientInternalConf(ClientConfiguration conf,
-                               FeatureProvider featureProvider) {
+                               FeatureProvider featureProvider,
+                               BookKeeperClientStats clientStats) {
         this.explicitLacInterval = conf.getExplictLacInterval();
         this.enableReorderReadSequence = conf.isReorderReadSequenceEnabled();
         this.enableParallelRecoveryRead = conf.getEnableParallelRecoveryRead();
@@ -75,6 +87,7 @@ class ClientInternalConf {
         this.throttleValue = conf.getThrottleValue();
         this.bookieFailureHistoryExpirationMSec = conf.getBookieFailureHistoryExpirationMSec();
         this.batchReadEnabled = conf.isBatchReadEnabled();
+        this.batchAddEnabled = conf.isBatchAddEnabled();
         this.nettyMaxFrameSizeBytes = conf.getNettyMaxFrameSizeBytes();
         this.disableEnsembleChangeFeature = featureProvider.getFeature(conf.getDisableEnsembleChangeFeatureName());
         this.delayEnsembleChange = conf.getDelayEnsembleChange();
@@ -83,9 +96,24 @@ class ClientInternalConf {
         this.enableBookieFailureTracking = conf.getEnableBookieFailureTracking();
         this.useV2WireProtocol = conf.getUseV2WireProtocol();
         this.enableStickyReads = conf.isStickyReadsEnabled();
+        this.enableLatencyAwareReadSequence = conf.isLatencyAwareReadSequenceEnabled();
+        if (enableLatencyAwareReadSequence || conf.isLatencyAwareSpeculativeReadEnabled()) {
+            this.readLatencyTracker = new BookieReadLatencyTracker();
+        } else {
+            this.readLatencyTracker = null;
+        }
         this.enforceMinNumFaultDomainsForWrite = conf.getEnforceMinNumFaultDomainsForWrite();
 
-        if (conf.getFirstSpeculativeReadTimeout() > 0) {
+        if (conf.getFirstSpeculativeReadTimeout() > 0 && conf.isLatencyAwareSpeculativeReadEnabled()) {
+            this.readSpeculativeRequestPolicy =
+                    Optional.of(new LatencyAwareSpeculativeRequestExecutionPolicy(
+                                        readLatencyTracker,
+                                        conf.getFirstSpeculativeReadTimeout(),
+                                        conf.getMaxSpeculativeReadTimeout(),
+                                        conf.getSpeculativeReadLatencyPercentile(),
+                                        conf.getSpeculativeReadBudget(),
+                                        clientStats));
+        } else if (conf.getFirstSpeculativeReadTimeout() > 0) {
             this.readSpeculativeRequestPolicy =
                     Optional.of(new DefaultSpeculativeRequestExecutionPolicy(
                                         conf.getFirstSpeculativeReadTimeout(),
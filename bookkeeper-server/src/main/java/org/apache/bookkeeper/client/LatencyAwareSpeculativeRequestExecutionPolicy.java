@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.net.BookieId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SpeculativeRequestExecutionPolicy} deriving the speculative request timeouts from the read latency of the
+ * bookies.
+ *
+ * <p>The next speculative request is issued when the bookie the last request was sent to has not responded within
+ * a target percentile of its recent read latencies for the class of the ledger read, as estimated by a
+ * {@link BookieReadLatencyTracker}. The timeout is {@code firstSpeculativeRequestTimeout} while the latency of the
+ * bookie is unknown, and it is never more than {@code maxSpeculativeRequestTimeout}.
+ *
+ * <p>Each initiated request earns a {@code budget} fraction of a speculative request, up to a small burst, and a
+ * speculative request is only issued if one has been earned, which bounds the fraction of extra requests when the
+ * latency of a bookie suddenly degrades. Concurrent speculative requests may overdraw the budget slightly. With a
+ * budget of 0, no speculative request is ever issued.
+ */
+class LatencyAwareSpeculativeRequestExecutionPolicy implements SpeculativeRequestExecutionPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(LatencyAwareSpeculativeRequestExecutionPolicy.class);
+
+    // Budget credits are counted in millionths of a speculative request
+    private static final long CREDITS_PER_REQUEST = 1_000_000;
+    // Number of initiated requests whose budget can be saved for a burst of speculative requests
+    private static final long BUDGET_BURST_REQUESTS = 1000;
+
+    private final BookieReadLatencyTracker latencyTracker;
+    private final long firstSpeculativeRequestTimeoutMicros;
+    private final long maxSpeculativeRequestTimeoutMicros;
+    private final double percentile;
+    private final boolean unlimited;
+    private final long creditsPerInitiatedRequest;
+    private final long maxCredits;
+    private final AtomicLong credits;
+    private final BookKeeperClientStats clientStats;
+
+    LatencyAwareSpeculativeRequestExecutionPolicy(BookieReadLatencyTracker latencyTracker,
+                                                  int firstSpeculativeRequestTimeout,
+                                                  int maxSpeculativeRequestTimeout,
+                                                  double percentile,
+                                                  double budget,
+                                                  BookKeeperClientStats clientStats) {
+        if (percentile <= 0 || percentile >= 100) {
+            throw new IllegalArgumentException("Invalid value provided for speculative request percentile");
+        }
+        if (budget < 0) {
+            throw new IllegalArgumentException("Invalid value provided for speculative request budget");
+        }
+        this.latencyTracker = latencyTracker;
+        this.firstSpeculativeRequestTimeoutMicros = TimeUnit.MILLISECONDS.toMicros(firstSpeculativeRequestTimeout);
+        this.maxSpeculativeRequestTimeoutMicros = TimeUnit.MILLISECONDS.toMicros(maxSpeculativeRequestTimeout);
+        this.percentile = percentile / 100;
+        this.unlimited = budget >= 1;
+        if (unlimited) {
+            this.creditsPerInitiatedRequest = 0;
+            this.maxCredits = 0;
+        } else {
+            this.creditsPerInitiatedRequest = Math.round(budget * CREDITS_PER_REQUEST);
+            // No credits at all when no speculative request may ever be earned
+            this.maxCredits = creditsPerInitiatedRequest == 0
+                    ? 0 : Math.max(CREDITS_PER_REQUEST, creditsPerInitiatedRequest * BUDGET_BURST_REQUESTS);
+        }
+        this.credits = new AtomicLong(maxCredits);
+        this.clientStats = clientStats;
+    }
+
+    @Override
+    public ScheduledFuture<?> initiateSpeculativeRequest(final ScheduledExecutorService scheduler,
+                                                         final SpeculativeRequestExecutor requestExecutor) {
+        if (!unlimited && maxCredits == 0) {
+            // Speculative requests are disabled by the budget
+            return null;
+        }
+        earnCredits();
+        return scheduleSpeculativeRequest(scheduler, requestExecutor);
+    }
+
+    long getSpeculativeRequestTimeoutMicros(SpeculativeRequestExecutor requestExecutor) {
+        BookieId bookie = requestExecutor.getLastRequestedBookie();
+        long latencyMicros = -1;
+        if (bookie != null) {
+            latencyMicros = latencyTracker.getLatencyPercentileMicros(bookie, ledgerClassOf(requestExecutor),
+                    percentile);
+        }
+        if (latencyMicros < 0) {
+            return Math.min(firstSpeculativeRequestTimeoutMicros, maxSpeculativeRequestTimeoutMicros);
+        }
+        return Math.min(latencyMicros, maxSpeculativeRequestTimeoutMicros);
+    }
+
+    private static BookieReadLatencyTracker.LedgerClass ledgerClassOf(SpeculativeRequestExecutor requestExecutor) {
+        if (requestExecutor instanceof ReadOpBase.LedgerEntryRequest) {
+            return ((ReadOpBase.LedgerEntryRequest) requestExecutor).getLedgerClass();
+        }
+        return BookieReadLatencyTracker.LedgerClass.CLOSED;
+    }
+
+    private static boolean isComplete(SpeculativeRequestExecutor requestExecutor) {
+        return requestExecutor instanceof ReadOpBase.LedgerEntryRequest
+                && ((ReadOpBase.LedgerEntryRequest) requestExecutor).isComplete();
+    }
+
+    private void earnCredits() {
+        if (unlimited) {
+            return;
+        }
+        long current;
+        do {
+            current = credits.get();
+            if (current >= maxCredits) {
+                return;
+            }
+        } while (!credits.compareAndSet(current, Math.min(maxCredits, current + creditsPerInitiatedRequest)));
+    }
+
+    private boolean hasCredits() {
+        return unlimited || credits.get() >= CREDITS_PER_REQUEST;
+    }
+
+    private void consumeCredits() {
+        if (!unlimited) {
+            credits.addAndGet(-CREDITS_PER_REQUEST);
+        }
+    }
+
+    private ScheduledFuture<?> scheduleSpeculativeRequest(final ScheduledExecutorService scheduler,
+                                                          final SpeculativeRequestExecutor requestExecutor) {
+        final long timeoutMicros = getSpeculativeRequestTimeoutMicros(requestExecutor);
+        try {
+            return scheduler.schedule(() -> {
+                if (isComplete(requestExecutor)) {
+                    return;
+                }
+                if (!hasCredits()) {
+                    clientStats.getSpeculativeReadBudgetExhaustedCounter().inc();
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace("Speculative request budget exhausted, not issuing speculative request for {}",
+                                requestExecutor);
+                    }
+                    return;
+                }
+                ListenableFuture<Boolean> issueNextRequest = requestExecutor.issueSpeculativeRequest();
+                Futures.addCallback(issueNextRequest, new FutureCallback<Boolean>() {
+                    @Override
+                    public void onSuccess(Boolean issueNextRequest) {
+                        if (issueNextRequest) {
+                            // A speculative request was issued
+                            consumeCredits();
+                            clientStats.getSpeculativeReadTimeoutLogger()
+                                    .registerSuccessfulEvent(timeoutMicros, TimeUnit.MICROSECONDS);
+                            scheduleSpeculativeRequest(scheduler, requestExecutor);
+                        } else if (LOG.isTraceEnabled()) {
+                            LOG.trace("Stopped issuing speculative requests for {}, speculativeReadTimeout = {}us",
+                                    requestExecutor, timeoutMicros);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Throwable thrown) {
+                        LOG.warn("Failed to issue speculative request for {}, speculativeReadTimeout = {}us : ",
+                                requestExecutor, timeoutMicros, thrown);
+                    }
+                }, directExecutor());
+            }, timeoutMicros, TimeUnit.MICROSECONDS);
+        } catch (RejectedExecutionException re) {
+            if (!scheduler.isShutdown()) {
+                LOG.warn("Failed to schedule speculative request for {}, speculativeReadTimeout = {}us : ",
+                        requestExecutor, timeoutMicros, re);
+            }
+        }
+        return null;
+    }
+}
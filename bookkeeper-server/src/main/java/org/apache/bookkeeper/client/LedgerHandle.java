@@ -36,23 +36,23 @@ import io.netty.buffer.Unpooled;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallbackWithLatency;
 import org.apache.bookkeeper.client.AsyncCallback.CloseCallback;
@@ -70,10 +70,12 @@ import org.apache.bookkeeper.client.SyncCallbackUtils.SyncReadLastConfirmedCallb
 import org.apache.bookkeeper.client.api.BKException.Code;
 import org.apache.bookkeeper.client.api.LastConfirmedAndEntry;
 import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntryStream;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.client.api.WriteHandle;
 import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryStreamImpl;
 import org.apache.bookkeeper.common.concurrent.FutureEventListener;
 import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.common.util.MathUtils;
@@ -100,10 +102,18 @@ public class LedgerHandle implements WriteHandle {
     final ClientContext clientCtx;
 
     final byte[] ledgerKey;
-    private Versioned<LedgerMetadata> versionedMetadata;
+    private volatile Versioned<LedgerMetadata> versionedMetadata;
     final long ledgerId;
     final ExecutorService executor;
-    long lastAddPushed;
+    /**
+     * Last entry id pushed to the ledger and the length of the ledger up to it. Appends advance it with a CAS, so
+     * that they do not take the monitor of the handle.
+     */
+    private final AtomicReference<PushedPosition> lastAddPushed;
+    // Appends which advanced lastAddPushed but did not add their operation to pendingAddOps yet
+    private final LongAdder addsBeingQueued = new LongAdder();
+    // Notified when an append finishes queueing its operation while the handle is being closed
+    private final Object addsQueuedLock = new Object();
     boolean notSupportBatch;
 
     private enum HandleState {
@@ -111,7 +121,7 @@ public class LedgerHandle implements WriteHandle {
         CLOSED
     }
 
-    private HandleState handleState = HandleState.OPEN;
+    private volatile HandleState handleState = HandleState.OPEN;
     private final CompletableFuture<Void> closePromise = new CompletableFuture<>();
 
     /**
@@ -138,7 +148,6 @@ public class LedgerHandle implements WriteHandle {
      */
     private int stickyBookieIndex;
 
-    final AtomicLong length;
     final DigestManager macManager;
     final DistributionSchedule distributionSchedule;
     final RateLimiter throttler;
@@ -167,7 +176,7 @@ public class LedgerHandle implements WriteHandle {
     final Object metadataLock = new Object();
     boolean changingEnsemble = false;
     final AtomicInteger numEnsembleChanges = new AtomicInteger(0);
-    Queue<PendingAddOp> pendingAddOps;
+    final PendingAddOpRing pendingAddOps = new PendingAddOpRing();
     ExplicitLacFlushPolicy explicitLacFlushPolicy;
 
     final Counter ensembleChangeCounter;
@@ -183,16 +192,16 @@ public class LedgerHandle implements WriteHandle {
         this.clientCtx = clientCtx;
 
         this.versionedMetadata = versionedMetadata;
-        this.pendingAddOps = new ConcurrentLinkedQueue<PendingAddOp>();
         this.writeFlags = writeFlags;
 
         LedgerMetadata metadata = versionedMetadata.getValue();
         if (metadata.isClosed()) {
-            lastAddConfirmed = lastAddPushed = metadata.getLastEntryId();
-            length = new AtomicLong(metadata.getLength());
+            lastAddConfirmed = metadata.getLastEntryId();
+            lastAddPushed = new AtomicReference<>(
+                    new PushedPosition(metadata.getLastEntryId(), metadata.getLength(), true));
         } else {
-            lastAddConfirmed = lastAddPushed = INVALID_ENTRY_ID;
-            length = new AtomicLong();
+            lastAddConfirmed = INVALID_ENTRY_ID;
+            lastAddPushed = new AtomicReference<>(new PushedPosition(INVALID_ENTRY_ID, 0, false));
         }
 
         this.pendingAddsSequenceHead = lastAddConfirmed;
@@ -333,8 +342,12 @@ public class LedgerHandle implements WriteHandle {
      * {@inheritDoc}
      */
     @Override
-    public synchronized long getLastAddPushed() {
-        return lastAddPushed;
+    public long getLastAddPushed() {
+        return lastAddPushed.get().lastEntryId;
+    }
+
+    void setLastAddPushed(long entryId) {
+        lastAddPushed.updateAndGet(p -> new PushedPosition(entryId, p.length, p.closed));
     }
 
     /**
@@ -365,8 +378,8 @@ public class LedgerHandle implements WriteHandle {
                 versionedMetadata = newMetadata;
                 LedgerMetadata metadata = versionedMetadata.getValue();
                 if (metadata.isClosed()) {
-                    lastAddConfirmed = lastAddPushed = metadata.getLastEntryId();
-                    length.set(metadata.getLength());
+                    lastAddConfirmed = metadata.getLastEntryId();
+                    lastAddPushed.set(new PushedPosition(metadata.getLastEntryId(), metadata.getLength(), true));
                 }
                 return true;
             } else {
@@ -424,7 +437,11 @@ public class LedgerHandle implements WriteHandle {
      * @return the length of the ledger after the addition
      */
     long addToLength(long delta) {
-        return length.addAndGet(delta);
+        return lastAddPushed.updateAndGet(p -> new PushedPosition(p.lastEntryId, p.length + delta, p.closed)).length;
+    }
+
+    void setLength(long length) {
+        lastAddPushed.updateAndGet(p -> new PushedPosition(p.lastEntryId, length, p.closed));
     }
 
     /**
@@ -434,7 +451,7 @@ public class LedgerHandle implements WriteHandle {
      */
     @Override
     public long getLength() {
-        return this.length.get();
+        return lastAddPushed.get().length;
     }
 
     /**
@@ -551,6 +568,9 @@ public class LedgerHandle implements WriteHandle {
                         }
                     });
 
+                    // stop the appends, as they do not take the monitor of the handle
+                    closeToAppends();
+
                     synchronized (LedgerHandle.this) {
                         prevHandleState = handleState;
 
@@ -558,8 +578,9 @@ public class LedgerHandle implements WriteHandle {
                         pendingAdds = drainPendingAddsAndAdjustLength();
 
                         // taking the length must occur after draining, as draining changes the length
-                        lastEntry = lastAddPushed = LedgerHandle.this.lastAddConfirmed;
-                        finalLength = LedgerHandle.this.length.get();
+                        lastEntry = LedgerHandle.this.lastAddConfirmed;
+                        setLastAddPushed(lastEntry);
+                        finalLength = getLength();
                         handleState = HandleState.CLOSED;
                     }
 
@@ -941,6 +962,19 @@ public class LedgerHandle implements WriteHandle {
         return future;
     }
 
+    /**
+     * Read a range of entries as a stream, with batch reads of at most the maximum frame size.
+     *
+     * @see org.apache.bookkeeper.client.api.ReadHandle#readStream(long, long, int, int)
+     */
+    @Override
+    public LedgerEntryStream readStream(long firstEntry, long lastEntry, int maxEntriesPerRead,
+                                        int maxOutstandingReads) {
+        long maxSizePerRead = clientCtx.getConf().nettyMaxFrameSizeBytes;
+        return LedgerEntryStreamImpl.create((entryId, maxCount) -> batchReadAsync(entryId, maxCount, maxSizePerRead),
+                firstEntry, lastEntry, maxEntriesPerRead, maxOutstandingReads);
+    }
+
     private boolean notSupportBatchRead() {
         if (!clientCtx.getConf().batchReadEnabled) {
             return true;
@@ -1209,6 +1243,31 @@ public class LedgerHandle implements WriteHandle {
         return callback;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>When batched adds are enabled with the v2 wire protocol, the entries of the batch get consecutive entry
+     * ids and are sent in a single request per bookie.
+     */
+    @Override
+    public CompletableFuture<Long> appendBatchAsync(List<ByteBuf> data) {
+        if (data.isEmpty() || !clientCtx.getConf().batchAddEnabled || !clientCtx.getConf().useV2WireProtocol) {
+            return WriteHandle.super.appendBatchAsync(data);
+        }
+
+        // The adds fail together: the failure of an add errors out all the adds after it, so the batch
+        // completes with the last one
+        SyncAddCallback callback = new SyncAddCallback();
+        List<BookieId> ensemble = getCurrentEnsemble();
+        List<PendingAddOp> ops = new ArrayList<>(data.size());
+        for (int i = 0; i < data.size(); i++) {
+            AddCallback cb = i == data.size() - 1 ? callback : NoopAddCallback.instance;
+            ops.add(PendingAddOp.create(this, clientCtx, ensemble, data.get(i), writeFlags, cb, null));
+        }
+        doAsyncAddEntries(ops);
+        return callback;
+    }
+
     /**
      * Add entry synchronously to an open ledger. This can be used only with
      * {@link LedgerHandleAdv} returned through ledgers created with {@link
@@ -1588,45 +1647,25 @@ public class LedgerHandle implements WriteHandle {
             throttler.acquire();
         }
 
-        boolean wasClosed = false;
-        synchronized (this) {
-            // synchronized on this to ensure that
-            // the ledger isn't closed between checking and
-            // updating lastAddPushed
-            if (isHandleWritable()) {
-                long entryId = ++lastAddPushed;
-                long currentLedgerLength = addToLength(op.payload.readableBytes());
-                op.setEntryId(entryId);
-                op.setLedgerLength(currentLedgerLength);
-                pendingAddOps.add(op);
-            } else {
-                wasClosed = true;
+        boolean wasClosed = true;
+        if (isHandleWritable()) {
+            addsBeingQueued.increment();
+            try {
+                long entryLength = op.payload.readableBytes();
+                PushedPosition position = lastAddPushed.updateAndGet(p -> p.advance(1, entryLength));
+                if (!position.closed) {
+                    op.setEntryId(position.lastEntryId);
+                    op.setLedgerLength(position.length);
+                    pendingAddOps.add(op);
+                    wasClosed = false;
+                }
+            } finally {
+                addsQueued();
             }
         }
 
         if (wasClosed) {
-            // make sure the callback is triggered in main worker pool
-            try {
-                executeOrdered(new Runnable() {
-                    @Override
-                    public void run() {
-                        LOG.warn("Attempt to add to closed ledger: {}", ledgerId);
-                        op.cb.addCompleteWithLatency(BKException.Code.LedgerClosedException,
-                                LedgerHandle.this, INVALID_ENTRY_ID, 0, op.ctx);
-                        op.recyclePendAddOpObject();
-                    }
-
-                    @Override
-                    public String toString() {
-                        return String.format("AsyncAddEntryToClosedLedger(lid=%d)", ledgerId);
-                    }
-                });
-            } catch (RejectedExecutionException e) {
-                op.cb.addCompleteWithLatency(BookKeeper.getReturnRc(clientCtx.getBookieClient(),
-                                BKException.Code.InterruptedException),
-                        LedgerHandle.this, INVALID_ENTRY_ID, 0, op.ctx);
-                op.recyclePendAddOpObject();
-            }
+            failAddToClosedLedger(op);
             return;
         }
 
@@ -1645,6 +1684,92 @@ public class LedgerHandle implements WriteHandle {
 
     }
 
+    /**
+     * Add a batch of entries with consecutive entry ids, sending them in a single request per bookie.
+     */
+    void doAsyncAddEntries(final List<PendingAddOp> ops) {
+        if (throttler != null) {
+            throttler.acquire(ops.size());
+        }
+
+        boolean wasClosed = true;
+        if (isHandleWritable()) {
+            addsBeingQueued.increment();
+            try {
+                long batchLength = 0;
+                for (PendingAddOp op : ops) {
+                    batchLength += op.payload.readableBytes();
+                }
+                long totalLength = batchLength;
+                PushedPosition position = lastAddPushed.updateAndGet(p -> p.advance(ops.size(), totalLength));
+                if (!position.closed) {
+                    long entryId = position.lastEntryId - ops.size();
+                    long currentLedgerLength = position.length - batchLength;
+                    for (PendingAddOp op : ops) {
+                        currentLedgerLength += op.payload.readableBytes();
+                        op.setEntryId(++entryId);
+                        op.setLedgerLength(currentLedgerLength);
+                        pendingAddOps.add(op);
+                    }
+                    wasClosed = false;
+                }
+            } finally {
+                addsQueued();
+            }
+        }
+
+        if (wasClosed) {
+            for (PendingAddOp op : ops) {
+                failAddToClosedLedger(op);
+            }
+            return;
+        }
+
+        boolean allowFailFast = false;
+        if (clientCtx.getConf().waitForWriteSetMs >= 0) {
+            DistributionSchedule.WriteSet ws = distributionSchedule.getWriteSet(ops.get(0).getEntryId());
+            try {
+                allowFailFast = !waitForWritable(ws, 0, clientCtx.getConf().waitForWriteSetMs);
+            } finally {
+                ws.recycle();
+            }
+        }
+
+        PendingAddBatch batch = new PendingAddBatch(this, clientCtx, allowFailFast);
+        for (PendingAddOp op : ops) {
+            if (allowFailFast) {
+                op.allowFailFastOnUnwritableChannel();
+            }
+            op.initiate(batch);
+        }
+        batch.send();
+    }
+
+    private void failAddToClosedLedger(final PendingAddOp op) {
+        // make sure the callback is triggered in main worker pool
+        try {
+            executeOrdered(new Runnable() {
+                @Override
+                public void run() {
+                    LOG.warn("Attempt to add to closed ledger: {}", ledgerId);
+                    op.cb.addCompleteWithLatency(BKException.Code.LedgerClosedException,
+                            LedgerHandle.this, INVALID_ENTRY_ID, 0, op.ctx);
+                    op.recyclePendAddOpObject();
+                }
+
+                @Override
+                public String toString() {
+                    return String.format("AsyncAddEntryToClosedLedger(lid=%d)", ledgerId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            op.cb.addCompleteWithLatency(BookKeeper.getReturnRc(clientCtx.getBookieClient(),
+                            BKException.Code.InterruptedException),
+                    LedgerHandle.this, INVALID_ENTRY_ID, 0, op.ctx);
+            op.recyclePendAddOpObject();
+        }
+    }
+
     synchronized void updateLastConfirmed(long lac, long len) {
         if (lac > lastAddConfirmed) {
             lastAddConfirmed = lac;
@@ -1652,8 +1777,8 @@ public class LedgerHandle implements WriteHandle {
         } else {
             lacUpdateMissesCounter.inc();
         }
-        lastAddPushed = Math.max(lastAddPushed, lac);
-        length.accumulateAndGet(len, (current, value) -> Math.max(current, value));
+        lastAddPushed.updateAndGet(p -> new PushedPosition(Math.max(p.lastEntryId, lac), Math.max(p.length, len),
+                p.closed));
     }
 
     /**
@@ -1989,7 +2114,7 @@ public class LedgerHandle implements WriteHandle {
             isClosed = metadata.isClosed();
             if (isClosed) {
                 lastAddConfirmed = metadata.getLastEntryId();
-                length.set(metadata.getLength());
+                setLength(metadata.getLength());
             }
         }
         if (isClosed) {
@@ -2074,44 +2199,71 @@ public class LedgerHandle implements WriteHandle {
     }
 
     synchronized List<PendingAddOp> drainPendingAddsAndAdjustLength() {
-        PendingAddOp pendingAddOp;
-        List<PendingAddOp> opsDrained = new ArrayList<PendingAddOp>(pendingAddOps.size());
-        while ((pendingAddOp = pendingAddOps.poll()) != null) {
+        List<PendingAddOp> opsDrained = pendingAddOps.drain();
+        for (PendingAddOp pendingAddOp : opsDrained) {
             addToLength(-pendingAddOp.entryLength);
-            opsDrained.add(pendingAddOp);
         }
         return opsDrained;
     }
 
+    /**
+     * Make the appends fail with a closed ledger error, and wait for the appends which already got an entry id to
+     * add their operation to the pending adds.
+     */
+    @VisibleForTesting
+    void closeToAppends() {
+        lastAddPushed.updateAndGet(p -> new PushedPosition(p.lastEntryId, p.length, true));
+        boolean interrupted = false;
+        synchronized (addsQueuedLock) {
+            while (addsBeingQueued.sum() > 0) {
+                try {
+                    addsQueuedLock.wait();
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void addsQueued() {
+        addsBeingQueued.decrement();
+        if (lastAddPushed.get().closed) {
+            // The handle is being closed, wake up the close waiting for the appends to be queued
+            synchronized (addsQueuedLock) {
+                addsQueuedLock.notifyAll();
+            }
+        }
+    }
+
     void errorOutPendingAdds(int rc, List<PendingAddOp> ops) {
         for (PendingAddOp op : ops) {
             op.submitCallback(rc);
         }
     }
 
+    /**
+     * Complete the pending adds in entry id order, starting from the next entry in the sequence and proceeding
+     * while there are entries that have had all their responses come back.
+     *
+     * <p>This is only called from the ordered executor of the ledger, which is the single writer of
+     * {@link #pendingAddsSequenceHead}.
+     */
     void sendAddSuccessCallbacks() {
-        // Start from the head of the queue and proceed while there are
-        // entries that have had all their responses come back
         PendingAddOp pendingAddOp;
 
-        while ((pendingAddOp = pendingAddOps.peek()) != null
-               && !changingEnsemble) {
+        while (!changingEnsemble
+               && (pendingAddOp = pendingAddOps.get(pendingAddsSequenceHead + 1)) != null) {
             if (!pendingAddOp.completed) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("pending add not completed: {}", pendingAddOp);
                 }
                 return;
             }
-            // Check if it is the next entry in the sequence.
-            if (pendingAddOp.entryId != 0 && pendingAddOp.entryId != pendingAddsSequenceHead + 1) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Head of the queue entryId: {} is not the expected value: {}", pendingAddOp.entryId,
-                               pendingAddsSequenceHead + 1);
-                }
-                return;
-            }
 
-            pendingAddOps.remove();
+            pendingAddOps.remove(pendingAddOp);
             explicitLacFlushPolicy.updatePiggyBackedLac(lastAddConfirmed);
             pendingAddsSequenceHead = pendingAddOp.entryId;
             if (!writeFlags.contains(WriteFlag.DEFERRED_SYNC)) {
@@ -2323,6 +2475,15 @@ public class LedgerHandle implements WriteHandle {
         }
     }
 
+    static class NoopAddCallback implements AddCallback {
+        static NoopAddCallback instance = new NoopAddCallback();
+
+        @Override
+        public void addComplete(int rc, LedgerHandle lh, long entryId, Object ctx) {
+            // noop
+        }
+    }
+
     /**
      * Get the current ensemble from the ensemble list. The current ensemble
      * is the last ensemble in the list. The ledger handle uses this ensemble when
@@ -2382,7 +2543,27 @@ public class LedgerHandle implements WriteHandle {
     }
 
     @VisibleForTesting
-    public Queue<PendingAddOp> getPendingAddOps() {
+    public Collection<PendingAddOp> getPendingAddOps() {
         return pendingAddOps;
     }
+
+    /**
+     * Immutable position of the last entry pushed to the ledger.
+     */
+    private static final class PushedPosition {
+        final long lastEntryId;
+        final long length;
+        // No entry can be pushed anymore
+        final boolean closed;
+
+        PushedPosition(long lastEntryId, long length, boolean closed) {
+            this.lastEntryId = lastEntryId;
+            this.length = length;
+            this.closed = closed;
+        }
+
+        PushedPosition advance(int numEntries, long entriesLength) {
+            return closed ? this : new PushedPosition(lastEntryId + numEntries, length + entriesLength, false);
+        }
+    }
 }
@@ -23,13 +23,12 @@ package org.apache.bookkeeper.client;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
-import java.io.Serializable;
+import io.netty.util.ReferenceCountUtil;
 import java.security.GeneralSecurityException;
-import java.util.Comparator;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallbackWithLatency;
@@ -37,6 +36,7 @@ import org.apache.bookkeeper.client.SyncCallbackUtils.SyncAddCallback;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.client.api.WriteAdvHandle;
 import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.versioning.Versioned;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,19 +50,11 @@ import org.slf4j.LoggerFactory;
 public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
     static final Logger LOG = LoggerFactory.getLogger(LedgerHandleAdv.class);
 
-    static class PendingOpsComparator implements Comparator<PendingAddOp>, Serializable {
-        @Override
-        public int compare(PendingAddOp o1, PendingAddOp o2) {
-            return Long.compare(o1.entryId, o2.entryId);
-        }
-    }
-
     LedgerHandleAdv(ClientContext clientCtx,
                     long ledgerId, Versioned<LedgerMetadata> metadata,
                     BookKeeper.DigestType digestType, byte[] password, EnumSet<WriteFlag> writeFlags)
             throws GeneralSecurityException, NumberFormatException {
         super(clientCtx, ledgerId, metadata, digestType, password, writeFlags);
-        pendingAddOps = new PriorityBlockingQueue<PendingAddOp>(10, new PendingOpsComparator());
     }
 
 
@@ -206,7 +198,7 @@ public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
         PendingAddOp op = PendingAddOp.create(this, clientCtx, getCurrentEnsemble(), data, writeFlags, cb, ctx);
         op.setEntryId(entryId);
 
-        if ((entryId <= this.lastAddConfirmed) || pendingAddOps.contains(op)) {
+        if ((entryId <= this.lastAddConfirmed) || pendingAddOps.get(entryId) != null) {
             LOG.error("Trying to re-add duplicate entryid:{}", entryId);
             op.submitCallback(BKException.Code.DuplicateEntryIdException);
             return;
@@ -293,6 +285,15 @@ public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
         cb.addCompleteWithLatency(BKException.Code.IllegalOpException, this, LedgerHandle.INVALID_ENTRY_ID, 0, ctx);
     }
 
+    /**
+     * LedgerHandleAdv will not allow appendBatch without providing the entryIds.
+     */
+    @Override
+    public CompletableFuture<Long> appendBatchAsync(List<ByteBuf> data) {
+        data.forEach(ReferenceCountUtil::release);
+        return FutureUtils.exception(new BKException.BKIllegalOpException());
+    }
+
     /**
      * LedgerHandleAdv will not allow addEntry without providing an entryId.
      */
@@ -0,0 +1,129 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.apache.bookkeeper.proto.BookieProtocol.FLAG_NONE;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.util.ByteBufList;
+
+/**
+ * Collects the write requests of a batch of {@link PendingAddOp}s, to send them to each bookie in as few requests
+ * as the maximum frame size allows.
+ */
+class PendingAddBatch {
+
+    // Room for the headers of the batched request
+    private static final int REQUEST_HEADER_SIZE = 1024;
+
+    private final LedgerHandle lh;
+    private final ClientContext clientCtx;
+    private final boolean allowFailFast;
+    private final int maxRequestSize;
+    private final Map<BookieId, BookieRequests> requests = new LinkedHashMap<>();
+
+    PendingAddBatch(LedgerHandle lh, ClientContext clientCtx, boolean allowFailFast) {
+        this.lh = lh;
+        this.clientCtx = clientCtx;
+        this.allowFailFast = allowFailFast;
+        this.maxRequestSize = clientCtx.getConf().nettyMaxFrameSizeBytes - REQUEST_HEADER_SIZE;
+    }
+
+    /**
+     * Add the write request of an operation to a bookie, the content sent is retained until the batch is sent.
+     */
+    void add(PendingAddOp op, BookieId bookie, int bookieIndex) {
+        requests.computeIfAbsent(bookie, b -> new BookieRequests(bookieIndex)).add(op);
+    }
+
+    void send() {
+        for (Map.Entry<BookieId, BookieRequests> e : requests.entrySet()) {
+            BookieRequests bookieRequests = e.getValue();
+            int start = 0;
+            long size = 0;
+            for (int i = 0; i < bookieRequests.toSend.size(); i++) {
+                int entrySize = sizeOf(bookieRequests.toSend.get(i));
+                if (i > start && size + entrySize > maxRequestSize) {
+                    send(e.getKey(), bookieRequests, start, i);
+                    start = i;
+                    size = 0;
+                }
+                size += entrySize;
+            }
+            send(e.getKey(), bookieRequests, start, bookieRequests.toSend.size());
+        }
+        requests.clear();
+    }
+
+    private void send(BookieId bookie, BookieRequests bookieRequests, int start, int end) {
+        int count = end - start;
+        long[] entryIds = new long[count];
+        ReferenceCounted[] toSend = new ReferenceCounted[count];
+        WriteCallback[] cbs = new WriteCallback[count];
+        for (int i = 0; i < count; i++) {
+            entryIds[i] = bookieRequests.entryIds.get(start + i);
+            toSend[i] = bookieRequests.toSend.get(start + i);
+            cbs[i] = bookieRequests.ops.get(start + i);
+        }
+        try {
+            clientCtx.getBookieClient().addEntries(bookie, lh.ledgerId, lh.ledgerKey, entryIds, toSend, cbs,
+                    bookieRequests.bookieIndex, FLAG_NONE, allowFailFast, lh.writeFlags);
+        } finally {
+            for (ReferenceCounted entry : toSend) {
+                ReferenceCountUtil.release(entry);
+            }
+        }
+    }
+
+    private static int sizeOf(ReferenceCounted toSend) {
+        if (toSend instanceof ByteBuf) {
+            return ((ByteBuf) toSend).readableBytes();
+        } else {
+            return ((ByteBufList) toSend).readableBytes();
+        }
+    }
+
+    private static class BookieRequests {
+        final int bookieIndex;
+        final List<PendingAddOp> ops = new ArrayList<>();
+        final List<Long> entryIds = new ArrayList<>();
+        final List<ReferenceCounted> toSend = new ArrayList<>();
+
+        BookieRequests(int bookieIndex) {
+            this.bookieIndex = bookieIndex;
+        }
+
+        void add(PendingAddOp op) {
+            ops.add(op);
+            entryIds.add(op.getEntryId());
+            // The operation can release its content if it fails before the batch is sent
+            toSend.add(op.toSend.retain());
+        }
+    }
+}
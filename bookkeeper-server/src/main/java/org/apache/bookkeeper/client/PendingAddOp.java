@@ -229,13 +229,39 @@ class PendingAddOp implements WriteCallback {
      * Initiate the add operation.
      */
     public synchronized void initiate() {
+        if (!prepareToSend()) {
+            return;
+        }
+
+        // Iterate over set and trigger the sendWriteRequests
+        for (int i = 0; i < lh.distributionSchedule.getWriteQuorumSize(); i++) {
+            sendWriteRequest(ensemble, lh.distributionSchedule.getWriteSetBookieIndex(entryId, i));
+        }
+    }
+
+    /**
+     * Initiate the add operation as part of a batch, the write requests are sent by the batch.
+     */
+    synchronized void initiate(PendingAddBatch batch) {
+        if (!prepareToSend()) {
+            return;
+        }
+
+        for (int i = 0; i < lh.distributionSchedule.getWriteQuorumSize(); i++) {
+            int bookieIndex = lh.distributionSchedule.getWriteSetBookieIndex(entryId, i);
+            batch.add(this, ensemble.get(bookieIndex), bookieIndex);
+            ++pendingWriteRequests;
+        }
+    }
+
+    private boolean prepareToSend() {
         hasRun = true;
         if (callbackTriggered) {
             // this should only be true if the request was failed due
             // to another request ahead in the pending queue,
             // so we can just ignore this request
             maybeRecycle();
-            return;
+            return false;
         }
 
         this.requestTimeNanos = MathUtils.nowInNano();
@@ -252,11 +278,7 @@ class PendingAddOp implements WriteCallback {
         // We are about to send. Check if we need to make an ensemble change
         // because of delayed write errors
         lh.maybeHandleDelayedWriteBookieFailure();
-
-        // Iterate over set and trigger the sendWriteRequests
-        for (int i = 0; i < lh.distributionSchedule.getWriteQuorumSize(); i++) {
-            sendWriteRequest(ensemble, lh.distributionSchedule.getWriteSetBookieIndex(entryId, i));
-        }
+        return true;
     }
 
     @Override
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pending add operations of a ledger, indexed by entry id.
+ *
+ * <p>An operation is stored in the slot of a ring given by its entry id, so that adding an operation is a single
+ * CAS and the next operation to complete is found without scanning. The rings are allocated on demand: when the
+ * slot of an entry is still taken by an operation one ring length behind, the operation goes to a larger ring, and
+ * past the largest ring to an overflow map. So a ledger with few pending adds only uses a small ring.
+ *
+ * <p>The range of entry ids of the pending operations is tracked, so that iterating and draining only visit the
+ * slots of that range. The lower bound of the range advances when the operation at the bottom is removed, which is
+ * the common case as the adds complete in entry id order.
+ *
+ * <p>Operations can be added from any thread. Entry ids are expected to be unique among the pending operations.
+ */
+class PendingAddOpRing extends AbstractCollection<PendingAddOp> {
+
+    private static final int FIRST_RING_SIZE = 256;
+    private static final int RING_SIZE_MULTIPLIER = 16;
+    private static final int NUM_RINGS = 3;
+
+    private static final Comparator<PendingAddOp> BY_ENTRY_ID = Comparator.comparingLong(op -> op.entryId);
+
+    private final AtomicReferenceArray<AtomicReferenceArray<PendingAddOp>> rings =
+            new AtomicReferenceArray<>(NUM_RINGS);
+    private final ConcurrentSkipListMap<Long, PendingAddOp> overflow = new ConcurrentSkipListMap<>();
+    private final LongAdder size = new LongAdder();
+    // Bounds of the entry ids of the pending operations, empty when lowest > highest
+    private final AtomicLong lowestEntryId = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong highestEntryId = new AtomicLong(-1);
+
+    @Override
+    public boolean add(PendingAddOp op) {
+        long entryId = op.entryId;
+        size.increment();
+        for (int i = 0; i < NUM_RINGS; i++) {
+            AtomicReferenceArray<PendingAddOp> ring = ring(i);
+            if (ring.compareAndSet(index(ring, entryId), null, op)) {
+                extendRange(entryId);
+                return true;
+            }
+        }
+        overflow.put(entryId, op);
+        extendRange(entryId);
+        return true;
+    }
+
+    private void extendRange(long entryId) {
+        // Operations are usually added in entry id order, so only the upper bound moves
+        long highest = highestEntryId.get();
+        while (entryId > highest && !highestEntryId.compareAndSet(highest, entryId)) {
+            highest = highestEntryId.get();
+        }
+        long lowest = lowestEntryId.get();
+        while (entryId < lowest && !lowestEntryId.compareAndSet(lowest, entryId)) {
+            lowest = lowestEntryId.get();
+        }
+    }
+
+    private void removed(long entryId) {
+        size.decrement();
+        // Entry ids below the lowest one are never added back, so the range can skip the removed operation
+        lowestEntryId.compareAndSet(entryId, entryId + 1);
+    }
+
+    /**
+     * Get the pending operation of an entry.
+     *
+     * @return the operation, or null if the entry has no pending operation
+     */
+    PendingAddOp get(long entryId) {
+        for (int i = 0; i < NUM_RINGS; i++) {
+            AtomicReferenceArray<PendingAddOp> ring = rings.get(i);
+            if (ring == null) {
+                return null;
+            }
+            PendingAddOp op = ring.get(index(ring, entryId));
+            if (op != null && op.entryId == entryId) {
+                return op;
+            }
+        }
+        return overflow.isEmpty() ? null : overflow.get(entryId);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof PendingAddOp)) {
+            return false;
+        }
+        PendingAddOp op = (PendingAddOp) o;
+        for (int i = 0; i < NUM_RINGS; i++) {
+            AtomicReferenceArray<PendingAddOp> ring = rings.get(i);
+            if (ring == null) {
+                return false;
+            }
+            if (ring.compareAndSet(index(ring, op.entryId), op, null)) {
+                removed(op.entryId);
+                return true;
+            }
+        }
+        if (overflow.remove(op.entryId, op)) {
+            removed(op.entryId);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof PendingAddOp && get(((PendingAddOp) o).entryId) == o;
+    }
+
+    /**
+     * Remove all the pending operations.
+     *
+     * @return the operations removed, in entry id order
+     */
+    List<PendingAddOp> drain() {
+        List<PendingAddOp> ops = new ArrayList<>(size());
+        collect(ops, true);
+        Map.Entry<Long, PendingAddOp> entry;
+        while ((entry = overflow.pollFirstEntry()) != null) {
+            ops.add(entry.getValue());
+        }
+        size.add(-ops.size());
+        ops.sort(BY_ENTRY_ID);
+        return ops;
+    }
+
+    /**
+     * Iterate over a snapshot of the pending operations, in entry id order.
+     */
+    @Override
+    public Iterator<PendingAddOp> iterator() {
+        List<PendingAddOp> ops = new ArrayList<>(size());
+        collect(ops, false);
+        ops.addAll(overflow.values());
+        ops.sort(BY_ENTRY_ID);
+        return Collections.unmodifiableList(ops).iterator();
+    }
+
+    /**
+     * Collect the operations of the rings, visiting only the slots of the range of pending entry ids.
+     */
+    private void collect(List<PendingAddOp> ops, boolean remove) {
+        long lowest = lowestEntryId.get();
+        long highest = highestEntryId.get();
+        if (lowest > highest) {
+            return;
+        }
+        for (int i = 0; i < NUM_RINGS; i++) {
+            AtomicReferenceArray<PendingAddOp> ring = rings.get(i);
+            if (ring == null) {
+                break;
+            }
+            // The slots of the range, or the whole ring when the range wraps around it
+            long first = highest - lowest < ring.length() ? lowest : 0;
+            long last = highest - lowest < ring.length() ? highest : ring.length() - 1;
+            for (long entryId = first; entryId <= last; entryId++) {
+                int j = index(ring, entryId);
+                PendingAddOp op = remove ? ring.getAndSet(j, null) : ring.get(j);
+                if (op != null) {
+                    ops.add(op);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.max(0, size.sum());
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    private AtomicReferenceArray<PendingAddOp> ring(int i) {
+        AtomicReferenceArray<PendingAddOp> ring = rings.get(i);
+        if (ring == null) {
+            int ringSize = FIRST_RING_SIZE;
+            for (int j = 0; j < i; j++) {
+                ringSize *= RING_SIZE_MULTIPLIER;
+            }
+            rings.compareAndSet(i, null, new AtomicReferenceArray<>(ringSize));
+            ring = rings.get(i);
+        }
+        return ring;
+    }
+
+    private static int index(AtomicReferenceArray<PendingAddOp> ring, long entryId) {
+        // Ring sizes are powers of two
+        return (int) (entryId & (ring.length() - 1));
+    }
+}
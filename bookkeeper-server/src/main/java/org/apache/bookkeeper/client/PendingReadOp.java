@@ -97,7 +97,13 @@ class PendingReadOp extends ReadOpBase implements ReadEntryCallback  {
         final ReadContext rctx = (ReadContext) ctx;
         final SingleLedgerEntryRequest entry = (SingleLedgerEntryRequest) rctx.entry;
 
+        BookieReadLatencyTracker latencyTracker = clientCtx.getConf().readLatencyTracker;
         if (rc != BKException.Code.OK) {
+            if (latencyTracker != null && !isRecoveryRead) {
+                // Timeouts and errors make the bookie look slower
+                latencyTracker.recordReadFailure(rctx.to, BookieReadLatencyTracker.LedgerClass.of(lh),
+                        MathUtils.elapsedNanos(rctx.sendTimeNanos));
+            }
             entry.logErrorAndReattemptRead(rctx.bookieIndex, rctx.to, "Error: " + BKException.getMessage(rc), rc);
             return;
         }
@@ -105,6 +111,11 @@ class PendingReadOp extends ReadOpBase implements ReadEntryCallback  {
         heardFromHosts.add(rctx.to);
         heardFromHostsBitSet.set(rctx.bookieIndex, true);
 
+        if (latencyTracker != null && !isRecoveryRead) {
+            latencyTracker.recordReadLatency(rctx.to, BookieReadLatencyTracker.LedgerClass.of(lh),
+                    MathUtils.elapsedNanos(rctx.sendTimeNanos));
+        }
+
         buffer.retain();
         // if entry has completed don't handle twice
         if (entry.complete(rctx.bookieIndex, rctx.to, buffer)) {
@@ -285,6 +296,7 @@ class PendingReadOp extends ReadOpBase implements ReadEntryCallback  {
 
         final BitSet sentReplicas;
         final BitSet erroredReplicas;
+        volatile BookieId lastSentTo = null;
 
         SequenceReadRequest(List<BookieId> ensemble, long lId, long eId) {
             super(ensemble, lId, eId);
@@ -350,14 +362,17 @@ class PendingReadOp extends ReadOpBase implements ReadEntryCallback  {
                 return null;
             }
 
-            // ToDo: pick replica with writable PCBC. ISSUE #1239
-            // https://github.com/apache/bookkeeper/issues/1239
+            ClientInternalConf conf = clientCtx.getConf();
+            if (conf.enableLatencyAwareReadSequence && !conf.enableStickyReads) {
+                moveFastestReplicaToNext(conf.readLatencyTracker);
+            }
             int replica = nextReplicaIndexToReadFrom;
             int bookieIndex = writeSet.get(nextReplicaIndexToReadFrom);
             nextReplicaIndexToReadFrom++;
 
             try {
                 BookieId to = ensemble.get(bookieIndex);
+                lastSentTo = to;
                 sendReadTo(bookieIndex, to, this);
                 sentToHosts.add(to);
                 sentReplicas.set(replica);
@@ -370,6 +385,22 @@ class PendingReadOp extends ReadOpBase implements ReadEntryCallback  {
             }
         }
 
+        /**
+         * Move the fastest replica, among the ones not tried yet, to the next position of the read sequence.
+         */
+        private void moveFastestReplicaToNext(BookieReadLatencyTracker latencyTracker) {
+            int fastestReplica = latencyTracker.getFastestReplica(ensemble, writeSet, nextReplicaIndexToReadFrom,
+                    lh.getBookiesHealthInfo());
+            if (fastestReplica != nextReplicaIndexToReadFrom) {
+                writeSet.moveAndShift(fastestReplica, nextReplicaIndexToReadFrom);
+            }
+        }
+
+        @Override
+        public BookieId getLastRequestedBookie() {
+            return lastSentTo;
+        }
+
         @Override
         synchronized void logErrorAndReattemptRead(int bookieIndex, BookieId host, String errMsg, int rc) {
             super.logErrorAndReattemptRead(bookieIndex, host, errMsg, rc);
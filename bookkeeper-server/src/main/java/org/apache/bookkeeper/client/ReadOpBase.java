@@ -31,6 +31,7 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.bookkeeper.client.api.LedgerEntries;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks;
 import org.slf4j.Logger;
@@ -145,6 +146,13 @@ public abstract class ReadOpBase implements Runnable {
             }
         }
 
+        /**
+         * Get the class of the ledger read, which the read latency of the bookies depends on.
+         */
+        BookieReadLatencyTracker.LedgerClass getLedgerClass() {
+            return BookieReadLatencyTracker.LedgerClass.of(lh);
+        }
+
         /**
          * Execute the read request.
          */
@@ -272,12 +280,14 @@ public abstract class ReadOpBase implements Runnable {
         final int bookieIndex;
         final BookieId to;
         final PendingReadOp.LedgerEntryRequest entry;
+        final long sendTimeNanos;
         long lac = LedgerHandle.INVALID_ENTRY_ID;
 
         ReadContext(int bookieIndex, BookieId to, PendingReadOp.LedgerEntryRequest entry) {
             this.bookieIndex = bookieIndex;
             this.to = to;
             this.entry = entry;
+            this.sendTimeNanos = MathUtils.nowInNano();
         }
 
         @Override
@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.client;
 
 import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.bookkeeper.net.BookieId;
 
 /**
  * Define an executor for issuing speculative requests.
@@ -39,4 +40,15 @@ public interface SpeculativeRequestExecutor {
      * @return whether more speculative requests should be issued
      */
     ListenableFuture<Boolean> issueSpeculativeRequest();
+
+    /**
+     * Get the bookie the last request was sent to.
+     *
+     * <p>Policies may use it to adapt the time to wait before issuing the next speculative request.
+     *
+     * @return the bookie, or null if it is not known
+     */
+    default BookieId getLastRequestedBookie() {
+        return null;
+    }
 }
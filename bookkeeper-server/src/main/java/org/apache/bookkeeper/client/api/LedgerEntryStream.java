@@ -0,0 +1,75 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * A stream over a range of entries of a ledger, read ahead by batches.
+ *
+ * <p>The entries are returned in order, by batches of consecutive entries. The stream keeps a bounded number of
+ * batches read ahead of the caller, and does not read further until the caller takes them, so the memory it holds
+ * does not depend on the size of the range. The caller owns the returned {@link LedgerEntries}, and must close them
+ * to release their buffers.
+ *
+ * @see ReadHandle#readStream(long, long, int, int)
+ * @since 4.18
+ */
+@Public
+@Unstable
+public interface LedgerEntryStream extends AutoCloseable {
+
+    /**
+     * Return true if there are entries of the range which were not returned yet.
+     *
+     * @return true if there are entries left to return.
+     */
+    boolean hasNext();
+
+    /**
+     * Get the next batch of entries asynchronously.
+     *
+     * <p>Only one batch can be requested at a time: the future of the previous call must have completed before
+     * calling this method again. If a read fails, the future completes with its error, and so do the next calls.
+     *
+     * @return an handle to the next batch of entries
+     */
+    CompletableFuture<LedgerEntries> nextAsync();
+
+    /**
+     * Get the next batch of entries synchronously.
+     *
+     * @return the next batch of entries
+     * @see #nextAsync()
+     */
+    default LedgerEntries next() throws BKException, InterruptedException {
+        return FutureUtils.<LedgerEntries, BKException>result(nextAsync(), BKException.HANDLER);
+    }
+
+    /**
+     * Close the stream, releasing the entries read ahead and not returned yet.
+     */
+    @Override
+    void close();
+}
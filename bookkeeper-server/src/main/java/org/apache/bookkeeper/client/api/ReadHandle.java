@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.client.api;
 
 import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.impl.LedgerEntryStreamImpl;
 import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
 import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
 import org.apache.bookkeeper.common.concurrent.FutureUtils;
@@ -91,6 +92,32 @@ public interface ReadHandle extends Handle {
         return FutureUtils.result(batchReadAsync(startEntry, maxCount, maxSize), BKException.HANDLER);
     }
 
+    /**
+     * Read a range of entries as a stream.
+     *
+     * <p>The entries are read by batches, keeping at most <i>maxOutstandingReads</i> batches in flight or read ahead
+     * and not yet taken from the stream. This allows to read large ranges, for instance to replay a ledger, with
+     * bounded memory and without waiting for each batch before reading the next one. By default the batches are read
+     * with {@link #readAsync(long, long)}, implementations may read them more efficiently.
+     *
+     * @param firstEntry
+     *          id of first entry of the range
+     * @param lastEntry
+     *          id of last entry of the range, inclusive
+     * @param maxEntriesPerRead
+     *          the maximum number of entries of each batch.
+     * @param maxOutstandingReads
+     *          the maximum number of batches read ahead.
+     * @return the stream of the entries
+     * @since 4.18
+     */
+    default LedgerEntryStream readStream(long firstEntry, long lastEntry, int maxEntriesPerRead,
+                                         int maxOutstandingReads) {
+        return LedgerEntryStreamImpl.create(
+                (entryId, maxCount) -> readAsync(entryId, Math.min(lastEntry, entryId + maxCount - 1)),
+                firstEntry, lastEntry, maxEntriesPerRead, maxOutstandingReads);
+    }
+
     /**
      * Read a sequence of entries asynchronously, allowing to read after the LastAddConfirmed range.
      * <br>This is the same of
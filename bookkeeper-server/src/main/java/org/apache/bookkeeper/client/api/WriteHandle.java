@@ -23,6 +23,7 @@ package org.apache.bookkeeper.client.api;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
 import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
@@ -133,6 +134,40 @@ public interface WriteHandle extends ReadHandle, ForceableHandle {
         return append(Unpooled.wrappedBuffer(data, offset, length));
     }
 
+    /**
+     * Add a batch of entries asynchronously to an open ledger.
+     *
+     * <p>The entries are appended in order, with the same semantics as appending them one at a time with
+     * {@link #appendAsync(ByteBuf)}, but the implementation can send them to the bookies in fewer requests.
+     *
+     * @param data the bytebufs to be written. The reference count of each bytebuf will be decremented by 1 after
+     *             the completable future is returned
+     *             do not reuse the buffers, bk-client will release them appropriately.
+     * @return an handle to the result, in case of success it will return the id of the last entry of the batch
+     */
+    default CompletableFuture<Long> appendBatchAsync(List<ByteBuf> data) {
+        if (data.isEmpty()) {
+            return FutureUtils.exception(new IllegalArgumentException("Cannot append an empty batch"));
+        }
+        CompletableFuture<Long> result = null;
+        for (ByteBuf entry : data) {
+            result = appendAsync(entry);
+        }
+        return result;
+    }
+
+    /**
+     * Add a batch of entries synchronously to an open ledger.
+     *
+     * @param data the bytebufs to be written. The reference count of each bytebuf will be decremented by 1 after
+     *             the call completes.
+     *             do not reuse the buffers, bk-client will release them appropriately.
+     * @return the id of the last entry of the batch
+     */
+    default long appendBatch(List<ByteBuf> data) throws BKException, InterruptedException {
+        return FutureUtils.<Long, BKException>result(appendBatchAsync(data), BKException.HANDLER);
+    }
+
     /**
      * Get the entry id of the last entry that has been enqueued for addition (but
      * may not have possibly been persisted to the ledger).
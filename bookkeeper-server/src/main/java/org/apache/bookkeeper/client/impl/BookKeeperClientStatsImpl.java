@@ -140,6 +140,16 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         help = "The number of speculative read requests"
     )
     private final Counter speculativeReadCounter;
+    @StatsDoc(
+        name = SPECULATIVE_READ_TIMEOUT,
+        help = "The time waited before issuing speculative read requests, when derived from the bookie latencies"
+    )
+    private final OpStatsLogger speculativeReadTimeoutStats;
+    @StatsDoc(
+        name = SPECULATIVE_READ_BUDGET_EXHAUSTED,
+        help = "The number of speculative read requests not issued because the speculative read budget was exhausted"
+    )
+    private final Counter speculativeReadBudgetExhaustedCounter;
 
     @StatsDoc(
         name = WRITE_DELAYED_DUE_TO_NOT_ENOUGH_FAULT_DOMAINS_LATENCY,
@@ -184,6 +194,8 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         this.clientChannelWriteWaitStats = stats.getOpStatsLogger(CLIENT_CHANNEL_WRITE_WAIT);
 
         speculativeReadCounter = stats.getCounter(SPECULATIVE_READ_COUNT);
+        speculativeReadTimeoutStats = stats.getOpStatsLogger(SPECULATIVE_READ_TIMEOUT);
+        speculativeReadBudgetExhaustedCounter = stats.getCounter(SPECULATIVE_READ_BUDGET_EXHAUSTED);
 
         this.writeDelayedDueToNotEnoughFaultDomainsLatency =
                 stats.getOpStatsLogger(WRITE_DELAYED_DUE_TO_NOT_ENOUGH_FAULT_DOMAINS_LATENCY);
@@ -257,6 +269,14 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         return speculativeReadCounter;
     }
     @Override
+    public OpStatsLogger getSpeculativeReadTimeoutLogger() {
+        return speculativeReadTimeoutStats;
+    }
+    @Override
+    public Counter getSpeculativeReadBudgetExhaustedCounter() {
+        return speculativeReadBudgetExhaustedCounter;
+    }
+    @Override
     public Counter getEnsembleChangeCounter() {
         return ensembleChangeCounter;
     }
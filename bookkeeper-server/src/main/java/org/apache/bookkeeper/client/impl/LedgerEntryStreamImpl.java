@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerEntryStream;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Ledger entry stream implementation, reading the entries by batches with a {@link BatchReader}.
+ *
+ * <p>The range is split in batches of consecutive entries, read in parallel up to the number of outstanding reads,
+ * and returned in order. A new batch is only read when one is taken from the stream. A batch read may return less
+ * entries than asked for, eg: because of the size limit of the responses: the rest of the batch is then read right
+ * away, as a new batch inserted after it.
+ */
+public class LedgerEntryStreamImpl implements LedgerEntryStream {
+
+    /**
+     * Reads a batch of consecutive entries.
+     */
+    @FunctionalInterface
+    public interface BatchReader {
+        /**
+         * Read at most <i>maxCount</i> entries, starting from <i>firstEntry</i>. At least the first entry must be
+         * returned if the read succeeds.
+         */
+        CompletableFuture<LedgerEntries> read(long firstEntry, int maxCount);
+    }
+
+    private final BatchReader reader;
+    private final long lastEntry;
+    private final int maxEntriesPerRead;
+    private final int maxOutstandingReads;
+
+    // Batches in flight or read ahead, in entry id order
+    private final LinkedList<Batch> batches = new LinkedList<>();
+    private long nextEntryToRead;
+    private long nextEntryToReturn;
+    private CompletableFuture<LedgerEntries> pendingNext = null;
+    private Throwable failure = null;
+    private boolean closed = false;
+
+    private LedgerEntryStreamImpl(BatchReader reader, long firstEntry, long lastEntry, int maxEntriesPerRead,
+                                  int maxOutstandingReads) {
+        checkArgument(maxEntriesPerRead > 0, "maxEntriesPerRead must be positive");
+        checkArgument(maxOutstandingReads > 0, "maxOutstandingReads must be positive");
+        this.reader = reader;
+        this.lastEntry = lastEntry;
+        this.maxEntriesPerRead = maxEntriesPerRead;
+        this.maxOutstandingReads = maxOutstandingReads;
+        this.nextEntryToRead = firstEntry;
+        this.nextEntryToReturn = firstEntry;
+    }
+
+    /**
+     * Create a stream over the entries [firstEntry, lastEntry] and start reading ahead.
+     *
+     * @param reader the reader of the batches of entries
+     * @param maxEntriesPerRead the maximum number of entries of each batch
+     * @param maxOutstandingReads the maximum number of batches read ahead
+     * @return the stream of the entries
+     */
+    public static LedgerEntryStream create(BatchReader reader, long firstEntry, long lastEntry, int maxEntriesPerRead,
+                                           int maxOutstandingReads) {
+        return new LedgerEntryStreamImpl(reader, firstEntry, lastEntry, maxEntriesPerRead, maxOutstandingReads)
+                .start();
+    }
+
+    private LedgerEntryStreamImpl start() {
+        List<Batch> toRead;
+        synchronized (this) {
+            toRead = nextBatchesToRead();
+        }
+        read(toRead);
+        return this;
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+        return failure == null && !closed && nextEntryToReturn <= lastEntry;
+    }
+
+    @Override
+    public CompletableFuture<LedgerEntries> nextAsync() {
+        CompletableFuture<LedgerEntries> next = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) {
+                return FutureUtils.exception(new IllegalStateException("Stream is closed"));
+            } else if (failure != null) {
+                return FutureUtils.exception(failure);
+            } else if (nextEntryToReturn > lastEntry) {
+                return FutureUtils.exception(new NoSuchElementException());
+            } else if (pendingNext != null) {
+                return FutureUtils.exception(new IllegalStateException("Previous batch not returned yet"));
+            }
+            pendingNext = next;
+        }
+        returnNextBatch();
+        return next;
+    }
+
+    @Override
+    public void close() {
+        List<LedgerEntries> toRelease = new ArrayList<>();
+        CompletableFuture<LedgerEntries> next;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Batch batch : batches) {
+                if (batch.entries != null) {
+                    toRelease.add(batch.entries);
+                }
+            }
+            batches.clear();
+            next = pendingNext;
+            pendingNext = null;
+        }
+        // The batches still in flight are released when their read completes
+        toRelease.forEach(LedgerEntries::close);
+        if (next != null) {
+            next.completeExceptionally(new IllegalStateException("Stream is closed"));
+        }
+    }
+
+    private List<Batch> nextBatchesToRead() {
+        List<Batch> toRead = new ArrayList<>();
+        while (batches.size() < maxOutstandingReads && nextEntryToRead <= lastEntry) {
+            Batch batch = new Batch(nextEntryToRead, Math.min(lastEntry, nextEntryToRead + maxEntriesPerRead - 1));
+            batches.addLast(batch);
+            toRead.add(batch);
+            nextEntryToRead = batch.lastEntry + 1;
+        }
+        return toRead;
+    }
+
+    private void read(List<Batch> toRead) {
+        for (Batch batch : toRead) {
+            CompletableFuture<LedgerEntries> read;
+            try {
+                read = reader.read(batch.firstEntry, (int) (batch.lastEntry - batch.firstEntry + 1));
+            } catch (RuntimeException e) {
+                read = FutureUtils.exception(e);
+            }
+            read.whenComplete((entries, ex) -> readComplete(batch, entries, ex));
+        }
+    }
+
+    private void readComplete(Batch batch, LedgerEntries entries, Throwable ex) {
+        Batch rest = null;
+        synchronized (this) {
+            if (closed) {
+                if (entries != null) {
+                    entries.close();
+                }
+                return;
+            }
+            if (ex != null) {
+                batch.failure = ex;
+            } else {
+                long numEntries = 0;
+                for (LedgerEntry ignored : entries) {
+                    numEntries++;
+                }
+                if (numEntries == 0) {
+                    entries.close();
+                    batch.failure = new BKException.BKUnexpectedConditionException();
+                } else {
+                    batch.entries = entries;
+                    if (batch.firstEntry + numEntries - 1 < batch.lastEntry) {
+                        rest = new Batch(batch.firstEntry + numEntries, batch.lastEntry);
+                        batch.lastEntry = rest.firstEntry - 1;
+                        batches.add(batches.indexOf(batch) + 1, rest);
+                    }
+                }
+            }
+        }
+        if (rest != null) {
+            read(Collections.singletonList(rest));
+        }
+        returnNextBatch();
+    }
+
+    private void returnNextBatch() {
+        CompletableFuture<LedgerEntries> next;
+        Batch batch;
+        List<Batch> toRead;
+        synchronized (this) {
+            if (pendingNext == null || batches.isEmpty() || !batches.getFirst().isDone()) {
+                return;
+            }
+            next = pendingNext;
+            pendingNext = null;
+            batch = batches.removeFirst();
+            if (batch.failure != null) {
+                failure = batch.failure;
+                toRead = new ArrayList<>();
+            } else {
+                nextEntryToReturn = batch.lastEntry + 1;
+                toRead = nextBatchesToRead();
+            }
+        }
+        read(toRead);
+        if (batch.failure != null) {
+            next.completeExceptionally(batch.failure);
+        } else {
+            next.complete(batch.entries);
+        }
+    }
+
+    private static class Batch {
+        final long firstEntry;
+        long lastEntry;
+        LedgerEntries entries = null;
+        Throwable failure = null;
+
+        Batch(long firstEntry, long lastEntry) {
+            this.firstEntry = firstEntry;
+            this.lastEntry = lastEntry;
+        }
+
+        boolean isDone() {
+            return entries != null || failure != null;
+        }
+    }
+}
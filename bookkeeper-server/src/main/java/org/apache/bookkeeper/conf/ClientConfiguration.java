@@ -115,6 +115,10 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String RECOVERY_READ_BATCH_SIZE = "recoveryReadBatchSize";
     protected static final String REORDER_READ_SEQUENCE_ENABLED = "reorderReadSequenceEnabled";
     protected static final String STICKY_READS_ENABLED = "stickyReadSEnabled";
+    protected static final String LATENCY_AWARE_READ_SEQUENCE_ENABLED = "latencyAwareReadSequenceEnabled";
+    protected static final String LATENCY_AWARE_SPECULATIVE_READ_ENABLED = "latencyAwareSpeculativeReadEnabled";
+    protected static final String SPECULATIVE_READ_LATENCY_PERCENTILE = "speculativeReadLatencyPercentile";
+    protected static final String SPECULATIVE_READ_BUDGET = "speculativeReadBudget";
     protected static final String RECOVERY_BATCH_READ_ENABLED = "recoveryBatchReadEnabled";
     // Add Parameters
     protected static final String OPPORTUNISTIC_STRIPING = "opportunisticStriping";
@@ -203,6 +207,8 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
 
     //For batch read api, it the batch read is not stable, we can fail back to single read by this config.
     protected static final String BATCH_READ_ENABLED = "batchReadEnabled";
+    // Send the entries appended in a batch in a single request per bookie, only with the v2 protocol
+    protected static final String BATCH_ADD_ENABLED = "batchAddEnabled";
 
     /**
      * Construct a default client-side configuration.
@@ -1202,6 +1208,105 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * If the replica to read an entry from is chosen by its latency or not.
+     *
+     * @return true if latency aware read sequence is enabled, otherwise false.
+     */
+    public boolean isLatencyAwareReadSequenceEnabled() {
+        return getBoolean(LATENCY_AWARE_READ_SEQUENCE_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable choosing the replica to read an entry from by its latency.
+     *
+     * <p>If this flag is enabled, the client tracks the read latency of each bookie, and each read request (the
+     * first one and the speculative ones) goes to the replica, among the ones not tried yet, with the lowest read
+     * latency weighted by its number of pending requests. Sticky reads take precedence over this flag.
+     *
+     * @param enabled the flag to enable/disable latency aware read sequence.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setLatencyAwareReadSequenceEnabled(boolean enabled) {
+        setProperty(LATENCY_AWARE_READ_SEQUENCE_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * If the speculative read timeouts are derived from the read latency of the bookies or not.
+     *
+     * @return true if latency aware speculative reads are enabled, otherwise false.
+     */
+    public boolean isLatencyAwareSpeculativeReadEnabled() {
+        return getBoolean(LATENCY_AWARE_SPECULATIVE_READ_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable deriving the speculative read timeouts from the read latency of the bookies.
+     *
+     * <p>If this flag is enabled, a speculative read is sent when the last bookie read from has not responded
+     * within the {@link #getSpeculativeReadLatencyPercentile()} percentile of its recent read latencies for the
+     * same class of ledgers (open or closed), bounded by {@link #getMaxSpeculativeReadTimeout()}. Until enough
+     * reads from a bookie have been seen, {@link #getFirstSpeculativeReadTimeout()} is used. The speculative reads
+     * are limited by {@link #getSpeculativeReadBudget()}. Speculative reads are only sent if
+     * {@link #getFirstSpeculativeReadTimeout()} is positive.
+     *
+     * @param enabled the flag to enable/disable latency aware speculative reads.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setLatencyAwareSpeculativeReadEnabled(boolean enabled) {
+        setProperty(LATENCY_AWARE_SPECULATIVE_READ_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the percentile of the read latency of a bookie after which a speculative read is sent, when latency
+     * aware speculative reads are enabled.
+     *
+     * @return the percentile, between 0 and 100.
+     */
+    public double getSpeculativeReadLatencyPercentile() {
+        return getDouble(SPECULATIVE_READ_LATENCY_PERCENTILE, 99.0);
+    }
+
+    /**
+     * Set the percentile of the read latency of a bookie after which a speculative read is sent, when latency
+     * aware speculative reads are enabled.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setSpeculativeReadLatencyPercentile(double percentile) {
+        setProperty(SPECULATIVE_READ_LATENCY_PERCENTILE, percentile);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of speculative reads per entry read, when latency aware speculative reads are enabled.
+     *
+     * @return the speculative read budget.
+     */
+    public double getSpeculativeReadBudget() {
+        return getDouble(SPECULATIVE_READ_BUDGET, 0.05);
+    }
+
+    /**
+     * Set the maximum number of speculative reads per entry read, when latency aware speculative reads are enabled.
+     *
+     * <p>When a bookie slows down, its latency percentiles only catch up after a while, and meanwhile most of the
+     * reads sent to it would trigger a speculative read. The budget bounds the extra load put on the other bookies:
+     * each entry read earns this fraction of a speculative read, up to a small burst, and a speculative read is
+     * only sent if one has been earned. A budget of 1 or more does not limit the speculative reads, and a budget of 0
+     * disables them.
+     *
+     * @param budget the speculative read budget.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setSpeculativeReadBudget(double budget) {
+        setProperty(SPECULATIVE_READ_BUDGET, budget);
+        return this;
+    }
+
     /**
      * If recovery batch read enabled or not.
      * @return
@@ -2084,6 +2189,28 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return getBoolean(BATCH_READ_ENABLED, true);
     }
 
+    /**
+     * Enable sending the entries appended with {@link org.apache.bookkeeper.client.api.WriteHandle#appendBatchAsync}
+     * in a single request per bookie. It requires the v2 wire protocol, and bookies supporting batched adds.
+     *
+     * @param enabled
+     *          flag to enable/disable batched adds
+     * @return client configuration.
+     */
+    public ClientConfiguration setBatchAddEnabled(boolean enabled) {
+        setProperty(BATCH_ADD_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Whether the entries appended in a batch are sent in a single request per bookie.
+     *
+     * @return true if batched adds are enabled
+     */
+    public boolean isBatchAddEnabled() {
+        return getBoolean(BATCH_ADD_ENABLED, false);
+    }
+
     @Override
     protected ClientConfiguration getThis() {
         return this;
@@ -26,6 +26,7 @@ import java.io.File;
 import java.net.URL;
 import java.util.concurrent.TimeUnit;
 import lombok.SneakyThrows;
+import org.apache.bookkeeper.bookie.DirectIOFileChannelProvider;
 import org.apache.bookkeeper.bookie.FileChannelProvider;
 import org.apache.bookkeeper.bookie.InterleavedLedgerStorage;
 import org.apache.bookkeeper.bookie.LedgerStorage;
@@ -141,6 +142,9 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String JOURNAL_WRITE_DATA = "journalWriteData";
     protected static final String JOURNAL_ADAPTIVE_GROUP_WRITES = "journalAdaptiveGroupWrites";
     protected static final String JOURNAL_MAX_GROUP_WAIT_MSEC = "journalMaxGroupWaitMSec";
+    protected static final String JOURNAL_ADAPTIVE_GROUP_COMMIT = "journalAdaptiveGroupCommit";
+    protected static final String JOURNAL_ADAPTIVE_GROUP_COMMIT_TARGET_LATENCY_MSEC =
+        "journalAdaptiveGroupCommitTargetLatencyMSec";
     protected static final String JOURNAL_BUFFERED_WRITES_THRESHOLD = "journalBufferedWritesThreshold";
     protected static final String JOURNAL_BUFFERED_ENTRIES_THRESHOLD = "journalBufferedEntriesThreshold";
     protected static final String JOURNAL_FLUSH_WHEN_QUEUE_EMPTY = "journalFlushWhenQueueEmpty";
@@ -155,6 +159,12 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String JOURNAL_PAGECACHE_FLUSH_INTERVAL_MSEC = "journalPageCacheFlushIntervalMSec";
     protected static final String JOURNAL_CHANNEL_PROVIDER = "journalChannelProvider";
     protected static final String JOURNAL_REUSE_FILES = "journalReuseFiles";
+    protected static final String JOURNAL_GATHER_WRITES = "journalGatherWrites";
+    protected static final String JOURNAL_COMPRESSION_ENABLED = "journalCompressionEnabled";
+    protected static final String JOURNAL_COALESCE_FORCE_WRITES = "journalCoalesceForceWrites";
+    protected static final String JOURNAL_LOAD_BASED_LEDGER_ASSIGNMENT = "journalLoadBasedLedgerAssignment";
+    protected static final String JOURNAL_ADD_TRACE_SAMPLE_RATE = "journalAddTraceSampleRate";
+    protected static final String JOURNAL_SLOW_ADD_THRESHOLD_MSEC = "journalSlowAddThresholdMSec";
     // backpressure control
     protected static final String MAX_ADDS_IN_PROGRESS_LIMIT = "maxAddsInProgressLimit";
     protected static final String MAX_READS_IN_PROGRESS_LIMIT = "maxReadsInProgressLimit";
@@ -345,6 +355,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         "maxOperationNumbersInSingleRocksdbWriteBatch";
 
     protected static final String SKIP_REPLAY_JOURNAL_INVALID_RECORD = "skipReplayJournalInvalidRecord";
+    protected static final String JOURNAL_REPLAY_THREADS = "journalReplayThreads";
 
     protected static final String MAX_BATCH_READ_SIZE = "maxBatchReadSize";
     protected static final int DEFAULT_MAX_BATCH_READ_SIZE = 5 * 1024 * 1024; // 5MB
@@ -1032,6 +1043,132 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the journal writes the entries of a group commit with a single vectored write, instead of copying
+     * them into the journal write buffer first.
+     *
+     * @return whether journal gathering writes are enabled
+     */
+    public boolean getJournalGatherWrites() {
+        return this.getBoolean(JOURNAL_GATHER_WRITES, false);
+    }
+
+    /**
+     * Enable/disable journal gathering writes.
+     *
+     * @param journalGatherWrites whether to enable journal gathering writes
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalGatherWrites(boolean journalGatherWrites) {
+        setProperty(JOURNAL_GATHER_WRITES, journalGatherWrites);
+        return this;
+    }
+
+    /**
+     * Whether the journal records are compressed in blocks before being written. Enabling it writes the journal
+     * files with format version 7.
+     *
+     * @return whether journal compression is enabled
+     */
+    public boolean getJournalCompressionEnabled() {
+        return this.getBoolean(JOURNAL_COMPRESSION_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable the compression of the journal records.
+     *
+     * @param journalCompressionEnabled whether to compress the journal records
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalCompressionEnabled(boolean journalCompressionEnabled) {
+        setProperty(JOURNAL_COMPRESSION_ENABLED, journalCompressionEnabled);
+        return this;
+    }
+
+    /**
+     * Whether the journals residing on the same file system share a force write thread, which makes the pending
+     * force writes of all of them durable with a single syncfs of the file system, instead of each journal issuing
+     * its own fsyncs.
+     *
+     * @return whether force writes are coalesced across journals
+     */
+    public boolean getJournalCoalesceForceWrites() {
+        return this.getBoolean(JOURNAL_COALESCE_FORCE_WRITES, false);
+    }
+
+    /**
+     * Enable/disable sharing a force write thread between the journals residing on the same file system.
+     *
+     * @param journalCoalesceForceWrites whether to coalesce force writes across journals
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalCoalesceForceWrites(boolean journalCoalesceForceWrites) {
+        setProperty(JOURNAL_COALESCE_FORCE_WRITES, journalCoalesceForceWrites);
+        return this;
+    }
+
+    /**
+     * Whether the ledgers are assigned to the least loaded journal when first written, instead of by ledger id.
+     *
+     * @return whether load based assignment of the ledgers to the journals is enabled
+     */
+    public boolean getJournalLoadBasedLedgerAssignment() {
+        return this.getBoolean(JOURNAL_LOAD_BASED_LEDGER_ASSIGNMENT, false);
+    }
+
+    /**
+     * Enable/disable load based assignment of the ledgers to the journals.
+     *
+     * @param journalLoadBasedLedgerAssignment whether to assign the ledgers to the least loaded journal
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalLoadBasedLedgerAssignment(boolean journalLoadBasedLedgerAssignment) {
+        setProperty(JOURNAL_LOAD_BASED_LEDGER_ASSIGNMENT, journalLoadBasedLedgerAssignment);
+        return this;
+    }
+
+    /**
+     * Get the sample rate of the journal add traces: one add out of this number has the time spent in each stage
+     * of the journal recorded. 0 disables the traces.
+     *
+     * @return journal add trace sample rate
+     */
+    public int getJournalAddTraceSampleRate() {
+        return this.getInt(JOURNAL_ADD_TRACE_SAMPLE_RATE, 0);
+    }
+
+    /**
+     * Set the sample rate of the journal add traces.
+     *
+     * @param journalAddTraceSampleRate trace one add out of this number, 0 to disable the traces
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalAddTraceSampleRate(int journalAddTraceSampleRate) {
+        setProperty(JOURNAL_ADD_TRACE_SAMPLE_RATE, journalAddTraceSampleRate);
+        return this;
+    }
+
+    /**
+     * Get the latency above which a traced journal add is logged with the time spent in each stage.
+     * 0 disables the log.
+     *
+     * @return journal slow add threshold in milliseconds
+     */
+    public long getJournalSlowAddThresholdMSec() {
+        return this.getLong(JOURNAL_SLOW_ADD_THRESHOLD_MSEC, 1000);
+    }
+
+    /**
+     * Set the latency above which a traced journal add is logged.
+     *
+     * @param journalSlowAddThresholdMSec threshold in milliseconds, 0 to disable the log
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalSlowAddThresholdMSec(long journalSlowAddThresholdMSec) {
+        setProperty(JOURNAL_SLOW_ADD_THRESHOLD_MSEC, journalSlowAddThresholdMSec);
+        return this;
+    }
+
     /**
      * Get max number of adds in progress. 0 == unlimited.
      *
@@ -2375,6 +2512,49 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Should the journal tune the group wait and the buffered writes/entries thresholds at runtime, from the
+     * observed fsync latency and entries arrival rate, instead of using the static values. Default is false.
+     *
+     * @return whether adaptive group commit is enabled
+     */
+    public boolean getJournalAdaptiveGroupCommit() {
+        return getBoolean(JOURNAL_ADAPTIVE_GROUP_COMMIT, false);
+    }
+
+    /**
+     * Enable/disable the adaptive group commit of the journal.
+     *
+     * @param enabled flag to enable/disable adaptive group commit
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalAdaptiveGroupCommit(boolean enabled) {
+        setProperty(JOURNAL_ADAPTIVE_GROUP_COMMIT, enabled);
+        return this;
+    }
+
+    /**
+     * Target tail latency of a journal write, when adaptive group commit is enabled. The group wait is chosen so
+     * that the wait plus the tail fsync latency stays within this target. When the tail fsync latency alone exceeds
+     * the target, the wait is kept at a quarter of the fsync latency. Default is 5ms.
+     *
+     * @return target latency in milliseconds
+     */
+    public long getJournalAdaptiveGroupCommitTargetLatencyMSec() {
+        return getLong(JOURNAL_ADAPTIVE_GROUP_COMMIT_TARGET_LATENCY_MSEC, 5);
+    }
+
+    /**
+     * Set the target tail latency of a journal write, when adaptive group commit is enabled.
+     *
+     * @param targetLatencyMSec target latency in milliseconds
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalAdaptiveGroupCommitTargetLatencyMSec(long targetLatencyMSec) {
+        setProperty(JOURNAL_ADAPTIVE_GROUP_COMMIT_TARGET_LATENCY_MSEC, targetLatencyMSec);
+        return this;
+    }
+
     /**
      * Maximum bytes to buffer to impose on a journal write to achieve grouping.
      *
@@ -3233,6 +3413,17 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         if (getJournalAlignmentSize() > getJournalPreAllocSizeMB() * 1024 * 1024) {
             throw new ConfigurationException("Invalid preallocation size : " + getJournalPreAllocSizeMB() + " MB");
         }
+        if (DirectIOFileChannelProvider.class.getName().equals(getJournalChannelProvider())) {
+            // The journal flushes must end on the blocks of the direct I/O writes, so that no block is rewritten
+            if (getJournalAlignmentSize() % 4096 != 0 || getJournalFormatVersionToWrite() < 5) {
+                throw new ConfigurationException("The direct I/O journal channel provider needs a "
+                        + "journalAlignmentSize multiple of 4096 and journalFormatVersionToWrite >= 5");
+            }
+            if (getJournalReuseFiles()) {
+                throw new ConfigurationException(
+                        "journalReuseFiles is not supported by the direct I/O journal channel provider");
+            }
+        }
         if (0 == getBookiePort() && !getAllowEphemeralPorts()) {
             throw new ConfigurationException("Invalid port specified, using ephemeral ports accidentally?");
         }
@@ -4084,6 +4275,29 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this.getBoolean(SKIP_REPLAY_JOURNAL_INVALID_RECORD, false);
     }
 
+    /**
+     * Set the number of threads used to apply the journal records to the ledger storage when replaying the
+     * journals on bookie startup. With more than one thread, the journals are scanned concurrently and the records
+     * of different ledgers are applied in parallel.
+     *
+     * @param journalReplayThreads number of journal replay threads
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalReplayThreads(int journalReplayThreads) {
+        this.setProperty(JOURNAL_REPLAY_THREADS, journalReplayThreads);
+        return this;
+    }
+
+    /**
+     * Get the number of threads used to apply the journal records when replaying the journals on bookie startup.
+     * By default, the journals are replayed serially.
+     *
+     * @return number of journal replay threads
+     */
+    public int getJournalReplayThreads() {
+        return this.getInt(JOURNAL_REPLAY_THREADS, 1);
+    }
+
     /**
      * Get default rocksdb conf.
      *
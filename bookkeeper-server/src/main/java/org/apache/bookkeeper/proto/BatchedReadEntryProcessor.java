@@ -48,7 +48,6 @@ public class BatchedReadEntryProcessor extends ReadEntryProcessor {
 
     @Override
     protected ReferenceCounted readData() throws Exception {
-        ByteBufList data = null;
         BatchedReadRequest batchRequest = (BatchedReadRequest) request;
         int maxCount = batchRequest.getMaxCount();
         if (maxCount <= 0) {
@@ -57,25 +56,26 @@ public class BatchedReadEntryProcessor extends ReadEntryProcessor {
         long maxSize = Math.min(batchRequest.getMaxSize(), maxBatchReadSize);
         //See BookieProtoEncoding.ResponseEnDeCoderPreV3#encode on BatchedReadResponse case.
         long frameSize = 24 + 8 + 4;
-        for (int i = 0; i < maxCount; i++) {
-            try {
-                ByteBuf entry = requestProcessor.getBookie().readEntry(request.getLedgerId(), request.getEntryId() + i);
+
+        // The storage reads the whole range at once, the size header of each entry is accounted for below
+        ByteBufList entries = requestProcessor.getBookie().readEntries(request.getLedgerId(), request.getEntryId(),
+                maxCount, maxSize - frameSize);
+        ByteBufList data = null;
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                ByteBuf entry = entries.getBuffer(i);
                 frameSize += entry.readableBytes() + 4;
                 if (data == null) {
-                    data = ByteBufList.get(entry);
+                    data = ByteBufList.get(entry.retain());
                 } else {
                     if (frameSize > maxSize) {
-                        entry.release();
                         break;
                     }
-                    data.add(entry);
-                }
-            } catch (Throwable e) {
-                if (data == null) {
-                    throw e;
+                    data.add(entry.retain());
                 }
-                break;
             }
+        } finally {
+            entries.release();
         }
         return data;
     }
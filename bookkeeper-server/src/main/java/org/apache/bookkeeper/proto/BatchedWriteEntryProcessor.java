@@ -0,0 +1,220 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.bookie.BookieException.OperationRejectedException;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieProtocol.BatchedAddRequest;
+import org.apache.bookkeeper.proto.BookieProtocol.ParsedAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes batched add entry requests.
+ *
+ * <p>The entries of the batch are added to the ledger storage and logged in the journal as one group. Each entry
+ * is acknowledged with its own add response, as if it was sent in a separate request.
+ */
+class BatchedWriteEntryProcessor extends PacketProcessorBase<BatchedAddRequest> implements WriteCallback {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchedWriteEntryProcessor.class);
+
+    private long startTimeNanos;
+    // Guarded by this
+    private int pendingAdds;
+
+    static BatchedWriteEntryProcessor create(BatchedAddRequest request, BookieRequestHandler requestHandler,
+                                             BookieRequestProcessor requestProcessor) {
+        BatchedWriteEntryProcessor processor = new BatchedWriteEntryProcessor();
+        processor.init(request, requestHandler, requestProcessor);
+        // The requests can be rejected before the processor runs
+        processor.startTimeNanos = MathUtils.nowInNano();
+        processor.pendingAdds = request.getAdds().size();
+        for (int i = 0; i < processor.pendingAdds; i++) {
+            requestProcessor.onAddRequestStart(requestHandler.ctx().channel());
+        }
+        return processor;
+    }
+
+    @Override
+    public void run() {
+        startTimeNanos = MathUtils.nowInNano();
+        requestProcessor.getRequestStats().getWriteThreadQueuedLatency()
+                .registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+
+        if (!isVersionCompatible()) {
+            rejectAll(BookieProtocol.EBADVERSION);
+            return;
+        }
+        processPacket();
+    }
+
+    @Override
+    protected void processPacket() {
+        List<ParsedAddRequest> adds = request.getAdds();
+        if (requestProcessor.getBookie().isReadOnly()
+            && !(request.isHighPriority() && requestProcessor.getBookie().isAvailableForHighPriorityWrites())) {
+            LOG.warn("BookieServer is running in readonly mode,"
+                    + " so rejecting the request from the client!");
+            rejectAll(BookieProtocol.EREADONLY);
+            return;
+        }
+
+        if (request.isRecoveryAdd()) {
+            for (int i = 0; i < adds.size(); i++) {
+                addEntry(adds, i);
+            }
+            return;
+        }
+
+        ByteBuf[] entries = new ByteBuf[adds.size()];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = adds.get(i).getData();
+        }
+        int next = 0;
+        while (next < entries.length) {
+            int rc;
+            try {
+                next += requestProcessor.getBookie().addEntries(entries, next, false, this, requestHandler,
+                        request.getMasterKey());
+                continue;
+            } catch (Throwable t) {
+                rc = toErrorCode(t, adds.get(next));
+            }
+            sendError(rc, adds.get(next));
+            next++;
+        }
+    }
+
+    void rejectAll(int rc) {
+        List<ParsedAddRequest> adds = request.getAdds();
+        for (int i = 0; i < adds.size(); i++) {
+            adds.get(i).release();
+            sendError(rc, adds.get(i));
+        }
+    }
+
+    private void addEntry(List<ParsedAddRequest> adds, int index) {
+        ParsedAddRequest add = adds.get(index);
+        try {
+            requestProcessor.getBookie().recoveryAddEntry(add.getData(), this, requestHandler,
+                    request.getMasterKey());
+        } catch (Throwable t) {
+            sendError(toErrorCode(t, add), add);
+        }
+    }
+
+    private int toErrorCode(Throwable t, ParsedAddRequest add) {
+        if (t instanceof OperationRejectedException) {
+            requestProcessor.getRequestStats().getAddEntryRejectedCounter().inc();
+            // Avoid to log each occurrence of this exception as this can happen when the ledger storage is
+            // unable to keep up with the write rate.
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Operation rejected while writing {}", add, t);
+            }
+            return BookieProtocol.ETOOMANYREQUESTS;
+        } else if (t instanceof IOException) {
+            LOG.error("Error writing {}", add, t);
+            return BookieProtocol.EIO;
+        } else if (t instanceof BookieException.LedgerFencedException) {
+            LOG.warn("Write attempt on fenced ledger {} by client {}", add.getLedgerId(),
+                    requestHandler.ctx().channel().remoteAddress());
+            return BookieProtocol.EFENCED;
+        } else if (t instanceof BookieException) {
+            LOG.error("Unauthorized access to ledger {}", add.getLedgerId(), t);
+            return BookieProtocol.EUA;
+        } else {
+            LOG.error("Unexpected exception while writing {}@{} : {}",
+                      add.getLedgerId(), add.getEntryId(), t.getMessage(), t);
+            // some bad request which cause unexpected exception
+            return BookieProtocol.EBADREQ;
+        }
+    }
+
+    private void sendError(int rc, ParsedAddRequest add) {
+        requestProcessor.getRequestStats().getAddEntryStats()
+            .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        sendWriteReqResponse(rc,
+                     ResponseBuilder.buildErrorResponse(rc, add),
+                     requestProcessor.getRequestStats().getAddRequestStats());
+        onAddFinished();
+    }
+
+    @Override
+    public void writeComplete(int rc, long ledgerId, long entryId,
+                              BookieId addr, Object ctx) {
+        if (BookieProtocol.EOK == rc) {
+            requestProcessor.getRequestStats().getAddEntryStats()
+                .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        } else {
+            requestProcessor.getRequestStats().getAddEntryStats()
+                .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        }
+
+        ParsedAddRequest add = getAdd(entryId);
+        requestHandler.prepareSendResponseV2(rc, add);
+        requestProcessor.onAddRequestFinish();
+        onAddFinished();
+    }
+
+    private ParsedAddRequest getAdd(long entryId) {
+        List<ParsedAddRequest> adds = request.getAdds();
+        // The entries are usually consecutive, unless the ledger is striped
+        long index = entryId - request.getEntryId();
+        if (index >= 0 && index < adds.size() && adds.get((int) index).getEntryId() == entryId) {
+            return adds.get((int) index);
+        }
+        for (int i = 0; i < adds.size(); i++) {
+            if (adds.get(i).getEntryId() == entryId) {
+                return adds.get(i);
+            }
+        }
+        throw new IllegalStateException("Entry " + entryId + " is not part of " + this);
+    }
+
+    private void onAddFinished() {
+        boolean done;
+        synchronized (this) {
+            done = --pendingAdds == 0;
+        }
+        if (done) {
+            // The adds are only recycled once all of them are answered, since they are looked up by entry id
+            List<ParsedAddRequest> adds = request.getAdds();
+            for (int i = 0; i < adds.size(); i++) {
+                adds.get(i).recycle();
+            }
+            request.recycle();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchedWriteEntry(%d, %d, %d)",
+                             request.getLedgerId(), request.getEntryId(), request.getAdds().size());
+    }
+}
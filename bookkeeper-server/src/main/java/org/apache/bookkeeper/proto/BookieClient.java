@@ -144,6 +144,32 @@ public interface BookieClient {
                   long entryId, ReferenceCounted toSend, WriteCallback cb, Object ctx,
                   int options, boolean allowFastFail, EnumSet<WriteFlag> writeFlags);
 
+    /**
+     * Add a batch of entries of ledger {@code ledgerId} on the bookie at address {@code address}, in a single
+     * request if the bookie client supports it. Each entry completes its own callback.
+     *
+     * @param address the address of the bookie
+     * @param ledgerId the ledger to which we wish to add the entries
+     * @param entryIds the ids of the entries we wish to add
+     * @param toSend the buffers containing the entries and their digests
+     * @param cbs the callbacks notified when the add of each entry completes
+     * @param ctx a context object passed to the callbacks on completion
+     * @param options a bit mask of flags from BookieProtocol.FLAG_*
+     *                {@link org.apache.bookkeeper.proto.BookieProtocol}
+     * @param allowFastFail fail the adds immediately if the channel is non-writable
+     *                      {@link #isWritable(BookieId,long)}
+     * @param writeFlags a set of write flags
+     *                   {@link org.apache.bookkeeper.client.api.WriteFlag}
+     */
+    default void addEntries(BookieId address, long ledgerId, byte[] masterKey,
+                            long[] entryIds, ReferenceCounted[] toSend, WriteCallback[] cbs, Object ctx,
+                            int options, boolean allowFastFail, EnumSet<WriteFlag> writeFlags) {
+        for (int i = 0; i < entryIds.length; i++) {
+            addEntry(address, ledgerId, masterKey, entryIds[i], toSend[i], cbs[i], ctx,
+                    options, allowFastFail, writeFlags);
+        }
+    }
+
     /**
      * Read entry with a null masterkey, disallowing failfast.
      * @see #readEntry(BookieId,long,long,ReadEntryCallback,Object,int,byte[],boolean)
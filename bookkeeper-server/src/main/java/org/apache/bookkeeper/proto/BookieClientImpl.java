@@ -316,6 +316,56 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
                       ledgerId);
     }
 
+    @Override
+    public void addEntries(final BookieId addr,
+                           final long ledgerId,
+                           final byte[] masterKey,
+                           final long[] entryIds,
+                           final ReferenceCounted[] toSend,
+                           final WriteCallback[] cbs,
+                           final Object ctx,
+                           final int options,
+                           final boolean allowFastFail,
+                           final EnumSet<WriteFlag> writeFlags) {
+        final PerChannelBookieClientPool client = lookupClient(addr);
+        if (client == null) {
+            for (int i = 0; i < entryIds.length; i++) {
+                completeAdd(getRc(BKException.Code.BookieHandleNotAvailableException),
+                            ledgerId, entryIds[i], addr, cbs[i], ctx);
+            }
+            return;
+        }
+
+        // Retain the buffers, since the connection could be obtained after
+        // the PendingAddOps might have already failed
+        for (ReferenceCounted entry : toSend) {
+            entry.retain();
+        }
+
+        client.obtain((rc, pcbc) -> {
+            if (rc != BKException.Code.OK) {
+                executor.executeOrdered(ledgerId, () -> {
+                    for (int i = 0; i < entryIds.length; i++) {
+                        try {
+                            completeAdd(rc, ledgerId, entryIds[i], addr, cbs[i], ctx);
+                        } finally {
+                            ReferenceCountUtil.release(toSend[i]);
+                        }
+                    }
+                });
+            } else {
+                try {
+                    pcbc.addEntries(ledgerId, masterKey, entryIds, toSend, cbs, ctx, options, allowFastFail,
+                            writeFlags);
+                } finally {
+                    for (ReferenceCounted entry : toSend) {
+                        ReferenceCountUtil.release(entry);
+                    }
+                }
+            }
+        }, ledgerId);
+    }
+
     @Override
     public CompletableFuture<AvailabilityOfEntriesOfLedger> getListOfEntriesOfLedger(BookieId address,
             long ledgerId) {
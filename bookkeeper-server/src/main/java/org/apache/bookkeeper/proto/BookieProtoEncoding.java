@@ -36,6 +36,7 @@ import io.netty.channel.ChannelPromise;
 import io.netty.util.ReferenceCountUtil;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
 import org.apache.bookkeeper.proto.BookieProtocol.PacketHeader;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
@@ -193,6 +194,38 @@ public class BookieProtoEncoding {
                         masterKey, packet);
             }
 
+            case BookieProtocol.BATCH_ADD_ENTRY: {
+                byte[] masterKey = readMasterKey(packet);
+                int count = packet.readInt();
+                BookieProtocol.BatchedAddRequest batch = BookieProtocol.BatchedAddRequest.create(
+                        version, flags, masterKey);
+                try {
+                    for (int i = 0; i < count; i++) {
+                        int length = packet.readInt();
+                        ByteBuf entry = packet.slice(packet.readerIndex(), length);
+                        packet.skipBytes(length);
+                        ledgerId = entry.getLong(0);
+                        entryId = entry.getLong(8);
+                        if (i > 0 && ledgerId != batch.getLedgerId()) {
+                            throw new IllegalStateException("Received batched add request for multiple ledgers: "
+                                    + batch.getLedgerId() + ", " + ledgerId);
+                        }
+                        batch.add(BookieProtocol.ParsedAddRequest.create(
+                                version, ledgerId, entryId, flags, masterKey, entry));
+                    }
+                } catch (RuntimeException e) {
+                    // Release the entries decoded so far, the batch is never handed to a processor
+                    List<BookieProtocol.ParsedAddRequest> adds = batch.getAdds();
+                    for (int i = 0; i < adds.size(); i++) {
+                        adds.get(i).release();
+                        adds.get(i).recycle();
+                    }
+                    batch.recycle();
+                    throw e;
+                }
+                return batch;
+            }
+
             case BookieProtocol.READENTRY:
                 ledgerId = packet.readLong();
                 entryId = packet.readLong();
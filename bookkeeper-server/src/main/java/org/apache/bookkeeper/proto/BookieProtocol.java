@@ -26,6 +26,8 @@ import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ReferenceCounted;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AuthMessage;
 import org.apache.bookkeeper.util.ByteBufList;
 
@@ -134,6 +136,13 @@ public interface BookieProtocol {
     byte WRITE_LAC = 5;
     byte GET_BOOKIE_INFO = 6;
     byte BATCH_READ_ENTRY = 7;
+    /**
+     * The Batched add entry request payload will be the master key, followed by a 4-byte integer with the number
+     * of entries, each entry being a 4-byte integer with its length followed by the entry exactly as it should be
+     * logged. All the entries belong to the same ledger. The bookie responds to each entry with an
+     * {@link #ADDENTRY} response, as if they were sent in separate requests.
+     */
+    byte BATCH_ADD_ENTRY = 8;
 
     /**
      * The error code that indicates success.
@@ -307,6 +316,68 @@ public interface BookieProtocol {
         }
     }
 
+    /**
+     * A batch of add requests of the same ledger, received in a single {@link #BATCH_ADD_ENTRY} request.
+     */
+    class BatchedAddRequest extends Request {
+        final List<ParsedAddRequest> adds = new ArrayList<>();
+
+        static BatchedAddRequest create(byte protocolVersion, short flags, byte[] masterKey) {
+            BatchedAddRequest batch = RECYCLER.get();
+            batch.protocolVersion = protocolVersion;
+            batch.opCode = BATCH_ADD_ENTRY;
+            batch.flags = flags;
+            batch.masterKey = masterKey;
+            return batch;
+        }
+
+        void add(ParsedAddRequest add) {
+            if (adds.isEmpty()) {
+                ledgerId = add.getLedgerId();
+                entryId = add.getEntryId();
+            }
+            adds.add(add);
+        }
+
+        List<ParsedAddRequest> getAdds() {
+            return adds;
+        }
+
+        boolean isRecoveryAdd() {
+            return (flags & FLAG_RECOVERY_ADD) == FLAG_RECOVERY_ADD;
+        }
+
+        void release() {
+            for (int i = 0; i < adds.size(); i++) {
+                adds.get(i).release();
+            }
+        }
+
+        private final Handle<BatchedAddRequest> recyclerHandle;
+        private BatchedAddRequest(Handle<BatchedAddRequest> recyclerHandle) {
+            this.recyclerHandle = recyclerHandle;
+        }
+
+        private static final Recycler<BatchedAddRequest> RECYCLER = new Recycler<BatchedAddRequest>() {
+            @Override
+            protected BatchedAddRequest newObject(Handle<BatchedAddRequest> handle) {
+                return new BatchedAddRequest(handle);
+            }
+        };
+
+        /**
+         * Recycle the batch, the adds it contains are recycled separately.
+         */
+        @Override
+        public void recycle() {
+            ledgerId = -1;
+            entryId = -1;
+            masterKey = null;
+            adds.clear();
+            recyclerHandle.recycle(this);
+        }
+    }
+
     /**
      * A Request that reads data.
      */
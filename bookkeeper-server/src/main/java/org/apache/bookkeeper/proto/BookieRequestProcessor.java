@@ -377,6 +377,10 @@ public class BookieRequestProcessor implements RequestProcessor {
                     checkArgument(r instanceof BookieProtocol.ParsedAddRequest);
                     processAddRequest((BookieProtocol.ParsedAddRequest) r, requestHandler);
                     break;
+                case BookieProtocol.BATCH_ADD_ENTRY:
+                    checkArgument(r instanceof BookieProtocol.BatchedAddRequest);
+                    processBatchedAddRequest((BookieProtocol.BatchedAddRequest) r, requestHandler);
+                    break;
                 case BookieProtocol.READENTRY:
                     checkArgument(r instanceof BookieProtocol.ReadRequest);
                     processReadRequest((BookieProtocol.ReadRequest) r, requestHandler);
@@ -526,8 +530,6 @@ public class BookieRequestProcessor implements RequestProcessor {
                                                     lpThread, requestTimer);
             threadPool = longPollThreadPool;
         } else {
-            read = new ReadEntryProcessorV3(r, requestHandler, this, fenceThread);
-
             // If it's a high priority read (fencing or as part of recovery process), we want to make sure it
             // gets executed as fast as possible, so bypass the normal readThreadPool
             // and execute in highPriorityThreadPool
@@ -538,6 +540,11 @@ public class BookieRequestProcessor implements RequestProcessor {
             } else {
                 threadPool = readThreadPool;
             }
+
+            // The thread running the request completes the reads done in background by the storage
+            ExecutorService readThread = null == threadPool ? null
+                    : threadPool.chooseThread(r.getReadRequest().getLedgerId());
+            read = new ReadEntryProcessorV3(r, requestHandler, this, fenceThread, readThread);
         }
 
         if (null == threadPool) {
@@ -685,6 +692,34 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private void processBatchedAddRequest(final BookieProtocol.BatchedAddRequest r,
+                                          final BookieRequestHandler requestHandler) {
+        BatchedWriteEntryProcessor write = BatchedWriteEntryProcessor.create(r, requestHandler, this);
+
+        final OrderedExecutor threadPool;
+        if (r.isHighPriority()) {
+            threadPool = highPriorityThreadPool;
+        } else {
+            threadPool = writeThreadPool;
+        }
+
+        if (null == threadPool) {
+            write.run();
+        } else {
+            try {
+                threadPool.executeOrdered(r.getLedgerId(), write);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process request to add entries at {}:{}. Too many pending requests",
+                            r.ledgerId, r.entryId);
+                }
+                getRequestStats().getAddEntryRejectedCounter().inc();
+
+                write.rejectAll(BookieProtocol.ETOOMANYREQUESTS);
+            }
+        }
+    }
+
     private void processReadRequest(final BookieProtocol.ReadRequest r, final BookieRequestHandler requestHandler) {
         ExecutorService fenceThreadPool =
                 null == highPriorityThreadPool ? null : highPriorityThreadPool.chooseThread(requestHandler.ctx());
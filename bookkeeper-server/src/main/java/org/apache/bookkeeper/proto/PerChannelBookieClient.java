@@ -18,6 +18,7 @@
  */
 package org.apache.bookkeeper.proto;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Sets;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.ExtensionRegistry;
@@ -830,6 +831,92 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 cleanupActionAfterWrite);
     }
 
+    /**
+     * Add a batch of entries of a ledger in a single request. The entries are acknowledged with separate add
+     * responses, so each entry keeps its own completion. Only the v2 protocol supports batched adds, with the v3
+     * protocol the entries are added with separate requests.
+     *
+     * <p>This method should be called only after connection has been checked for
+     * {@link #connectIfNeededAndDoOp(GenericCallback)}.
+     */
+    void addEntries(final long ledgerId, byte[] masterKey, final long[] entryIds, ReferenceCounted[] toSend,
+                    WriteCallback[] cbs, Object ctx, final int options, boolean allowFastFail,
+                    final EnumSet<WriteFlag> writeFlags) {
+        if (!useV2WireProtocol) {
+            for (int i = 0; i < entryIds.length; i++) {
+                addEntry(ledgerId, masterKey, entryIds[i], toSend[i], cbs[i], ctx, options, allowFastFail,
+                        writeFlags);
+            }
+            return;
+        }
+        if (writeFlags.contains(WriteFlag.DEFERRED_SYNC)) {
+            LOG.error("invalid writeflags {} for v2 protocol", writeFlags);
+            for (int i = 0; i < entryIds.length; i++) {
+                cbs[i].writeComplete(BKException.Code.IllegalOpException, ledgerId, entryIds[i], bookieId, ctx);
+            }
+            return;
+        }
+
+        ByteBufList request = encodeBatchedAddRequest(allocator, masterKey, toSend, options);
+        CompletionKey[] completionKeys = new CompletionKey[entryIds.length];
+        for (int i = 0; i < entryIds.length; i++) {
+            completionKeys[i] = EntryCompletionKey.acquireV2Key(ledgerId, entryIds[i], OperationType.ADD_ENTRY);
+            putCompletionKeyValue(completionKeys[i],
+                                  AddCompletion.acquireAddCompletion(completionKeys[i],
+                                                       cbs[i], ctx, ledgerId, entryIds[i], this));
+        }
+        // addEntries times out on backpressure
+        writeAndFlush(channel, completionKeys, request, allowFastFail, request::release);
+    }
+
+    /**
+     * Build a batched add request from the add requests of the entries, by replacing their headers.
+     * <pre>
+     * [frame size][request header][master key][count]([entry size][entry])*
+     * </pre>
+     */
+    @VisibleForTesting
+    static ByteBufList encodeBatchedAddRequest(ByteBufAllocator allocator, byte[] masterKey,
+                                               ReferenceCounted[] toSend, int options) {
+        // Frame size, request header and master key of the add requests
+        final int addHeaderSize = 8 + BookieProtocol.MASTER_KEY_LENGTH;
+
+        ByteBufList request = ByteBufList.get();
+        ByteBuf buf = allocator.buffer(addHeaderSize + 4);
+        buf.writeInt(0); // frame size, set once the request is built
+        buf.writeInt(BookieProtocol.PacketHeader.toInt(
+                BookieProtocol.CURRENT_PROTOCOL_VERSION, BookieProtocol.BATCH_ADD_ENTRY, (short) options));
+        buf.writeBytes(masterKey, 0, BookieProtocol.MASTER_KEY_LENGTH);
+        buf.writeInt(toSend.length);
+        for (ReferenceCounted add : toSend) {
+            if (add instanceof ByteBuf) {
+                // Small entries are copied
+                ByteBuf entry = (ByteBuf) add;
+                buf.writeInt(entry.readableBytes() - addHeaderSize);
+                buf.writeBytes(entry, entry.readerIndex() + addHeaderSize, entry.readableBytes() - addHeaderSize);
+            } else {
+                ByteBufList entry = (ByteBufList) add;
+                ByteBuf entryHeader = entry.getBuffer(0);
+                buf.writeInt(entry.readableBytes() - addHeaderSize);
+                buf.writeBytes(entryHeader, entryHeader.readerIndex() + addHeaderSize,
+                        entryHeader.readableBytes() - addHeaderSize);
+                request.add(buf);
+                for (int i = 1; i < entry.size(); i++) {
+                    request.add(entry.getBuffer(i).retainedDuplicate());
+                }
+                buf = allocator.buffer();
+            }
+        }
+        if (buf.isReadable()) {
+            request.add(buf);
+        } else {
+            buf.release();
+        }
+        ByteBuf first = request.getBuffer(0);
+        first.setInt(first.readerIndex(), request.readableBytes() - 4);
+        return request;
+    }
+
     public void readLac(final long ledgerId, ReadLacCallback cb, Object ctx) {
         Object request = null;
         CompletionKey completionKey = null;
@@ -1213,6 +1300,65 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    private void writeAndFlush(final Channel channel,
+                               final CompletionKey[] keys,
+                               final Object request,
+                               final boolean allowFastFail, final Runnable cleanupActionFailedBeforeWrite) {
+        if (channel == null) {
+            LOG.warn("Operation {} failed: channel == null", StringUtils.requestToString(request));
+            for (CompletionKey key : keys) {
+                errorOut(key);
+            }
+            cleanupActionFailedBeforeWrite.run();
+            return;
+        }
+
+        final boolean isChannelWritable = channel.isWritable();
+        if (isWritable != isChannelWritable) {
+            // isWritable is volatile so simple "isWritable = channel.isWritable()" would be slower
+            isWritable = isChannelWritable;
+        }
+
+        if (allowFastFail && !isWritable) {
+            LOG.warn("Operation {} failed: TooManyRequestsException",
+                    StringUtils.requestToString(request));
+
+            for (CompletionKey key : keys) {
+                errorOut(key, BKException.Code.TooManyRequestsException);
+            }
+            cleanupActionFailedBeforeWrite.run();
+            return;
+        }
+
+        try {
+            final long startTime = MathUtils.nowInNano();
+
+            ChannelPromise promise = channel.newPromise().addListener(future -> {
+                if (future.isSuccess()) {
+                    nettyOpLogger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                    for (CompletionKey key : keys) {
+                        CompletionValue completion = completionObjects.get(key);
+                        if (completion != null) {
+                            completion.setOutstanding();
+                        }
+                    }
+                } else {
+                    nettyOpLogger.registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                    for (CompletionKey key : keys) {
+                        errorOut(key);
+                    }
+                }
+            });
+            channel.writeAndFlush(request, promise);
+        } catch (Throwable e) {
+            LOG.warn("Operation {} failed", StringUtils.requestToString(request), e);
+            for (CompletionKey key : keys) {
+                errorOut(key);
+            }
+            cleanupActionFailedBeforeWrite.run();
+        }
+    }
+
     void errorOut(final CompletionKey key) {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Removing completion key: {}", key);
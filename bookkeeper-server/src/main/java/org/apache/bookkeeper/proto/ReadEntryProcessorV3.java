@@ -24,6 +24,8 @@ import io.netty.channel.Channel;
 import io.netty.util.ReferenceCountUtil;
 import java.io.IOException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.bookie.Bookie;
@@ -45,6 +47,9 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
 
     protected Stopwatch lastPhaseStartTime;
     private final ExecutorService fenceThreadPool;
+    // Thread running the request, which completes the reads done by the storage in background, or null when the
+    // request is run by the channel event loop
+    private final ExecutorService readThread;
 
     private CompletableFuture<Boolean> fenceResult = null;
 
@@ -60,6 +65,14 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
                                 BookieRequestHandler requestHandler,
                                 BookieRequestProcessor requestProcessor,
                                 ExecutorService fenceThreadPool) {
+        this(request, requestHandler, requestProcessor, fenceThreadPool, null);
+    }
+
+    public ReadEntryProcessorV3(Request request,
+                                BookieRequestHandler requestHandler,
+                                BookieRequestProcessor requestProcessor,
+                                ExecutorService fenceThreadPool,
+                                ExecutorService readThread) {
         super(request, requestHandler, requestProcessor);
         requestProcessor.onReadRequestStart(requestHandler.ctx().channel());
 
@@ -78,6 +91,7 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
         }
 
         this.fenceThreadPool = fenceThreadPool;
+        this.readThread = readThread;
         lastPhaseStartTime = Stopwatch.createStarted();
     }
 
@@ -215,7 +229,15 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
                 }
             }
             return readEntry(readResponse, entryId, startTimeSw);
-        } catch (Bookie.NoLedgerException e) {
+        } catch (IOException | BookieException e) {
+            return buildErrorResponse(readResponse, e, startTimeSw);
+        }
+    }
+
+    private ReadResponse buildErrorResponse(ReadResponse.Builder readResponse,
+                                            Throwable cause,
+                                            Stopwatch startTimeSw) {
+        if (cause instanceof Bookie.NoLedgerException) {
             if (RequestUtils.isFenceRequest(readRequest)) {
                 LOG.info("No ledger found reading entry {} when fencing ledger {}", entryId, ledgerId);
             } else if (entryId != BookieProtocol.LAST_ADD_CONFIRMED) {
@@ -225,27 +247,60 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
                 LOG.debug("No ledger found while reading entry: {} from ledger: {}", entryId, ledgerId);
             }
             return buildResponse(readResponse, StatusCode.ENOLEDGER, startTimeSw);
-        } catch (Bookie.NoEntryException e) {
+        } else if (cause instanceof Bookie.NoEntryException) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("No entry found while reading entry: {} from ledger: {}", entryId, ledgerId);
             }
             return buildResponse(readResponse, StatusCode.ENOENTRY, startTimeSw);
-        } catch (IOException e) {
-            LOG.error("IOException while reading entry: {} from ledger {} ", entryId, ledgerId, e);
-            return buildResponse(readResponse, StatusCode.EIO, startTimeSw);
-        } catch (BookieException.DataUnknownException e) {
+        } else if (cause instanceof BookieException.DataUnknownException) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Ledger has unknown state for entry: {} from ledger {}", entryId, ledgerId);
             }
             return buildResponse(readResponse, StatusCode.EUNKNOWNLEDGERSTATE, startTimeSw);
-        } catch (BookieException e) {
+        } else if (cause instanceof BookieException) {
             LOG.error(
                 "Unauthorized access to ledger:{} while reading entry:{} in request from address: {}",
-                    ledgerId, entryId, channel.remoteAddress());
+                    ledgerId, entryId, requestHandler.ctx().channel().remoteAddress());
             return buildResponse(readResponse, StatusCode.EUA, startTimeSw);
+        } else {
+            LOG.error("IOException while reading entry: {} from ledger {} ", entryId, ledgerId, cause);
+            return buildResponse(readResponse, StatusCode.EIO, startTimeSw);
         }
     }
 
+    /**
+     * Read the entry without holding the request thread while the entry is read from disk, the response is sent
+     * back from the thread running the request.
+     */
+    private void executeReadAsync() {
+        final Stopwatch startTimeSw = Stopwatch.createStarted();
+        final ReadResponse.Builder readResponse = ReadResponse.newBuilder()
+            .setLedgerId(ledgerId)
+            .setEntryId(entryId);
+        Executor executor = readThread != null ? readThread : requestHandler.ctx().executor();
+        requestProcessor.getBookie().readEntryAsync(ledgerId, entryId, executor).whenComplete((entryBody, e) -> {
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                sendResponse(buildErrorResponse(readResponse, cause, startTimeSw));
+                return;
+            }
+            ReadResponse response;
+            try {
+                readResponse.setBody(ByteString.copyFrom(entryBody.nioBuffer()));
+                readResponse.setMaxLAC(requestProcessor.getBookie().readLastAddConfirmed(ledgerId));
+                registerSuccessfulEvent(readStats, startTimeSw);
+                readResponse.setStatus(StatusCode.EOK);
+                response = readResponse.build();
+            } catch (Throwable t) {
+                // Any failure is reported to the client, as an EIO if unexpected, since nothing else would respond
+                response = buildErrorResponse(readResponse.clearBody(), t, startTimeSw);
+            } finally {
+                ReferenceCountUtil.release(entryBody);
+            }
+            sendResponse(response);
+        });
+    }
+
     @Override
     public void run() {
         requestProcessor.getRequestStats().getReadEntrySchedulingDelayStats().registerSuccessfulEvent(
@@ -272,6 +327,10 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
     }
 
     protected void executeOp() {
+        if (!RequestUtils.isFenceRequest(readRequest)) {
+            executeReadAsync();
+            return;
+        }
         ReadResponse readResponse = getReadResponse();
         if (null != readResponse) {
             sendResponse(readResponse);
@@ -324,10 +383,13 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
                 .setHeader(getHeader())
                 .setStatus(readResponse.getStatus())
                 .setReadResponse(readResponse);
-        sendResponse(response.getStatus(),
-                     response.build(),
-                     reqStats);
-        requestProcessor.onReadRequestFinish();
+        try {
+            sendResponse(response.getStatus(),
+                         response.build(),
+                         reqStats);
+        } finally {
+            requestProcessor.onReadRequestFinish();
+        }
     }
 
     //
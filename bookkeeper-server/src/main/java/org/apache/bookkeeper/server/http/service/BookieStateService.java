@@ -23,6 +23,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.JournalReplayProgress;
 import org.apache.bookkeeper.bookie.StateManager;
 import org.apache.bookkeeper.common.util.JsonUtil;
 import org.apache.bookkeeper.http.HttpServer;
@@ -41,7 +42,12 @@ import org.apache.bookkeeper.http.service.HttpServiceResponse;
  *  "running" : true,
  *  "readOnly" : false,
  *  "shuttingDown" : false,
- *  "availableForHighPriorityWrites" : true
+ *  "availableForHighPriorityWrites" : true,
+ *  "journalReplaying" : false,
+ *  "journalReplayProgressPercent" : 100.0,
+ *  "journalReplayedEntries" : 1024,
+ *  "journalReplayedBytes" : 1048576,
+ *  "journalReplayThroughputBytesPerSecond" : 52428800
  *}
  * </code>
  * </pre>
@@ -64,6 +70,11 @@ public class BookieStateService implements HttpEndpointService {
         private boolean readOnly;
         private boolean shuttingDown;
         private boolean availableForHighPriorityWrites;
+        private boolean journalReplaying;
+        private double journalReplayProgressPercent;
+        private long journalReplayedEntries;
+        private long journalReplayedBytes;
+        private long journalReplayThroughputBytesPerSecond;
     }
 
     @Override
@@ -82,6 +93,12 @@ public class BookieStateService implements HttpEndpointService {
         bs.readOnly = sm.isReadOnly();
         bs.shuttingDown = sm.isShuttingDown();
         bs.availableForHighPriorityWrites = sm.isAvailableForHighPriorityWrites();
+        JournalReplayProgress replayProgress = bookie.getJournalReplayProgress();
+        bs.journalReplaying = replayProgress.isInProgress();
+        bs.journalReplayProgressPercent = replayProgress.getProgressPercent();
+        bs.journalReplayedEntries = replayProgress.getReplayedEntries();
+        bs.journalReplayedBytes = replayProgress.getReplayedBytes();
+        bs.journalReplayThroughputBytesPerSecond = replayProgress.getThroughputBytesPerSecond();
 
         String jsonResponse = JsonUtil.toJson(bs);
         response.setBody(jsonResponse);
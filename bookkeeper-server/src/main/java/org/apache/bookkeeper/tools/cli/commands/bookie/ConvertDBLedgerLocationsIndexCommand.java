@@ -0,0 +1,79 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.tools.cli.commands.bookie;
+
+import com.beust.jcommander.Parameter;
+import java.io.IOException;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import org.apache.bookkeeper.bookie.storage.ldb.LocationsIndexConvertOp;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.tools.cli.helpers.BookieCommand;
+import org.apache.bookkeeper.tools.framework.CliFlags;
+import org.apache.bookkeeper.tools.framework.CliSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Command to convert DBLedgerStorage locations index to another format.
+ */
+public class ConvertDBLedgerLocationsIndexCommand
+        extends BookieCommand<ConvertDBLedgerLocationsIndexCommand.ConvertLocationsIndexFlags> {
+
+    static final Logger LOG = LoggerFactory.getLogger(ConvertDBLedgerLocationsIndexCommand.class);
+
+    private static final String NAME = "convert-db-ledger-locations-index";
+    private static final String DESC = "Convert DBLedgerStorage locations index to the per-entry or range format";
+
+    public ConvertDBLedgerLocationsIndexCommand() {
+        this(new ConvertLocationsIndexFlags());
+    }
+
+    public ConvertDBLedgerLocationsIndexCommand(ConvertLocationsIndexFlags flags) {
+        super(CliSpec.<ConvertLocationsIndexFlags>newBuilder().withName(NAME)
+                .withDescription(DESC).withFlags(flags).build());
+    }
+
+    @Override
+    public boolean apply(ServerConfiguration conf, ConvertLocationsIndexFlags cmdFlags) {
+        LOG.info("=== Converting DBStorage locations index to the {} format ===", cmdFlags.format);
+        ServerConfiguration serverConfiguration = new ServerConfiguration(conf);
+        try {
+            new LocationsIndexConvertOp(serverConfiguration, cmdFlags.format).initiate();
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.error("Failed to convert DBStorage locations index", e);
+            return false;
+        }
+        LOG.info("-- Done converting DBStorage locations index --");
+        return true;
+    }
+
+    /**
+     * Flags for convert locations index command.
+     */
+    @Accessors(fluent = true)
+    @Setter
+    public static class ConvertLocationsIndexFlags extends CliFlags {
+        @Parameter(names = { "-f", "--format" },
+                description = "Target format of the locations index: entry or range")
+        private String format = "range";
+    }
+}
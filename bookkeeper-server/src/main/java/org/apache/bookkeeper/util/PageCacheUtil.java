@@ -81,6 +81,24 @@ public final class PageCacheUtil {
         return -1;
     }
 
+    /**
+     * Create a FileDescriptor object for a system file descriptor (int).
+     * @param fd - system file descriptor
+     * @return FileDescriptor object, null on error
+     */
+    public static FileDescriptor newFileDescriptor(int fd) {
+        Field field = getFieldByReflection(FileDescriptor.class, "fd");
+        try {
+            FileDescriptor descriptor = new FileDescriptor();
+            field.setInt(descriptor, fd);
+            return descriptor;
+        } catch (Exception e) {
+            log.warn("Unable to write fd field of java.io.FileDescriptor");
+        }
+
+        return null;
+    }
+
     /**
      * Remove pages from the file system page cache when they won't
      * be accessed again.
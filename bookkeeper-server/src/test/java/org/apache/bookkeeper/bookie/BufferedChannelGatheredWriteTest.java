@@ -0,0 +1,194 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for the gathered writes of {@link BufferedChannel}.
+ */
+public class BufferedChannelGatheredWriteTest {
+
+    private static final int CAPACITY = 1024;
+
+    private final Random random = new Random(0);
+    private File file;
+    private RandomAccessFile raf;
+    private BufferedChannel bc;
+    // Content expected in the file once flushed
+    private final ByteBuf expected = Unpooled.buffer();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        file = File.createTempFile("buffered-channel", ".log");
+        raf = new RandomAccessFile(file, "rw");
+        bc = new BufferedChannel(UnpooledByteBufAllocator.DEFAULT, raf.getChannel(), CAPACITY);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        bc.close();
+        raf.close();
+        Files.deleteIfExists(file.toPath());
+    }
+
+    private ByteBuf data(int size) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        expected.writeBytes(data);
+        return Unpooled.wrappedBuffer(data);
+    }
+
+    private void assertFileContent() throws Exception {
+        byte[] content = Files.readAllBytes(file.toPath());
+        assertArrayEquals(ByteBufUtil.getBytes(expected), content);
+    }
+
+    @Test
+    public void testInterleavedWrites() throws Exception {
+        bc.write(data(100));
+        ByteBuf gathered1 = data(300);
+        bc.writeGathered(gathered1);
+        bc.write(data(50));
+        bc.write(data(70));
+        // Larger than the write buffer
+        ByteBuf gathered2 = data(2 * CAPACITY);
+        bc.writeGathered(gathered2);
+        bc.write(data(10));
+
+        assertEquals(expected.readableBytes(), bc.position());
+        // The gathered buffers are retained until the flush, without being consumed
+        assertEquals(2, gathered1.refCnt());
+        assertEquals(300, gathered1.readableBytes());
+
+        bc.flush();
+        assertEquals(1, gathered1.refCnt());
+        assertEquals(1, gathered2.refCnt());
+        assertEquals(expected.readableBytes(), bc.getFileChannelPosition());
+        assertFileContent();
+
+        // Regular writes after a gathered flush
+        bc.write(data(100));
+        bc.flush();
+        assertFileContent();
+    }
+
+    @Test
+    public void testWriteBufferFullAfterGatheredWrite() throws Exception {
+        bc.write(data(CAPACITY / 2));
+        bc.writeGathered(data(100));
+        // Fills the write buffer, which flushes the gathered buffers in order
+        bc.write(data(CAPACITY));
+        bc.writeGathered(data(100));
+        bc.write(data(10));
+        bc.flush();
+
+        assertEquals(expected.readableBytes(), bc.position());
+        assertFileContent();
+    }
+
+    @Test
+    public void testCompositeBuffer() throws Exception {
+        CompositeByteBuf composite = Unpooled.compositeBuffer();
+        composite.addComponent(true, data(10));
+        composite.addComponent(true, data(20));
+        composite.addComponent(true, data(30));
+        bc.writeGathered(composite);
+        bc.write(data(5));
+        bc.flush();
+
+        assertFileContent();
+    }
+
+    @Test
+    public void testReadGatheredData() throws Exception {
+        bc.write(data(100));
+        bc.writeGathered(data(200));
+        bc.write(data(50));
+
+        // The pending data is readable before the flush
+        ByteBuf read = Unpooled.buffer(350);
+        assertEquals(350, bc.read(read, 0, 350));
+        assertArrayEquals(ByteBufUtil.getBytes(expected), ByteBufUtil.getBytes(read));
+    }
+
+    @Test
+    public void testRegularFlush() throws Exception {
+        bc.close();
+        raf.close();
+        raf = new RandomAccessFile(file, "rw");
+        bc = new BufferedChannel(UnpooledByteBufAllocator.DEFAULT, raf.getChannel(), CAPACITY, 200);
+
+        bc.write(data(100));
+        bc.writeGathered(data(50));
+        assertEquals(0, bc.getFileChannelPosition());
+        // Crosses the bound of unpersisted bytes, which flushes and forces the channel
+        bc.writeGathered(data(60));
+        assertEquals(210, bc.getFileChannelPosition());
+        assertFileContent();
+    }
+
+    @Test
+    public void testCloseReleasesGatheredBuffers() throws Exception {
+        ByteBuf gathered = data(100);
+        bc.writeGathered(gathered);
+        assertEquals(2, gathered.refCnt());
+        bc.close();
+        assertEquals(1, gathered.refCnt());
+    }
+
+    @Test
+    public void testGatheredBytesListener() throws Exception {
+        AtomicLong releasedBytes = new AtomicLong();
+        bc.setGatheredBytesListener(releasedBytes::addAndGet);
+
+        // Only the bytes of the gathered buffers are reported, once flushed
+        bc.write(data(100));
+        bc.writeGathered(data(300));
+        bc.writeGathered(data(200));
+        assertEquals(0, releasedBytes.get());
+        bc.flush();
+        assertEquals(500, releasedBytes.get());
+        bc.flush();
+        assertEquals(500, releasedBytes.get());
+        assertFileContent();
+
+        // The buffers released on close are reported too
+        bc.writeGathered(data(50));
+        bc.close();
+        assertEquals(550, releasedBytes.get());
+    }
+}
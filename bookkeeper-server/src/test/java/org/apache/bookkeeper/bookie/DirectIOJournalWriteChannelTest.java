@@ -0,0 +1,275 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.bookie.DirectIOJournalWriteChannel.ALIGNMENT;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@link DirectIOJournalWriteChannel}, with a fake {@link NativeIO} recording the writes.
+ */
+public class DirectIOJournalWriteChannelTest {
+
+    private static final int BUFFER_SIZE = 4 * ALIGNMENT;
+
+    private static class Write {
+        final long offset;
+        final byte[] data;
+
+        Write(long offset, byte[] data) {
+            this.offset = offset;
+            this.data = data;
+        }
+    }
+
+    private final NativeIO nativeIO = mock(NativeIO.class);
+    private final List<Write> writes = new ArrayList<>();
+    // Number of bytes the next write is cut to, or -1
+    private int shortWrite = -1;
+    private File tmpDir;
+    private File file;
+    private int fd;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("direct-io-journal").toFile();
+        file = new File(tmpDir, "1.txn");
+        assertTrue(file.createNewFile());
+
+        // The writes go to the file through the native library, without O_DIRECT which the temp dir may not support
+        NativeIO realNativeIO = new NativeIOImpl();
+        when(nativeIO.open(anyString(), anyInt(), anyInt())).thenAnswer(invocation -> {
+            fd = realNativeIO.open(invocation.getArgument(0), NativeIO.O_CREAT | NativeIO.O_WRONLY, 00644);
+            return fd;
+        });
+        doAnswer(invocation -> {
+            long address = invocation.getArgument(1);
+            int count = invocation.getArgument(2);
+            long offset = invocation.getArgument(3);
+            realNativeIO.pwrite(fd, address, count, offset);
+            byte[] data = new byte[count];
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                raf.seek(offset);
+                raf.readFully(data);
+            }
+            writes.add(new Write(offset, data));
+            return shortWrite >= 0 ? shortWrite : count;
+        }).when(nativeIO).pwrite(anyInt(), anyLong(), anyInt(), anyLong());
+        doAnswer(invocation -> realNativeIO.close(invocation.getArgument(0))).when(nativeIO).close(anyInt());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private DirectIOJournalWriteChannel newChannel() throws IOException {
+        return new DirectIOJournalWriteChannel(nativeIO, file.getPath(),
+                DirectIOFileChannelProvider.AlignedBuffer.allocate(BUFFER_SIZE));
+    }
+
+    private static ByteBuffer data(int length, int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (seed + i);
+        }
+        return ByteBuffer.wrap(data);
+    }
+
+    private byte[] writtenFile() {
+        int length = 0;
+        for (Write write : writes) {
+            length = Math.max(length, (int) write.offset + write.data.length);
+        }
+        byte[] content = new byte[length];
+        for (Write write : writes) {
+            System.arraycopy(write.data, 0, content, (int) write.offset, write.data.length);
+        }
+        return content;
+    }
+
+    @Test
+    public void testAlignedWrites() throws Exception {
+        DirectIOJournalWriteChannel channel = newChannel();
+        ByteBuffer first = data(ALIGNMENT + 100, 1);
+        ByteBuffer second = data(3 * ALIGNMENT - 100, 2);
+        channel.write(first.duplicate());
+        channel.write(second.duplicate());
+        assertEquals(4 * ALIGNMENT, channel.position());
+
+        // Only complete blocks are written, at aligned offsets
+        for (Write write : writes) {
+            assertEquals(0, write.offset % ALIGNMENT);
+            assertEquals(0, write.data.length % ALIGNMENT);
+        }
+        assertEquals(0, writes.get(0).offset);
+        assertEquals(ALIGNMENT, writes.get(0).data.length);
+
+        byte[] expected = new byte[4 * ALIGNMENT];
+        first.get(expected, 0, ALIGNMENT + 100);
+        second.get(expected, ALIGNMENT + 100, 3 * ALIGNMENT - 100);
+        assertArrayEquals(expected, writtenFile());
+
+        channel.close();
+        verify(nativeIO).close(fd);
+    }
+
+    @Test
+    public void testPartialTailIsNotRewritten() throws Exception {
+        DirectIOJournalWriteChannel channel = newChannel();
+        channel.write(data(ALIGNMENT + 100, 1));
+        assertEquals(1, writes.size());
+
+        // The partial block is kept in the buffer, until it is complete
+        channel.write(data(100, 2));
+        assertEquals(1, writes.size());
+        assertEquals(ALIGNMENT + 200, channel.position());
+        assertEquals(ALIGNMENT + 200, channel.size());
+
+        channel.write(data(ALIGNMENT - 200, 3));
+        assertEquals(2, writes.size());
+        assertEquals(ALIGNMENT, writes.get(1).offset);
+        assertEquals(ALIGNMENT, writes.get(1).data.length);
+
+        // Each block is written once
+        channel.write(data(10, 4));
+        channel.close();
+        assertEquals(3, writes.size());
+        assertEquals(2 * ALIGNMENT, writes.get(2).offset);
+    }
+
+    @Test
+    public void testCloseWritesPaddedTail() throws Exception {
+        DirectIOJournalWriteChannel channel = newChannel();
+        ByteBuffer tail = data(300, 5);
+        channel.write(tail.duplicate());
+        assertTrue(writes.isEmpty());
+
+        channel.close();
+        assertFalse(channel.isOpen());
+        assertEquals(1, writes.size());
+        assertEquals(0, writes.get(0).offset);
+        assertEquals(ALIGNMENT, writes.get(0).data.length);
+
+        byte[] expected = new byte[ALIGNMENT];
+        tail.get(expected, 0, 300);
+        assertArrayEquals(expected, writes.get(0).data);
+        verify(nativeIO).close(fd);
+    }
+
+    @Test
+    public void testShortWrite() throws Exception {
+        DirectIOJournalWriteChannel channel = newChannel();
+        shortWrite = 512;
+        assertThrows(IOException.class, () -> channel.write(data(ALIGNMENT, 1)));
+
+        // The fd is closed even if the last write fails
+        assertThrows(IOException.class, channel::close);
+        verify(nativeIO).close(fd);
+    }
+
+    @Test
+    public void testPositionalWriteAhead() throws Exception {
+        DirectIOJournalWriteChannel channel = newChannel();
+        channel.write(data(100, 1));
+
+        // A write ahead of the data, like the preallocation of the journal
+        assertEquals(1, channel.write(ByteBuffer.wrap(new byte[] { 1 }), 8 * ALIGNMENT - 1));
+        assertEquals(7 * ALIGNMENT, writes.get(0).offset);
+        assertEquals(ALIGNMENT, writes.get(0).data.length);
+        assertEquals(8 * ALIGNMENT, channel.size());
+        assertEquals(100, channel.position());
+
+        // The block holding the buffered data cannot be written
+        assertThrows(IOException.class, () -> channel.write(ByteBuffer.wrap(new byte[] { 1 }), 200));
+        channel.close();
+    }
+
+    @Test
+    public void testTruncate() throws Exception {
+        DirectIOJournalWriteChannel channel = newChannel();
+        channel.write(data(ALIGNMENT + 100, 1));
+        channel.write(ByteBuffer.wrap(new byte[] { 0 }), 8 * ALIGNMENT - 1);
+        assertEquals(8 * ALIGNMENT, file.length());
+        assertThrows(IOException.class, () -> channel.truncate(ALIGNMENT));
+
+        // The preallocated blocks are truncated
+        channel.truncate(3 * ALIGNMENT);
+        assertEquals(3 * ALIGNMENT, file.length());
+
+        // The partial block is kept, for its padded write
+        channel.truncate(ALIGNMENT + 100);
+        assertEquals(2 * ALIGNMENT, file.length());
+        channel.close();
+        assertEquals(2 * ALIGNMENT, file.length());
+    }
+
+    @Test
+    public void testNotReadable() throws Exception {
+        DirectIOJournalWriteChannel channel = newChannel();
+        assertThrows(NonReadableChannelException.class, () -> channel.read(ByteBuffer.allocate(10)));
+        assertThrows(NonReadableChannelException.class, () -> channel.read(ByteBuffer.allocate(10), 0));
+        assertThrows(NonReadableChannelException.class, () -> channel.transferTo(0, 10, null));
+        assertThrows(NonReadableChannelException.class, () -> channel.lock(0, 10, true));
+        channel.close();
+    }
+
+    @Test
+    public void testTransferFrom() throws Exception {
+        DirectIOJournalWriteChannel channel = newChannel();
+        ByteBuffer src = data(2 * ALIGNMENT, 3);
+        assertEquals(2 * ALIGNMENT, channel.transferFrom(
+                Channels.newChannel(new ByteArrayInputStream(src.array())),
+                0, 2 * ALIGNMENT));
+        assertEquals(2 * ALIGNMENT, channel.position());
+        assertArrayEquals(src.array(), Arrays.copyOf(writtenFile(), 2 * ALIGNMENT));
+        channel.close();
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.stats.JournalStats;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.apache.bookkeeper.test.TestStatsProvider.TestOpStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@link JournalAddTrace} and the per-stage latencies of the traced journal adds.
+ */
+public class JournalAddTraceTest {
+
+    private final TestStatsProvider statsProvider = new TestStatsProvider();
+    private File tmpDir;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("journal-add-trace").toFile();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private TestOpStatsLogger stats(String name) {
+        List<TestOpStatsLogger> loggers = new ArrayList<>();
+        statsProvider.forEachOpStatLogger((path, logger) -> {
+            if (path.endsWith(name)) {
+                loggers.add(logger);
+            }
+        });
+        assertEquals(1, loggers.size(), name);
+        return loggers.get(0);
+    }
+
+    private static JournalAddTrace trace(long enqueueTime, long dequeueTime, long flushStartTime, long flushEndTime,
+                                         long fsyncStartTime, long fsyncEndTime, long callbackEndTime) {
+        JournalAddTrace trace = new JournalAddTrace(1, 2, enqueueTime);
+        trace.dequeueTime = dequeueTime;
+        trace.flushStartTime = flushStartTime;
+        trace.flushEndTime = flushEndTime;
+        trace.fsyncStartTime = fsyncStartTime;
+        trace.fsyncEndTime = fsyncEndTime;
+        trace.callbackEndTime = callbackEndTime;
+        return trace;
+    }
+
+    @Test
+    public void testStages() {
+        JournalStats journalStats = new JournalStats(statsProvider.getStatsLogger(""), 1024, () -> 0L);
+        List<JournalAddTrace> traces = new ArrayList<>();
+        traces.add(trace(1000, 1010, 1030, 1060, 1100, 1150, 1210));
+        JournalAddTrace.complete(traces, 1280, journalStats, 0);
+        assertTrue(traces.isEmpty());
+
+        assertEquals(10, stats(BookKeeperServerStats.JOURNAL_ADD_STAGE_QUEUE).getSuccessAverage());
+        assertEquals(20, stats(BookKeeperServerStats.JOURNAL_ADD_STAGE_GROUP_WAIT).getSuccessAverage());
+        assertEquals(30, stats(BookKeeperServerStats.JOURNAL_ADD_STAGE_FLUSH).getSuccessAverage());
+        assertEquals(40, stats(BookKeeperServerStats.JOURNAL_ADD_STAGE_FORCE_WRITE_QUEUE).getSuccessAverage());
+        assertEquals(50, stats(BookKeeperServerStats.JOURNAL_ADD_STAGE_FSYNC).getSuccessAverage());
+        assertEquals(60, stats(BookKeeperServerStats.JOURNAL_ADD_STAGE_CALLBACK).getSuccessAverage());
+        assertEquals(70, stats(BookKeeperServerStats.JOURNAL_ADD_STAGE_RESPONSE_FLUSH).getSuccessAverage());
+
+        // Acknowledged before the sync: no fsync stages, the callback follows the flush
+        statsProvider.clear();
+        traces.add(trace(1000, 1010, 1030, 1060, 0, 0, 1100));
+        JournalAddTrace.complete(traces, 1200, journalStats, 1);
+        assertEquals(1, stats(BookKeeperServerStats.JOURNAL_ADD_STAGE_FLUSH).getSuccessCount());
+        assertEquals(0, stats(BookKeeperServerStats.JOURNAL_ADD_STAGE_FORCE_WRITE_QUEUE).getSuccessCount());
+        assertEquals(0, stats(BookKeeperServerStats.JOURNAL_ADD_STAGE_FSYNC).getSuccessCount());
+        assertEquals(40, stats(BookKeeperServerStats.JOURNAL_ADD_STAGE_CALLBACK).getSuccessAverage());
+        assertEquals(100, stats(BookKeeperServerStats.JOURNAL_ADD_STAGE_RESPONSE_FLUSH).getSuccessAverage());
+    }
+
+    @Test
+    public void testTracedJournalAdds() throws Exception {
+        File journalDir = new File(tmpDir, "journal");
+        File ledgerDir = new File(tmpDir, "ledger");
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(journalDir));
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getPath());
+        conf.setLedgerDirNames(new String[] { ledgerDir.getPath() });
+        conf.setJournalAddTraceSampleRate(1);
+        conf.setJournalMaxGroupWaitMSec(1);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+
+        Journal journal = new Journal(0, BookieImpl.getCurrentDirectory(journalDir), conf, ledgerDirsManager,
+                statsProvider.getStatsLogger(""), UnpooledByteBufAllocator.DEFAULT);
+        journal.start();
+        try {
+            int numEntries = 1000;
+            CountDownLatch latch = new CountDownLatch(numEntries);
+            AtomicInteger failures = new AtomicInteger();
+            for (int i = 0; i < numEntries; i++) {
+                ByteBuf entry = Unpooled.buffer(128);
+                entry.writeLong(1);
+                entry.writeLong(i);
+                entry.writerIndex(128);
+                journal.logAddEntry(entry, false, (rc, ledgerId, entryId, addr, ctx) -> {
+                    if (rc != 0) {
+                        failures.incrementAndGet();
+                    }
+                    latch.countDown();
+                }, null);
+                entry.release();
+                if (i % 100 == 0) {
+                    // Several force writes
+                    Thread.sleep(5);
+                }
+            }
+            assertTrue(latch.await(30, TimeUnit.SECONDS));
+            assertEquals(0, failures.get());
+        } finally {
+            journal.shutdown();
+        }
+
+        // All the adds are traced through the fsync which made them durable
+        TestOpStatsLogger fsyncStats = stats(BookKeeperServerStats.JOURNAL_ADD_STAGE_FSYNC);
+        TestOpStatsLogger forceWriteQueueStats = stats(BookKeeperServerStats.JOURNAL_ADD_STAGE_FORCE_WRITE_QUEUE);
+        assertEquals(1000, fsyncStats.getSuccessCount());
+        assertEquals(1000, forceWriteQueueStats.getSuccessCount());
+        assertTrue(forceWriteQueueStats.getSuccessAverage() >= 0);
+        assertTrue(stats(BookKeeperServerStats.JOURNAL_ADD_STAGE_CALLBACK).getSuccessAverage() >= 0);
+        TestOpStatsLogger syncStats = stats(BookKeeperServerStats.JOURNAL_SYNC);
+        assertTrue(syncStats.getSuccessCount() > 1);
+        // The fsync of each add is one of the fsyncs of the journal
+        assertTrue(fsyncStats.getSuccessAverage() <= syncStats.getSuccessAverage() * syncStats.getSuccessCount());
+    }
+}
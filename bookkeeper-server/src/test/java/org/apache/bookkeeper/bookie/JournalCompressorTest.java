@@ -0,0 +1,210 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.apache.bookkeeper.bookie.stats.JournalStats;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.prometheus.PrometheusMetricsProvider;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@link JournalCompressor} and the replay of compressed journals.
+ */
+public class JournalCompressorTest {
+
+    private final Random random = new Random(0);
+    private final StatsLogger statsLogger = new PrometheusMetricsProvider().getStatsLogger("test");
+    private final JournalStats journalStats = new JournalStats(statsLogger, 0, () -> 0L, () -> 0L, () -> 0L);
+    private JournalCompressor compressor;
+    private File journalDir;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        compressor = new JournalCompressor(UnpooledByteBufAllocator.DEFAULT, journalStats);
+        journalDir = Files.createTempDirectory("journal").toFile();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        compressor.release();
+        FileUtils.deleteDirectory(journalDir);
+    }
+
+    private ByteBuf entry(long ledgerId, long entryId, int size, boolean compressible) {
+        ByteBuf entry = Unpooled.buffer(16 + size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        byte[] payload = new byte[size];
+        if (!compressible) {
+            random.nextBytes(payload);
+        }
+        entry.writeBytes(payload);
+        return entry;
+    }
+
+    /**
+     * Write the blocks of the compressor to a buffer, as the journal does to its buffered channel.
+     */
+    private ByteBuf writeBlock() throws Exception {
+        ByteBuf written = Unpooled.buffer();
+        BufferedChannel bc = mock(BufferedChannel.class);
+        doAnswer(invocation -> {
+            ByteBuf src = invocation.getArgument(0);
+            written.writeBytes(src, src.readerIndex(), src.readableBytes());
+            return null;
+        }).when(bc).write(any(ByteBuf.class));
+        compressor.writeBlock(mock(JournalChannel.class), bc);
+        return written;
+    }
+
+    private static void assertRecords(List<ByteBuf> expected, ByteBuffer records) {
+        for (ByteBuf entry : expected) {
+            assertEquals(entry.readableBytes(), records.getInt());
+            ByteBuffer record = records.slice();
+            record.limit(entry.readableBytes());
+            assertEquals(entry.nioBuffer(), record);
+            records.position(records.position() + entry.readableBytes());
+        }
+        assertFalse(records.hasRemaining());
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<ByteBuf> entries = new ArrayList<>();
+        boolean full = false;
+        for (int i = 0; !full; i++) {
+            ByteBuf entry = entry(1, i, 1000, true);
+            entries.add(entry);
+            full = compressor.add(entry);
+        }
+        int uncompressedSize = compressor.pendingBytes();
+        assertTrue(uncompressedSize >= JournalCompressor.BLOCK_SIZE);
+
+        ByteBuf written = writeBlock();
+        assertEquals(0, compressor.pendingBytes());
+        assertEquals(JournalCompressor.COMPRESSED_MASK, written.readInt());
+        assertEquals(uncompressedSize, written.readInt());
+        int compressedSize = written.readInt();
+        assertEquals(compressedSize, written.readableBytes());
+        assertTrue(compressedSize < uncompressedSize / 10);
+
+        ByteBuffer records = JournalCompressor.decompress(written.nioBuffer(), uncompressedSize, null);
+        assertRecords(entries, records);
+
+        assertEquals(uncompressedSize, journalStats.getJournalUncompressedBytes().get());
+        assertEquals(JournalCompressor.COMPRESSED_HEADER_SIZE + compressedSize,
+                journalStats.getJournalCompressedBytes().get());
+
+        // The buffer is reused when large enough
+        ByteBuffer buffer = ByteBuffer.allocate(uncompressedSize + 100);
+        assertSame(buffer, JournalCompressor.decompress(written.nioBuffer(), uncompressedSize, buffer));
+        assertThrows(IOException.class,
+                () -> JournalCompressor.decompress(written.nioBuffer(), uncompressedSize + 1, null));
+    }
+
+    @Test
+    public void testIncompressibleBlock() throws Exception {
+        List<ByteBuf> entries = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ByteBuf entry = entry(1, i, 1000, false);
+            entries.add(entry);
+            assertFalse(compressor.add(entry));
+        }
+
+        // Written as regular records
+        ByteBuf written = writeBlock();
+        assertRecords(entries, written.nioBuffer());
+        assertEquals(written.readableBytes(), journalStats.getJournalCompressedBytes().get());
+
+        // Nothing to write
+        assertEquals(0, writeBlock().readableBytes());
+    }
+
+    @Test
+    public void testReplayCompressedJournal() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getPath());
+        Journal journal = new Journal(0, journalDir, conf, mock(LedgerDirsManager.class),
+                NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT);
+
+        long logId = 1;
+        JournalChannel logFile = new JournalChannel(journalDir, logId, 4 * 1024 * 1024, 65536,
+                JournalChannel.SECTOR_SIZE, false, JournalChannel.V7, conf, new DefaultFileChannelProvider());
+        BufferedChannel bc = logFile.getBufferedChannel();
+
+        // Compressed and uncompressed blocks, and a block flushed before it is full
+        List<ByteBuf> entries = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            ByteBuf entry = entry(i % 3, i, 100 + random.nextInt(2000), i < 100 || i >= 200);
+            entries.add(entry);
+            if (compressor.add(entry) || i == 150) {
+                compressor.writeBlock(logFile, bc);
+            }
+        }
+        compressor.writeBlock(logFile, bc);
+        bc.flushAndForceWrite(false);
+        logFile.close();
+        assertTrue(journalStats.getJournalCompressedBytes().get() < journalStats.getJournalUncompressedBytes().get());
+
+        List<ByteBuffer> replayed = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        journal.scanJournal(logId, 0, (journalVersion, offset, entry) -> {
+            assertEquals(JournalChannel.V7, journalVersion);
+            ByteBuffer copy = ByteBuffer.allocate(entry.remaining());
+            copy.put(entry);
+            copy.flip();
+            replayed.add(copy);
+            offsets.add(offset);
+        }, false);
+
+        assertEquals(entries.size(), replayed.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(entries.get(i).nioBuffer(), replayed.get(i));
+        }
+        // The records of a block share its offset
+        assertEquals(offsets.get(0), offsets.get(1));
+        assertTrue(offsets.get(0) < offsets.get(offsets.size() - 1));
+    }
+}
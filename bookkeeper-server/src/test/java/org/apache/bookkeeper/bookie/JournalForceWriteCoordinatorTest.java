@@ -0,0 +1,202 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_COALESCED_FORCE_WRITE_FSYNCS_SAVED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.prometheus.PrometheusMetricsProvider;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@link JournalForceWriteCoordinator}.
+ */
+public class JournalForceWriteCoordinatorTest {
+
+    private static final int FS_FD = 42;
+
+    private final StatsLogger statsLogger = new PrometheusMetricsProvider().getStatsLogger("test");
+    private final NativeIO nativeIO = mock(NativeIO.class);
+    private final Journal journal1 = journal("journal1");
+    private final Journal journal2 = journal("journal2");
+    private final Journal journal3 = journal("journal3");
+    private JournalForceWriteCoordinator coordinator;
+
+    private static Journal journal(String dir) {
+        Journal journal = mock(Journal.class);
+        when(journal.getJournalDirectory()).thenReturn(new File(dir));
+        return journal;
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        when(nativeIO.open(eq("journal1"), eq(NativeIO.O_RDONLY), anyInt())).thenReturn(FS_FD);
+        coordinator = newCoordinator();
+    }
+
+    private JournalForceWriteCoordinator newCoordinator() {
+        JournalForceWriteCoordinator coordinator = new JournalForceWriteCoordinator("test",
+                new File("journal1"), nativeIO, statsLogger);
+        coordinator.register(journal1);
+        coordinator.register(journal2);
+        coordinator.register(journal3);
+        return coordinator;
+    }
+
+    private long fsyncsSaved() {
+        return statsLogger.getCounter(JOURNAL_COALESCED_FORCE_WRITE_FSYNCS_SAVED).get();
+    }
+
+    @Test
+    public void testSyncFileSystemOnce() throws Exception {
+        when(journal1.pollForceWriteRequests()).thenReturn(3);
+        when(journal3.pollForceWriteRequests()).thenReturn(1);
+
+        assertEquals(2, coordinator.processRound());
+        verify(nativeIO, times(1)).syncfs(FS_FD);
+        verify(journal1).completeSyncedForceWriteRequests(eq(3), anyLong(), anyLong());
+        verify(journal3).completeSyncedForceWriteRequests(eq(1), anyLong(), anyLong());
+        verify(journal2, never()).completeSyncedForceWriteRequests(anyInt(), anyLong(), anyLong());
+        verify(journal1, never()).processForceWriteRequests(anyInt());
+        assertEquals(1, fsyncsSaved());
+
+        // Nothing pending
+        when(journal1.pollForceWriteRequests()).thenReturn(0);
+        when(journal3.pollForceWriteRequests()).thenReturn(0);
+        assertEquals(0, coordinator.processRound());
+        verify(nativeIO, times(1)).syncfs(FS_FD);
+    }
+
+    @Test
+    public void testSingleJournalSyncsItsFile() throws Exception {
+        when(journal2.pollForceWriteRequests()).thenReturn(5);
+
+        assertEquals(1, coordinator.processRound());
+        verify(nativeIO, never()).syncfs(anyInt());
+        verify(journal2).processForceWriteRequests(5);
+        assertEquals(0, fsyncsSaved());
+    }
+
+    @Test
+    public void testSyncFileSystemFailure() throws Exception {
+        when(journal1.pollForceWriteRequests()).thenReturn(1);
+        when(journal2.pollForceWriteRequests()).thenReturn(2);
+        doThrow(new NativeIOException("Failed to syncfs", 5)).when(nativeIO).syncfs(FS_FD);
+
+        // Each journal is synced with its own fsync, which reports the write back error
+        doThrow(new IOException("fsync failed")).when(journal2).processForceWriteRequests(2);
+        assertEquals(2, coordinator.processRound());
+        verify(journal1).processForceWriteRequests(1);
+        verify(journal2).forceWriteFailed();
+        verify(journal1, never()).forceWriteFailed();
+        assertEquals(0, fsyncsSaved());
+
+        // The failed journal is not synced anymore
+        assertEquals(1, coordinator.processRound());
+        verify(journal2, times(1)).pollForceWriteRequests();
+        verify(nativeIO, times(1)).syncfs(FS_FD);
+    }
+
+    @Test
+    public void testSyncFileSystemNotSupported() throws Exception {
+        when(journal1.pollForceWriteRequests()).thenReturn(1);
+        when(journal2.pollForceWriteRequests()).thenReturn(1);
+        doThrow(new NativeIOException("Failed to syncfs", 38)).when(nativeIO).syncfs(FS_FD);
+
+        coordinator.processRound();
+        coordinator.processRound();
+        verify(nativeIO, times(1)).syncfs(FS_FD);
+        verify(nativeIO).close(FS_FD);
+        verify(journal1, times(2)).processForceWriteRequests(1);
+        verify(journal2, times(2)).processForceWriteRequests(1);
+    }
+
+    @Test
+    public void testWithoutNativeIO() throws Exception {
+        when(nativeIO.open(anyString(), anyInt(), anyInt())).thenThrow(new NativeIOException("Failed to open"));
+        coordinator = newCoordinator();
+        when(journal1.pollForceWriteRequests()).thenReturn(1);
+        when(journal2.pollForceWriteRequests()).thenReturn(1);
+
+        assertEquals(2, coordinator.processRound());
+        verify(nativeIO, never()).syncfs(anyInt());
+        verify(journal1).processForceWriteRequests(1);
+        verify(journal2).processForceWriteRequests(1);
+    }
+
+    @Test
+    public void testSyncRealFileSystem() throws Exception {
+        assumeTrue(SystemUtils.IS_OS_LINUX);
+        File dir = Files.createTempDirectory("journal").toFile();
+        try {
+            coordinator = new JournalForceWriteCoordinator("test", dir, new NativeIOImpl(), statsLogger);
+            coordinator.register(journal1);
+            coordinator.register(journal2);
+            when(journal1.pollForceWriteRequests()).thenReturn(1);
+            when(journal2.pollForceWriteRequests()).thenReturn(1);
+
+            assertEquals(2, coordinator.processRound());
+            verify(journal1).completeSyncedForceWriteRequests(eq(1), anyLong(), anyLong());
+            verify(journal2).completeSyncedForceWriteRequests(eq(1), anyLong(), anyLong());
+            assertEquals(1, fsyncsSaved());
+
+            coordinator.unregister(journal1);
+            coordinator.unregister(journal2);
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testUnregister() throws Exception {
+        when(journal1.pollForceWriteRequests()).thenReturn(1);
+        coordinator.startIfNeeded();
+        coordinator.wakeUp();
+
+        coordinator.unregister(journal1);
+        coordinator.unregister(journal2);
+        coordinator.unregister(journal3);
+        assertEquals(Thread.State.TERMINATED, coordinator.getState());
+        verify(nativeIO).close(FS_FD);
+        verify(journal1, never()).forceWriteFailed();
+    }
+}
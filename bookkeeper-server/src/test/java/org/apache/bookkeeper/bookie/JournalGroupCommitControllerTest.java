@@ -0,0 +1,117 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@link JournalGroupCommitController}.
+ */
+public class JournalGroupCommitControllerTest {
+
+    private static final long TARGET_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long BUFFERED_WRITES_THRESHOLD = 512 * 1024;
+    private static final long BUFFERED_ENTRIES_THRESHOLD = 100;
+
+    private final JournalGroupCommitController controller = new JournalGroupCommitController(TARGET_NANOS,
+            TimeUnit.MILLISECONDS.toNanos(2), BUFFERED_WRITES_THRESHOLD, BUFFERED_ENTRIES_THRESHOLD);
+    private long now = System.nanoTime();
+
+    /**
+     * Run the controller for some update periods, with a steady arrival rate and fsync latency.
+     */
+    private void run(int periods, int entriesPerPeriod, int entrySize, long syncLatencyNanos) {
+        for (int i = 0; i < periods; i++) {
+            for (int j = 0; j < entriesPerPeriod; j++) {
+                controller.recordEntry(entrySize);
+            }
+            controller.recordSyncLatency(syncLatencyNanos);
+            now += PERIOD_NANOS;
+            controller.maybeUpdate(now);
+        }
+    }
+
+    @Test
+    public void testInitialWaitWithinTarget() {
+        JournalGroupCommitController controller = new JournalGroupCommitController(TARGET_NANOS,
+                TimeUnit.MILLISECONDS.toNanos(10), BUFFERED_WRITES_THRESHOLD, BUFFERED_ENTRIES_THRESHOLD);
+        assertEquals(TARGET_NANOS, controller.getGroupWaitNanos());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(2), this.controller.getGroupWaitNanos());
+    }
+
+    @Test
+    public void testLowRateClosesTheWindow() {
+        // One entry every 10ms, with a 1ms fsync: nothing to group with
+        run(20, 10, 1024, TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(0, controller.getGroupWaitNanos());
+        assertEquals(BUFFERED_WRITES_THRESHOLD, controller.getBufferedWritesThreshold());
+        assertEquals(BUFFERED_ENTRIES_THRESHOLD, controller.getBufferedEntriesThreshold());
+    }
+
+    @Test
+    public void testHighRateOpensTheWindowUpToTheSyncLatency() {
+        // 100 entries per ms, with a steady 1ms fsync
+        long syncLatency = TimeUnit.MILLISECONDS.toNanos(1);
+        run(50, 10_000, 1024, syncLatency);
+        long wait = controller.getGroupWaitNanos();
+        assertEquals(syncLatency, wait, syncLatency / 100);
+
+        // The thresholds are raised to the amount of data expected in a window
+        assertEquals(100, controller.getBufferedEntriesThreshold(), 5);
+        assertEquals(BUFFERED_WRITES_THRESHOLD, controller.getBufferedWritesThreshold());
+        run(50, 100_000, 1024, syncLatency);
+        assertTrue(controller.getBufferedEntriesThreshold() > 900);
+        assertTrue(controller.getBufferedWritesThreshold() > 900 * 1024);
+    }
+
+    @Test
+    public void testWindowWithinTheTargetLatency() {
+        // A 4ms fsync leaves 1ms of the 5ms target
+        run(50, 100_000, 1024, TimeUnit.MILLISECONDS.toNanos(4));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1), controller.getGroupWaitNanos(),
+                TimeUnit.MICROSECONDS.toNanos(100));
+    }
+
+    @Test
+    public void testSlowSyncKeepsAMinimumWindow() {
+        // The tail fsync latency exceeds the target: the window is not closed
+        long syncLatency = TimeUnit.MILLISECONDS.toNanos(8);
+        run(50, 100_000, 1024, syncLatency);
+        assertEquals(syncLatency / 4, controller.getGroupWaitNanos(), syncLatency / 100);
+
+        // Jittery fsyncs, with a tail far above the target
+        for (int i = 0; i < 50; i++) {
+            run(1, 100_000, 1024, TimeUnit.MILLISECONDS.toNanos(i % 2 == 0 ? 2 : 30));
+        }
+        long wait = controller.getGroupWaitNanos();
+        assertTrue(wait >= TimeUnit.MILLISECONDS.toNanos(3), "wait: " + wait);
+        assertTrue(wait <= TimeUnit.MILLISECONDS.toNanos(16), "wait: " + wait);
+
+        // Back to a low rate
+        run(50, 1, 1024, syncLatency);
+        assertEquals(0, controller.getGroupWaitNanos());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@link JournalReplayProgress} and the size of the journal data to replay.
+ */
+public class JournalReplayProgressTest {
+
+    private File tmpDir;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("journal-replay-progress").toFile();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    /**
+     * Create a journal file with some data, preallocated with zeros up to the file length.
+     */
+    private File journalFile(int dataLength, long fileLength) throws Exception {
+        File file = new File(tmpDir, "1.txn");
+        Files.deleteIfExists(file.toPath());
+        byte[] data = new byte[dataLength];
+        ThreadLocalRandom.current().nextBytes(data);
+        if (dataLength > 0) {
+            // Some zeros within the data
+            data[dataLength / 2] = 0;
+            data[dataLength - 1] = 1;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(fileLength);
+            raf.write(data);
+        }
+        return file;
+    }
+
+    @Test
+    public void testJournalFileWrittenLength() throws Exception {
+        assertEquals(0, Journal.getJournalFileWrittenLength(journalFile(0, 0)));
+        assertEquals(0, Journal.getJournalFileWrittenLength(journalFile(0, 4 * 1024 * 1024)));
+        assertEquals(1, Journal.getJournalFileWrittenLength(journalFile(1, 4 * 1024 * 1024)));
+        assertEquals(100_000, Journal.getJournalFileWrittenLength(journalFile(100_000, 16 * 1024 * 1024)));
+        // Data ending on a scan block boundary
+        assertEquals(64 * 1024, Journal.getJournalFileWrittenLength(journalFile(64 * 1024, 128 * 1024)));
+        // Not preallocated
+        assertEquals(12345, Journal.getJournalFileWrittenLength(journalFile(12345, 12345)));
+    }
+
+    @Test
+    public void testProgress() {
+        JournalReplayProgress progress = new JournalReplayProgress();
+        assertFalse(progress.isInProgress());
+        assertEquals(0.0, progress.getProgressPercent());
+
+        progress.start(1000);
+        assertTrue(progress.isInProgress());
+        assertEquals(1000, progress.getTotalBytes());
+        for (int i = 0; i < 4; i++) {
+            progress.onRecordReplayed(100);
+        }
+        assertEquals(40.0, progress.getProgressPercent(), 0.001);
+        assertEquals(400, progress.getReplayedBytes());
+        assertEquals(4, progress.getReplayedEntries());
+        for (int i = 0; i < 10; i++) {
+            progress.onRecordReplayed(100);
+        }
+        assertEquals(100.0, progress.getProgressPercent());
+
+        progress.finish();
+        assertFalse(progress.isInProgress());
+        assertEquals(100.0, progress.getProgressPercent());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@link LoadBasedJournalSelector}.
+ */
+public class LoadBasedJournalSelectorTest {
+
+    private final List<Journal> journals = Arrays.asList(mock(Journal.class), mock(Journal.class));
+    private final LoadBasedJournalSelector selector = new LoadBasedJournalSelector(journals,
+            NullStatsLogger.INSTANCE);
+
+    @Test
+    public void testLedgersKeepTheirJournal() {
+        // Without load, the ledgers are spread by count
+        Journal journal1 = selector.getJournal(1);
+        Journal journal2 = selector.getJournal(2);
+        assertNotSame(journal1, journal2);
+        assertEquals(1, selector.getAssignedLedgers(0));
+        assertEquals(1, selector.getAssignedLedgers(1));
+
+        for (int i = 0; i < 10; i++) {
+            assertSame(journal1, selector.getJournal(1));
+            assertSame(journal2, selector.getJournal(2));
+        }
+
+        selector.ledgerDeleted(1);
+        assertEquals(1, selector.getAssignedLedgers(0) + selector.getAssignedLedgers(1));
+    }
+
+    @Test
+    public void testReplayedLedgersStayOnTheirJournal() {
+        selector.ledgerReplayed(1, 1);
+        selector.ledgerReplayed(2, 1);
+        selector.ledgerReplayed(3, 0);
+        assertEquals(1, selector.getAssignedLedgers(0));
+        assertEquals(2, selector.getAssignedLedgers(1));
+
+        // The records found in a journal replayed later win
+        selector.ledgerReplayed(3, 1);
+        assertEquals(0, selector.getAssignedLedgers(0));
+        assertEquals(3, selector.getAssignedLedgers(1));
+
+        assertSame(journals.get(1), selector.getJournal(1));
+        assertSame(journals.get(1), selector.getJournal(2));
+        assertSame(journals.get(1), selector.getJournal(3));
+        // A new ledger goes to the journal with fewer ledgers
+        assertSame(journals.get(0), selector.getJournal(4));
+    }
+
+    @Test
+    public void testIdleLedgersAreForgottenAfterCheckpoint() throws Exception {
+        selector.getJournal(1);
+        selector.getJournal(2);
+
+        Checkpoint checkpoint1 = selector.newCheckpoint();
+        selector.getJournal(1);
+        selector.checkpointComplete(checkpoint1, false);
+        // Ledger 2 may have been written after the log marks of the checkpoint
+        assertEquals(2, selector.getAssignedLedgers(0) + selector.getAssignedLedgers(1));
+
+        Checkpoint checkpoint2 = selector.newCheckpoint();
+        selector.checkpointComplete(checkpoint2, false);
+        // Ledger 2 was not written for the whole interval, ledger 1 was written after the previous checkpoint
+        assertEquals(1, selector.getAssignedLedgers(0) + selector.getAssignedLedgers(1));
+
+        Checkpoint checkpoint3 = selector.newCheckpoint();
+        selector.checkpointComplete(checkpoint3, false);
+        assertEquals(0, selector.getAssignedLedgers(0));
+        assertEquals(0, selector.getAssignedLedgers(1));
+
+        // Forgotten ledgers are assigned again when written
+        selector.getJournal(2);
+        assertEquals(1, selector.getAssignedLedgers(0) + selector.getAssignedLedgers(1));
+    }
+
+    @Test
+    public void testCheckpointsAreOrdered() {
+        Checkpoint checkpoint1 = selector.newCheckpoint();
+        Checkpoint checkpoint2 = selector.newCheckpoint();
+        assertEquals(-1, checkpoint1.compareTo(checkpoint2));
+        assertEquals(1, checkpoint2.compareTo(checkpoint1));
+        assertEquals(-1, checkpoint2.compareTo(Checkpoint.MAX));
+        assertEquals(1, checkpoint1.compareTo(Checkpoint.MIN));
+    }
+}
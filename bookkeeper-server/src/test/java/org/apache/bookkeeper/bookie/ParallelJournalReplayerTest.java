@@ -0,0 +1,146 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@link ParallelJournalReplayer}.
+ */
+public class ParallelJournalReplayerTest {
+
+    private static final int NUM_LEDGERS = 20;
+    private static final int NUM_ENTRIES = 500;
+
+    /**
+     * Scan the records of some ledgers, interleaved, reusing the same buffer like the journal scans do.
+     */
+    private static void scan(ParallelJournalReplayer.Scanner scanner, long firstLedgerId, int numLedgers)
+            throws IOException {
+        ByteBuffer recBuff = ByteBuffer.allocate(64);
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            for (long ledgerId = firstLedgerId; ledgerId < firstLedgerId + numLedgers; ledgerId++) {
+                recBuff.clear();
+                recBuff.putLong(ledgerId);
+                recBuff.putLong(entryId);
+                recBuff.putLong(ledgerId * entryId);
+                recBuff.flip();
+                scanner.process(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, 0, recBuff);
+            }
+        }
+    }
+
+    @Test
+    public void testReplayOrderPerLedger() throws Exception {
+        Map<Long, List<Long>> replayed = new ConcurrentHashMap<>();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        AtomicInteger records = new AtomicInteger();
+        try (ParallelJournalReplayer replayer = new ParallelJournalReplayer(4, (journalVersion, record) -> {
+            assertEquals(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, journalVersion);
+            long ledgerId = record.getLong();
+            long entryId = record.getLong();
+            assertEquals(ledgerId * entryId, record.getLong());
+            threads.add(Thread.currentThread().getName());
+            if (ThreadLocalRandom.current().nextInt(100) == 0) {
+                Thread.yield();
+            }
+            List<Long> entries = replayed.computeIfAbsent(ledgerId, id -> new ArrayList<>());
+            synchronized (entries) {
+                entries.add(entryId);
+            }
+            records.incrementAndGet();
+        })) {
+            // Two journals with the entries of the same ledgers
+            ParallelJournalReplayer.Scanner scanner1 = replayer.newScanner();
+            ParallelJournalReplayer.Scanner scanner2 = replayer.newScanner();
+            scan(scanner1, 0, NUM_LEDGERS);
+            scanner1.awaitProcessed();
+            assertEquals(NUM_LEDGERS * NUM_ENTRIES, records.get());
+            scan(scanner2, 0, NUM_LEDGERS);
+            scanner2.awaitProcessed();
+        }
+
+        assertEquals(2 * NUM_LEDGERS * NUM_ENTRIES, records.get());
+        assertEquals(NUM_LEDGERS, replayed.size());
+        for (List<Long> entries : replayed.values()) {
+            assertEquals(2 * NUM_ENTRIES, entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                assertEquals(i % NUM_ENTRIES, (long) entries.get(i));
+            }
+        }
+        assertTrue(threads.size() > 1, threads.toString());
+    }
+
+    @Test
+    public void testIOExceptionPropagated() throws Exception {
+        IOException failure = new IOException("replay failure");
+        AtomicInteger records = new AtomicInteger();
+        try (ParallelJournalReplayer replayer = new ParallelJournalReplayer(4, (journalVersion, record) -> {
+            if (record.getLong(0) == 3 && record.getLong(8) == 10) {
+                throw failure;
+            }
+            records.incrementAndGet();
+        })) {
+            ParallelJournalReplayer.Scanner scanner = replayer.newScanner();
+            IOException e = assertThrows(IOException.class, () -> {
+                // The scan stops on the failure, or the wait reports it
+                scan(scanner, 0, NUM_LEDGERS);
+                scanner.awaitProcessed();
+            });
+            assertSame(failure, e);
+
+            // The records of the failed ledger after the failure were not applied
+            assertTrue(records.get() < NUM_LEDGERS * NUM_ENTRIES);
+
+            // The other scanners fail too
+            assertSame(failure, assertThrows(IOException.class, () -> scan(replayer.newScanner(), 100, 1)));
+        }
+    }
+
+    @Test
+    public void testRuntimeExceptionWrapped() throws Exception {
+        IllegalStateException failure = new IllegalStateException("replay failure");
+        try (ParallelJournalReplayer replayer = new ParallelJournalReplayer(2, (journalVersion, record) -> {
+            throw failure;
+        })) {
+            ParallelJournalReplayer.Scanner scanner = replayer.newScanner();
+            IOException e = assertThrows(IOException.class, () -> {
+                scan(scanner, 0, 1);
+                scanner.awaitProcessed();
+            });
+            assertSame(failure, e.getCause());
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@link BlockCache}.
+ */
+public class BlockCacheTest {
+
+    private static final int BLOCK_SIZE = BlockCache.BLOCK_SIZE;
+
+    private final ByteBufAllocator allocator = UnpooledByteBufAllocator.DEFAULT;
+    private BlockCache cache;
+    private Buffer src;
+    private ByteBuf dst;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        cache = new BlockCache(allocator, 4 * BLOCK_SIZE, logId -> logId != 99,
+                new DirectEntryLoggerStats(NullStatsLogger.INSTANCE));
+        src = new Buffer(null, allocator, 2 * BLOCK_SIZE);
+        dst = Unpooled.buffer(BLOCK_SIZE);
+    }
+
+    @AfterEach
+    public void teardown() {
+        cache.close();
+        src.free();
+        dst.release();
+    }
+
+    private void fill(int value) throws Exception {
+        src.reset();
+        ByteBuf content = Unpooled.buffer(2 * BLOCK_SIZE);
+        for (int i = 0; i < 2 * BLOCK_SIZE / Integer.BYTES; i++) {
+            content.writeInt(value + i);
+        }
+        src.writeByteBuf(content);
+        content.release();
+    }
+
+    private int read(int logId, long offset, int size) {
+        dst.clear();
+        return cache.read(logId, offset, dst, size);
+    }
+
+    @Test
+    public void testPutAndRead() throws Exception {
+        fill(1000);
+        cache.put(1, 0, src, 0, cache.generation());
+        cache.put(1, BLOCK_SIZE, src, BLOCK_SIZE, cache.generation());
+
+        assertEquals(BLOCK_SIZE, read(1, 0, BLOCK_SIZE));
+        assertEquals(1000, dst.getInt(0));
+
+        // Reads stop at the end of the block
+        assertEquals(BLOCK_SIZE - 8, read(1, BLOCK_SIZE + 8, BLOCK_SIZE));
+        assertEquals(1000 + BLOCK_SIZE / Integer.BYTES + 2, dst.getInt(0));
+
+        assertEquals(-1, read(1, 2 * BLOCK_SIZE, 16));
+        assertEquals(-1, read(2, 0, 16));
+
+        // Logs that are not cacheable
+        cache.put(99, 0, src, 0, cache.generation());
+        assertEquals(-1, read(99, 0, 16));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        fill(0);
+        for (int logId = 0; logId < 8; logId++) {
+            cache.put(logId, 0, src, 0, cache.generation());
+        }
+
+        int cached = 0;
+        for (int logId = 0; logId < 8; logId++) {
+            if (read(logId, 0, 16) > 0) {
+                cached++;
+            }
+        }
+        assertEquals(4, cached);
+        assertEquals(16, read(7, 0, 16));
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        fill(1000);
+        cache.put(1, 0, src, 0, cache.generation());
+        cache.put(2, 0, src, 0, cache.generation());
+
+        cache.invalidate(1);
+        assertEquals(-1, read(1, 0, 16));
+        assertEquals(16, read(2, 0, 16));
+
+        // The log id is reused
+        fill(2000);
+        cache.put(1, 0, src, 0, cache.generation());
+        assertEquals(16, read(1, 0, 16));
+        assertEquals(2000, dst.getInt(0));
+    }
+
+    @Test
+    public void testPutAfterInvalidate() throws Exception {
+        fill(1000);
+        // The block was read before the log was invalidated
+        long generation = cache.generation();
+        cache.invalidate(1);
+        cache.put(1, 0, src, 0, generation);
+        assertEquals(-1, read(1, 0, 16));
+
+        cache.put(1, 0, src, 0, cache.generation());
+        assertEquals(16, read(1, 0, 16));
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        fill(1000);
+        cache.put(1, 0, src, 0, cache.generation());
+        cache.close();
+
+        assertEquals(-1, read(1, 0, 16));
+        cache.put(1, 0, src, 0, cache.generation());
+        cache.invalidate(1);
+        assertEquals(-1, read(1, 0, 16));
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.Bookie.NoEntryException;
+import org.apache.bookkeeper.bookie.Bookie.NoLedgerException;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for the batch reads of {@link SingleDirectoryDbLedgerStorage#getEntries}, the coalescing of the entry log
+ * reads, and the default implementations of the batch read API.
+ */
+public class BatchReadTest {
+
+    private static final int ENTRY_SIZE = 100;
+
+    private File tmpDir;
+    private SingleDirectoryDbLedgerStorage storage;
+    private final EntryLogger entryLogger = mock(EntryLogger.class);
+    // A single entry log in memory, made of (size, entry) records
+    private final ByteBuf log = Unpooled.buffer();
+    private volatile boolean corruptRanges = false;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("batch-read").toFile();
+
+        when(entryLogger.addEntry(anyLong(), any(ByteBuf.class))).thenAnswer(invocation -> {
+            ByteBuf entry = invocation.getArgument(1);
+            synchronized (log) {
+                long location = (1L << 32) | log.writerIndex();
+                log.writeInt(entry.readableBytes());
+                log.writeBytes(entry, entry.readerIndex(), entry.readableBytes());
+                return location;
+            }
+        });
+        when(entryLogger.readEntry(anyLong(), anyLong(), anyLong())).thenAnswer(invocation -> {
+            int offset = (int) (long) invocation.getArgument(2);
+            synchronized (log) {
+                return Unpooled.copiedBuffer(log.slice(offset + 4, log.getInt(offset)));
+            }
+        });
+        when(entryLogger.readEntryRange(anyLong(), anyInt())).thenAnswer(invocation -> {
+            int offset = (int) (long) invocation.getArgument(0);
+            int maxSize = invocation.getArgument(1);
+            synchronized (log) {
+                int size = Math.min(maxSize, log.writerIndex() - offset);
+                if (corruptRanges) {
+                    // Records too short to hold an entry
+                    return Unpooled.buffer(size).writeZero(size);
+                }
+                return Unpooled.copiedBuffer(log.slice(offset, size));
+            }
+        });
+
+        LedgerDirsManager ledgerDirsManager = mock(LedgerDirsManager.class);
+        when(ledgerDirsManager.getAllLedgerDirs()).thenReturn(Collections.singletonList(tmpDir));
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { tmpDir.getAbsolutePath() });
+        conf.setAllowLoopback(true);
+        storage = new SingleDirectoryDbLedgerStorage(conf, mock(LedgerManager.class), ledgerDirsManager,
+                ledgerDirsManager, entryLogger, NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT,
+                1024 * 1024, 1024 * 1024, 4, -1);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        storage.shutdown();
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1); // lac
+        entry.writerIndex(ENTRY_SIZE);
+        return entry;
+    }
+
+    private static void assertEntries(long ledgerId, long firstEntryId, int count, ByteBufList entries) {
+        try {
+            assertEquals(count, entries.size());
+            for (int i = 0; i < count; i++) {
+                assertEquals(entry(ledgerId, firstEntryId + i), entries.getBuffer(i));
+            }
+        } finally {
+            entries.release();
+        }
+    }
+
+    private void addEntries(long ledgerId, long... entryIds) throws Exception {
+        for (long entryId : entryIds) {
+            storage.addEntry(entry(ledgerId, entryId));
+        }
+    }
+
+    @Test
+    public void testCoalescedEntryLogReads() throws Exception {
+        // The entries of ledger 1 are interleaved with the entries of ledger 2 in the entry log
+        for (long entryId = 0; entryId < 10; entryId++) {
+            addEntries(1, entryId);
+            addEntries(2, entryId);
+        }
+        storage.flush();
+
+        assertEntries(1, 0, 10, storage.getEntries(1, 0, 10, Long.MAX_VALUE));
+        verify(entryLogger, times(1)).readEntryRange(anyLong(), anyInt());
+        verify(entryLogger, never()).readEntry(anyLong(), anyLong(), anyLong());
+
+        // The entries read in batch are cached
+        clearInvocations(entryLogger);
+        ByteBuf entry = storage.getEntry(1, 5);
+        assertEquals(entry(1, 5), entry);
+        entry.release();
+        verify(entryLogger, never()).readEntry(anyLong(), anyLong(), anyLong());
+        verify(entryLogger, never()).readEntryRange(anyLong(), anyInt());
+    }
+
+    @Test
+    public void testLimits() throws Exception {
+        addEntries(1, 0, 1, 2, 3, 4, 5, 6, 7);
+        storage.flush();
+
+        assertEntries(1, 0, 3, storage.getEntries(1, 0, 3, Long.MAX_VALUE));
+        assertEntries(1, 2, 4, storage.getEntries(1, 2, 100, 4 * ENTRY_SIZE + 10));
+        // The first entry is returned even when bigger than the max size
+        assertEntries(1, 6, 1, storage.getEntries(1, 6, 100, 1));
+    }
+
+    @Test
+    public void testCachedAndMissingEntries() throws Exception {
+        addEntries(1, 0, 1, 2, 3, 4, 6, 7);
+        // Still in the write cache
+        addEntries(2, 0, 1, 2);
+        storage.flush();
+        addEntries(2, 3, 4);
+
+        // The cached entries are mixed with the entries read from the entry log, in order
+        ByteBuf entry = storage.getEntry(1, 2);
+        entry.release();
+        assertEntries(1, 0, 5, storage.getEntries(1, 0, 100, Long.MAX_VALUE));
+        assertEntries(2, 0, 5, storage.getEntries(2, 0, 100, Long.MAX_VALUE));
+
+        // The read stops at the missing entry, unless it is the first one
+        assertEntries(1, 6, 2, storage.getEntries(1, 6, 100, Long.MAX_VALUE));
+        storage.setMasterKey(1, new byte[0]);
+        assertThrows(NoEntryException.class, () -> storage.getEntries(1, 5, 100, Long.MAX_VALUE));
+        assertThrows(NoLedgerException.class, () -> storage.getEntries(3, 0, 100, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testFallbackToSingleEntryReads() throws Exception {
+        addEntries(1, 0, 1, 2, 3);
+        storage.flush();
+
+        // The entries that cannot be parsed from the range are read one by one
+        corruptRanges = true;
+        assertEntries(1, 0, 4, storage.getEntries(1, 0, 100, Long.MAX_VALUE));
+        verify(entryLogger, times(4)).readEntry(anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void testDefaultBookieReadEntries() throws Exception {
+        Bookie bookie = mock(Bookie.class, CALLS_REAL_METHODS);
+        when(bookie.readEntry(anyLong(), anyLong())).thenAnswer(invocation -> {
+            long entryId = invocation.getArgument(1);
+            if (entryId >= 5) {
+                throw new NoEntryException(1, entryId);
+            }
+            return entry(1, entryId);
+        });
+
+        assertEntries(1, 0, 5, bookie.readEntries(1, 0, 100, Long.MAX_VALUE));
+        assertEntries(1, 1, 2, bookie.readEntries(1, 1, 2, Long.MAX_VALUE));
+        assertEntries(1, 2, 1, bookie.readEntries(1, 2, 100, 1));
+        assertThrows(NoEntryException.class, () -> bookie.readEntries(1, 5, 100, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testDefaultRangeIterator() throws Exception {
+        byte[][] keys = { { 1 }, { 2 }, { 3 } };
+        KeyValueStorage kvStorage = mock(KeyValueStorage.class, CALLS_REAL_METHODS);
+        Iterator<byte[]> keysIterator = Arrays.asList(keys).iterator();
+        CloseableIterator<byte[]> closeableKeys = mock(CloseableIterator.class);
+        when(closeableKeys.hasNext()).thenAnswer(invocation -> keysIterator.hasNext());
+        when(closeableKeys.next()).thenAnswer(invocation -> keysIterator.next());
+        when(kvStorage.keys(keys[0], new byte[] { 4 })).thenReturn(closeableKeys);
+        // The second key is deleted while iterating
+        when(kvStorage.get(any(byte[].class))).thenAnswer(invocation -> {
+            byte[] key = invocation.getArgument(0);
+            return key[0] == 2 ? null : new byte[] { (byte) (key[0] * 10) };
+        });
+
+        try (CloseableIterator<Entry<byte[], byte[]>> iterator = kvStorage.iterator(keys[0], new byte[] { 4 })) {
+            assertTrue(iterator.hasNext());
+            Entry<byte[], byte[]> entry = iterator.next();
+            assertArrayEquals(keys[0], entry.getKey());
+            assertArrayEquals(new byte[] { 10 }, entry.getValue());
+            entry = iterator.next();
+            assertArrayEquals(keys[2], entry.getKey());
+            assertArrayEquals(new byte[] { 30 }, entry.getValue());
+            assertFalse(iterator.hasNext());
+        }
+        verify(closeableKeys).close();
+    }
+}
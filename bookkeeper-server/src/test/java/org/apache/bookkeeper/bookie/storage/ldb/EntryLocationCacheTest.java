@@ -0,0 +1,234 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@link EntryLocationCache}.
+ */
+public class EntryLocationCacheTest {
+
+    private EntryLocationCache cache = new EntryLocationCache(UnpooledByteBufAllocator.DEFAULT, 1024 * 1024);
+
+    @AfterEach
+    public void tearDown() {
+        cache.close();
+    }
+
+    private static long location(long logId, long offset) {
+        return (logId << 32) | offset;
+    }
+
+    /**
+     * Put the locations of consecutive entries of a ledger, stored in the same log at the given offsets.
+     */
+    private void put(long ledgerId, long firstEntryId, long logId, long... offsets) {
+        long[] locations = new long[offsets.length * 3];
+        for (int i = 0; i < offsets.length; i++) {
+            locations[i * 3] = ledgerId;
+            locations[i * 3 + 1] = firstEntryId + i;
+            locations[i * 3 + 2] = location(logId, offsets[i]);
+        }
+        cache.put(locations, locations.length);
+    }
+
+    @Test
+    public void testStridedRun() {
+        long[] offsets = new long[1000];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = 1024 + i * 104L;
+        }
+        put(1, 0, 5, offsets);
+
+        for (int i = 0; i < offsets.length; i++) {
+            assertEquals(location(5, offsets[i]), cache.get(1, i));
+        }
+        assertEquals(0, cache.get(1, offsets.length));
+
+        // The run does not store the offsets of its entries
+        long stridedSize = cache.size();
+        assertTrue(stridedSize < offsets.length * Integer.BYTES);
+
+        // Entries of different sizes take 4 bytes each
+        offsets[500] += 1;
+        put(2, 0, 5, offsets);
+        assertEquals(stridedSize * 2 + offsets.length * Integer.BYTES, cache.size());
+        for (int i = 0; i < offsets.length; i++) {
+            assertEquals(location(5, offsets[i]), cache.get(2, i));
+        }
+    }
+
+    @Test
+    public void testRunsSplitByLog() {
+        // Offsets up to the 32 bits of the location
+        put(1, 0, 1, 0xFFFFFF00L, 0xFFFFFF80L);
+        put(1, 2, 2, 0L, 128L, 256L);
+
+        assertEquals(location(1, 0xFFFFFF00L), cache.get(1, 0));
+        assertEquals(location(1, 0xFFFFFF80L), cache.get(1, 1));
+        assertEquals(location(2, 0L), cache.get(1, 2));
+        assertEquals(location(2, 256L), cache.get(1, 4));
+    }
+
+    @Test
+    public void testInvalidateAndRemove() {
+        put(1, 0, 1, 0L, 100L, 200L);
+        put(1, 3, 2, 0L, 100L);
+        put(2, 0, 1, 300L);
+
+        cache.invalidate(1, 1);
+        assertEquals(0, cache.get(1, 0));
+        assertEquals(0, cache.get(1, 2));
+        assertEquals(location(2, 100L), cache.get(1, 4));
+
+        cache.removeLedger(1);
+        assertEquals(0, cache.get(1, 4));
+        assertEquals(location(1, 300L), cache.get(2, 0));
+
+        cache.removeLedger(2);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEviction() {
+        cache.close();
+        cache = new EntryLocationCache(UnpooledByteBufAllocator.DEFAULT, 1024);
+
+        // Runs of entries of different sizes, 400 bytes of offsets each
+        long[] offsets = new long[100];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = (long) i * i;
+        }
+        for (long ledgerId = 1; ledgerId <= 4; ledgerId++) {
+            put(ledgerId, 0, 1, offsets);
+        }
+
+        assertTrue(cache.size() <= 1024);
+        assertEquals(0, cache.get(1, 10));
+        assertEquals(location(1, 100L), cache.get(4, 10));
+    }
+
+    @Test
+    public void testConcurrentGetAndUpdate() throws Exception {
+        final int readers = 4;
+        final int entries = 100;
+        cache.close();
+        // Unpooled buffers fail the reads after their release
+        cache = new EntryLocationCache(UnpooledByteBufAllocator.DEFAULT, 4096);
+
+        // The same locations, stored as a strided run or as offsets
+        long[] stridedOffsets = new long[entries];
+        long[] offsets = new long[entries];
+        for (int i = 0; i < entries; i++) {
+            stridedOffsets[i] = i * 100L;
+            offsets[i] = i * 100L;
+        }
+        offsets[entries - 1] += 1;
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong hits = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(readers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int r = 0; r < readers; r++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (running.get()) {
+                        long ledgerId = random.nextInt(4);
+                        int entryId = random.nextInt(entries);
+                        long location = cache.get(ledgerId, entryId);
+                        if (location != 0) {
+                            assertTrue(location == location(ledgerId, stridedOffsets[entryId])
+                                    || location == location(ledgerId, offsets[entryId]));
+                            hits.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+
+            // Replace, invalidate and evict the runs of the ledgers, with a budget for a few of them
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < 20_000; i++) {
+                long ledgerId = random.nextInt(4);
+                put(ledgerId, 0, ledgerId, i % 2 == 0 ? stridedOffsets : offsets);
+                if (i % 7 == 0) {
+                    cache.invalidate(ledgerId, random.nextInt(entries));
+                }
+                if (i % 101 == 0) {
+                    cache.removeLedger(ledgerId);
+                }
+            }
+            running.set(false);
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            running.set(false);
+            executor.shutdownNow();
+        }
+        assertTrue(hits.get() > 0);
+        assertTrue(cache.size() <= 4096);
+    }
+
+    @Test
+    public void testIndexCacheAllocator() throws Exception {
+        File tmpDir = Files.createTempDirectory("entry-location-cache").toFile();
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setProperty(DbLedgerStorage.ENTRY_LOCATION_CACHE_MAX_SIZE_MB, 1);
+        UnpooledByteBufAllocator allocator = new UnpooledByteBufAllocator(true);
+        try (EntryLocationIndex index = new EntryLocationIndex(conf, KeyValueStorageRocksDB.factory,
+                tmpDir.getAbsolutePath(), NullStatsLogger.INSTANCE, allocator)) {
+            try (Batch batch = index.newBatch()) {
+                // Entries of different sizes, whose offsets are stored in a buffer of the cache
+                for (long entryId = 0; entryId < 100; entryId++) {
+                    index.addLocation(batch, 1, entryId, location(1, entryId * entryId));
+                }
+                batch.flush();
+            }
+            assertEquals(location(1, 50 * 50), index.getLocation(1, 50));
+            assertEquals(100 * Integer.BYTES, allocator.metric().usedDirectMemory());
+        } finally {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+        assertEquals(0, allocator.metric().usedDirectMemory());
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.EntryLocation;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for the range format of {@link EntryLocationIndex}.
+ */
+public class EntryLocationIndexTest {
+
+    private File tmpDir;
+    private ServerConfiguration conf;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        tmpDir = Files.createTempDirectory("entry-location-index").toFile();
+        conf = new ServerConfiguration();
+        conf.setProperty(DbLedgerStorage.ENTRY_LOCATION_INDEX_FORMAT, EntryLocationIndex.FORMAT_RANGE);
+    }
+
+    @AfterEach
+    public void teardown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private EntryLocationIndex newIndex() throws Exception {
+        return new EntryLocationIndex(conf, KeyValueStorageRocksDB.factory, tmpDir.getAbsolutePath(),
+                NullStatsLogger.INSTANCE);
+    }
+
+    private static long location(long logId, long offset) {
+        return (logId << 32) | offset;
+    }
+
+    private static void addEntries(EntryLocationIndex index, Batch batch, long ledgerId, long firstEntryId,
+                                   int count, long logId, long firstOffset) throws Exception {
+        for (int i = 0; i < count; i++) {
+            index.addLocation(batch, ledgerId, firstEntryId + i, location(logId, firstOffset + 100 * i));
+        }
+    }
+
+    @Test
+    public void testAddAndLookup() throws Exception {
+        try (EntryLocationIndex index = newIndex()) {
+            assertTrue(index.isRangeFormat());
+            try (Batch batch = index.newBatch()) {
+                // Longer than a run, and with a jump to another entry log
+                addEntries(index, batch, 1, 0, 1500, 1, 1000);
+                addEntries(index, batch, 1, 1500, 10, 2, 0);
+                addEntries(index, batch, 2, 5, 10, 1, 500_000);
+                batch.flush();
+            }
+
+            for (int i = 0; i < 1500; i++) {
+                assertEquals(location(1, 1000 + 100 * i), index.getLocation(1, i));
+            }
+            for (int i = 0; i < 10; i++) {
+                assertEquals(location(2, 100 * i), index.getLocation(1, 1500 + i));
+                assertEquals(location(1, 500_000 + 100 * i), index.getLocation(2, 5 + i));
+            }
+            assertEquals(0, index.getLocation(1, 1510));
+            assertEquals(0, index.getLocation(2, 4));
+            assertEquals(0, index.getLocation(3, 0));
+
+            assertEquals(1509, index.getLastEntryInLedger(1));
+            assertEquals(14, index.getLastEntryInLedger(2));
+            assertThrows(Bookie.NoEntryException.class, () -> index.getLastEntryInLedger(3));
+
+            long[] locations = new long[20];
+            assertEquals(20, index.getLocations(1, 1010, locations));
+            for (int i = 0; i < 20; i++) {
+                assertEquals(location(1, 1000 + 100 * (1010 + i)), locations[i]);
+            }
+            assertEquals(10, index.getLocations(2, 5, locations));
+        }
+
+        // The format is stored in the index and takes precedence over the configuration
+        conf.setProperty(DbLedgerStorage.ENTRY_LOCATION_INDEX_FORMAT, EntryLocationIndex.FORMAT_ENTRY);
+        try (EntryLocationIndex index = newIndex()) {
+            assertTrue(index.isRangeFormat());
+            assertEquals(location(1, 1000 + 100 * 42), index.getLocation(1, 42));
+        }
+    }
+
+    @Test
+    public void testOverlappingRuns() throws Exception {
+        try (EntryLocationIndex index = newIndex()) {
+            try (Batch batch = index.newBatch()) {
+                addEntries(index, batch, 1, 0, 100, 1, 0);
+                batch.flush();
+            }
+
+            // Overwrite the middle of the run, and the same entries again in the same batch
+            try (Batch batch = index.newBatch()) {
+                addEntries(index, batch, 1, 40, 20, 2, 0);
+                addEntries(index, batch, 1, 50, 20, 3, 0);
+                addEntries(index, batch, 1, 95, 10, 4, 0);
+                batch.flush();
+            }
+
+            for (int i = 0; i < 40; i++) {
+                assertEquals(location(1, 100 * i), index.getLocation(1, i));
+            }
+            for (int i = 40; i < 50; i++) {
+                assertEquals(location(2, 100 * (i - 40)), index.getLocation(1, i));
+            }
+            for (int i = 50; i < 70; i++) {
+                assertEquals(location(3, 100 * (i - 50)), index.getLocation(1, i));
+            }
+            for (int i = 70; i < 95; i++) {
+                assertEquals(location(1, 100 * i), index.getLocation(1, i));
+            }
+            for (int i = 95; i < 105; i++) {
+                assertEquals(location(4, 100 * (i - 95)), index.getLocation(1, i));
+            }
+            assertEquals(104, index.getLastEntryInLedger(1));
+
+            long[] locations = new long[110];
+            assertEquals(105, index.getLocations(1, 0, locations));
+            assertEquals(location(3, 0), locations[50]);
+        }
+    }
+
+    @Test
+    public void testUpdateLocations() throws Exception {
+        try (EntryLocationIndex index = newIndex()) {
+            try (Batch batch = index.newBatch()) {
+                addEntries(index, batch, 1, 0, 100, 1, 0);
+                batch.flush();
+            }
+
+            // Relocate some scattered entries, as a compaction would
+            List<EntryLocation> newLocations = new ArrayList<>();
+            for (int i = 0; i < 100; i += 7) {
+                newLocations.add(new EntryLocation(1, i, location(5, i)));
+            }
+            index.updateLocations(newLocations);
+
+            for (int i = 0; i < 100; i++) {
+                long expected = i % 7 == 0 ? location(5, i) : location(1, 100 * i);
+                assertEquals(expected, index.getLocation(1, i));
+            }
+            assertEquals(99, index.getLastEntryInLedger(1));
+        }
+    }
+
+    @Test
+    public void testDeleteLedger() throws Exception {
+        try (EntryLocationIndex index = newIndex()) {
+            try (Batch batch = index.newBatch()) {
+                addEntries(index, batch, 1, 0, 10, 1, 0);
+                addEntries(index, batch, 2, 0, 10, 1, 10_000);
+                batch.flush();
+            }
+
+            index.delete(1);
+            index.removeOffsetFromDeletedLedgers();
+
+            assertEquals(0, index.getLocation(1, 5));
+            assertEquals(location(1, 10_000), index.getLocation(2, 0));
+        }
+
+        // The deletion does not remove the stored format
+        conf.setProperty(DbLedgerStorage.ENTRY_LOCATION_INDEX_FORMAT, EntryLocationIndex.FORMAT_ENTRY);
+        try (EntryLocationIndex index = newIndex()) {
+            assertTrue(index.isRangeFormat());
+        }
+    }
+
+    @Test
+    public void testFormatOfEmptyIndex() throws Exception {
+        // Nothing is written to an index until locations are added to it
+        newIndex().close();
+
+        conf.setProperty(DbLedgerStorage.ENTRY_LOCATION_INDEX_FORMAT, EntryLocationIndex.FORMAT_ENTRY);
+        try (EntryLocationIndex index = newIndex()) {
+            assertFalse(index.isRangeFormat());
+        }
+    }
+
+    @Test
+    public void testEncodeBlock() {
+        TreeMap<Long, long[]> runs = new TreeMap<>();
+        runs.put(1024L, new long[] { location(1, 10), location(1, 20) });
+        runs.put(1030L, new long[] { location(2, 5) });
+        runs.put(2040L, new long[] { location(1, 100), location(1, 300), location(1, 1L << 31) });
+        byte[] block = EntryLocationRanges.encodeBlock(1024, runs);
+
+        assertEquals(location(1, 20), EntryLocationRanges.getLocation(block, 1024, 1025));
+        assertEquals(location(2, 5), EntryLocationRanges.getLocation(block, 1024, 1030));
+        assertEquals(location(1, 1L << 31), EntryLocationRanges.getLocation(block, 1024, 2042));
+        assertEquals(0, EntryLocationRanges.getLocation(block, 1024, 1026));
+        assertEquals(0, EntryLocationRanges.getLocation(block, 1024, 2047));
+        assertEquals(2042, EntryLocationRanges.lastEntryId(block, 1024));
+
+        TreeMap<Long, long[]> decoded = new TreeMap<>();
+        EntryLocationRanges.decodeBlock(block, 1024, decoded);
+        assertEquals(runs.keySet(), decoded.keySet());
+        for (long firstEntryId : runs.keySet()) {
+            assertArrayEquals(runs.get(firstEntryId), decoded.get(firstEntryId));
+        }
+
+        assertEquals(0, EntryLocationRanges.blockOf(1023));
+        assertEquals(1024, EntryLocationRanges.blockOf(1024));
+        assertEquals(2048, EntryLocationRanges.blockOf(3000));
+    }
+
+    @Test
+    public void testEncodeRanges() {
+        long[] locations = { location(1, 10), location(1, 20), location(1, 20_000), location(1, 1L << 31) };
+        byte[] value = EntryLocationRanges.encode(locations, 0, locations.length);
+        assertEquals(4, EntryLocationRanges.count(value));
+        assertArrayEquals(locations, EntryLocationRanges.decode(value));
+        for (int i = 0; i < locations.length; i++) {
+            assertEquals(locations[i], EntryLocationRanges.getLocation(value, i));
+        }
+
+        value = EntryLocationRanges.encode(locations, 1, 3);
+        assertArrayEquals(new long[] { location(1, 20), location(1, 20_000) }, EntryLocationRanges.decode(value));
+
+        assertTrue(EntryLocationRanges.canAppend(location(1, 10), location(1, 11)));
+        assertFalse(EntryLocationRanges.canAppend(location(1, 10), location(1, 10)));
+        assertFalse(EntryLocationRanges.canAppend(location(1, 10), location(2, 11)));
+    }
+
+    @Test
+    public void testBlockRecords() throws Exception {
+        try (EntryLocationIndex index = newIndex()) {
+            try (Batch batch = index.newBatch()) {
+                // Runs crossing the boundaries of the blocks, and a gap in the second block
+                addEntries(index, batch, 1, 1000, 100, 1, 0);
+                addEntries(index, batch, 1, 1200, 2000, 1, 100_000);
+                addEntries(index, batch, 2, 0, 10, 1, 1_000_000);
+                batch.flush();
+            }
+
+            assertEquals(location(1, 100 * 23), index.getLocation(1, 1023));
+            assertEquals(location(1, 100 * 24), index.getLocation(1, 1024));
+            assertEquals(0, index.getLocation(1, 1100));
+            assertEquals(0, index.getLocation(1, 999));
+            assertEquals(location(1, 100_000 + 100 * 1999), index.getLocation(1, 3199));
+            assertEquals(3199, index.getLastEntryInLedger(1));
+
+            long[] locations = new long[200];
+            assertEquals(100, index.getLocations(1, 1000, locations));
+            assertEquals(200, index.getLocations(1, 2000, locations));
+            for (int i = 0; i < 200; i++) {
+                assertEquals(location(1, 100_000 + 100 * (800 + i)), locations[i]);
+            }
+
+            // Update entries of two blocks
+            try (Batch batch = index.newBatch()) {
+                addEntries(index, batch, 1, 2040, 10, 2, 0);
+                batch.flush();
+            }
+            assertEquals(location(2, 100 * 8), index.getLocation(1, 2048));
+            assertEquals(location(1, 100_000 + 100 * 850), index.getLocation(1, 2050));
+            assertEquals(location(1, 100_000 + 100 * 839), index.getLocation(1, 2039));
+        }
+
+        // The records are keyed by block, the format is stored outside of the keys of the entries
+        try (KeyValueStorage storage = KeyValueStorageRocksDB.factory.newKeyValueStorage(tmpDir.getAbsolutePath(),
+                "locations", DbConfigType.EntryLocation, conf);
+             CloseableIterator<byte[]> keys = storage.keys()) {
+            List<String> records = new ArrayList<>();
+            while (keys.hasNext()) {
+                byte[] key = keys.next();
+                if (EntryLocationIndex.isFormatKey(key)) {
+                    assertEquals(2 * Long.BYTES + 1, key.length);
+                    records.add("format");
+                } else {
+                    records.add(ArrayUtil.getLong(key, 0) + "@" + ArrayUtil.getLong(key, 8));
+                }
+            }
+            assertEquals(Arrays.asList("1@0", "1@1024", "1@2048", "1@3072", "2@0", "format"), records);
+        }
+    }
+
+    @Test
+    public void testConvert() throws Exception {
+        File currentDir = BookieImpl.getCurrentDirectory(tmpDir);
+        assertTrue(currentDir.mkdirs());
+        conf.setLedgerDirNames(new String[] { tmpDir.getAbsolutePath() });
+        conf.setProperty(DbLedgerStorage.ENTRY_LOCATION_INDEX_FORMAT, EntryLocationIndex.FORMAT_ENTRY);
+        try (EntryLocationIndex index = new EntryLocationIndex(conf, KeyValueStorageRocksDB.factory,
+                currentDir.getAbsolutePath(), NullStatsLogger.INSTANCE)) {
+            assertFalse(index.isRangeFormat());
+            try (Batch batch = index.newBatch()) {
+                addEntries(index, batch, 1, 0, 3000, 1, 0);
+                addEntries(index, batch, 2, 10, 10, 2, 0);
+                batch.flush();
+            }
+        }
+
+        for (String format : new String[] { EntryLocationIndex.FORMAT_RANGE, EntryLocationIndex.FORMAT_ENTRY }) {
+            new LocationsIndexConvertOp(conf, format).initiate();
+
+            conf.setProperty(DbLedgerStorage.ENTRY_LOCATION_INDEX_FORMAT, EntryLocationIndex.FORMAT_ENTRY);
+            try (EntryLocationIndex index = new EntryLocationIndex(conf, KeyValueStorageRocksDB.factory,
+                    currentDir.getAbsolutePath(), NullStatsLogger.INSTANCE)) {
+                assertEquals(EntryLocationIndex.FORMAT_RANGE.equals(format), index.isRangeFormat());
+                for (int i = 0; i < 3000; i++) {
+                    assertEquals(location(1, 100 * i), index.getLocation(1, i));
+                }
+                for (int i = 10; i < 20; i++) {
+                    assertEquals(location(2, 100 * (i - 10)), index.getLocation(2, i));
+                }
+                assertEquals(2999, index.getLastEntryInLedger(1));
+                assertEquals(19, index.getLastEntryInLedger(2));
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for the entry log reads of {@link SingleDirectoryDbLedgerStorage#getEntryAsync} served by the
+ * {@link EntryLogReadScheduler}.
+ */
+public class EntryLogReadSchedulerTest {
+
+    private static final long LOCATION = (1L << 32) | 1024;
+
+    private File tmpDir;
+    private SingleDirectoryDbLedgerStorage storage;
+    private final EntryLogger entryLogger = mock(EntryLogger.class);
+    private final ExecutorService requestThread = Executors.newSingleThreadExecutor(
+            new DefaultThreadFactory("test-request-thread"));
+    private final AtomicInteger executed = new AtomicInteger();
+    private final Executor requestExecutor = command -> {
+        executed.incrementAndGet();
+        requestThread.execute(command);
+    };
+    private final CountDownLatch readReleased = new CountDownLatch(1);
+    private volatile ByteBuf readEntry;
+    private volatile boolean failReadAhead = false;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("entry-log-read-scheduler").toFile();
+        readEntry = entry(1, 0);
+
+        when(entryLogger.addEntry(anyLong(), any(ByteBuf.class)))
+                .thenAnswer(invocation -> {
+                    ByteBuf entry = invocation.getArgument(1);
+                    return location(entry.getLong(entry.readerIndex() + 8));
+                });
+        when(entryLogger.readEntry(eq(1L), anyLong(), anyLong())).thenAnswer(invocation -> {
+            assertEquals(location(invocation.getArgument(1)), (long) invocation.getArgument(2));
+            assertTrue(readReleased.await(10, TimeUnit.SECONDS));
+            return readEntry;
+        });
+
+        LedgerDirsManager ledgerDirsManager = mock(LedgerDirsManager.class);
+        when(ledgerDirsManager.getAllLedgerDirs()).thenReturn(Collections.singletonList(tmpDir));
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { tmpDir.getAbsolutePath() });
+        conf.setAllowLoopback(true);
+        conf.setProperty(DbLedgerStorage.ENTRY_LOG_READ_THREADS, 1);
+        storage = new SingleDirectoryDbLedgerStorage(conf, mock(LedgerManager.class), ledgerDirsManager,
+                ledgerDirsManager, entryLogger, NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT,
+                1024 * 1024, 1024 * 1024, 100, 1024 * 1024) {
+            @Override
+            protected boolean chargeReadAheadCache(int currentReadAheadCount, long currentReadAheadBytes) {
+                if (failReadAhead) {
+                    // Like an allocation failure, which is not handled by the read-ahead
+                    throw new OutOfMemoryError("read-ahead failure");
+                }
+                return false;
+            }
+        };
+
+        storage.addEntry(entry(1, 0));
+        storage.addEntry(entry(1, 1));
+        storage.flush();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        readReleased.countDown();
+        storage.shutdown();
+        requestThread.shutdownNow();
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private static long location(long entryId) {
+        return LOCATION + entryId * 1024;
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(128);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1); // lac
+        entry.writerIndex(128);
+        return entry;
+    }
+
+    @Test
+    public void testCompletedOnRequestExecutor() throws Exception {
+        CompletableFuture<ByteBuf> future = storage.getEntryAsync(1, 0, requestExecutor);
+        AtomicReference<String> completionThread = new AtomicReference<>();
+        CompletableFuture<ByteBuf> completed = future.whenComplete(
+                (entry, e) -> completionThread.set(Thread.currentThread().getName()));
+
+        readReleased.countDown();
+        ByteBuf entry = completed.get(10, TimeUnit.SECONDS);
+        assertSame(readEntry, entry);
+        assertEquals(1, executed.get());
+        assertTrue(completionThread.get().startsWith("test-request-thread"), completionThread.get());
+        entry.release();
+
+        // Served by the read cache, by the calling thread
+        entry = storage.getEntryAsync(1, 0, requestExecutor).get(10, TimeUnit.SECONDS);
+        assertEquals(entry(1, 0).nioBuffer(), entry.nioBuffer());
+        assertEquals(1, executed.get());
+        entry.release();
+    }
+
+    @Test
+    public void testRejectedRequestExecutor() throws Exception {
+        Executor rejecting = command -> {
+            throw new RejectedExecutionException("shutting down");
+        };
+
+        // The read is completed by the read thread
+        CompletableFuture<ByteBuf> future = storage.getEntryAsync(1, 0, rejecting);
+        readReleased.countDown();
+        ByteBuf entry = future.get(10, TimeUnit.SECONDS);
+        assertSame(readEntry, entry);
+        entry.release();
+    }
+
+    @Test
+    public void testEntryReleasedOnFailure() throws Exception {
+        failReadAhead = true;
+        CompletableFuture<ByteBuf> future = storage.getEntryAsync(1, 0, requestExecutor);
+        readReleased.countDown();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof OutOfMemoryError);
+        assertEquals(0, readEntry.refCnt());
+
+        // Same with the synchronous read
+        readEntry = entry(1, 1);
+        assertThrows(OutOfMemoryError.class, () -> storage.getEntry(1, 1));
+        assertEquals(0, readEntry.refCnt());
+    }
+}
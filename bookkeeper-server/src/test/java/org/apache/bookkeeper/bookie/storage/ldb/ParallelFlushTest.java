@@ -0,0 +1,173 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for the flushes of {@link SingleDirectoryDbLedgerStorage} with multiple flush writers.
+ */
+public class ParallelFlushTest {
+
+    private static final int ENTRY_SIZE = 100;
+
+    private File tmpDir;
+    private SingleDirectoryDbLedgerStorage storage;
+    private final EntryLogger entryLogger = mock(EntryLogger.class);
+    // One entry log per ledger in memory, made of (size, entry) records
+    private final ConcurrentHashMap<Long, ByteBuf> logs = new ConcurrentHashMap<>();
+    private final Set<String> writerThreads = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("parallel-flush").toFile();
+
+        when(entryLogger.addEntry(anyLong(), any(ByteBuf.class))).thenAnswer(invocation -> {
+            long ledgerId = invocation.getArgument(0);
+            ByteBuf entry = invocation.getArgument(1);
+            writerThreads.add(Thread.currentThread().getName());
+            ByteBuf log = logs.computeIfAbsent(ledgerId, id -> Unpooled.buffer());
+            // Appends to the log of a ledger are not concurrent
+            long location = (ledgerId << 32) | log.writerIndex();
+            log.writeInt(entry.readableBytes());
+            log.writeBytes(entry, entry.readerIndex(), entry.readableBytes());
+            return location;
+        });
+        when(entryLogger.readEntry(anyLong(), anyLong(), anyLong())).thenAnswer(invocation -> {
+            long location = invocation.getArgument(2);
+            ByteBuf log = logs.get(location >>> 32);
+            int offset = (int) location;
+            return Unpooled.copiedBuffer(log.slice(offset + 4, log.getInt(offset)));
+        });
+    }
+
+    private void createStorage(int flushWriterThreads, boolean entryLogPerLedger) throws Exception {
+        LedgerDirsManager ledgerDirsManager = mock(LedgerDirsManager.class);
+        when(ledgerDirsManager.getAllLedgerDirs()).thenReturn(Collections.singletonList(tmpDir));
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { tmpDir.getAbsolutePath() });
+        conf.setAllowLoopback(true);
+        conf.setEntryLogPerLedgerEnabled(entryLogPerLedger);
+        conf.setProperty(DbLedgerStorage.FLUSH_WRITER_THREADS, flushWriterThreads);
+        storage = new SingleDirectoryDbLedgerStorage(conf, mock(LedgerManager.class), ledgerDirsManager,
+                ledgerDirsManager, entryLogger, NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT,
+                4 * 1024 * 1024, 1024 * 1024, 1, -1);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if (storage != null) {
+            storage.shutdown();
+        }
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1); // lac
+        entry.writerIndex(ENTRY_SIZE);
+        return entry;
+    }
+
+    private void addAndFlush(int numLedgers, int numEntries) throws Exception {
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            for (long ledgerId = 1; ledgerId <= numLedgers; ledgerId++) {
+                storage.addEntry(entry(ledgerId, entryId));
+            }
+        }
+        storage.flush();
+    }
+
+    private void assertEntries(int numLedgers, int numEntries) throws Exception {
+        for (long ledgerId = 1; ledgerId <= numLedgers; ledgerId++) {
+            for (long entryId = 0; entryId < numEntries; entryId++) {
+                ByteBuf entry = storage.getEntry(ledgerId, entryId);
+                assertEquals(entry(ledgerId, entryId), entry);
+                entry.release();
+            }
+        }
+    }
+
+    private boolean writtenByFlushWriters() {
+        return writerThreads.stream().anyMatch(name -> name.startsWith("db-storage-flush-writer"));
+    }
+
+    @Test
+    public void testParallelFlush() throws Exception {
+        createStorage(4, true);
+        addAndFlush(20, 50);
+        assertTrue(writtenByFlushWriters(), writerThreads.toString());
+        assertEquals(20, logs.size());
+
+        // The entries of each ledger are written in order
+        for (long ledgerId = 1; ledgerId <= 20; ledgerId++) {
+            ByteBuf log = logs.get(ledgerId);
+            for (long entryId = 0; entryId < 50; entryId++) {
+                int offset = (int) entryId * (ENTRY_SIZE + 4);
+                assertEquals(ENTRY_SIZE, log.getInt(offset));
+                assertEquals(entryId, log.getLong(offset + 4 + 8));
+            }
+        }
+        assertEntries(20, 50);
+
+        // A second flush with the same writers
+        for (long ledgerId = 1; ledgerId <= 20; ledgerId++) {
+            storage.addEntry(entry(ledgerId, 50));
+        }
+        storage.flush();
+        assertEntries(20, 51);
+    }
+
+    @Test
+    public void testSingleWriterWithoutEntryLogPerLedger() throws Exception {
+        createStorage(4, false);
+        addAndFlush(20, 50);
+        assertFalse(writtenByFlushWriters(), writerThreads.toString());
+        assertEquals(1, writerThreads.size());
+        assertEntries(20, 50);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.apache.bookkeeper.bookie.storage.ldb.ReadCachePolicy.Source;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@link ProbationReadCachePolicy}.
+ */
+public class ProbationReadCachePolicyTest {
+
+    private static final int ENTRY_SIZE = 128;
+
+    private DbLedgerStorageStats stats;
+    private ProbationReadCachePolicy policy;
+
+    @BeforeEach
+    public void setup() {
+        stats = new DbLedgerStorageStats(new TestStatsProvider().getStatsLogger("test"),
+                () -> 0L, () -> 0L, () -> 0L, () -> 0L);
+        // Main cache of 4 segments of 8 entries, probation cache of 2 segments of 8 entries
+        policy = new ProbationReadCachePolicy(UnpooledByteBufAllocator.DEFAULT, 6 * 1024, 1024, 1.0 / 3, false,
+                MoreExecutors.directExecutor(), stats);
+    }
+
+    @AfterEach
+    public void teardown() {
+        policy.close();
+    }
+
+    private void put(long entryId, Source source) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writerIndex(ENTRY_SIZE);
+        policy.put(1, entryId, entry, source);
+        entry.release();
+    }
+
+    private boolean get(long entryId, Source source) {
+        ByteBuf entry = policy.get(1, entryId, source);
+        if (entry == null) {
+            return false;
+        }
+        entry.release();
+        return true;
+    }
+
+    @Test
+    public void testScanDoesNotEvictTailEntries() {
+        for (int i = 0; i < 8; i++) {
+            put(i, Source.TAIL);
+        }
+
+        // A catch-up reader scanning many entries only churns the probation cache
+        for (int i = 1000; i < 1100; i++) {
+            put(i, Source.CATCH_UP);
+        }
+
+        for (int i = 0; i < 8; i++) {
+            assertTrue(get(i, Source.TAIL));
+        }
+        assertFalse(policy.hasEntry(1, 1000));
+        assertTrue(policy.hasEntry(1, 1099));
+    }
+
+    @Test
+    public void testPromotion() {
+        put(1, Source.READ_AHEAD);
+        put(2, Source.READ_AHEAD);
+
+        // A tail read promotes the entry right away, a catch-up read once accessed frequently
+        assertTrue(get(1, Source.TAIL));
+        assertTrue(get(2, Source.CATCH_UP));
+        assertTrue(get(2, Source.CATCH_UP));
+
+        // Flush the probation cache
+        for (int i = 1000; i < 1100; i++) {
+            put(i, Source.READ_AHEAD);
+        }
+        assertTrue(get(1, Source.CATCH_UP));
+        assertTrue(get(2, Source.CATCH_UP));
+    }
+
+    @Test
+    public void testStatsBySource() {
+        put(1, Source.TAIL);
+        put(2, Source.READ_AHEAD);
+
+        assertTrue(get(1, Source.TAIL));
+        assertTrue(get(2, Source.CATCH_UP));
+        assertFalse(get(3, Source.CATCH_UP));
+        assertNull(policy.get(1, 4, Source.TAIL));
+
+        assertEquals(1L, stats.getReadCacheInsertCounter(Source.TAIL).get());
+        assertEquals(1L, stats.getReadCacheInsertCounter(Source.READ_AHEAD).get());
+        assertEquals(1L, stats.getReadCacheHitCounter(Source.TAIL).get());
+        // Probation hits are counted under the source of the read
+        assertEquals(1L, stats.getReadCacheHitCounter(Source.CATCH_UP).get());
+        assertEquals(1L, stats.getReadCacheMissCounter(Source.CATCH_UP).get());
+        assertEquals(1L, stats.getReadCacheMissCounter(Source.TAIL).get());
+    }
+
+    @Test
+    public void testPromotedEntriesLeaveProbation() {
+        put(1, Source.READ_AHEAD);
+        put(2, Source.READ_AHEAD);
+        assertEquals(2, policy.count());
+
+        // The promoted entries are copied in the main cache and removed from the probation cache
+        assertTrue(get(1, Source.TAIL));
+        assertEquals(2, policy.count());
+        assertTrue(get(2, Source.CATCH_UP));
+        assertTrue(get(2, Source.CATCH_UP));
+        assertEquals(2, policy.count());
+    }
+
+    @Test
+    public void testFrequentEntriesAdmittedAfterEviction() {
+        put(1, Source.READ_AHEAD);
+        assertTrue(get(1, Source.CATCH_UP));
+
+        // Evicted from the probation cache before a second read
+        for (int i = 1000; i < 1100; i++) {
+            put(i, Source.READ_AHEAD);
+        }
+        assertFalse(get(1, Source.CATCH_UP));
+
+        // Read again frequently, the entry is loaded in the main cache
+        put(1, Source.CATCH_UP);
+        for (int i = 2000; i < 2100; i++) {
+            put(i, Source.READ_AHEAD);
+        }
+        assertTrue(get(1, Source.CATCH_UP));
+
+        // An entry read once is still admitted in the probation cache
+        put(3, Source.CATCH_UP);
+        for (int i = 3000; i < 3100; i++) {
+            put(i, Source.READ_AHEAD);
+        }
+        assertFalse(policy.hasEntry(1, 3));
+    }
+}
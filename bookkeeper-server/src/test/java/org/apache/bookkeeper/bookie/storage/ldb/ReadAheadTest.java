@@ -0,0 +1,313 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.apache.bookkeeper.test.TestStatsProvider.TestOpStatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for the read-ahead of {@link SingleDirectoryDbLedgerStorage}: the range reads of the entry log, the
+ * asynchronous read-ahead and the adaptive batch size.
+ */
+public class ReadAheadTest {
+
+    private static final int ENTRY_SIZE = 100;
+    private static final int BATCH_SIZE = 4;
+
+    private File tmpDir;
+    private ServerConfiguration conf;
+    private SingleDirectoryDbLedgerStorage storage;
+    private final EntryLogger entryLogger = mock(EntryLogger.class);
+    // A single entry log in memory, made of (size, entry) records
+    private final ByteBuf log = Unpooled.buffer();
+    private volatile CountDownLatch rangeReadReleased = new CountDownLatch(0);
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("read-ahead").toFile();
+        conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { tmpDir.getAbsolutePath() });
+        conf.setAllowLoopback(true);
+
+        when(entryLogger.addEntry(anyLong(), any(ByteBuf.class))).thenAnswer(invocation -> {
+            ByteBuf entry = invocation.getArgument(1);
+            synchronized (log) {
+                long location = (1L << 32) | log.writerIndex();
+                log.writeInt(entry.readableBytes());
+                log.writeBytes(entry, entry.readerIndex(), entry.readableBytes());
+                return location;
+            }
+        });
+        when(entryLogger.readEntry(anyLong(), anyLong(), anyLong())).thenAnswer(invocation -> {
+            int offset = (int) (long) invocation.getArgument(2);
+            synchronized (log) {
+                return Unpooled.copiedBuffer(log.slice(offset + 4, log.getInt(offset)));
+            }
+        });
+        when(entryLogger.readEntryRange(anyLong(), anyInt())).thenAnswer(invocation -> {
+            assertTrue(rangeReadReleased.await(10, TimeUnit.SECONDS));
+            int offset = (int) (long) invocation.getArgument(0);
+            int maxSize = invocation.getArgument(1);
+            synchronized (log) {
+                if (offset >= log.writerIndex()) {
+                    throw new IOException("End of the entry log");
+                }
+                return Unpooled.copiedBuffer(log.slice(offset, Math.min(maxSize, log.writerIndex() - offset)));
+            }
+        });
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        rangeReadReleased.countDown();
+        if (storage != null) {
+            storage.shutdown();
+        }
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private SingleDirectoryDbLedgerStorage newStorage() throws IOException {
+        return newStorage(new TestStatsProvider());
+    }
+
+    private SingleDirectoryDbLedgerStorage newStorage(TestStatsProvider statsProvider) throws IOException {
+        LedgerDirsManager ledgerDirsManager = mock(LedgerDirsManager.class);
+        when(ledgerDirsManager.getAllLedgerDirs()).thenReturn(Collections.singletonList(tmpDir));
+        return new SingleDirectoryDbLedgerStorage(conf, mock(LedgerManager.class), ledgerDirsManager,
+                ledgerDirsManager, entryLogger, statsProvider.getStatsLogger("test"),
+                UnpooledByteBufAllocator.DEFAULT, 1024 * 1024, 1024 * 1024, BATCH_SIZE, -1);
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1); // lac
+        entry.writerIndex(size);
+        return entry;
+    }
+
+    private void addEntries(long ledgerId, long firstEntryId, int count) throws Exception {
+        for (long entryId = firstEntryId; entryId < firstEntryId + count; entryId++) {
+            storage.addEntry(entry(ledgerId, entryId, ENTRY_SIZE));
+        }
+    }
+
+    private void read(long ledgerId, long entryId) throws Exception {
+        ByteBuf entry = storage.getEntry(ledgerId, entryId);
+        try {
+            assertEquals(ledgerId, entry.getLong(0));
+            assertEquals(entryId, entry.getLong(8));
+        } finally {
+            entry.release();
+        }
+    }
+
+    private void verifyEntryLogReads(int count) throws Exception {
+        verify(entryLogger, times(count)).readEntry(anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void testReadAheadWithRangeReads() throws Exception {
+        storage = newStorage();
+        addEntries(1, 0, 10);
+        storage.flush();
+
+        read(1, 0);
+        verifyEntryLogReads(1);
+        // The batch is read with a single sequential read, sized from the entry that triggered it
+        verify(entryLogger).readEntryRange(eq((1L << 32) + 4 + ENTRY_SIZE), eq(BATCH_SIZE * (4 + ENTRY_SIZE)));
+
+        for (long entryId = 1; entryId <= BATCH_SIZE; entryId++) {
+            read(1, entryId);
+        }
+        verifyEntryLogReads(1);
+
+        read(1, BATCH_SIZE + 1);
+        verifyEntryLogReads(2);
+    }
+
+    @Test
+    public void testReadAheadRangeRereadsLargeEntry() throws Exception {
+        storage = newStorage();
+        storage.addEntry(entry(1, 0, ENTRY_SIZE));
+        storage.addEntry(entry(1, 1, 10 * ENTRY_SIZE));
+        storage.addEntry(entry(1, 2, ENTRY_SIZE));
+        storage.flush();
+
+        read(1, 0);
+        // The first entry of the range is bigger than estimated from the previous one, it is read again in full
+        long location = (1L << 32) + 4 + ENTRY_SIZE;
+        verify(entryLogger).readEntryRange(eq(location), eq(BATCH_SIZE * (4 + ENTRY_SIZE)));
+        verify(entryLogger).readEntryRange(eq(location), eq(4 + 10 * ENTRY_SIZE));
+
+        read(1, 1);
+        read(1, 2);
+        verifyEntryLogReads(1);
+    }
+
+    @Test
+    public void testReadAheadStopsAtOtherLedger() throws Exception {
+        storage = newStorage();
+        // The write cache is flushed sorted by ledger, the next entry of ledger 1 is written after ledger 2
+        addEntries(1, 0, 2);
+        addEntries(2, 0, 1);
+        storage.flush();
+        addEntries(1, 2, 1);
+        storage.flush();
+
+        read(1, 0);
+        read(1, 1);
+        verifyEntryLogReads(1);
+        read(1, 2);
+        verifyEntryLogReads(2);
+    }
+
+    @Test
+    public void testAsyncReadAhead() throws Exception {
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_ASYNC_THREADS, 1);
+        TestStatsProvider statsProvider = new TestStatsProvider();
+        storage = newStorage(statsProvider);
+        addEntries(1, 0, 10);
+        storage.flush();
+
+        // The read is answered while the read-ahead is blocked in background
+        rangeReadReleased = new CountDownLatch(1);
+        read(1, 0);
+        verifyEntryLogReads(1);
+
+        // A miss on the same ledger while its read-ahead is pending does not queue another one
+        read(1, 7);
+        verifyEntryLogReads(2);
+
+        rangeReadReleased.countDown();
+        TestOpStatsLogger batchCount =
+                (TestOpStatsLogger) storage.getDbLedgerStorageStats().getReadAheadBatchCountStats();
+        while (batchCount.getSuccessCount() < 1) {
+            Thread.sleep(1);
+        }
+        verify(entryLogger, times(1)).readEntryRange(anyLong(), anyInt());
+        assertEquals(BATCH_SIZE, (long) batchCount.getSuccessAverage());
+
+        for (long entryId = 1; entryId <= BATCH_SIZE; entryId++) {
+            read(1, entryId);
+        }
+        verifyEntryLogReads(2);
+    }
+
+    @Test
+    public void testAdaptiveReadAheadGrowsForSequentialReads() throws Exception {
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_ADAPTIVE_BATCH_SIZE, true);
+        storage = newStorage();
+        addEntries(1, 0, 40);
+        storage.flush();
+
+        // The first batch has the configured size
+        read(1, 0);
+        for (long entryId = 1; entryId <= BATCH_SIZE; entryId++) {
+            read(1, entryId);
+        }
+        verifyEntryLogReads(1);
+
+        // A sequential reader consumed the batch, the next one is doubled
+        read(1, BATCH_SIZE + 1);
+        verifyEntryLogReads(2);
+        for (long entryId = BATCH_SIZE + 2; entryId <= 3 * BATCH_SIZE + 1; entryId++) {
+            read(1, entryId);
+        }
+        verifyEntryLogReads(2);
+
+        // Random accesses shrink the batch
+        read(1, 30);
+        verifyEntryLogReads(3);
+        for (long entryId = 31; entryId <= 34; entryId++) {
+            read(1, entryId);
+        }
+        read(1, 20);
+        verifyEntryLogReads(4);
+        read(1, 21);
+        read(1, 22);
+        verifyEntryLogReads(4);
+        read(1, 23);
+        verifyEntryLogReads(5);
+    }
+
+    @Test
+    public void testAdaptiveReadAheadUsesOverriddenCharge() throws Exception {
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_ADAPTIVE_BATCH_SIZE, true);
+        LedgerDirsManager ledgerDirsManager = mock(LedgerDirsManager.class);
+        when(ledgerDirsManager.getAllLedgerDirs()).thenReturn(Collections.singletonList(tmpDir));
+        storage = new SingleDirectoryDbLedgerStorage(conf, mock(LedgerManager.class), ledgerDirsManager,
+                ledgerDirsManager, entryLogger, new TestStatsProvider().getStatsLogger("test"),
+                UnpooledByteBufAllocator.DEFAULT, 1024 * 1024, 1024 * 1024, BATCH_SIZE, -1) {
+            @Override
+            protected boolean chargeReadAheadCache(int currentReadAheadCount, long currentReadAheadBytes) {
+                // Never more than 2 entries
+                return currentReadAheadBytes < 2 * ENTRY_SIZE
+                        && super.chargeReadAheadCache(currentReadAheadCount, currentReadAheadBytes);
+            }
+        };
+        addEntries(1, 0, 40);
+        storage.flush();
+
+        read(1, 0);
+        read(1, 1);
+        read(1, 2);
+        verifyEntryLogReads(1);
+        read(1, 3);
+        verifyEntryLogReads(2);
+
+        // The batch grew, but the override still limits it
+        read(1, 4);
+        read(1, 5);
+        verifyEntryLogReads(2);
+        read(1, 6);
+        verifyEntryLogReads(3);
+    }
+}
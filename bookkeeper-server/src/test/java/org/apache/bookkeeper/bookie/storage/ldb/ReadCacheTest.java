@@ -0,0 +1,437 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@link ReadCache}.
+ */
+public class ReadCacheTest {
+
+    private static ByteBuf entry(int value, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        while (entry.isWritable()) {
+            entry.writeByte(value);
+        }
+        return entry;
+    }
+
+    private static void put(ReadCache cache, long ledgerId, long entryId, int size) {
+        ByteBuf entry = entry((int) entryId, size);
+        cache.put(ledgerId, entryId, entry);
+        entry.release();
+    }
+
+    private static void assertEntry(ReadCache cache, long ledgerId, long entryId, int size) {
+        ByteBuf entry = cache.get(ledgerId, entryId);
+        assertNotNull(entry, "Entry " + ledgerId + "@" + entryId + " not found");
+        try {
+            assertEquals(size, entry.readableBytes());
+            assertEquals((byte) entryId, entry.getByte(0));
+            assertEquals((byte) entryId, entry.getByte(size - 1));
+        } finally {
+            entry.release();
+        }
+    }
+
+    @Test
+    public void testPutAndGet() {
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 10 * 1024, 1024);
+        try {
+            assertEquals(0, cache.count());
+            assertEquals(0, cache.size());
+            assertNull(cache.get(1, 0));
+
+            for (int i = 0; i < 10; i++) {
+                put(cache, 1, i, 100);
+            }
+            for (int i = 0; i < 10; i++) {
+                assertTrue(cache.hasEntry(1, i));
+                assertEntry(cache, 1, i, 100);
+            }
+            assertFalse(cache.hasEntry(1, 10));
+            assertFalse(cache.hasEntry(2, 0));
+            assertEquals(10, cache.count());
+            // A full segment of 8 entries and 2 entries in the current segment
+            assertEquals(1024 + 2 * 128, cache.size());
+
+            // Entries larger than a segment are not cached
+            put(cache, 1, 100, 2048);
+            assertFalse(cache.hasEntry(1, 100));
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testRotation() {
+        // 4 segments of 8 entries
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 4 * 1024, 1024);
+        try {
+            for (int i = 0; i < 100; i++) {
+                put(cache, 1, i, 128);
+            }
+
+            // The oldest segments were reused by the most recent entries
+            for (int i = 0; i < 100 - 4 * 8; i++) {
+                assertFalse(cache.hasEntry(1, i));
+                assertNull(cache.get(1, i));
+            }
+            for (int i = 100 - 3 * 8; i < 100; i++) {
+                assertEntry(cache, 1, i, 128);
+            }
+            assertTrue(cache.count() <= 4 * 8);
+
+            // An entry put again after being evicted is found again
+            put(cache, 1, 0, 128);
+            assertEntry(cache, 1, 0, 128);
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testZeroCopyReadsSurviveRotation() {
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 2 * 1024, 1024, true);
+        try {
+            put(cache, 1, 0, 128);
+            ByteBuf slice = cache.get(1, 0);
+            assertNotNull(slice);
+
+            // Rotate the segment of the slice
+            for (int i = 1; i < 40; i++) {
+                put(cache, 1, i, 128);
+            }
+            assertFalse(cache.hasEntry(1, 0));
+
+            assertEquals(128, slice.readableBytes());
+            for (int i = 0; i < 128; i++) {
+                assertEquals(0, slice.getByte(i));
+            }
+            assertTrue(slice.release());
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testRetiredSegmentsLimit() {
+        TestStatsProvider statsProvider = new TestStatsProvider();
+        Counter retiredSize = statsProvider.getStatsLogger("").getCounter("retired");
+        // 2 segments of 1024 bytes, with 8 entries of 128 bytes each
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 2 * 1024, 1024, true,
+                MoreExecutors.directExecutor(), NullStatsLogger.INSTANCE.getCounter("dropped"), retiredSize);
+        try {
+            for (int i = 0; i < 16; i++) {
+                put(cache, 1, i, 128);
+            }
+            ByteBuf first = cache.get(1, 0);
+            assertNotNull(first.unwrap());
+
+            // The segment of the slice is retired, up to one segment of retired memory slices are still returned
+            put(cache, 1, 16, 128);
+            assertEquals(1024, cache.retiredSize());
+            assertEquals(1024, retiredSize.get());
+            ByteBuf second = cache.get(1, 8);
+            assertNotNull(second.unwrap());
+
+            for (int i = 17; i < 25; i++) {
+                put(cache, 1, i, 128);
+            }
+            assertEquals(2 * 1024, cache.retiredSize());
+            assertEquals(2 * 1024, retiredSize.get());
+
+            // Beyond the limit, the hits are copied
+            ByteBuf copy = cache.get(1, 20);
+            assertNull(copy.unwrap());
+            assertEquals((byte) 20, copy.getByte(0));
+            copy.release();
+
+            // The retired segments are freed with their last slice, which allows the slices again
+            assertEquals((byte) 0, first.getByte(127));
+            first.release();
+            assertEquals(1024, cache.retiredSize());
+            ByteBuf slice = cache.get(1, 20);
+            assertNotNull(slice.unwrap());
+            slice.release();
+
+            assertEquals((byte) 8, second.getByte(127));
+            second.release();
+            assertEquals(0, cache.retiredSize());
+            assertEquals(0, retiredSize.get());
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 10 * 1024, 1024);
+        try {
+            put(cache, 1, 0, 100);
+            put(cache, 1, 1, 100);
+            assertEquals(2, cache.count());
+
+            cache.remove(1, 0);
+            assertFalse(cache.hasEntry(1, 0));
+            assertNull(cache.get(1, 0));
+            assertEntry(cache, 1, 1, 100);
+            assertEquals(1, cache.count());
+
+            // Removing a missing entry does nothing
+            cache.remove(1, 0);
+            cache.remove(2, 0);
+            assertEquals(1, cache.count());
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testStaleEntriesPurgedInBackground() {
+        Queue<Runnable> purges = new ArrayDeque<>();
+        // 2 segments of 1024 bytes, with 8 entries of 128 bytes each
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 2 * 1024, 1024, false, purges::add,
+                NullStatsLogger.INSTANCE.getCounter("dropped"), NullStatsLogger.INSTANCE.getCounter("retired"));
+        try {
+            for (int i = 0; i < 16; i++) {
+                put(cache, 1, i, 128);
+            }
+            assertTrue(purges.isEmpty());
+
+            // The rotation completing the cycle of the ring schedules a purge, without running it
+            for (int i = 16; i < 24; i++) {
+                put(cache, 1, i, 128);
+            }
+            assertEquals(1, purges.size());
+            assertEquals(24, cache.indexSize());
+            for (int i = 24; i < 40; i++) {
+                put(cache, 1, i, 128);
+            }
+            // Only one purge at a time
+            assertEquals(1, purges.size());
+
+            // The purge removes the entries older than the cycle it was scheduled for
+            purges.poll().run();
+            assertEquals(40 - 8, cache.indexSize());
+            for (int i = 24; i < 40; i++) {
+                assertEntry(cache, 1, i, 128);
+            }
+
+            // The next cycle schedules a new purge
+            for (int i = 40; i < 56; i++) {
+                put(cache, 1, i, 128);
+            }
+            purges.poll().run();
+            assertTrue(purges.isEmpty());
+            assertEquals(56 - 40, cache.indexSize());
+
+            // Rejected purges are retried in the next cycle
+            ReadCache rejecting = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 2 * 1024, 1024, false,
+                    task -> {
+                        throw new RejectedExecutionException();
+                    }, NullStatsLogger.INSTANCE.getCounter("dropped"), NullStatsLogger.INSTANCE.getCounter("retired"));
+            try {
+                for (int i = 0; i < 40; i++) {
+                    put(rejecting, 1, i, 128);
+                }
+                assertEntry(rejecting, 1, 39, 128);
+            } finally {
+                rejecting.close();
+            }
+        } finally {
+            cache.close();
+        }
+    }
+
+    private static ByteBuf concurrentEntry(long ledgerId, long entryId) {
+        // Sizes from 64 to 512 bytes, with a content identifying the entry
+        int size = 64 * (1 + (int) ((ledgerId + entryId) % 8));
+        ByteBuf entry = Unpooled.buffer(size);
+        while (entry.isWritable()) {
+            entry.writeLong(ledgerId << 32 | entryId);
+        }
+        return entry;
+    }
+
+    private static void checkConcurrentEntry(long ledgerId, long entryId, ByteBuf entry) {
+        ByteBuf expected = concurrentEntry(ledgerId, entryId);
+        try {
+            if (!ByteBufUtil.equals(expected, entry)) {
+                throw new AssertionError("Corrupted entry " + ledgerId + "@" + entryId);
+            }
+        } finally {
+            expected.release();
+        }
+    }
+
+    private static void putConcurrently(ReadCache cache, int writers, int entriesPerWriter, AtomicLong[] lastEntries,
+                                        ExecutorService executor, List<Future<?>> futures) {
+        for (int w = 0; w < writers; w++) {
+            final long ledgerId = w;
+            futures.add(executor.submit(() -> {
+                for (long entryId = 0; entryId < entriesPerWriter; entryId++) {
+                    ByteBuf entry = concurrentEntry(ledgerId, entryId);
+                    cache.put(ledgerId, entryId, entry);
+                    entry.release();
+                    lastEntries[(int) ledgerId].set(entryId);
+                }
+            }));
+        }
+    }
+
+    private static AtomicLong[] newLastEntries(int writers) {
+        AtomicLong[] lastEntries = new AtomicLong[writers];
+        for (int i = 0; i < writers; i++) {
+            lastEntries[i] = new AtomicLong(-1);
+        }
+        return lastEntries;
+    }
+
+    /**
+     * Readers racing the writers and the rotations of small segments never see the content of another entry, and
+     * the slices they keep survive the rotations of their segments.
+     */
+    private void testConcurrentPutGetRotate(boolean zeroCopyReads) throws Exception {
+        final int writers = 4;
+        final int readers = 4;
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 4 * 8 * 1024, 8 * 1024, zeroCopyReads);
+        AtomicLong[] lastEntries = newLastEntries(writers);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicLong hits = new AtomicLong();
+        // (ledgerId, entryId) of the retained slices
+        Map<ByteBuf, long[]> slices = new ConcurrentHashMap<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            putConcurrently(cache, writers, 20_000, lastEntries, executor, futures);
+            for (int r = 0; r < readers; r++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (writing.get()) {
+                        long ledgerId = random.nextInt(writers);
+                        long last = lastEntries[(int) ledgerId].get();
+                        if (last < 0) {
+                            continue;
+                        }
+                        // Read the recent entries, some of them in the segments being rotated
+                        long entryId = Math.max(0, last - random.nextInt(200));
+                        ByteBuf entry = cache.get(ledgerId, entryId);
+                        if (entry == null) {
+                            continue;
+                        }
+                        checkConcurrentEntry(ledgerId, entryId, entry);
+                        hits.incrementAndGet();
+                        if (zeroCopyReads && random.nextInt(100) == 0) {
+                            slices.put(entry, new long[] { ledgerId, entryId });
+                        } else {
+                            entry.release();
+                        }
+                    }
+                }));
+            }
+
+            for (int i = 0; i < writers; i++) {
+                futures.get(i).get(60, TimeUnit.SECONDS);
+            }
+            writing.set(false);
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            writing.set(false);
+            executor.shutdownNow();
+        }
+
+        assertTrue(hits.get() > 0);
+        assertEquals(zeroCopyReads, !slices.isEmpty());
+        cache.close();
+        for (Map.Entry<ByteBuf, long[]> slice : slices.entrySet()) {
+            // The content of the retained slices is not overwritten by the later puts, nor freed by the close
+            checkConcurrentEntry(slice.getValue()[0], slice.getValue()[1], slice.getKey());
+            slice.getKey().release();
+        }
+    }
+
+    @Test
+    public void testConcurrentPutGetRotate() throws Exception {
+        testConcurrentPutGetRotate(false);
+    }
+
+    @Test
+    public void testConcurrentPutGetRotateWithZeroCopyReads() throws Exception {
+        testConcurrentPutGetRotate(true);
+    }
+
+    @Test
+    public void testDroppedPutsAreCounted() throws Exception {
+        final int writers = 8;
+        final int entriesPerWriter = 20_000;
+        TestStatsProvider statsProvider = new TestStatsProvider();
+        Counter droppedPuts = statsProvider.getStatsLogger("").getCounter("dropped");
+        // The stale entries are not purged, so that the index holds every put that was not dropped
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 4 * 8 * 1024, 8 * 1024, false,
+                task -> { }, droppedPuts, NullStatsLogger.INSTANCE.getCounter("retired"));
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            putConcurrently(cache, writers, entriesPerWriter, newLastEntries(writers), executor, futures);
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Each put is either inserted or counted as dropped
+        assertEquals((long) writers * entriesPerWriter, cache.indexSize() + droppedPuts.get());
+        cache.close();
+    }
+}
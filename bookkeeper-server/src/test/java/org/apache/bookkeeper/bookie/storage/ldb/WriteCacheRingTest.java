@@ -0,0 +1,186 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.bookie.EntryLocation;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for the write cache ring of {@link SingleDirectoryDbLedgerStorage} and the ordering of the location
+ * index flushes with the updates of the compaction.
+ */
+public class WriteCacheRingTest {
+
+    private static final int RING_SIZE = 4;
+    private static final int WRITE_CACHE_SIZE = RING_SIZE * 16 * 1024;
+    private static final int ENTRY_SIZE = 1024;
+
+    private File tmpDir;
+    private SingleDirectoryDbLedgerStorage storage;
+    private final EntryLogger entryLogger = mock(EntryLogger.class);
+    // Locations assigned by the entry logger, increasing in write order
+    private final AtomicLong nextLocation = new AtomicLong((1L << 32) | 1024);
+    private volatile CountDownLatch flushStarted = new CountDownLatch(0);
+    private volatile CountDownLatch flushReleased = new CountDownLatch(0);
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("write-cache-ring").toFile();
+
+        when(entryLogger.addEntry(anyLong(), any(ByteBuf.class)))
+                .thenAnswer(invocation -> nextLocation.getAndAdd(ENTRY_SIZE));
+        doAnswer(invocation -> {
+            flushStarted.countDown();
+            assertTrue(flushReleased.await(10, TimeUnit.SECONDS));
+            return null;
+        }).when(entryLogger).flush();
+
+        LedgerDirsManager ledgerDirsManager = mock(LedgerDirsManager.class);
+        when(ledgerDirsManager.getAllLedgerDirs()).thenReturn(Collections.singletonList(tmpDir));
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { tmpDir.getAbsolutePath() });
+        conf.setAllowLoopback(true);
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_RING_SIZE, RING_SIZE);
+        storage = new SingleDirectoryDbLedgerStorage(conf, mock(LedgerManager.class), ledgerDirsManager,
+                ledgerDirsManager, entryLogger, NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT,
+                WRITE_CACHE_SIZE, 1024 * 1024, 100, 1024 * 1024);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        flushReleased.countDown();
+        storage.shutdown();
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1); // lac
+        entry.writerIndex(ENTRY_SIZE);
+        return entry;
+    }
+
+    @Test
+    public void testWriteCacheRing() throws Exception {
+        // Several times the size of a write cache of the ring, which rotates the caches and flushes them in background
+        int numEntries = 4 * WRITE_CACHE_SIZE / RING_SIZE / ENTRY_SIZE;
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            storage.addEntry(entry(1, entryId));
+        }
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            assertTrue(storage.entryExists(1, entryId));
+        }
+
+        storage.flush();
+        assertFalse(storage.isFlushRequired());
+
+        // The write caches are written to the entry logger and indexed in the order of the adds
+        EntryLocationIndex index = storage.getEntryLocationIndex();
+        long previousLocation = 0;
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            long location = index.getLocation(1, entryId);
+            assertTrue(location > previousLocation);
+            previousLocation = location;
+        }
+        assertEquals(nextLocation.get() - ENTRY_SIZE, previousLocation);
+    }
+
+    @Test
+    public void testCompactionAfterPendingFlush() throws Exception {
+        storage.addEntry(entry(1, 0));
+        storage.flush();
+        long oldLocation = storage.getEntryLocationIndex().getLocation(1, 0);
+
+        // A flush of new entries, stuck while writing into the entry logger
+        flushStarted = new CountDownLatch(1);
+        flushReleased = new CountDownLatch(1);
+        storage.addEntry(entry(1, 1));
+        CompletableFuture<Void> flush = CompletableFuture.runAsync(() -> {
+            try {
+                storage.flush();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(flushStarted.await(10, TimeUnit.SECONDS));
+
+        // The compaction of the log of the flushed entries moves them, before their locations are committed
+        long newLocation = (2L << 32) | 1024;
+        CompletableFuture<Void> update = CompletableFuture.runAsync(() -> {
+            try {
+                storage.updateEntriesLocations(Arrays.asList(
+                        new EntryLocation(1, 0, newLocation + ENTRY_SIZE),
+                        new EntryLocation(1, 1, newLocation)));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        while (!storage.flushMutex.hasQueuedThreads()) {
+            Thread.sleep(1);
+        }
+        assertEquals(oldLocation, storage.getEntryLocationIndex().getLocation(1, 0));
+
+        flushReleased.countDown();
+        flush.get(10, TimeUnit.SECONDS);
+        update.get(10, TimeUnit.SECONDS);
+
+        // The update of the compaction is applied after the commit of the flush, which does not override it
+        assertEquals(newLocation + ENTRY_SIZE, storage.getEntryLocationIndex().getLocation(1, 0));
+        assertEquals(newLocation, storage.getEntryLocationIndex().getLocation(1, 1));
+
+        // A later flush commits the locations of the new entries only
+        storage.addEntry(entry(1, 2));
+        storage.flush();
+        assertEquals(newLocation, storage.getEntryLocationIndex().getLocation(1, 1));
+        assertEquals(nextLocation.get() - ENTRY_SIZE, storage.getEntryLocationIndex().getLocation(1, 2));
+    }
+}
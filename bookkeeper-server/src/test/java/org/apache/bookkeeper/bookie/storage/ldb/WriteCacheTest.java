@@ -0,0 +1,326 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for the zero-copy reads and the parallel scans of {@link WriteCache}.
+ */
+public class WriteCacheTest {
+
+    private final TestStatsProvider statsProvider = new TestStatsProvider();
+    private final Counter retiredSize = statsProvider.getStatsLogger("").getCounter("retired");
+
+    private static ByteBuf entry(int value, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        while (entry.isWritable()) {
+            entry.writeByte(value);
+        }
+        return entry;
+    }
+
+    private static void put(WriteCache cache, long ledgerId, long entryId, int size) {
+        ByteBuf entry = entry((int) entryId, size);
+        assertTrue(cache.put(ledgerId, entryId, entry));
+        entry.release();
+    }
+
+    private static void assertContent(long entryId, int size, ByteBuf entry) {
+        ByteBuf expected = entry((int) entryId, size);
+        try {
+            assertTrue(ByteBufUtil.equals(expected, entry), "Wrong content for entry " + entryId);
+        } finally {
+            expected.release();
+        }
+    }
+
+    private WriteCache newZeroCopyCache(long maxCacheSize, int maxSegmentSize) {
+        return new WriteCache(UnpooledByteBufAllocator.DEFAULT, maxCacheSize, maxSegmentSize, true, retiredSize);
+    }
+
+    @Test
+    public void testZeroCopyGet() {
+        WriteCache cache = newZeroCopyCache(4 * 1024, 1024);
+        try {
+            for (int i = 0; i < 8; i++) {
+                put(cache, 1, i, 500);
+            }
+
+            // Entries are returned as slices of the segments
+            for (int i = 0; i < 8; i++) {
+                ByteBuf entry = cache.get(1, i);
+                assertNotNull(entry.unwrap());
+                assertContent(i, 500, entry);
+                entry.release();
+            }
+            ByteBuf last = cache.getLastEntry(1);
+            assertNotNull(last.unwrap());
+            assertContent(7, 500, last);
+            last.release();
+            assertNull(cache.get(1, 8));
+            assertNull(cache.get(2, 0));
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testSlicesSurviveClear() {
+        WriteCache cache = newZeroCopyCache(4 * 1024, 1024);
+        try {
+            put(cache, 1, 0, 500);
+            put(cache, 1, 1, 500);
+            ByteBuf slice = cache.get(1, 1);
+            assertEquals(0, cache.retiredSize());
+
+            // The segment of the slice is replaced, the new entries do not overwrite the slice
+            cache.clear();
+            assertNull(cache.get(1, 1));
+            assertEquals(1024, cache.retiredSize());
+            assertEquals(1024, retiredSize.get());
+            put(cache, 1, 2, 500);
+            put(cache, 1, 3, 500);
+            assertContent(1, 500, slice);
+
+            // The replaced segment is freed with its last slice
+            assertTrue(slice.release());
+            assertEquals(0, cache.retiredSize());
+            assertEquals(0, retiredSize.get());
+
+            // Segments without slices are reused
+            cache.clear();
+            assertEquals(0, cache.retiredSize());
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testRetiredSegmentsLimit() {
+        WriteCache cache = newZeroCopyCache(4 * 1024, 1024);
+        try {
+            // One entry per segment
+            for (int i = 0; i < 2; i++) {
+                put(cache, 1, i, 1000);
+            }
+            ByteBuf first = cache.get(1, 0);
+            ByteBuf second = cache.get(1, 1);
+            cache.clear();
+            assertEquals(2 * 1024, cache.retiredSize());
+
+            // Beyond one segment of replaced memory, the entries are copied
+            put(cache, 1, 2, 1000);
+            ByteBuf copy = cache.get(1, 2);
+            assertNull(copy.unwrap());
+            assertContent(2, 1000, copy);
+            copy.release();
+
+            // Releasing the slices frees their segments and allows the slices again
+            assertContent(0, 1000, first);
+            first.release();
+            assertEquals(1024, cache.retiredSize());
+            ByteBuf slice = cache.get(1, 2);
+            assertNotNull(slice.unwrap());
+            assertContent(2, 1000, slice);
+            slice.release();
+
+            second.release();
+            assertEquals(0, cache.retiredSize());
+            assertEquals(0, retiredSize.get());
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentGetAndClear() throws Exception {
+        final int readers = 4;
+        WriteCache cache = newZeroCopyCache(8 * 1024, 1024);
+        AtomicLong lastEntryId = new AtomicLong(-1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong hits = new AtomicLong();
+        List<ByteBuf> slices = new ArrayList<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(readers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int r = 0; r < readers; r++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    List<ByteBuf> kept = new ArrayList<>();
+                    while (running.get()) {
+                        long last = lastEntryId.get();
+                        if (last < 0) {
+                            continue;
+                        }
+                        long entryId = Math.max(0, last - random.nextInt(16));
+                        ByteBuf entry = cache.get(1, entryId);
+                        if (entry == null) {
+                            continue;
+                        }
+                        assertContent(entryId, 200, entry);
+                        hits.incrementAndGet();
+                        if (random.nextInt(50) == 0) {
+                            // Keep a few slices across the clears of their segments
+                            kept.add(entry);
+                        } else {
+                            entry.release();
+                        }
+                    }
+                    synchronized (slices) {
+                        slices.addAll(kept);
+                    }
+                }));
+            }
+
+            // The writer clears the cache when it is full, like a flush does
+            for (long entryId = 0; entryId < 50_000; entryId++) {
+                ByteBuf entry = entry((int) entryId, 200);
+                if (!cache.put(1, entryId, entry)) {
+                    cache.clear();
+                    assertTrue(cache.put(1, entryId, entry));
+                }
+                entry.release();
+                lastEntryId.set(entryId);
+            }
+            running.set(false);
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            running.set(false);
+            executor.shutdownNow();
+        }
+
+        assertTrue(hits.get() > 0);
+        for (ByteBuf slice : slices) {
+            slice.release();
+        }
+        assertEquals(0, cache.retiredSize());
+        assertEquals(0, retiredSize.get());
+        cache.close();
+    }
+
+    @Test
+    public void testParallelForEach() throws Exception {
+        WriteCache cache = new WriteCache(UnpooledByteBufAllocator.DEFAULT, 1024 * 1024);
+        // Ledgers of very different sizes, added out of order
+        for (long entryId = 0; entryId < 100; entryId++) {
+            for (long ledgerId = 1; ledgerId <= 10; ledgerId++) {
+                if (entryId < ledgerId * 10) {
+                    put(cache, ledgerId, entryId, 100);
+                }
+            }
+        }
+        cache.deleteLedger(5);
+
+        int numConsumers = 4;
+        List<List<long[]>> consumed = new ArrayList<>();
+        WriteCache.EntryConsumer[] consumers = new WriteCache.EntryConsumer[numConsumers];
+        for (int i = 0; i < numConsumers; i++) {
+            List<long[]> entries = new ArrayList<>();
+            consumed.add(entries);
+            consumers[i] = (ledgerId, entryId, entry) -> {
+                assertContent(entryId, 100, entry);
+                entries.add(new long[] { ledgerId, entryId });
+            };
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(numConsumers);
+        try {
+            cache.forEach(consumers, executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        // Each consumer gets a contiguous range of whole ledgers, in order
+        long expectedLedgerId = 1;
+        long expectedEntryId = 0;
+        int nonEmptyConsumers = 0;
+        for (List<long[]> entries : consumed) {
+            if (!entries.isEmpty()) {
+                nonEmptyConsumers++;
+                assertEquals(0, entries.get(0)[1]);
+            }
+            for (long[] entry : entries) {
+                if (entry[0] != expectedLedgerId) {
+                    assertEquals(expectedLedgerId * 10, expectedEntryId);
+                    expectedLedgerId = expectedLedgerId == 4 ? 6 : expectedLedgerId + 1;
+                    expectedEntryId = 0;
+                }
+                assertEquals(expectedLedgerId, entry[0]);
+                assertEquals(expectedEntryId++, entry[1]);
+            }
+        }
+        assertEquals(10, expectedLedgerId);
+        assertEquals(100, expectedEntryId);
+        assertTrue(nonEmptyConsumers > 1);
+        cache.close();
+    }
+
+    @Test
+    public void testParallelForEachFailure() throws Exception {
+        WriteCache cache = new WriteCache(UnpooledByteBufAllocator.DEFAULT, 1024 * 1024);
+        for (long ledgerId = 1; ledgerId <= 4; ledgerId++) {
+            for (long entryId = 0; entryId < 10; entryId++) {
+                put(cache, ledgerId, entryId, 100);
+            }
+        }
+
+        AtomicLong consumed = new AtomicLong();
+        WriteCache.EntryConsumer consumer = (ledgerId, entryId, entry) -> consumed.incrementAndGet();
+        WriteCache.EntryConsumer failing = (ledgerId, entryId, entry) -> {
+            throw new IOException("write failure");
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            IOException e = assertThrows(IOException.class,
+                    () -> cache.forEach(new WriteCache.EntryConsumer[] { consumer, failing }, executor));
+            assertEquals("write failure", e.getMessage());
+            // The other consumer completed before the failure was reported
+            assertEquals(20, consumed.get());
+        } finally {
+            executor.shutdown();
+        }
+        cache.close();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.apache.bookkeeper.client.BookieReadLatencyTracker.LedgerClass.CLOSED;
+import static org.apache.bookkeeper.client.BookieReadLatencyTracker.LedgerClass.OPEN;
+import static org.apache.bookkeeper.client.BookieReadLatencyTracker.bucketOf;
+import static org.apache.bookkeeper.client.BookieReadLatencyTracker.upperBoundOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@link BookieReadLatencyTracker}.
+ */
+public class BookieReadLatencyTrackerTest {
+
+    private final BookieId bookie0 = BookieId.parse("bookie0:3181");
+    private final BookieId bookie1 = BookieId.parse("bookie1:3181");
+    private final BookieId bookie2 = BookieId.parse("bookie2:3181");
+    private final BookieId bookie3 = BookieId.parse("bookie3:3181");
+    private final BookieReadLatencyTracker tracker = new BookieReadLatencyTracker();
+    private final long now = MathUtils.nowInNano();
+
+    private void record(BookieId bookie, long latencyMicros, int count) {
+        for (int i = 0; i < count; i++) {
+            tracker.recordReadLatency(bookie, OPEN, TimeUnit.MICROSECONDS.toNanos(latencyMicros), now);
+        }
+    }
+
+    @Test
+    public void testBuckets() {
+        assertEquals(0, bucketOf(-5));
+        assertEquals(0, bucketOf(0));
+        int previousBucket = 0;
+        for (long latency = 0; latency < (1L << 40); latency = latency < 10_000 ? latency + 1 : latency * 5 / 4) {
+            int bucket = bucketOf(latency);
+            assertTrue(bucket >= previousBucket);
+            previousBucket = bucket;
+
+            // The bucket holds the latency, with a resolution of a quarter of the latency
+            assertTrue(latency < upperBoundOf(bucket) || bucket == bucketOf(Long.MAX_VALUE), "latency " + latency);
+            assertTrue(bucket == 0 || latency >= upperBoundOf(bucket - 1), "latency " + latency);
+            assertTrue(upperBoundOf(bucket) <= latency + latency / 4 + 1 || bucket == bucketOf(Long.MAX_VALUE),
+                    "latency " + latency);
+        }
+        assertEquals(bucketOf(Long.MAX_VALUE), bucketOf(1L << 50));
+    }
+
+    @Test
+    public void testPercentile() {
+        assertEquals(-1, tracker.getLatencyPercentileMicros(bookie0, OPEN, 0.99));
+        for (int i = 1; i < 100; i++) {
+            record(bookie0, i * 10, 1);
+        }
+        // Not enough samples
+        assertEquals(-1, tracker.getLatencyPercentileMicros(bookie0, OPEN, 0.99));
+
+        for (int i = 0; i < 1000; i++) {
+            record(bookie0, i + 1, 1);
+        }
+        long p50 = tracker.getLatencyPercentileMicros(bookie0, OPEN, 0.5);
+        long p99 = tracker.getLatencyPercentileMicros(bookie0, OPEN, 0.99);
+        assertTrue(p50 >= 500 && p50 <= 640, "p50: " + p50);
+        assertTrue(p99 >= 990 && p99 <= 1280, "p99: " + p99);
+
+        // Tracked by class of ledger
+        assertEquals(-1, tracker.getLatencyPercentileMicros(bookie0, CLOSED, 0.99));
+
+        // The old samples are forgotten
+        record(bookie0, 100_000, 10_000);
+        p50 = tracker.getLatencyPercentileMicros(bookie0, OPEN, 0.5);
+        assertTrue(p50 >= 100_000 && p50 <= 128_000, "p50: " + p50);
+    }
+
+    @Test
+    public void testAverageDecaysTowardMean() {
+        assertEquals(-1, tracker.getAverageLatencyMicros(bookie0, now));
+        for (int i = 0; i < 50; i++) {
+            record(bookie0, 10_000, 1);
+            record(bookie1, 1000, 1);
+        }
+        assertEquals(10_000, tracker.getAverageLatencyMicros(bookie0, now), 10);
+        assertEquals(1000, tracker.getAverageLatencyMicros(bookie1, now), 10);
+
+        // While not read from, the slow bookie gets closer to the others, and the fast one does not look faster
+        long later = now + TimeUnit.SECONDS.toNanos(1);
+        long slow = tracker.getAverageLatencyMicros(bookie0, later);
+        long fast = tracker.getAverageLatencyMicros(bookie1, later);
+        assertTrue(slow < 10_000 && slow > fast && fast > 1000, slow + " " + fast);
+
+        long muchLater = now + TimeUnit.SECONDS.toNanos(30);
+        long mean = tracker.getAverageLatencyMicros(bookie0, muchLater);
+        assertEquals(mean, tracker.getAverageLatencyMicros(bookie1, muchLater), 1);
+        assertTrue(mean > 1000 && mean < 10_000, "mean: " + mean);
+    }
+
+    @Test
+    public void testFailures() {
+        record(bookie0, 1000, 50);
+
+        // A fast error counts as a read twice slower than usual
+        tracker.recordReadFailure(bookie0, OPEN, TimeUnit.MICROSECONDS.toNanos(10), now);
+        assertEquals(1200, tracker.getAverageLatencyMicros(bookie0, now), 10);
+
+        // A timeout counts with its own latency
+        tracker.recordReadFailure(bookie0, OPEN, TimeUnit.SECONDS.toNanos(1), now);
+        assertEquals(1200 + 0.2 * (1_000_000 - 1200), tracker.getAverageLatencyMicros(bookie0, now), 10);
+        for (int i = 0; i < 200; i++) {
+            tracker.recordReadFailure(bookie0, OPEN, TimeUnit.SECONDS.toNanos(1), now);
+        }
+        assertTrue(tracker.getLatencyPercentileMicros(bookie0, OPEN, 0.99) >= 1_000_000);
+
+        // A bookie never read from fails slower than the other bookies
+        tracker.recordReadFailure(bookie1, OPEN, 0, now);
+        assertTrue(tracker.getAverageLatencyMicros(bookie1, now) >= 2000);
+    }
+
+    private static class HealthInfo implements BookiesHealthInfo {
+        final Map<BookieId, Long> failures = new HashMap<>();
+        final Map<BookieId, Long> pendingRequests = new HashMap<>();
+
+        @Override
+        public long getBookieFailureHistory(BookieId bookie) {
+            return failures.getOrDefault(bookie, -1L);
+        }
+
+        @Override
+        public long getBookiePendingRequests(BookieId bookie) {
+            return pendingRequests.getOrDefault(bookie, 0L);
+        }
+    }
+
+    @Test
+    public void testFastestReplica() {
+        List<BookieId> ensemble = Arrays.asList(bookie0, bookie1, bookie2, bookie3);
+        DistributionSchedule.WriteSet writeSet = new RoundRobinDistributionSchedule(3, 2, 4).getWriteSet(0);
+        HealthInfo healthInfo = new HealthInfo();
+        record(bookie0, 5000, 50);
+        record(bookie1, 1000, 50);
+        record(bookie2, 2000, 50);
+
+        assertEquals(1, tracker.getFastestReplica(ensemble, writeSet, 0, healthInfo));
+        // Only the replicas not tried yet
+        assertEquals(2, tracker.getFastestReplica(ensemble, writeSet, 2, healthInfo));
+
+        // Weighted by the pending requests
+        healthInfo.pendingRequests.put(bookie1, 9L);
+        assertEquals(2, tracker.getFastestReplica(ensemble, writeSet, 0, healthInfo));
+
+        // The unhealthy replicas come last
+        healthInfo.failures.put(bookie2, 1L);
+        assertEquals(0, tracker.getFastestReplica(ensemble, writeSet, 0, healthInfo));
+        healthInfo.pendingRequests.put(bookie0, BookieClient.PENDINGREQ_NOTWRITABLE_MASK);
+        assertEquals(1, tracker.getFastestReplica(ensemble, writeSet, 0, healthInfo));
+        healthInfo.failures.put(bookie1, 1L);
+        // All unhealthy: the lowest weighted latency
+        assertEquals(2, tracker.getFastestReplica(ensemble, writeSet, 0, healthInfo));
+
+        // A bookie never read from is tried first
+        DistributionSchedule.WriteSet otherWriteSet = new RoundRobinDistributionSchedule(3, 2, 4).getWriteSet(1);
+        assertEquals(3, otherWriteSet.get(2));
+        healthInfo.failures.clear();
+        healthInfo.pendingRequests.clear();
+        assertEquals(2, tracker.getFastestReplica(ensemble, otherWriteSet, 0, healthInfo));
+    }
+}
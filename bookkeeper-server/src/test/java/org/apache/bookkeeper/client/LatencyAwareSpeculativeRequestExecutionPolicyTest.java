@@ -0,0 +1,198 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.apache.bookkeeper.client.BookieReadLatencyTracker.LedgerClass.CLOSED;
+import static org.apache.bookkeeper.client.BookieReadLatencyTracker.LedgerClass.OPEN;
+import static org.apache.bookkeeper.client.BookieReadLatencyTracker.bucketOf;
+import static org.apache.bookkeeper.client.BookieReadLatencyTracker.upperBoundOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.Futures;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@link LatencyAwareSpeculativeRequestExecutionPolicy}.
+ */
+public class LatencyAwareSpeculativeRequestExecutionPolicyTest {
+
+    private static final int FIRST_TIMEOUT_MS = 50;
+    private static final int MAX_TIMEOUT_MS = 100;
+
+    private final BookieId bookie0 = BookieId.parse("bookie0:3181");
+    private final BookieId bookie1 = BookieId.parse("bookie1:3181");
+    private final BookieReadLatencyTracker tracker = new BookieReadLatencyTracker();
+    private final TestStatsProvider statsProvider = new TestStatsProvider();
+    private final BookKeeperClientStats clientStats =
+            BookKeeperClientStats.newInstance(statsProvider.getStatsLogger(""));
+    private final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    // The speculative requests scheduled, run by the test
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final List<Long> scheduledDelaysMicros = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        when(scheduler.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenAnswer(invocation -> {
+            scheduled.add(invocation.getArgument(0));
+            TimeUnit unit = invocation.getArgument(2);
+            scheduledDelaysMicros.add(unit.toMicros(invocation.getArgument(1)));
+            return null;
+        });
+    }
+
+    private LatencyAwareSpeculativeRequestExecutionPolicy policy(double budget) {
+        return new LatencyAwareSpeculativeRequestExecutionPolicy(tracker, FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 99,
+                budget, clientStats);
+    }
+
+    private static ReadOpBase.LedgerEntryRequest request(BookieId lastBookie,
+                                                         BookieReadLatencyTracker.LedgerClass ledgerClass) {
+        ReadOpBase.LedgerEntryRequest request = mock(ReadOpBase.LedgerEntryRequest.class);
+        when(request.getLastRequestedBookie()).thenReturn(lastBookie);
+        when(request.getLedgerClass()).thenReturn(ledgerClass);
+        when(request.isComplete()).thenReturn(false);
+        when(request.issueSpeculativeRequest()).thenReturn(Futures.immediateFuture(true));
+        return request;
+    }
+
+    private void record(BookieId bookie, BookieReadLatencyTracker.LedgerClass ledgerClass, long latencyMicros) {
+        for (int i = 0; i < 200; i++) {
+            tracker.recordReadLatency(bookie, ledgerClass, TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+        }
+    }
+
+    /**
+     * Initiate some requests and run their first speculative request.
+     */
+    private void initiateAndRun(LatencyAwareSpeculativeRequestExecutionPolicy policy, int numRequests) {
+        List<Runnable> toRun = new ArrayList<>();
+        for (int i = 0; i < numRequests; i++) {
+            int numScheduled = scheduled.size();
+            policy.initiateSpeculativeRequest(scheduler, request(bookie0, OPEN));
+            toRun.addAll(scheduled.subList(numScheduled, scheduled.size()));
+        }
+        toRun.forEach(Runnable::run);
+    }
+
+    private long speculativeReads() {
+        return statsProvider.getOpStatsLogger(BookKeeperClientStats.SPECULATIVE_READ_TIMEOUT).getSuccessCount();
+    }
+
+    private long budgetExhausted() {
+        return statsProvider.getCounter(BookKeeperClientStats.SPECULATIVE_READ_BUDGET_EXHAUSTED).get();
+    }
+
+    @Test
+    public void testTimeoutPerLedgerClass() {
+        record(bookie0, OPEN, 1000);
+        record(bookie0, CLOSED, 20_000);
+        record(bookie1, OPEN, 1_000_000);
+        LatencyAwareSpeculativeRequestExecutionPolicy policy = policy(1);
+
+        assertEquals(upperBoundOf(bucketOf(1000)), policy.getSpeculativeRequestTimeoutMicros(request(bookie0, OPEN)));
+        assertEquals(upperBoundOf(bucketOf(20_000)),
+                policy.getSpeculativeRequestTimeoutMicros(request(bookie0, CLOSED)));
+        // Bounded by the max timeout
+        assertEquals(MAX_TIMEOUT_MS * 1000, policy.getSpeculativeRequestTimeoutMicros(request(bookie1, OPEN)));
+        // The first timeout while the latency is unknown
+        assertEquals(FIRST_TIMEOUT_MS * 1000, policy.getSpeculativeRequestTimeoutMicros(request(bookie1, CLOSED)));
+        assertEquals(FIRST_TIMEOUT_MS * 1000, policy.getSpeculativeRequestTimeoutMicros(request(null, OPEN)));
+
+        // The next speculative request is scheduled after the timeout of the bookie
+        ReadOpBase.LedgerEntryRequest request = request(bookie0, CLOSED);
+        assertNull(policy.initiateSpeculativeRequest(scheduler, request));
+        assertEquals(upperBoundOf(bucketOf(20_000)), (long) scheduledDelaysMicros.get(0));
+        scheduled.get(0).run();
+        verify(request).issueSpeculativeRequest();
+        assertEquals(2, scheduled.size());
+        assertEquals(1, speculativeReads());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(upperBoundOf(bucketOf(20_000))),
+                statsProvider.getOpStatsLogger(BookKeeperClientStats.SPECULATIVE_READ_TIMEOUT).getSuccessAverage(),
+                1);
+
+        // Not issued once the read completed
+        when(request.isComplete()).thenReturn(true);
+        scheduled.get(1).run();
+        assertEquals(1, speculativeReads());
+    }
+
+    @Test
+    public void testBudget() {
+        // 1 speculative read per 100 reads, with a burst of 10
+        LatencyAwareSpeculativeRequestExecutionPolicy policy = policy(0.01);
+        initiateAndRun(policy, 20);
+        assertEquals(10, speculativeReads());
+        assertEquals(10, budgetExhausted());
+
+        initiateAndRun(policy, 100);
+        assertEquals(11, speculativeReads());
+        assertEquals(109, budgetExhausted());
+
+        // The budget is saved while no speculative read is needed
+        for (int i = 0; i < 10_000; i++) {
+            policy.initiateSpeculativeRequest(scheduler, request(bookie0, OPEN));
+        }
+        scheduled.clear();
+        initiateAndRun(policy, 20);
+        assertEquals(21, speculativeReads());
+        assertEquals(119, budgetExhausted());
+    }
+
+    @Test
+    public void testUnlimitedBudget() {
+        initiateAndRun(policy(1), 1000);
+        assertEquals(1000, speculativeReads());
+        assertEquals(0, budgetExhausted());
+    }
+
+    @Test
+    public void testZeroBudget() {
+        LatencyAwareSpeculativeRequestExecutionPolicy policy = policy(0);
+        for (int i = 0; i < 1000; i++) {
+            assertNull(policy.initiateSpeculativeRequest(scheduler, request(bookie0, OPEN)));
+        }
+        verify(scheduler, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        assertEquals(0, speculativeReads());
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new LatencyAwareSpeculativeRequestExecutionPolicy(tracker,
+                FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 100, 0.05, clientStats));
+        assertThrows(IllegalArgumentException.class, () -> new LatencyAwareSpeculativeRequestExecutionPolicy(tracker,
+                FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 99, -1, clientStats));
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for the batched appends of a {@link LedgerHandle}.
+ */
+public class LedgerHandleAppendBatchTest {
+
+    private static final long LEDGER_ID = 1234L;
+    private static final int ENTRY_SIZE = 10;
+    private static final int NUM_ENTRIES = 10;
+
+    private final List<BookieId> ensemble = Arrays.asList(
+            BookieId.parse("bookie-1:3181"), BookieId.parse("bookie-2:3181"), BookieId.parse("bookie-3:3181"));
+    private final BookieClient bookieClient = mock(BookieClient.class);
+    // The batched requests sent to the bookies, answered by the test
+    private final List<BatchRequest> requests = new ArrayList<>();
+    private ExecutorService executor;
+    private LedgerHandle lh;
+
+    private static class BatchRequest {
+        final BookieId bookie;
+        final long[] entryIds;
+        final WriteCallback[] cbs;
+        final Object ctx;
+
+        BatchRequest(BookieId bookie, long[] entryIds, WriteCallback[] cbs, Object ctx) {
+            this.bookie = bookie;
+            this.entryIds = entryIds;
+            this.cbs = cbs;
+            this.ctx = ctx;
+        }
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        executor = Executors.newSingleThreadExecutor();
+        OrderedExecutor mainWorkerPool = mock(OrderedExecutor.class);
+        when(mainWorkerPool.chooseThread(anyLong())).thenReturn(executor);
+
+        when(bookieClient.isWritable(any(BookieId.class), anyLong())).thenReturn(true);
+        doAnswer(invocation -> {
+            requests.add(new BatchRequest(invocation.getArgument(0), invocation.getArgument(3),
+                    invocation.getArgument(5), invocation.getArgument(6)));
+            return null;
+        }).when(bookieClient).addEntries(any(BookieId.class), anyLong(), any(byte[].class), any(long[].class),
+                any(), any(WriteCallback[].class), any(), anyInt(), anyBoolean(), any());
+
+        ClientConfiguration conf = new ClientConfiguration()
+                .setUseV2WireProtocol(true)
+                .setBatchAddEnabled(true);
+        ClientContext clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(conf));
+        when(clientCtx.getMainWorkerPool()).thenReturn(mainWorkerPool);
+        when(clientCtx.getByteBufAllocator()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+        when(clientCtx.getClientStats()).thenReturn(BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE));
+        when(clientCtx.getBookieClient()).thenReturn(bookieClient);
+
+        LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                .withId(LEDGER_ID)
+                .withEnsembleSize(3).withWriteQuorumSize(3).withAckQuorumSize(2)
+                .withPassword(new byte[0])
+                .withDigestType(DigestType.CRC32C)
+                .newEnsembleEntry(0L, ensemble)
+                .build();
+        lh = new LedgerHandle(clientCtx, LEDGER_ID, new Versioned<>(metadata, new LongVersion(0L)),
+                BookKeeper.DigestType.CRC32C, new byte[0], EnumSet.noneOf(WriteFlag.class));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private static List<ByteBuf> entries(int numEntries) {
+        List<ByteBuf> entries = new ArrayList<>();
+        for (int i = 0; i < numEntries; i++) {
+            entries.add(Unpooled.wrappedBuffer(new byte[ENTRY_SIZE]));
+        }
+        return entries;
+    }
+
+    /**
+     * Answer the writes of an entry from all the bookies.
+     */
+    private void respond(long entryId, int rc) {
+        for (BatchRequest request : requests) {
+            for (int i = 0; i < request.entryIds.length; i++) {
+                if (request.entryIds[i] == entryId) {
+                    request.cbs[i].writeComplete(rc, LEDGER_ID, entryId, request.bookie, request.ctx);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAppendBatch() throws Exception {
+        List<ByteBuf> entries = entries(NUM_ENTRIES);
+        CompletableFuture<Long> future = lh.appendBatchAsync(entries);
+
+        // A single request per bookie, with consecutive entry ids
+        assertEquals(ensemble.size(), requests.size());
+        long[] entryIds = new long[NUM_ENTRIES];
+        Arrays.setAll(entryIds, i -> i);
+        for (BatchRequest request : requests) {
+            assertArrayEquals(entryIds, request.entryIds);
+        }
+        assertEquals(NUM_ENTRIES - 1, lh.getLastAddPushed());
+        assertEquals(NUM_ENTRIES * ENTRY_SIZE, lh.getLength());
+
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            assertFalse(future.isDone());
+            respond(entryId, BKException.Code.OK);
+        }
+        // The batch completes with its last entry
+        assertEquals(NUM_ENTRIES - 1, (long) future.get());
+        assertEquals(NUM_ENTRIES - 1, lh.getLastAddConfirmed());
+        assertTrue(lh.getPendingAddOps().isEmpty());
+        for (ByteBuf entry : entries) {
+            assertEquals(0, entry.refCnt());
+        }
+    }
+
+    @Test
+    public void testFailureMidBatch() throws Exception {
+        CompletableFuture<Long> future = lh.appendBatchAsync(entries(NUM_ENTRIES));
+        assertEquals(ensemble.size(), requests.size());
+
+        for (long entryId = 0; entryId < 4; entryId++) {
+            respond(entryId, BKException.Code.OK);
+        }
+        assertEquals(3, lh.getLastAddConfirmed());
+
+        // The failure of an add errors out the adds after it
+        respond(4, BKException.Code.ClientClosedException);
+        ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        assertInstanceOf(BKException.BKClientClosedException.class, e.getCause());
+        assertEquals(3, lh.getLastAddConfirmed());
+        assertTrue(lh.getPendingAddOps().isEmpty());
+        assertEquals(4 * ENTRY_SIZE, lh.getLength());
+    }
+
+    @Test
+    public void testBatchDisabled() throws Exception {
+        ClientConfiguration conf = new ClientConfiguration().setUseV2WireProtocol(true);
+        when(lh.clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(conf));
+        lh.appendBatchAsync(entries(NUM_ENTRIES));
+
+        // Sent as separate adds
+        assertTrue(requests.isEmpty());
+        assertEquals(NUM_ENTRIES - 1, lh.getLastAddPushed());
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for the appends of a {@link LedgerHandle} racing with its close.
+ */
+public class LedgerHandleAppendTest {
+
+    private static final long LEDGER_ID = 1234L;
+    private static final int ENTRY_SIZE = 10;
+
+    private ExecutorService executor;
+    private LedgerHandle lh;
+    private final AtomicInteger closedLedgerErrors = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        executor = Executors.newSingleThreadExecutor();
+        OrderedExecutor mainWorkerPool = mock(OrderedExecutor.class);
+        when(mainWorkerPool.chooseThread(anyLong())).thenReturn(executor);
+
+        ClientContext clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(new ClientConfiguration()));
+        when(clientCtx.getMainWorkerPool()).thenReturn(mainWorkerPool);
+        when(clientCtx.getByteBufAllocator()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+        when(clientCtx.getClientStats()).thenReturn(mock(BookKeeperClientStats.class));
+
+        List<BookieId> ensemble = Arrays.asList(
+                BookieId.parse("bookie-1:3181"), BookieId.parse("bookie-2:3181"), BookieId.parse("bookie-3:3181"));
+        LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                .withId(LEDGER_ID)
+                .withEnsembleSize(3).withWriteQuorumSize(3).withAckQuorumSize(2)
+                .withPassword(new byte[0])
+                .withDigestType(DigestType.CRC32C)
+                .newEnsembleEntry(0L, ensemble)
+                .build();
+        lh = new LedgerHandle(clientCtx, LEDGER_ID, new Versioned<>(metadata, new LongVersion(0L)),
+                BookKeeper.DigestType.CRC32C, new byte[0], EnumSet.noneOf(WriteFlag.class));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        executor.shutdown();
+    }
+
+    private PendingAddOp op() {
+        PendingAddOp op = mock(PendingAddOp.class, CALLS_REAL_METHODS);
+        op.payload = Unpooled.wrappedBuffer(new byte[ENTRY_SIZE]);
+        op.entryLength = ENTRY_SIZE;
+        op.entryId = LedgerHandle.INVALID_ENTRY_ID;
+        op.cb = (rc, lh, entryId, qwcLatency, ctx) -> {
+            if (rc == BKException.Code.LedgerClosedException) {
+                closedLedgerErrors.incrementAndGet();
+            }
+        };
+        // The operations are not sent to any bookie
+        doNothing().when(op).initiate();
+        doNothing().when(op).initiate(any());
+        doNothing().when(op).recyclePendAddOpObject();
+        return op;
+    }
+
+    private void awaitCallbacks() throws Exception {
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private static void assertEntryIds(long count, List<PendingAddOp> ops) {
+        assertEquals(count, ops.size());
+        for (int i = 0; i < ops.size(); i++) {
+            assertEquals(i, ops.get(i).entryId);
+        }
+    }
+
+    @Test
+    public void testAppendAfterClose() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            lh.doAsyncAddEntry(op());
+        }
+        List<PendingAddOp> batch = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            batch.add(op());
+        }
+        lh.doAsyncAddEntries(batch);
+        assertEquals(14, lh.getLastAddPushed());
+        assertEquals(15 * ENTRY_SIZE, lh.getLength());
+
+        lh.closeToAppends();
+        lh.doAsyncAddEntry(op());
+        lh.doAsyncAddEntries(Arrays.asList(op(), op()));
+        assertEquals(14, lh.getLastAddPushed());
+
+        assertEntryIds(15, lh.drainPendingAddsAndAdjustLength());
+        assertEquals(0, lh.getLength());
+        awaitCallbacks();
+        assertEquals(3, closedLedgerErrors.get());
+    }
+
+    @Test
+    public void testConcurrentAppendsAndClose() throws Exception {
+        int numThreads = 4;
+        int appendsPerThread = 2000;
+        CountDownLatch started = new CountDownLatch(numThreads);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            Thread thread = new Thread(() -> {
+                started.countDown();
+                for (int i = 0; i < appendsPerThread; i++) {
+                    lh.doAsyncAddEntry(op());
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        started.await();
+        lh.closeToAppends();
+        long lastAddPushed = lh.getLastAddPushed();
+
+        // Every append that got an entry id is pending once the close returns
+        List<PendingAddOp> pending = lh.drainPendingAddsAndAdjustLength();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEntryIds(lastAddPushed + 1, pending);
+        assertEquals(lastAddPushed, lh.getLastAddPushed());
+        assertEquals(0, lh.getLength());
+        assertTrue(lh.getPendingAddOps().isEmpty());
+
+        awaitCallbacks();
+        assertEquals(numThreads * appendsPerThread, pending.size() + closedLedgerErrors.get());
+    }
+}
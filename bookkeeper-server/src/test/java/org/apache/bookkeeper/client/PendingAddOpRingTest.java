@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@link PendingAddOpRing}.
+ */
+public class PendingAddOpRingTest {
+
+    private final PendingAddOpRing ring = new PendingAddOpRing();
+
+    private static PendingAddOp op(long entryId) {
+        PendingAddOp op = mock(PendingAddOp.class);
+        op.entryId = entryId;
+        return op;
+    }
+
+    private static List<Long> entryIds(Iterable<PendingAddOp> ops) {
+        List<Long> entryIds = new ArrayList<>();
+        for (PendingAddOp op : ops) {
+            entryIds.add(op.entryId);
+        }
+        return entryIds;
+    }
+
+    private static List<Long> range(long first, long last) {
+        List<Long> entryIds = new ArrayList<>();
+        for (long entryId = first; entryId <= last; entryId++) {
+            entryIds.add(entryId);
+        }
+        return entryIds;
+    }
+
+    @Test
+    public void testAddGetRemove() {
+        PendingAddOp op = op(5);
+        assertTrue(ring.add(op));
+        assertEquals(1, ring.size());
+        assertSame(op, ring.get(5));
+        assertNull(ring.get(4));
+        assertTrue(ring.contains(op));
+
+        assertFalse(ring.remove(op(5)));
+        assertTrue(ring.remove(op));
+        assertFalse(ring.remove(op));
+        assertNull(ring.get(5));
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void testCollidingEntries() {
+        // The same slot of the first ring, then of the second and third rings, and finally the overflow map
+        long[] entryIds = { 0, 65536, 131072, 196608 };
+        List<PendingAddOp> ops = new ArrayList<>();
+        for (int i = entryIds.length - 1; i >= 0; i--) {
+            PendingAddOp op = op(entryIds[i]);
+            ops.add(0, op);
+            ring.add(op);
+        }
+        assertEquals(entryIds.length, ring.size());
+        for (int i = 0; i < entryIds.length; i++) {
+            assertSame(ops.get(i), ring.get(entryIds[i]));
+        }
+        assertEquals(ops, new ArrayList<>(ring));
+
+        assertTrue(ring.remove(ops.get(1)));
+        assertNull(ring.get(65536));
+        assertSame(ops.get(3), ring.get(196608));
+
+        assertEquals(entryIds(ring), entryIds(ring.drain()));
+        assertTrue(ring.isEmpty());
+        assertTrue(ring.drain().isEmpty());
+    }
+
+    @Test
+    public void testIterateInOrder() {
+        // More pending adds than the first ring holds, added out of order
+        for (long entryId = 999; entryId >= 0; entryId--) {
+            ring.add(op(entryId));
+        }
+        assertEquals(range(0, 999), entryIds(ring));
+
+        // Complete the adds in order, as the ledger handle does
+        for (long entryId = 0; entryId < 600; entryId++) {
+            assertTrue(ring.remove(ring.get(entryId)));
+        }
+        assertEquals(range(600, 999), entryIds(ring));
+
+        for (long entryId = 1000; entryId < 1100; entryId++) {
+            ring.add(op(entryId));
+        }
+        assertEquals(range(600, 1099), entryIds(ring));
+        assertEquals(range(600, 1099), entryIds(ring.drain()));
+        assertTrue(ring.isEmpty());
+        assertFalse(ring.iterator().hasNext());
+    }
+
+    @Test
+    public void testRemoveOutOfOrder() {
+        for (long entryId = 0; entryId < 10; entryId++) {
+            ring.add(op(entryId));
+        }
+        // A gap in the pending adds must not hide the adds above it
+        assertTrue(ring.remove(ring.get(3)));
+        assertTrue(ring.remove(ring.get(0)));
+        assertTrue(ring.remove(ring.get(1)));
+        assertTrue(ring.remove(ring.get(2)));
+        List<Long> expected = range(4, 9);
+        assertEquals(expected, entryIds(ring));
+
+        // Adds of the slots of the removed entries, one ring length later
+        ring.add(op(256));
+        ring.add(op(257));
+        expected.add(256L);
+        expected.add(257L);
+        assertEquals(expected, entryIds(ring));
+        assertEquals(expected, entryIds(ring.drain()));
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.client.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.apache.bookkeeper.client.api.BKException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerEntryStream;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@link LedgerEntryStreamImpl}.
+ */
+public class LedgerEntryStreamImplTest {
+
+    private static final long LEDGER_ID = 1234L;
+
+    // Buffers of all the entries returned by the reads
+    private final List<ByteBuf> buffers = new ArrayList<>();
+
+    /**
+     * Reads that are completed by the test, returning at most maxEntries entries.
+     */
+    private class TestReader implements LedgerEntryStreamImpl.BatchReader {
+        final List<long[]> reads = new ArrayList<>();
+        final List<CompletableFuture<LedgerEntries>> futures = new ArrayList<>();
+
+        @Override
+        public CompletableFuture<LedgerEntries> read(long firstEntry, int maxCount) {
+            CompletableFuture<LedgerEntries> future = new CompletableFuture<>();
+            reads.add(new long[] { firstEntry, maxCount });
+            futures.add(future);
+            return future;
+        }
+
+        void complete(int read, int numEntries) {
+            futures.get(read).complete(entries(reads.get(read)[0], numEntries));
+        }
+    }
+
+    private LedgerEntries entries(long firstEntry, int count) {
+        List<LedgerEntry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ByteBuf buffer = Unpooled.buffer(Long.BYTES).writeLong(firstEntry + i);
+            buffers.add(buffer);
+            entries.add(LedgerEntryImpl.create(LEDGER_ID, firstEntry + i, Long.BYTES, buffer));
+        }
+        return LedgerEntriesImpl.create(entries);
+    }
+
+    private static long[] entryIds(LedgerEntries entries) {
+        List<Long> ids = new ArrayList<>();
+        for (LedgerEntry entry : entries) {
+            assertEquals(entry.getEntryId(), entry.getEntryBuffer().getLong(0));
+            ids.add(entry.getEntryId());
+        }
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private void assertAllReleased() {
+        for (ByteBuf buffer : buffers) {
+            assertEquals(0, buffer.refCnt());
+        }
+    }
+
+    @Test
+    public void testReadInOrder() throws Exception {
+        TestReader reader = new TestReader();
+        LedgerEntryStream stream = LedgerEntryStreamImpl.create(reader, 0, 24, 10, 2);
+
+        // Only the outstanding reads are issued
+        assertEquals(2, reader.reads.size());
+        assertEquals(0, reader.reads.get(0)[0]);
+        assertEquals(10, reader.reads.get(1)[0]);
+
+        CompletableFuture<LedgerEntries> next = stream.nextAsync();
+        assertFalse(next.isDone());
+        // Batches are returned in order
+        reader.complete(1, 10);
+        assertFalse(next.isDone());
+        reader.complete(0, 10);
+        try (LedgerEntries entries = next.get()) {
+            assertEquals(0, entryIds(entries)[0]);
+            assertEquals(10, entryIds(entries).length);
+        }
+
+        // A batch taken from the stream allows the next one to be read
+        assertEquals(3, reader.reads.size());
+        assertEquals(20, reader.reads.get(2)[0]);
+        assertEquals(5, reader.reads.get(2)[1]);
+
+        try (LedgerEntries entries = stream.next()) {
+            assertEquals(10, entryIds(entries)[0]);
+        }
+        assertTrue(stream.hasNext());
+        reader.complete(2, 5);
+        try (LedgerEntries entries = stream.next()) {
+            assertEquals(24, entryIds(entries)[4]);
+        }
+        assertFalse(stream.hasNext());
+        assertEquals(3, reader.reads.size());
+
+        stream.close();
+        assertAllReleased();
+    }
+
+    @Test
+    public void testShortReads() throws Exception {
+        TestReader reader = new TestReader();
+        LedgerEntryStream stream = LedgerEntryStreamImpl.create(reader, 0, 9, 10, 1);
+
+        // The rest of the batch is read right away
+        reader.complete(0, 4);
+        assertEquals(2, reader.reads.size());
+        assertEquals(4, reader.reads.get(1)[0]);
+        assertEquals(6, reader.reads.get(1)[1]);
+        reader.complete(1, 6);
+
+        try (LedgerEntries entries = stream.next()) {
+            assertEquals(4, entryIds(entries).length);
+        }
+        try (LedgerEntries entries = stream.next()) {
+            assertEquals(4, entryIds(entries)[0]);
+            assertEquals(6, entryIds(entries).length);
+        }
+        assertFalse(stream.hasNext());
+        stream.close();
+        assertAllReleased();
+    }
+
+    @Test
+    public void testReadFailure() throws Exception {
+        TestReader reader = new TestReader();
+        LedgerEntryStream stream = LedgerEntryStreamImpl.create(reader, 0, 29, 10, 3);
+
+        reader.complete(0, 10);
+        BKException failure = new BKException(BKException.Code.ReadException) {};
+        reader.futures.get(1).completeExceptionally(failure);
+        reader.complete(2, 10);
+
+        stream.next().close();
+        ExecutionException e = assertThrows(ExecutionException.class, () -> stream.nextAsync().get());
+        assertSame(failure, e.getCause());
+        assertFalse(stream.hasNext());
+        // The following calls fail as well
+        e = assertThrows(ExecutionException.class, () -> stream.nextAsync().get());
+        assertSame(failure, e.getCause());
+
+        stream.close();
+        assertAllReleased();
+    }
+
+    @Test
+    public void testCloseReleasesEntries() throws Exception {
+        TestReader reader = new TestReader();
+        LedgerEntryStream stream = LedgerEntryStreamImpl.create(reader, 0, 39, 10, 3);
+
+        reader.complete(0, 10);
+        CompletableFuture<LedgerEntries> next = stream.nextAsync();
+        next.get().close();
+
+        reader.complete(1, 10);
+        stream.close();
+        assertFalse(stream.hasNext());
+        assertThrows(ExecutionException.class, () -> stream.nextAsync().get());
+
+        // The reads still in flight are released when they complete
+        reader.complete(2, 10);
+        reader.complete(3, 10);
+        assertAllReleased();
+    }
+
+    @Test
+    public void testReadHandleDefault() throws Exception {
+        ReadHandle handle = mock(ReadHandle.class, CALLS_REAL_METHODS);
+        when(handle.readAsync(anyLong(), anyLong())).thenAnswer(invocation -> {
+            long first = invocation.getArgument(0);
+            long last = invocation.getArgument(1);
+            return CompletableFuture.completedFuture(entries(first, (int) (last - first + 1)));
+        });
+
+        long nextEntryId = 5;
+        try (LedgerEntryStream stream = handle.readStream(5, 27, 10, 2)) {
+            while (stream.hasNext()) {
+                try (LedgerEntries entries = stream.next()) {
+                    for (long entryId : entryIds(entries)) {
+                        assertEquals(nextEntryId++, entryId);
+                    }
+                }
+            }
+        }
+        assertEquals(28, nextEntryId);
+        assertAllReleased();
+    }
+}
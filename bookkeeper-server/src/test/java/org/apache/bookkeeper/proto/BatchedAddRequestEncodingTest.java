@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.proto;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.ReferenceCounted;
+import java.util.List;
+import org.apache.bookkeeper.proto.BookieProtocol.BatchedAddRequest;
+import org.apache.bookkeeper.proto.BookieProtocol.ParsedAddRequest;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for the encoding and decoding of {@link BookieProtocol#BATCH_ADD_ENTRY} requests.
+ */
+public class BatchedAddRequestEncodingTest {
+
+    private static final ByteBufAllocator ALLOCATOR = UnpooledByteBufAllocator.DEFAULT;
+    private static final byte[] MASTER_KEY = new byte[BookieProtocol.MASTER_KEY_LENGTH];
+
+    private final BookieProtoEncoding.RequestEnDeCoderPreV3 decoder =
+            new BookieProtoEncoding.RequestEnDeCoderPreV3(null);
+
+    private static byte[] payload(long entryId, int size) {
+        byte[] payload = new byte[size];
+        for (int i = 0; i < size; i++) {
+            payload[i] = (byte) (entryId + i);
+        }
+        return payload;
+    }
+
+    private static ReferenceCounted add(DigestManager digestManager, long entryId, byte[] payload, int flags) {
+        return digestManager.computeDigestAndPackageForSending(entryId, entryId - 1, payload.length,
+                Unpooled.wrappedBuffer(payload), MASTER_KEY, flags);
+    }
+
+    /**
+     * Encode the adds in a batched request and strip the frame size, as the frame decoder does.
+     */
+    private static ByteBuf encode(ReferenceCounted[] adds, int flags) {
+        ByteBufList request = PerChannelBookieClient.encodeBatchedAddRequest(ALLOCATOR, MASTER_KEY, adds, flags);
+        ByteBuf packet = ByteBufList.coalesce(request);
+        request.release();
+        for (ReferenceCounted add : adds) {
+            add.release();
+        }
+        assertEquals(packet.readableBytes() - Integer.BYTES, packet.readInt());
+        return packet;
+    }
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        DigestManager digestManager = DigestManager.instantiate(1L, new byte[0], DigestType.DUMMY, ALLOCATOR, true);
+        // Small entries are copied in the request, large ones are appended as separate buffers
+        int[] sizes = { 10, BookieProtoEncoding.SMALL_ENTRY_SIZE_THRESHOLD + 1, 0, 100 };
+        ReferenceCounted[] adds = new ReferenceCounted[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            adds[i] = add(digestManager, i, payload(i, sizes[i]), BookieProtocol.FLAG_RECOVERY_ADD);
+        }
+
+        ByteBuf packet = encode(adds, BookieProtocol.FLAG_RECOVERY_ADD);
+        BatchedAddRequest batch = (BatchedAddRequest) decoder.decode(packet);
+
+        assertEquals(BookieProtocol.BATCH_ADD_ENTRY, batch.getOpCode());
+        assertEquals(1L, batch.getLedgerId());
+        assertEquals(0L, batch.getEntryId());
+        assertTrue(batch.isRecoveryAdd());
+        assertArrayEquals(MASTER_KEY, batch.getMasterKey());
+
+        List<ParsedAddRequest> parsed = batch.getAdds();
+        assertEquals(sizes.length, parsed.size());
+        for (int i = 0; i < sizes.length; i++) {
+            ParsedAddRequest add = parsed.get(i);
+            assertEquals(1L, add.getLedgerId());
+            assertEquals(i, add.getEntryId());
+            assertTrue(add.isRecoveryAdd());
+
+            // The data of each add is the entry as it is stored: the metadata header followed by the payload
+            ByteBuf data = add.getData();
+            assertEquals(1L, data.getLong(0));
+            assertEquals(i, data.getLong(8));
+            assertEquals(i - 1, data.getLong(16));
+            assertEquals(sizes[i], data.getLong(24));
+            byte[] payload = new byte[sizes[i]];
+            data.getBytes(data.readableBytes() - sizes[i], payload);
+            assertArrayEquals(payload(i, sizes[i]), payload);
+        }
+
+        // Each add holds a reference on the packet until it is released
+        assertEquals(1 + sizes.length, packet.refCnt());
+        batch.release();
+        for (ParsedAddRequest add : parsed) {
+            add.recycle();
+        }
+        batch.recycle();
+        assertEquals(1, packet.refCnt());
+        packet.release();
+    }
+
+    @Test
+    public void testDecodeMultipleLedgers() throws Exception {
+        DigestManager ledger1 = DigestManager.instantiate(1L, new byte[0], DigestType.DUMMY, ALLOCATOR, true);
+        DigestManager ledger2 = DigestManager.instantiate(2L, new byte[0], DigestType.DUMMY, ALLOCATOR, true);
+        ReferenceCounted[] adds = {
+            add(ledger1, 0, payload(0, 10), 0),
+            add(ledger1, 1, payload(1, 10), 0),
+            add(ledger2, 2, payload(2, 10), 0),
+        };
+
+        ByteBuf packet = encode(adds, 0);
+        assertThrows(IllegalStateException.class, () -> decoder.decode(packet));
+
+        // The adds decoded before the failure released their reference on the packet
+        assertEquals(1, packet.refCnt());
+        packet.release();
+    }
+
+    @Test
+    public void testDecodeTruncatedRequest() throws Exception {
+        DigestManager digestManager = DigestManager.instantiate(1L, new byte[0], DigestType.DUMMY, ALLOCATOR, true);
+        ReferenceCounted[] adds = {
+            add(digestManager, 0, payload(0, 10), 0),
+            add(digestManager, 1, payload(1, 10), 0),
+        };
+
+        ByteBuf encoded = encode(adds, 0);
+        ByteBuf packet = encoded.retainedSlice(encoded.readerIndex(), encoded.readableBytes() - 5);
+        encoded.release();
+        assertThrows(IndexOutOfBoundsException.class, () -> decoder.decode(packet));
+
+        assertEquals(1, packet.refCnt());
+        packet.release();
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.proto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.ReferenceCountUtil;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.proto.BookieProtocol.BatchedAddRequest;
+import org.apache.bookkeeper.proto.BookieProtocol.ParsedAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@link BatchedWriteEntryProcessor}.
+ */
+public class BatchedWriteEntryProcessorTest {
+
+    private static final long LEDGER_ID = 1234L;
+    private static final byte[] MASTER_KEY = new byte[BookieProtocol.MASTER_KEY_LENGTH];
+
+    private final Bookie bookie = mock(Bookie.class);
+    private final Channel channel = mock(Channel.class);
+    private final BookieRequestHandler requestHandler = mock(BookieRequestHandler.class);
+    private final BookieRequestProcessor requestProcessor = mock(BookieRequestProcessor.class);
+    // The response code of each entry
+    private final Map<Long, Integer> responses = new TreeMap<>();
+    private final List<ByteBuf> entries = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(channel);
+        when(channel.isActive()).thenReturn(true);
+        when(channel.isWritable()).thenReturn(true);
+        when(requestHandler.ctx()).thenReturn(ctx);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+        when(requestProcessor.getRequestStats()).thenReturn(new RequestStats(NullStatsLogger.INSTANCE));
+        when(requestProcessor.getWaitTimeoutOnBackpressureMillis()).thenReturn(-1L);
+
+        // The error responses are written on the channel
+        when(channel.writeAndFlush(any(), any())).thenAnswer(invocation -> {
+            BookieProtocol.Response response = invocation.getArgument(0);
+            assertNull(responses.put(response.getEntryId(), response.getErrorCode()));
+            response.release();
+            return null;
+        });
+        // The successful responses are grouped
+        doAnswer(invocation -> {
+            ParsedAddRequest add = invocation.getArgument(1);
+            assertNull(responses.put(add.getEntryId(), invocation.getArgument(0)));
+            return null;
+        }).when(requestHandler).prepareSendResponseV2(anyInt(), any(ParsedAddRequest.class));
+    }
+
+    private BatchedAddRequest batch(int numEntries, short flags) {
+        BatchedAddRequest batch = BatchedAddRequest.create(BookieProtocol.CURRENT_PROTOCOL_VERSION, flags, MASTER_KEY);
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            ByteBuf data = Unpooled.buffer(64);
+            data.writeLong(LEDGER_ID);
+            data.writeLong(entryId);
+            data.writerIndex(64);
+            batch.add(ParsedAddRequest.create(BookieProtocol.CURRENT_PROTOCOL_VERSION, LEDGER_ID, entryId, flags,
+                    MASTER_KEY, data));
+            // The request holds the only reference
+            data.release();
+            entries.add(data);
+        }
+        return batch;
+    }
+
+    /**
+     * Make the bookie add the entries like {@link Bookie#addEntries} does, failing on the given entry.
+     */
+    private void addEntriesFailingOn(long failedEntryId, Exception failure) throws Exception {
+        when(bookie.addEntries(any(ByteBuf[].class), anyInt(), anyBoolean(), any(WriteCallback.class), any(),
+                any(byte[].class))).thenAnswer(invocation -> {
+            ByteBuf[] toAdd = invocation.getArgument(0);
+            int offset = invocation.getArgument(1);
+            WriteCallback cb = invocation.getArgument(3);
+            Object ctx = invocation.getArgument(4);
+            if (toAdd[offset].getLong(8) == failedEntryId) {
+                ReferenceCountUtil.release(toAdd[offset]);
+                throw failure;
+            }
+            int added = 0;
+            for (int i = offset; i < toAdd.length && toAdd[i].getLong(8) != failedEntryId; i++) {
+                long entryId = toAdd[i].getLong(8);
+                ReferenceCountUtil.release(toAdd[i]);
+                cb.writeComplete(BookieProtocol.EOK, LEDGER_ID, entryId, null, ctx);
+                added++;
+            }
+            return added;
+        });
+    }
+
+    private void assertReleased() {
+        for (ByteBuf entry : entries) {
+            assertEquals(0, entry.refCnt());
+        }
+    }
+
+    private void assertResponses(int numEntries, long failedEntryId, int rc) {
+        assertEquals(numEntries, responses.size());
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            assertEquals(entryId == failedEntryId ? rc : BookieProtocol.EOK, (int) responses.get(entryId));
+        }
+        verify(requestProcessor, times(numEntries)).onAddRequestFinish();
+    }
+
+    @Test
+    public void testAddBatch() throws Exception {
+        addEntriesFailingOn(-1, null);
+        BatchedWriteEntryProcessor processor = BatchedWriteEntryProcessor.create(batch(10, BookieProtocol.FLAG_NONE),
+                requestHandler, requestProcessor);
+        verify(requestProcessor, times(10)).onAddRequestStart(channel);
+        processor.run();
+
+        // All the entries are added with a single call
+        verify(bookie).addEntries(any(ByteBuf[].class), anyInt(), anyBoolean(), any(WriteCallback.class), any(),
+                any(byte[].class));
+        assertResponses(10, -1, BookieProtocol.EOK);
+        assertReleased();
+    }
+
+    @Test
+    public void testPartialFailure() throws Exception {
+        addEntriesFailingOn(4, new IOException("write failure"));
+        BatchedWriteEntryProcessor processor = BatchedWriteEntryProcessor.create(batch(10, BookieProtocol.FLAG_NONE),
+                requestHandler, requestProcessor);
+        processor.run();
+
+        // The entries before the failed one are acknowledged, the entries after it are added separately
+        verify(bookie, times(3)).addEntries(any(ByteBuf[].class), anyInt(), anyBoolean(), any(WriteCallback.class),
+                any(), any(byte[].class));
+        assertResponses(10, 4, BookieProtocol.EIO);
+        assertReleased();
+    }
+
+    @Test
+    public void testFencedLedger() throws Exception {
+        // Once fenced, all the adds of the ledger fail
+        when(bookie.addEntries(any(ByteBuf[].class), anyInt(), anyBoolean(), any(WriteCallback.class), any(),
+                any(byte[].class))).thenAnswer(invocation -> {
+            ByteBuf[] toAdd = invocation.getArgument(0);
+            ReferenceCountUtil.release(toAdd[(int) invocation.getArgument(1)]);
+            throw BookieException.create(BookieException.Code.LedgerFencedException);
+        });
+        BatchedWriteEntryProcessor processor = BatchedWriteEntryProcessor.create(batch(5, BookieProtocol.FLAG_NONE),
+                requestHandler, requestProcessor);
+        processor.run();
+
+        assertEquals(5, responses.size());
+        responses.values().forEach(rc -> assertEquals(BookieProtocol.EFENCED, (int) rc));
+        verify(requestProcessor, times(5)).onAddRequestFinish();
+        assertReleased();
+    }
+
+    @Test
+    public void testReadOnlyBookie() throws Exception {
+        when(bookie.isReadOnly()).thenReturn(true);
+        BatchedWriteEntryProcessor processor = BatchedWriteEntryProcessor.create(batch(5, BookieProtocol.FLAG_NONE),
+                requestHandler, requestProcessor);
+        processor.run();
+
+        verify(bookie, never()).addEntries(any(ByteBuf[].class), anyInt(), anyBoolean(), any(WriteCallback.class),
+                any(), any(byte[].class));
+        assertEquals(5, responses.size());
+        responses.values().forEach(rc -> assertEquals(BookieProtocol.EREADONLY, (int) rc));
+        verify(requestProcessor, times(5)).onAddRequestFinish();
+        assertReleased();
+    }
+
+    @Test
+    public void testRecoveryAddFailure() throws Exception {
+        when(bookie.isReadOnly()).thenReturn(true);
+        when(bookie.isAvailableForHighPriorityWrites()).thenReturn(true);
+        doAnswer(invocation -> {
+            ByteBuf entry = invocation.getArgument(0);
+            long entryId = entry.getLong(8);
+            ReferenceCountUtil.release(entry);
+            if (entryId == 2) {
+                throw new IOException("write failure");
+            }
+            WriteCallback cb = invocation.getArgument(1);
+            cb.writeComplete(BookieProtocol.EOK, LEDGER_ID, entryId, null, invocation.getArgument(2));
+            return null;
+        }).when(bookie).recoveryAddEntry(any(ByteBuf.class), any(WriteCallback.class), any(), any(byte[].class));
+
+        // Recovery adds are high priority, accepted by a read-only bookie
+        BatchedWriteEntryProcessor processor = BatchedWriteEntryProcessor.create(
+                batch(5, (short) (BookieProtocol.FLAG_RECOVERY_ADD | BookieProtocol.FLAG_HIGH_PRIORITY)),
+                requestHandler, requestProcessor);
+        processor.run();
+
+        verify(bookie, times(5)).recoveryAddEntry(any(ByteBuf.class), any(WriteCallback.class), any(),
+                any(byte[].class));
+        assertResponses(5, 2, BookieProtocol.EIO);
+        assertReleased();
+    }
+}
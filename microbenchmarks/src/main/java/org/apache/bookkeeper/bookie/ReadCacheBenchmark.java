@@ -0,0 +1,245 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.bookkeeper.bookie.storage.ldb.ReadCache;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks for the DbLedgerStorage read cache under mixed put/get load, comparing the
+ * lock-free segment rotation with the previous read-write lock based implementation.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class ReadCacheBenchmark {
+
+    private static final long CACHE_SIZE = 256 * 1024 * 1024;
+
+    // Use small segments so that rotations happen frequently during the benchmark
+    private static final int SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    private static final int ENTRY_SIZE = 1024;
+
+    /**
+     * Common operations for the read cache implementations being compared.
+     */
+    interface Cache {
+        void put(long ledgerId, long entryId, ByteBuf entry);
+
+        ByteBuf get(long ledgerId, long entryId);
+
+        void close();
+    }
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Group)
+    public static class TestState {
+
+        @Param({ "lockFree", "readWriteLock" })
+        private String cacheType;
+
+        private Cache cache;
+        private ByteBuf entry;
+        private final AtomicLong lastEntryId = new AtomicLong(0);
+
+        @Setup(Level.Trial)
+        public void setup() {
+            if ("lockFree".equals(cacheType)) {
+                ReadCache readCache = new ReadCache(PooledByteBufAllocator.DEFAULT, CACHE_SIZE, SEGMENT_SIZE);
+                cache = new Cache() {
+                    @Override
+                    public void put(long ledgerId, long entryId, ByteBuf entry) {
+                        readCache.put(ledgerId, entryId, entry);
+                    }
+
+                    @Override
+                    public ByteBuf get(long ledgerId, long entryId) {
+                        return readCache.get(ledgerId, entryId);
+                    }
+
+                    @Override
+                    public void close() {
+                        readCache.close();
+                    }
+                };
+            } else {
+                cache = new ReadWriteLockReadCache(PooledByteBufAllocator.DEFAULT, CACHE_SIZE, SEGMENT_SIZE);
+            }
+
+            entry = Unpooled.directBuffer(ENTRY_SIZE, ENTRY_SIZE);
+            entry.writerIndex(ENTRY_SIZE);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            cache.close();
+            entry.release();
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public void put(TestState s) {
+        s.cache.put(1, s.lastEntryId.incrementAndGet(), s.entry);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(16)
+    public void get(TestState s) {
+        long lastEntryId = s.lastEntryId.get();
+        long entryId = lastEntryId - ThreadLocalRandom.current().nextLong(Math.max(1, lastEntryId / 2) + 1);
+        ByteBuf res = s.cache.get(1, entryId);
+        if (res != null) {
+            res.release();
+        }
+    }
+
+    /**
+     * Read cache that serializes segment rotations with a {@link ReentrantReadWriteLock}, used as the
+     * baseline for the comparison.
+     */
+    static class ReadWriteLockReadCache implements Cache {
+        private final ByteBuf[] cacheSegments;
+        private final ConcurrentLongLongPairHashMap[] cacheIndexes;
+
+        private int currentSegmentIdx;
+        private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
+
+        private final int segmentSize;
+        private final ByteBufAllocator allocator;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        ReadWriteLockReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+            this.allocator = allocator;
+            int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
+            segmentSize = (int) (maxCacheSize / segmentsCount);
+
+            cacheSegments = new ByteBuf[segmentsCount];
+            cacheIndexes = new ConcurrentLongLongPairHashMap[segmentsCount];
+            for (int i = 0; i < segmentsCount; i++) {
+                cacheSegments[i] = Unpooled.directBuffer(segmentSize, segmentSize);
+                cacheIndexes[i] = ConcurrentLongLongPairHashMap.newBuilder()
+                        .expectedItems(4096)
+                        .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                        .build();
+            }
+        }
+
+        @Override
+        public void put(long ledgerId, long entryId, ByteBuf entry) {
+            int entrySize = entry.readableBytes();
+            int alignedSize = (entrySize + 63) & ~63;
+
+            lock.readLock().lock();
+            try {
+                int offset = currentSegmentOffset.getAndAdd(alignedSize);
+                if (offset + entrySize <= segmentSize) {
+                    cacheSegments[currentSegmentIdx].setBytes(offset, entry, entry.readerIndex(), entrySize);
+                    cacheIndexes[currentSegmentIdx].put(ledgerId, entryId, offset, entrySize);
+                    return;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            lock.writeLock().lock();
+            try {
+                int offset = currentSegmentOffset.getAndAdd(entrySize);
+                if (offset + entrySize > segmentSize) {
+                    currentSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.length;
+                    currentSegmentOffset.set(alignedSize);
+                    cacheIndexes[currentSegmentIdx].clear();
+                    offset = 0;
+                }
+
+                cacheSegments[currentSegmentIdx].setBytes(offset, entry, entry.readerIndex(), entrySize);
+                cacheIndexes[currentSegmentIdx].put(ledgerId, entryId, offset, entrySize);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public ByteBuf get(long ledgerId, long entryId) {
+            lock.readLock().lock();
+            try {
+                int size = cacheSegments.length;
+                for (int i = 0; i < size; i++) {
+                    int segmentIdx = (currentSegmentIdx + (size - i)) % size;
+
+                    LongPair res = cacheIndexes[segmentIdx].get(ledgerId, entryId);
+                    if (res != null) {
+                        int entryOffset = (int) res.first;
+                        int entryLen = (int) res.second;
+
+                        ByteBuf entry = allocator.buffer(entryLen, entryLen);
+                        entry.writeBytes(cacheSegments[segmentIdx], entryOffset, entryLen);
+                        return entry;
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            return null;
+        }
+
+        @Override
+        public void close() {
+            for (ByteBuf segment : cacheSegments) {
+                segment.release();
+            }
+        }
+    }
+}
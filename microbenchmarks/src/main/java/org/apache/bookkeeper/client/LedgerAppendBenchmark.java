@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.ReferenceCounted;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmark of concurrent appends to a single ledger handle, against a bookie client which acknowledges the
+ * writes as soon as they are sent.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Threads(16)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class LedgerAppendBenchmark {
+
+    private static final int MAX_PENDING_ADDS = 10_000;
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+
+        private final byte[] entry = "benchmark-entry-payload".getBytes(UTF_8);
+        private final Semaphore pendingAdds = new Semaphore(MAX_PENDING_ADDS);
+        private final AddCallback addCallback = (rc, lh, entryId, ctx) -> pendingAdds.release();
+
+        private OrderedExecutor mainWorkerPool;
+        private OrderedScheduler scheduler;
+        private LedgerHandle lh;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            mainWorkerPool = OrderedExecutor.newBuilder().name("benchmark-worker").numThreads(1).build();
+            scheduler = OrderedScheduler.newSchedulerBuilder().name("benchmark-scheduler").numThreads(1).build();
+
+            ClientConfiguration conf = new ClientConfiguration();
+            conf.setThrottleValue(0);
+            ClientContext clientCtx = new BenchmarkClientContext(ClientInternalConf.fromConfig(conf),
+                    new AckingBookieClient(mainWorkerPool), mainWorkerPool, scheduler);
+
+            List<BookieId> ensemble = Arrays.asList(BookieId.parse("bookie-1:3181"),
+                    BookieId.parse("bookie-2:3181"), BookieId.parse("bookie-3:3181"));
+            byte[] password = new byte[0];
+            LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                    .withId(1L)
+                    .withEnsembleSize(3).withWriteQuorumSize(3).withAckQuorumSize(2)
+                    .withPassword(password)
+                    .withDigestType(DigestType.CRC32C)
+                    .newEnsembleEntry(0L, ensemble)
+                    .build();
+            lh = new LedgerHandle(clientCtx, 1L, new Versioned<>(metadata, new LongVersion(0)),
+                    BookKeeper.DigestType.CRC32C, password, EnumSet.noneOf(WriteFlag.class));
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            pendingAdds.acquire(MAX_PENDING_ADDS);
+            mainWorkerPool.shutdown();
+            scheduler.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void append(TestState s) throws Exception {
+        s.pendingAdds.acquire();
+        s.lh.asyncAddEntry(s.entry, s.addCallback, null);
+    }
+
+    private static class BenchmarkClientContext implements ClientContext {
+        private final ClientInternalConf conf;
+        private final BookieClient bookieClient;
+        private final OrderedExecutor mainWorkerPool;
+        private final OrderedScheduler scheduler;
+        private final BookKeeperClientStats clientStats = BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE);
+
+        BenchmarkClientContext(ClientInternalConf conf, BookieClient bookieClient,
+                               OrderedExecutor mainWorkerPool, OrderedScheduler scheduler) {
+            this.conf = conf;
+            this.bookieClient = bookieClient;
+            this.mainWorkerPool = mainWorkerPool;
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public ClientInternalConf getConf() {
+            return conf;
+        }
+
+        @Override
+        public LedgerManager getLedgerManager() {
+            return null;
+        }
+
+        @Override
+        public BookieWatcher getBookieWatcher() {
+            return null;
+        }
+
+        @Override
+        public EnsemblePlacementPolicy getPlacementPolicy() {
+            return null;
+        }
+
+        @Override
+        public BookieClient getBookieClient() {
+            return bookieClient;
+        }
+
+        @Override
+        public ByteBufAllocator getByteBufAllocator() {
+            return UnpooledByteBufAllocator.DEFAULT;
+        }
+
+        @Override
+        public OrderedExecutor getMainWorkerPool() {
+            return mainWorkerPool;
+        }
+
+        @Override
+        public OrderedScheduler getScheduler() {
+            return scheduler;
+        }
+
+        @Override
+        public BookKeeperClientStats getClientStats() {
+            return clientStats;
+        }
+
+        @Override
+        public boolean isClientClosed() {
+            return false;
+        }
+    }
+
+    /**
+     * Bookie client acknowledging each write on the ordered thread of the ledger, as the real client does when the
+     * response is received.
+     */
+    private static class AckingBookieClient implements BookieClient {
+        private final OrderedExecutor executor;
+
+        AckingBookieClient(OrderedExecutor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void addEntry(BookieId address, long ledgerId, byte[] masterKey, long entryId,
+                             ReferenceCounted toSend, WriteCallback cb, Object ctx, int options,
+                             boolean allowFastFail, EnumSet<WriteFlag> writeFlags) {
+            executor.executeOrdered(ledgerId,
+                    () -> cb.writeComplete(BKException.Code.OK, ledgerId, entryId, address, ctx));
+        }
+
+        @Override
+        public List<BookieId> getFaultyBookies() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isWritable(BookieId address, long ledgerId) {
+            return true;
+        }
+
+        @Override
+        public long getNumPendingRequests(BookieId address, long ledgerId) {
+            return 0;
+        }
+
+        @Override
+        public void forceLedger(BookieId address, long ledgerId, ForceLedgerCallback cb, Object ctx) {
+            cb.forceLedgerComplete(BKException.Code.OK, ledgerId, address, ctx);
+        }
+
+        @Override
+        public void readLac(BookieId address, long ledgerId, ReadLacCallback cb, Object ctx) {
+            cb.readLacComplete(BKException.Code.IllegalOpException, ledgerId, null, null, ctx);
+        }
+
+        @Override
+        public void writeLac(BookieId address, long ledgerId, byte[] masterKey, long lac, ByteBufList toSend,
+                             WriteLacCallback cb, Object ctx) {
+            cb.writeLacComplete(BKException.Code.OK, ledgerId, address, ctx);
+        }
+
+        @Override
+        public void readEntry(BookieId address, long ledgerId, long entryId, ReadEntryCallback cb, Object ctx,
+                              int flags, byte[] masterKey, boolean allowFastFail) {
+            cb.readEntryComplete(BKException.Code.IllegalOpException, ledgerId, entryId, null, ctx);
+        }
+
+        @Override
+        public void batchReadEntries(BookieId address, long ledgerId, long startEntryId, int maxCount,
+                                     long maxSize, BatchedReadEntryCallback cb, Object ctx, int flags,
+                                     byte[] masterKey, boolean allowFastFail) {
+            cb.readEntriesComplete(BKException.Code.IllegalOpException, ledgerId, startEntryId, null, ctx);
+        }
+
+        @Override
+        public void readEntryWaitForLACUpdate(BookieId address, long ledgerId, long entryId, long previousLAC,
+                                              long timeOutInMillis, boolean piggyBackEntry,
+                                              ReadEntryCallback cb, Object ctx) {
+            cb.readEntryComplete(BKException.Code.IllegalOpException, ledgerId, entryId, null, ctx);
+        }
+
+        @Override
+        public void getBookieInfo(BookieId address, long requested, GetBookieInfoCallback cb, Object ctx) {
+            cb.getBookieInfoComplete(BKException.Code.IllegalOpException, null, ctx);
+        }
+
+        @Override
+        public CompletableFuture<AvailabilityOfEntriesOfLedger> getListOfEntriesOfLedger(BookieId address,
+                                                                                         long ledgerId) {
+            CompletableFuture<AvailabilityOfEntriesOfLedger> future = new CompletableFuture<>();
+            future.completeExceptionally(new BKException.BKIllegalOpException());
+            return future;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -41,6 +41,12 @@ public interface NativeIO {
 
     int fsync(int fd) throws NativeIOException;
 
+    /**
+     * syncfs is a linux-only syscall, so callers must handle the possibility that it does
+     * not exist.
+     */
+    int syncfs(int fd) throws NativeIOException;
+
     /**
      * fallocate is a linux-only syscall, so callers must handle the possibility that it does
      * not exist.
@@ -29,6 +29,12 @@ class NativeIOJni {
 
     static native int fsync(int fd) throws NativeIOException;
 
+    /**
+     * syncfs is a linux-only syscall, so callers must handle the possibility that it does
+     * not exist.
+     */
+    static native int syncfs(int fd) throws NativeIOException;
+
     /**
      * fallocate is a linux-only syscall, so callers must handle the possibility that it does
      * not exist.
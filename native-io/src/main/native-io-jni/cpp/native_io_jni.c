@@ -174,6 +174,27 @@ Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_fsync(JNIEnv * env,
     return res;
 }
 
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    syncfs
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL
+Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_syncfs(JNIEnv * env,
+                                                                jclass clazz,
+                                                                jint fd) {
+#ifdef __linux__
+    int res = syncfs(fd);
+    if (res == -1) {
+        throwExceptionWithErrno(env, "Failed to syncfs");
+    }
+    return res;
+#else
+    throwException(env, "syncfs is not available");
+    return -1;
+#endif
+}
+
 /*
  * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
  * Method:    fallocate
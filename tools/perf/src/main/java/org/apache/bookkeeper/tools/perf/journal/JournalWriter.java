@@ -46,6 +46,7 @@ import org.HdrHistogram.Recorder;
 import org.apache.bookkeeper.bookie.BookieException;
 import org.apache.bookkeeper.bookie.BookieImpl;
 import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
+import org.apache.bookkeeper.bookie.DirectIOFileChannelProvider;
 import org.apache.bookkeeper.bookie.Journal;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
 import org.apache.bookkeeper.common.allocator.ByteBufAllocatorBuilder;
@@ -177,6 +178,15 @@ public class JournalWriter implements Runnable {
         )
         public int numJournalCallbackThreads = 8;
 
+        @Parameter(
+            names = {
+                "-jcp", "--journal-channel-provider"
+            },
+            description = "Journal channel provider, use org.apache.bookkeeper.bookie.DirectIOFileChannelProvider"
+                + " to write the journal with direct I/O"
+        )
+        public String journalChannelProvider = "org.apache.bookkeeper.bookie.DefaultFileChannelProvider";
+
     }
 
 
@@ -476,6 +486,11 @@ public class JournalWriter implements Runnable {
         conf.setNumJournalCallbackThreads(flags.numJournalCallbackThreads);
         conf.setJournalQueueSize(flags.journalQueueSize);
         conf.setJournalSyncData(flags.journalSyncEnabled);
+        conf.setJournalChannelProvider(flags.journalChannelProvider);
+        if (DirectIOFileChannelProvider.class.getName().equals(flags.journalChannelProvider)) {
+            // direct I/O writes whole blocks, so the journal must pad its flushes to the block size
+            conf.setJournalAlignmentSize(4096);
+        }
         conf.setLedgerDirNames(flags.journalDirs.toArray(new String[0]));
         conf.setStatsProviderClass(PrometheusMetricsProvider.class);
         File[] currentDirs = BookieImpl.getCurrentDirectories(conf.getLedgerDirs());